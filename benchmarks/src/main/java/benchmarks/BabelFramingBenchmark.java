@@ -0,0 +1,106 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.PRAYBlock;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.PacketWriter;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.ctos.BaseCTOS;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessagePRAY;
+import natsue.data.hli.StandardMessages;
+
+/**
+ * Babel packet framing without a socket: splitting an incoming byte stream into packets (as NIOConnection does),
+ * and relaying the messages in it (decoding them and framing them for the recipient).
+ * The stream alternates client commands with either chat messages or the creature.warp fixture.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BabelFramingBenchmark {
+	public static final int PAIRS = 16;
+	public static final long SENDER = UINUtils.make(1234, 1);
+	public static final long TARGET = UINUtils.make(5678, 1);
+
+	@State(Scope.Thread)
+	public static class Stream {
+		@Param({"chat", "warp"})
+		public String message;
+
+		public ConfigMessages config = new ConfigMessages();
+		public byte[] data;
+		public ArrayList<byte[]> messages = new ArrayList<>();
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			byte[] pm;
+			if (message.equals("chat")) {
+				pm = StandardMessages.chatMessage(SENDER, "Bench", "bench-chat", "Hello there! How's the weather in your world?").toByteArray(false);
+			} else {
+				byte[] file = Fixtures.read(Fixtures.CREATURE_WARP);
+				pm = new PackedMessagePRAY(SENDER, PRAYBlock.read(IOUtils.wrapLE(file), config.maxDecompressedPRAYSize.getValue(), PacketReader.CHARSET)).toByteArray(true);
+			}
+			ByteBuffer command = IOUtils.newBuffer(PacketReader.PACKET_HEADER_SIZE + 4);
+			command.putInt(BaseCTOS.BASE_FIELD_TYPE, 0x14);
+			ByteBuffer packet = IOUtils.newBuffer(PacketReader.PACKET_HEADER_SIZE + 8 + pm.length);
+			packet.putInt(BaseCTOS.BASE_FIELD_TYPE, 0x09);
+			packet.putInt(BaseCTOS.BASE_FIELD_FDLEN, pm.length);
+			packet.putInt(PacketReader.PACKET_HEADER_SIZE, UINUtils.uid(TARGET));
+			packet.putInt(PacketReader.PACKET_HEADER_SIZE + 4, UINUtils.hid(TARGET));
+			packet.position(PacketReader.PACKET_HEADER_SIZE + 8);
+			packet.put(pm);
+			ByteBuffer stream = IOUtils.newBuffer((command.capacity() + packet.capacity()) * PAIRS);
+			for (int i = 0; i < PAIRS; i++) {
+				stream.put(command.array());
+				stream.put(packet.array());
+				messages.add(pm);
+			}
+			data = stream.array();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS * 2)
+	public void splitPackets(Stream s, Blackhole bh) throws IOException {
+		int pos = 0;
+		while (pos < s.data.length) {
+			ByteBuffer header = IOUtils.wrapLE(s.data, pos, PacketReader.PACKET_HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+			BaseCTOS packet = PacketReader.newPacketForHeader(header);
+			int remainderStart = pos + PacketReader.PACKET_HEADER_SIZE;
+			ByteBuffer remainder = ByteBuffer.wrap(s.data, remainderStart, s.data.length - remainderStart).slice().order(ByteOrder.LITTLE_ENDIAN);
+			int remainderLen = packet.remainderLength(s.config, header, remainder);
+			remainder.limit(remainderLen);
+			bh.consume(PacketReader.readPacket(s.config, packet, header, remainder));
+			pos = remainderStart + remainderLen;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public void relayMessages(Stream s, Blackhole bh) {
+		for (byte[] data : s.messages) {
+			PackedMessage pm = PackedMessage.read(data, s.config);
+			bh.consume(PacketWriter.writeMessage(pm.toByteArray(true)));
+		}
+	}
+}
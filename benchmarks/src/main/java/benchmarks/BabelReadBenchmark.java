@@ -0,0 +1,112 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cdsp.common.data.IOUtils;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.BabelFrameReader;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.ctos.BaseCTOS;
+
+/**
+ * Reading packets off a loopback socket: the old per-packet path vs. BabelFrameReader.
+ * A background thread keeps the socket fed with a mix of small commands and messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BabelReadBenchmark {
+	public static final int PACKETS_PER_OP = 64;
+
+	@State(Scope.Thread)
+	public static class Connection {
+		@Param({"64", "4096"})
+		public int messageSize;
+
+		public ConfigMessages config = new ConfigMessages();
+		public Socket client;
+		public BabelFrameReader frameReader;
+		private ServerSocket server;
+		private Thread feeder;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+			Socket feederSocket = server.accept();
+			byte[] chunk = makeChunk(messageSize);
+			feeder = new Thread(() -> {
+				try {
+					OutputStream os = feederSocket.getOutputStream();
+					while (true)
+						os.write(chunk);
+				} catch (IOException ex) {
+					// done
+				}
+			}, "BabelReadBenchmark feeder");
+			feeder.setDaemon(true);
+			feeder.start();
+			// Same timeout setup as SocketThread.
+			client.setSoTimeout(30000);
+			frameReader = new BabelFrameReader(client.getInputStream(), config);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			client.close();
+			server.close();
+		}
+	}
+
+	/**
+	 * One client command and one message, repeated so the feeder writes aren't tiny.
+	 */
+	static byte[] makeChunk(int messageSize) {
+		ByteBuffer command = IOUtils.newBuffer(PacketReader.PACKET_HEADER_SIZE + 4);
+		command.putInt(BaseCTOS.BASE_FIELD_TYPE, 0x14);
+		ByteBuffer message = IOUtils.newBuffer(PacketReader.PACKET_HEADER_SIZE + 8 + messageSize);
+		message.putInt(BaseCTOS.BASE_FIELD_TYPE, 0x09);
+		message.putInt(BaseCTOS.BASE_FIELD_FDLEN, messageSize);
+		int pairLen = command.capacity() + message.capacity();
+		ByteBuffer chunk = IOUtils.newBuffer(pairLen * 16);
+		for (int i = 0; i < 16; i++) {
+			chunk.put(command.array());
+			chunk.put(message.array());
+		}
+		return chunk.array();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PACKETS_PER_OP)
+	public void legacyReader(Connection c, Blackhole bh) throws IOException {
+		for (int i = 0; i < PACKETS_PER_OP; i++) {
+			byte[] header = PacketReader.readPacketHeader(c.client, 30000, -1);
+			bh.consume(PacketReader.readPacket(c.config, header, c.client.getInputStream()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PACKETS_PER_OP)
+	public void frameReader(Connection c, Blackhole bh) throws IOException {
+		for (int i = 0; i < PACKETS_PER_OP; i++)
+			bh.consume(c.frameReader.readPacket());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import cdsp.common.s16.CS16Format;
+import cdsp.common.s16.CS16FrameInfo;
+import cdsp.common.s16.CS16IO;
+import cdsp.common.s16.S16Image;
+
+/**
+ * Decoding and encoding the sample S16 and C16 files from the RAL samples.
+ * "encode" writes the image back in its own format, "convert" in the other one (S16 to C16 or back).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CS16Benchmark {
+	@State(Scope.Thread)
+	public static class Image {
+		@Param({"s16", "c16"})
+		public String kind;
+
+		public byte[] data;
+		public S16Image[] frames;
+		public CS16Format format, otherFormat;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			data = Fixtures.read(kind.equals("s16") ? Fixtures.SAMPLE_S16 : Fixtures.SAMPLE_C16);
+			format = CS16IO.determineFormat(data);
+			otherFormat = format.compressed ? CS16Format.S16_RGB565 : CS16Format.C16_RGB565;
+			frames = CS16IO.decodeCS16(data);
+		}
+	}
+
+	@Benchmark
+	public CS16FrameInfo[] readFrameInfo(Image i) {
+		return CS16IO.readCS16FrameInfo(i.data);
+	}
+
+	@Benchmark
+	public S16Image[] decode(Image i) {
+		return CS16IO.decodeCS16(i.data);
+	}
+
+	@Benchmark
+	public byte[] encode(Image i) {
+		return CS16IO.encode(i.frames, i.format);
+	}
+
+	@Benchmark
+	public byte[] convert(Image i) {
+		return CS16IO.encode(i.frames, i.otherFormat);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.PRAYBlock;
+import natsue.config.Config;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessagePRAY;
+import natsue.data.hli.StandardMessages;
+import natsue.server.firewall.FirewallLevel;
+import natsue.server.glst.NullGLSTStorage;
+import natsue.server.hub.ServerHub;
+import natsue.server.photo.IPhotoStorage;
+import natsue.server.photo.PhotoFunctions;
+
+/**
+ * A message going through a hub's firewall pipeline (as built for each firewall level) to an online recipient.
+ * Each operation decodes the message first, as the firewall may modify it.
+ * Photo saving is off, so nothing touches the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FirewallBenchmark {
+	@State(Scope.Thread)
+	public static class Pipeline {
+		@Param({"minimal", "vanillaSafe", "full"})
+		public FirewallLevel level;
+
+		@Param({"chat", "warp"})
+		public String message;
+
+		public Config config = new Config();
+		public ServerHub hub;
+		public HubContentionBenchmark.FakeClient sender, receiver;
+		public byte[] data;
+		public final AtomicInteger rejected = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setup() {
+			PhotoFunctions.ensureResourceInit();
+			config.photos.photosEnabled.setValueFromString("false");
+			hub = new ServerHub(config, HubContentionBenchmark.quotaManager(config), HubContentionBenchmark.quietLog(), HubContentionBenchmark.stubDatabase(), null);
+			IPhotoStorage photos = (IPhotoStorage) Proxy.newProxyInstance(IPhotoStorage.class.getClassLoader(), new Class<?>[] {IPhotoStorage.class}, (proxy, method, args) -> {
+				if (method.getReturnType() == boolean.class)
+					return false;
+				return null;
+			});
+			hub.setFirewall(level.createModules(HubContentionBenchmark.quietLog(), hub, config, photos, new NullGLSTStorage()), (destinationUIN, message, reason) -> rejected.incrementAndGet());
+			sender = new HubContentionBenchmark.FakeClient(UINUtils.make(1, 0x100));
+			receiver = new HubContentionBenchmark.FakeClient(UINUtils.make(2, 0x100));
+			if (!hub.clientLogin(sender, () -> {}) || !hub.clientLogin(receiver, () -> {}))
+				throw new RuntimeException("login failed during setup");
+			if (message.equals("chat")) {
+				data = StandardMessages.chatMessage(sender.uin, "Bench1", "bench-chat", "Hello there! How's the weather in your world?").toByteArray(false);
+			} else {
+				byte[] file = Fixtures.read(Fixtures.CREATURE_WARP);
+				data = new PackedMessagePRAY(sender.uin, PRAYBlock.read(IOUtils.wrapLE(file), config.messages.maxDecompressedPRAYSize.getValue(), PacketReader.CHARSET)).toByteArray(true);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			// A benchmark of the rejection path by accident would be worse than useless.
+			if (rejected.get() != 0)
+				throw new RuntimeException(rejected.get() + " messages were rejected by " + level);
+		}
+	}
+
+	@Benchmark
+	public PackedMessage evaluate(Pipeline p) {
+		PackedMessage pm = PackedMessage.read(p.data, p.config.messages);
+		p.hub.clientGiveMessage(p.sender, p.receiver.uin, pm);
+		return pm;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Finds checked-in fixture data, so every run (and every commit) benchmarks the same input.
+ * Paths are relative to the repository root.
+ */
+public class Fixtures {
+	public static final String CREATURE_WARP = "benchmarks/fixtures/creature.warp";
+	public static final String SAMPLE_S16 = "ral/samples/ral_tint_test_card.s16";
+	public static final String SAMPLE_C16 = "ral/samples/ral_vending_machine.c16";
+	public static final String RAL_INCLUDE = "ral/include";
+	public static final String RAL_SAMPLES = "ral/samples";
+	public static final String PHOTO_S16 = "natsue/src/main/resources/invalid_photo.s16";
+	// Only used to recognize the repository root
+	private static final String MARKER = "benchmarks/pom.xml";
+
+	/**
+	 * The repository root: -Dbenchmarks.root if given, otherwise the working directory or its parent.
+	 */
+	public static File root() {
+		String override = System.getProperty("benchmarks.root");
+		if (override != null)
+			return new File(override);
+		File here = new File("").getAbsoluteFile();
+		if (new File(here, MARKER).isFile())
+			return here;
+		File parent = here.getParentFile();
+		if (parent != null && new File(parent, MARKER).isFile())
+			return parent;
+		throw new RuntimeException("Can't find the repository from " + here + "; run from the repository or set -Dbenchmarks.root");
+	}
+
+	public static File file(String path) {
+		return new File(root(), path);
+	}
+
+	public static byte[] read(String path) {
+		try {
+			return Files.readAllBytes(file(path).toPath());
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}
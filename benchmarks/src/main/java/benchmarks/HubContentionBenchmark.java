@@ -0,0 +1,236 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import natsue.config.Config;
+import natsue.data.babel.BabelClientVersion;
+import natsue.data.babel.BabelShortUserData;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessageUnknown;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.firewall.IFWModule;
+import natsue.server.hub.ServerHub;
+import natsue.server.hubapi.IHubClient;
+import natsue.server.hubapi.IHubPrivilegedAPI.MsgSendType;
+import natsue.server.packet.QuotaManager;
+import natsue.server.session.ISessionClient;
+import natsue.server.timing.IClock;
+import natsue.server.timing.TimingWheel;
+import natsue.server.userdata.INatsueUserData;
+
+/**
+ * Hundreds of simulated clients on one ServerHub.
+ * Routing threads look up and message random clients while churn threads log clients out and back in.
+ * A system check thread runs alongside, as the admin console would.
+ * The clients use system-range UINs, so the hub never needs the (stubbed) database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HubContentionBenchmark {
+	/**
+	 * Clients at or above this index are churned; below are always online.
+	 */
+	public static final int STABLE_CLIENTS = 192;
+	public static final int CHURN_THREADS = 2;
+
+	@State(Scope.Benchmark)
+	public static class Hub {
+		@Param({"256", "1024"})
+		public int clientCount;
+
+		public ServerHub hub;
+		public FakeClient[] clients;
+		public final AtomicInteger churnThreadIndex = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Config config = new Config();
+			hub = new ServerHub(config, quotaManager(config), quietLog(), stubDatabase(), null);
+			hub.setFirewall(new IFWModule[0], (destinationUIN, message, reason) -> {});
+			clients = new FakeClient[clientCount];
+			for (int i = 0; i < clientCount; i++) {
+				clients[i] = new FakeClient(UINUtils.make(i + 1, 0x100));
+				if (!hub.clientLogin(clients[i], () -> {}))
+					throw new RuntimeException("login failed during setup");
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Churner {
+		public int first, count, next;
+		public boolean online = true;
+
+		@Setup(Level.Trial)
+		public void setup(Hub h) {
+			int idx = h.churnThreadIndex.getAndIncrement() % CHURN_THREADS;
+			int pool = h.clientCount - STABLE_CLIENTS;
+			count = pool / CHURN_THREADS;
+			first = STABLE_CLIENTS + (idx * count);
+		}
+	}
+
+	/**
+	 * Discards everything.
+	 */
+	/**
+	 * The hub wants one, but nothing here connects, so its wheel is never advanced.
+	 */
+	static QuotaManager quotaManager(Config config) {
+		return new QuotaManager(config.connectionQuotas, new TimingWheel(IClock.SYSTEM, 100, 16, quietLog()));
+	}
+
+	static ILogProvider quietLog() {
+		return new ILogProvider() {
+			@Override
+			public void log(ILogSource source, String text) {
+			}
+
+			@Override
+			public void log(ILogSource source, Throwable ex) {
+			}
+		};
+	}
+
+	/**
+	 * A database with nobody in it, that refuses all changes.
+	 */
+	static INatsueDatabase stubDatabase() {
+		return (INatsueDatabase) Proxy.newProxyInstance(INatsueDatabase.class.getClassLoader(), new Class<?>[] {INatsueDatabase.class}, (proxy, method, args) -> {
+			Class<?> rt = method.getReturnType();
+			if (rt == boolean.class)
+				return false;
+			return null;
+		});
+	}
+
+	static int randomClient(Hub h) {
+		return ThreadLocalRandom.current().nextInt(h.clientCount);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public void route(Hub h) {
+		FakeClient from = h.clients[randomClient(h)];
+		FakeClient to = h.clients[randomClient(h)];
+		h.hub.sendMessage(to.uin, from.message, MsgSendType.Temp, from.uin);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public void lookup(Hub h, Blackhole bh) {
+		bh.consume(h.hub.getConnectionByUIN(h.clients[randomClient(h)].uin));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(CHURN_THREADS)
+	public void churn(Hub h, Churner c) {
+		FakeClient fc = h.clients[c.first + c.next];
+		// Walk the pool logging everyone out, then walk it again logging everyone in.
+		if (c.online) {
+			h.hub.clientLogout(fc);
+		} else {
+			fc.notReallyOnline = false;
+			h.hub.clientLogin(fc, () -> {});
+		}
+		if (++c.next == c.count) {
+			c.next = 0;
+			c.online = !c.online;
+		}
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void systemCheck(Hub h, Blackhole bh) {
+		bh.consume(h.hub.runSystemCheck(false));
+	}
+
+	/**
+	 * Counts what it's sent and otherwise does nothing.
+	 */
+	public static class FakeClient implements IHubClient {
+		public final long uin;
+		public final INatsueUserData.Root identity;
+		public final PackedMessage message;
+		public volatile boolean notReallyOnline;
+		public final AtomicInteger received = new AtomicInteger();
+
+		public FakeClient(long u) {
+			uin = u;
+			identity = new INatsueUserData.Fixed(new BabelShortUserData("", "", "Bench" + UINUtils.uid(u), u), 0);
+			message = new PackedMessageUnknown(u, 0x100, new byte[64]);
+		}
+
+		@Override
+		public INatsueUserData.Root getUserData() {
+			return identity;
+		}
+
+		@Override
+		public BabelClientVersion getClientVersion() {
+			return BabelClientVersion.Internal;
+		}
+
+		@Override
+		public boolean has2FAAuthed() {
+			return false;
+		}
+
+		@Override
+		public boolean try2FAAuth(int code) {
+			return false;
+		}
+
+		@Override
+		public ISessionClient acquireSessionClientForResearchCommands() {
+			return null;
+		}
+
+		@Override
+		public void wwrNotify(boolean online, INatsueUserData userData) {
+		}
+
+		@Override
+		public void incomingMessage(PackedMessage message, Runnable reject, boolean compressIfAllowed) {
+			received.incrementAndGet();
+		}
+
+		@Override
+		public boolean forceDisconnect(boolean sync) {
+			return false;
+		}
+
+		@Override
+		public void markNotReallyOnline() {
+			notReallyOnline = true;
+		}
+
+		@Override
+		public boolean isNotReallyOnline() {
+			return notReallyOnline;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.Random;
+
+import cdsp.common.data.creaturesarchive.CArcContainer;
+import cdsp.common.data.pray.PRAYBlock;
+import cdsp.common.data.pray.PRAYCodec;
+import cdsp.common.data.pray.PRAYTags;
+import natsue.data.babel.PacketReader;
+
+/**
+ * Writes the generated fixtures (a warped creature, shaped like a real Docking Station export).
+ * The output is checked in: only regenerate it deliberately, as it changes the input of every benchmark using it.
+ * Run with: java -cp target/benchmarks-0.666-SNAPSHOT-jar-with-dependencies.jar benchmarks.MakeFixtures
+ */
+public class MakeFixtures {
+	public static final String MONIKER = "001-bnch-a1b2c-d3e4f-g5h6i-j7k8l";
+
+	public static void main(String[] args) throws IOException {
+		Random r = new Random(1234);
+		PRAYTags root = new PRAYTags(PacketReader.CHARSET);
+		root.intMap.put("Genus", 1);
+		root.intMap.put("Gender", 2);
+		root.intMap.put("Variant", 0);
+		root.intMap.put("Creature Age In Ticks", 123456);
+		root.intMap.put("Creature Life Stage", 4);
+		root.intMap.put("Pregnancy Status", 0);
+		root.intMap.put("Exported At Real Time", 1700000000);
+		root.intMap.put("Exported At World Time", 2345678);
+		root.strMap.put("Creature Name", "Benchmark");
+		root.strMap.put("Exported From World Name", "Bench World");
+		root.strMap.put("Exported From World UID", "dock-a1b2c-d3e4f-g5h6i-j7k8l");
+		root.strMap.put("Exporter UserID", "1234+1");
+		root.strMap.put("Head Gallery", "a02a");
+		root.strMap.put("Body Gallery", "a02a");
+		LinkedList<PRAYBlock> blocks = new LinkedList<>();
+		blocks.add(new PRAYBlock("warp", MONIKER + ".warp", root.toByteArray(), PacketReader.CHARSET));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream os = CArcContainer.wrapOutputStream(baos)) {
+			os.write(creatureLikeData(r, 6144));
+		}
+		blocks.add(new PRAYBlock("GLST", MONIKER + ".warp.glist.creature", baos.toByteArray(), PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("CREA", MONIKER + ".warp.creature", creatureLikeData(r, 163840), PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("GENE", MONIKER + ".warp.genetics", creatureLikeData(r, 18432), PacketReader.CHARSET));
+		byte[] photo = Fixtures.read(Fixtures.PHOTO_S16);
+		blocks.add(new PRAYBlock("PHOT", MONIKER + "-0.warp.photo", photo, PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("PHOT", MONIKER + "-1.warp.photo", photo, PacketReader.CHARSET));
+		// Fixed settings, so this doesn't change if the default codec does.
+		byte[] file = PRAYBlock.write(blocks, new PRAYCodec(PRAYCodec.LEVEL_DEFAULT, PRAYCodec.Strategy.normal));
+		Files.write(Fixtures.file(Fixtures.CREATURE_WARP).toPath(), file);
+		System.out.println("Wrote " + Fixtures.CREATURE_WARP + " (" + file.length + " bytes)");
+	}
+
+	/**
+	 * Somewhat compressible data, roughly like creature data.
+	 */
+	static byte[] creatureLikeData(Random r, int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (r.nextInt(16) == 0 ? r.nextInt() : (i & 0x1F));
+		return data;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.openjdk.jmh.annotations.*;
+
+import cdsp.common.data.pray.PRAYCodec;
+
+/**
+ * Compressing and decompressing PRAY block data: per-block zlib streams (the old way) vs. PRAYCodec.
+ * Run with "-prof gc" for allocation numbers.
+ * The data is somewhat compressible, roughly like creature data.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PRAYCodecBenchmark {
+	@State(Scope.Thread)
+	public static class Block {
+		@Param({"512", "65536"})
+		public int size;
+
+		public byte[] data;
+		public byte[] compressed;
+		public PRAYCodec codecDefault = new PRAYCodec(PRAYCodec.LEVEL_DEFAULT, PRAYCodec.Strategy.normal);
+		public PRAYCodec codecFast = new PRAYCodec(PRAYCodec.LEVEL_FAST, PRAYCodec.Strategy.normal);
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Random r = new Random(1234);
+			data = new byte[size];
+			for (int i = 0; i < size; i++)
+				data[i] = (byte) (r.nextInt(16) == 0 ? r.nextInt() : (i & 0x1F));
+			compressed = codecDefault.deflate(data, 0, data.length);
+		}
+	}
+
+	@Benchmark
+	public byte[] deflateStream(Block b) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DeflaterOutputStream dos = new DeflaterOutputStream(baos);
+		dos.write(b.data);
+		dos.close();
+		return baos.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] deflateCodec(Block b) {
+		return b.codecDefault.deflate(b.data, 0, b.data.length);
+	}
+
+	@Benchmark
+	public byte[] deflateCodecFast(Block b) {
+		return b.codecFast.deflate(b.data, 0, b.data.length);
+	}
+
+	@Benchmark
+	public byte[] inflateStream(Block b) throws IOException {
+		byte[] res = new byte[b.size];
+		InflaterInputStream iis = new InflaterInputStream(new ByteArrayInputStream(b.compressed));
+		int pos = 0;
+		while (pos < res.length) {
+			int am = iis.read(res, pos, res.length - pos);
+			if (am <= 0)
+				throw new IOException("Ran out of data early");
+			pos += am;
+		}
+		return res;
+	}
+
+	@Benchmark
+	public byte[] inflateCodec(Block b) {
+		return PRAYCodec.inflate(b.compressed, 0, b.compressed.length, b.size);
+	}
+}
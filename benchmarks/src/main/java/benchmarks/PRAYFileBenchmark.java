@@ -0,0 +1,73 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.PRAYBlock;
+import cdsp.common.data.pray.PRAYCodec;
+import natsue.data.babel.PacketReader;
+
+/**
+ * Reading and writing whole PRAY files (the creature.warp fixture).
+ * Reading only parses headers until a block's data is asked for; writing blocks as they were read skips recompression.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PRAYFileBenchmark {
+	public static final int MAX_SIZE = 0x1000000;
+
+	@State(Scope.Thread)
+	public static class File {
+		public byte[] data;
+		public LinkedList<PRAYBlock> decoded;
+		public PRAYCodec codec = new PRAYCodec(PRAYCodec.LEVEL_DEFAULT, PRAYCodec.Strategy.normal);
+
+		@Setup(Level.Trial)
+		public void setup() {
+			data = Fixtures.read(Fixtures.CREATURE_WARP);
+			decoded = PRAYBlock.read(IOUtils.wrapLE(data), MAX_SIZE, PacketReader.CHARSET);
+			for (PRAYBlock pb : decoded)
+				pb.getData();
+		}
+	}
+
+	@Benchmark
+	public LinkedList<PRAYBlock> readHeaders(File f) {
+		return PRAYBlock.read(IOUtils.wrapLE(f.data), MAX_SIZE, PacketReader.CHARSET);
+	}
+
+	@Benchmark
+	public void readAndDecode(File f, Blackhole bh) {
+		for (PRAYBlock pb : PRAYBlock.read(IOUtils.wrapLE(f.data), MAX_SIZE, PacketReader.CHARSET))
+			bh.consume(pb.getData());
+	}
+
+	@Benchmark
+	public byte[] writeAsRead(File f) {
+		return PRAYBlock.write(PRAYBlock.read(IOUtils.wrapLE(f.data), MAX_SIZE, PacketReader.CHARSET), f.codec);
+	}
+
+	@Benchmark
+	public byte[] writeCompressed(File f) {
+		return PRAYBlock.write(f.decoded, f.codec);
+	}
+
+	@Benchmark
+	public byte[] writeUncompressed(File f) {
+		return PRAYBlock.write(f.decoded, (PRAYCodec) null);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import rals.code.OuterCompileContext;
+import rals.code.Scripts;
+import rals.debug.DummyDebugRecorder;
+import rals.diag.SrcPosFile;
+import rals.hcm.DummyHCMRecorder;
+import rals.parser.IDocPath;
+import rals.parser.IncludeParseContext;
+import rals.parser.Parser;
+
+/**
+ * Full RAL compiles (lexing, parsing, resolving and code generation) of the bundled samples, standard library included.
+ * The standard library and samples are read into memory first, so the disk isn't being measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RALCompileBenchmark {
+	@State(Scope.Thread)
+	public static class Sources {
+		@Param({"talking-lemon-finished.ral", "vending-machine-root-final.ral", "tint-test-card.ral", "list-eame-game.ral"})
+		public String sample;
+
+		public HashMap<String, byte[]> files = new HashMap<>();
+		public MemDocPath stdlib, root;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			load("include", Fixtures.file(Fixtures.RAL_INCLUDE));
+			load("samples", Fixtures.file(Fixtures.RAL_SAMPLES));
+			stdlib = new MemDocPath(files, "include");
+			root = new MemDocPath(files, "samples/" + sample);
+			if (!root.isFile())
+				throw new RuntimeException("No such sample: " + sample);
+		}
+
+		private void load(String prefix, File dir) throws IOException {
+			Path base = dir.toPath();
+			ArrayList<Path> paths = new ArrayList<>();
+			try (Stream<Path> walk = Files.walk(base)) {
+				walk.filter(Files::isRegularFile).forEach(paths::add);
+			}
+			for (Path p : paths)
+				files.put(prefix + "/" + base.relativize(p).toString().replace(File.separatorChar, '/'), Files.readAllBytes(p));
+		}
+	}
+
+	/**
+	 * Parses the sample, as Parser.run does.
+	 */
+	static IncludeParseContext parse(Sources s) throws IOException {
+		IncludeParseContext ic = new IncludeParseContext(new DummyHCMRecorder(), false);
+		ic.searchPaths.add(s.stdlib);
+		Parser.findParseFile(ic, null, "std/compiler_helpers.ral");
+		Parser.parseFileAt(ic, new SrcPosFile(null, s.root, s.sample));
+		return ic;
+	}
+
+	@Benchmark
+	public IncludeParseContext parseOnly(Sources s) throws IOException {
+		IncludeParseContext ic = parse(s);
+		ic.diags.unwrap();
+		return ic;
+	}
+
+	@Benchmark
+	public String compile(Sources s) throws IOException {
+		IncludeParseContext ic = parse(s);
+		Scripts resolvedCode = ic.module.resolve(ic.diags, ic.hcm);
+		StringBuilder outText = new StringBuilder();
+		resolvedCode.compile(new OuterCompileContext(outText, new DummyDebugRecorder()));
+		ic.diags.unwrap();
+		return outText.toString();
+	}
+
+	/**
+	 * Files held in memory, by path ("/"-separated, relative to nothing in particular).
+	 */
+	public static final class MemDocPath implements IDocPath {
+		private final HashMap<String, byte[]> files;
+		public final String path;
+
+		public MemDocPath(HashMap<String, byte[]> files, String path) {
+			this.files = files;
+			this.path = path;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof MemDocPath)
+				return ((MemDocPath) obj).path.equals(path);
+			return false;
+		}
+
+		@Override
+		public Reader open() throws IOException {
+			return new InputStreamReader(new ByteArrayInputStream(readAllBytes()), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public byte[] readAllBytes() throws IOException {
+			byte[] data = files.get(path);
+			if (data == null)
+				throw new IOException("Not a file: " + path);
+			return data;
+		}
+
+		@Override
+		public IDocPath getRelative(String relPath) {
+			ArrayList<String> parts = new ArrayList<>();
+			for (String s : (path + "/" + relPath).split("/")) {
+				if (s.isEmpty() || s.equals(".")) {
+					continue;
+				} else if (s.equals("..")) {
+					if (parts.isEmpty())
+						return null;
+					parts.remove(parts.size() - 1);
+				} else {
+					parts.add(s);
+				}
+			}
+			return new MemDocPath(files, String.join("/", parts));
+		}
+
+		@Override
+		public boolean isFile() {
+			return files.containsKey(path);
+		}
+
+		@Override
+		public String getRootShortName() {
+			return path.substring(path.lastIndexOf('/') + 1);
+		}
+
+		@Override
+		public String toString() {
+			return path;
+		}
+
+		@Override
+		public String toLSPURI() {
+			return null;
+		}
+	}
+}
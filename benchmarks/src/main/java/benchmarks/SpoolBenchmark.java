@@ -0,0 +1,122 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.PRAYBlock;
+import natsue.config.ConfigDB;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.pm.PackedMessagePRAY;
+import natsue.data.hli.StandardMessages;
+import natsue.log.ILogProvider;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.NatsueDBUserInfo;
+import natsue.server.database.jdbc.JDBCNatsueDatabase;
+import natsue.server.database.mem.MemNatsueDatabase;
+import natsue.server.database.spool.SpoolLog;
+import natsue.server.database.spool.SpoolLogNatsueDatabase;
+
+/**
+ * Spooling messages for an offline user and then delivering them (reading and deleting them), as a login would.
+ * sqlite is the default setup (a fresh SQLite database in a temporary directory),
+ * sqliteSpoolLog the same with the spool log in front, and memory the in-memory database for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpoolBenchmark {
+	public static final int USERS = 64;
+	public static final int BATCH = 4;
+
+	@State(Scope.Thread)
+	public static class Database {
+		@Param({"sqlite", "sqliteSpoolLog", "memory"})
+		public String backend;
+
+		@Param({"chat", "warp"})
+		public String message;
+
+		public INatsueDatabase db;
+		public byte[] data;
+		public int nextUser;
+		private SpoolLog spoolLog;
+		private File dir;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			ILogProvider log = HubContentionBenchmark.quietLog();
+			dir = Files.createTempDirectory("natsue-spool-bench").toFile();
+			ConfigDB config = new ConfigDB();
+			config.dbConnection.setValueFromString("jdbc:sqlite:" + new File(dir, "natsue.db").getPath());
+			config.spoolLogDir.setValueFromString(new File(dir, "spool").getPath());
+			if (backend.equals("memory")) {
+				db = new MemNatsueDatabase(log, config);
+			} else {
+				db = new JDBCNatsueDatabase(log, config);
+				if (backend.equals("sqliteSpoolLog")) {
+					spoolLog = SpoolLog.open(config, log);
+					db = new SpoolLogNatsueDatabase(db, spoolLog, log);
+				}
+			}
+			// (The last user is the sender.)
+			for (int i = 1; i <= USERS + 1; i++)
+				if (!db.tryCreateUser(new NatsueDBUserInfo(i, "Bench" + i, "bench" + i, "hash", 0, 1000, 0)))
+					throw new RuntimeException("couldn't create user " + i);
+			long sender = UINUtils.ofRegularUser(USERS + 1);
+			if (message.equals("chat")) {
+				data = StandardMessages.chatMessage(sender, "Bench", "bench-chat", "Hello there! How's the weather in your world?").toByteArray(false);
+			} else {
+				byte[] file = Fixtures.read(Fixtures.CREATURE_WARP);
+				data = new PackedMessagePRAY(sender, PRAYBlock.read(IOUtils.wrapLE(file), new ConfigMessages().maxDecompressedPRAYSize.getValue(), PacketReader.CHARSET)).toByteArray(true);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			if (spoolLog != null)
+				spoolLog.close();
+			try (Stream<Path> files = Files.walk(dir.toPath())) {
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void roundTrip(Database d) {
+		int uid = (d.nextUser++ % USERS) + 1;
+		for (int i = 0; i < BATCH; i++)
+			if (!d.db.spoolMessage(uid, USERS + 1, d.data))
+				throw new RuntimeException("spool failed");
+		LinkedList<NatsueDBSpooledMessage> spooled = d.db.getSpooledMessages(uid, BATCH * 2);
+		if (spooled == null || spooled.size() != BATCH)
+			throw new RuntimeException("spooled messages went missing");
+		long[] ids = new long[spooled.size()];
+		int idx = 0;
+		for (NatsueDBSpooledMessage msg : spooled)
+			ids[idx++] = msg.id;
+		if (!d.db.deleteSpooledMessages(uid, ids))
+			throw new RuntimeException("delete failed");
+	}
+}
@@ -76,7 +76,7 @@ public class DoWhatIMeanLoader {
 			String expectedName = ExportedCreatures.monikerFromRootBlock(root) + "." + root.getType() + ".genetics";
 			for (PRAYBlock pb : blocks)
 				if (pb.getType().equals("GENE") && pb.getName().equals(expectedName))
-					return GenUtils.readGenome(pb.data);
+					return GenUtils.readGenome(pb.getData());
 			throw new RuntimeException("GENE chunk '" + expectedName + "' is missing.");
 		} else {
 			return GenUtils.readGenome(f);
@@ -27,7 +27,7 @@ public class ExportedCreatures {
 		try {
 			// charset here doesn't matter so much
 			PRAYTags pt = new PRAYTags(W1252Fixed.INSTANCE);
-			pt.read(creatureRoot.data);
+			pt.read(creatureRoot.getData());
 			int reG = pt.intMap.get("Genus");
 			if (reG < 1 || reG > 4)
 				return "Invalid creature genus";
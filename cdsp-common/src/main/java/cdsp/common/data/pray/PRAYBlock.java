@@ -7,15 +7,11 @@
 
 package cdsp.common.data.pray;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import cdsp.common.data.IOUtils;
 
@@ -45,9 +41,27 @@ public class PRAYBlock {
 	public final byte[] name = new byte[128];
 
 	/**
-	 * Data as bytes.
+	 * Data as bytes, or null if it hasn't been decoded from the source yet.
 	 */
-	public byte[] data;
+	private byte[] data;
+
+	/**
+	 * Where data comes from if it hasn't been decoded yet (or null if it was set directly).
+	 * The source array is never modified.
+	 */
+	private byte[] srcArray;
+	private int srcOffset, srcLength;
+	private boolean srcCompressed;
+
+	/**
+	 * False for blocks fresh from read, until setData is used.
+	 */
+	private boolean dataReplaced = true;
+
+	/**
+	 * Decompressed data size. Known even if data hasn't been decoded.
+	 */
+	private int dataSize;
 
 	/**
 	 * Creates an empty PRAY block.
@@ -63,7 +77,50 @@ public class PRAYBlock {
 		this.charset = charset;
 		setType(string);
 		setName(str2);
-		data = byteArray;
+		setData(byteArray);
+	}
+
+	/**
+	 * Gets the data of this PRAY block, decompressing it if this hasn't happened yet.
+	 * If you modify the returned array in place, be aware anything keeping the original file around won't know.
+	 */
+	public synchronized byte[] getData() {
+		if (data == null && srcArray != null) {
+			byte[] res;
+			if (srcCompressed) {
+				res = PRAYCodec.inflate(srcArray, srcOffset, srcLength, dataSize);
+			} else {
+				res = Arrays.copyOfRange(srcArray, srcOffset, srcOffset + dataSize);
+			}
+			data = res;
+			srcArray = null;
+		}
+		return data;
+	}
+
+	/**
+	 * Replaces the data of this PRAY block.
+	 */
+	public synchronized void setData(byte[] d) {
+		data = d;
+		dataSize = d.length;
+		srcArray = null;
+		dataReplaced = true;
+	}
+
+	/**
+	 * Gets the decompressed size of the data (without decompressing it).
+	 */
+	public synchronized int getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * Returns true if the data hasn't been replaced with setData since the block was read.
+	 * (Decoding it doesn't count.)
+	 */
+	public synchronized boolean isDataAsRead() {
+		return !dataReplaced;
 	}
 
 	/**
@@ -98,8 +155,19 @@ public class PRAYBlock {
 	/**
 	 * Copies this PRAY block.
 	 */
-	public PRAYBlock copy() {
-		return new PRAYBlock(getType(), getName(), data.clone(), charset);
+	public synchronized PRAYBlock copy() {
+		if (data != null)
+			return new PRAYBlock(getType(), getName(), data.clone(), charset);
+		// Not decoded yet, so share the source.
+		PRAYBlock res = new PRAYBlock(charset);
+		res.setType(getType());
+		res.setName(getName());
+		res.srcArray = srcArray;
+		res.srcOffset = srcOffset;
+		res.srcLength = srcLength;
+		res.srcCompressed = srcCompressed;
+		res.dataSize = dataSize;
+		return res;
 	}
 
 	/**
@@ -114,6 +182,8 @@ public class PRAYBlock {
 
 	/**
 	 * Reads a PRAY file into a list of PRAY blocks.
+	 * Block data is decoded on demand from the buffer's array, so don't modify it afterwards.
+	 * The sizes in the block headers are checked against maxDecompressedSize up-front.
 	 */
 	public static LinkedList<PRAYBlock> read(ByteBuffer dataSlice, int maxDecompressedSize, Charset charset) {
 		if (dataSlice.get() != (byte) 'P')
@@ -129,13 +199,13 @@ public class PRAYBlock {
 		while (dataSlice.position() != dataSlice.limit()) {
 			PRAYBlock pb = readOne(dataSlice, remaining, maxDecompressedSize, charset);
 			blocks.add(pb);
-			remaining -= pb.data.length;
+			remaining -= pb.dataSize;
 		}
 		return blocks;
 	}
 
 	/**
-	 * Reads a PRAY block from a ByteBuffer.
+	 * Reads a PRAY block header from a ByteBuffer, and skips the data (see read).
 	 */
 	public static PRAYBlock readOne(ByteBuffer dataSlice, int maxBlockSize, int maxTotalSize, Charset charset) {
 		PRAYBlock block = new PRAYBlock(charset);
@@ -149,64 +219,60 @@ public class PRAYBlock {
 		if (decompressedDataSize > maxBlockSize)
 			throw new RuntimeException("Too much data in PRAY block: DC:" + decompressedDataSize + ", MS:"
 					+ maxBlockSize + ", MT:" + maxTotalSize);
+		if (decompressedDataSize < 0)
+			throw new RuntimeException("Negative PRAY block size");
 
-		block.data = new byte[decompressedDataSize];
-
-		if ((flags & 1) != 0) {
-			ByteArrayInputStream bais = new ByteArrayInputStream(dataSlice.array(),
-					dataSlice.arrayOffset() + dataSlice.position(), compressedDataSize);
-			InflaterInputStream iis = new InflaterInputStream(bais);
-			try {
-				int pos = 0;
-				while (pos < decompressedDataSize) {
-					int am = iis.read(block.data, pos, decompressedDataSize - pos);
-					if (am <= 0)
-						throw new RuntimeException("Ran out of data early");
-					pos += am;
-				}
-			} catch (IOException ioe) {
-				throw new RuntimeException(ioe);
-			}
-			// definitely read it normally honest
-			dataSlice.position(dataSlice.position() + compressedDataSize);
-		} else {
-			dataSlice.get(block.data);
-		}
+		block.srcCompressed = (flags & 1) != 0;
+		// uncompressed blocks are read by their decompressed size
+		block.srcLength = block.srcCompressed ? compressedDataSize : decompressedDataSize;
+		if (block.srcLength < 0 || block.srcLength > dataSlice.remaining())
+			throw new RuntimeException("PRAY block data runs off the end of the file");
+		block.srcArray = dataSlice.array();
+		block.srcOffset = dataSlice.arrayOffset() + dataSlice.position();
+		block.dataSize = decompressedDataSize;
+		block.dataReplaced = false;
+		dataSlice.position(dataSlice.position() + block.srcLength);
 		return block;
 	}
 
-	private static PRAYBlockPrepared prepareBlock(PRAYBlock pb, boolean compress) {
-		byte[] dataMod = pb.data;
-		if (compress) {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			try {
-				DeflaterOutputStream dos = new DeflaterOutputStream(baos);
-				dos.write(pb.data);
-				dos.close();
-			} catch (IOException ioe) {
-				throw new RuntimeException(ioe);
+	private static PRAYBlockPrepared prepareBlock(PRAYBlock pb, PRAYCodec codec) {
+		boolean compress = codec != null;
+		synchronized (pb) {
+			// If it's still in the form we want, don't decode it just to encode it again.
+			if (pb.data == null && pb.srcArray != null && pb.srcCompressed == compress) {
+				return new PRAYBlockPrepared(pb, pb.dataSize, compress, pb.srcArray, pb.srcOffset, pb.srcLength);
 			}
-			dataMod = baos.toByteArray();
-			return new PRAYBlockPrepared(pb, pb.data.length, true, dataMod);
+		}
+		byte[] data = pb.getData();
+		if (compress) {
+			byte[] dataMod = codec.deflate(data, 0, data.length);
+			return new PRAYBlockPrepared(pb, data.length, true, dataMod, 0, dataMod.length);
 		} else {
-			return new PRAYBlockPrepared(pb, pb.data.length, false, pb.data);
+			return new PRAYBlockPrepared(pb, data.length, false, data, 0, data.length);
 		}
 	}
 
 	/**
-	 * Writes a PRAY file to a byte array.
+	 * Writes a PRAY file to a byte array, compressing with the default codec if asked.
 	 */
 	public static byte[] write(Iterable<PRAYBlock> blocks, boolean compressPRAYChunks) {
+		return write(blocks, compressPRAYChunks ? PRAYCodec.getDefault() : null);
+	}
+
+	/**
+	 * Writes a PRAY file to a byte array. If codec is null, blocks are not compressed.
+	 */
+	public static byte[] write(Iterable<PRAYBlock> blocks, PRAYCodec codec) {
 		int totalLen = 4;
 		int blockCount = 0;
 		for (Iterator<PRAYBlock> iterator = blocks.iterator(); iterator.hasNext(); iterator.next())
 			blockCount++;
 		if (blockCount == 1)
-			return writeFileWithOneBlock(blocks.iterator().next(), compressPRAYChunks);
+			return writeFileWithOneBlock(blocks.iterator().next(), codec);
 		PRAYBlockPrepared[] preparedBlocks = new PRAYBlockPrepared[blockCount];
 		int blockIndex = 0;
 		for (PRAYBlock pb : blocks) {
-			PRAYBlockPrepared pbp = prepareBlock(pb, compressPRAYChunks);
+			PRAYBlockPrepared pbp = prepareBlock(pb, codec);
 			preparedBlocks[blockIndex++] = pbp;
 			totalLen += pbp.calcSize();
 		}
@@ -225,7 +291,14 @@ public class PRAYBlock {
 	 * GC/RAM-wise)
 	 */
 	public static byte[] writeFileWithOneBlock(PRAYBlock pb, boolean compressPRAYChunks) {
-		PRAYBlockPrepared pbp = prepareBlock(pb, compressPRAYChunks);
+		return writeFileWithOneBlock(pb, compressPRAYChunks ? PRAYCodec.getDefault() : null);
+	}
+
+	/**
+	 * Writes a PRAY file with one block to a byte array. If codec is null, the block is not compressed.
+	 */
+	public static byte[] writeFileWithOneBlock(PRAYBlock pb, PRAYCodec codec) {
+		PRAYBlockPrepared pbp = prepareBlock(pb, codec);
 		int totalLen = 4 + pbp.calcSize();
 		ByteBuffer total = IOUtils.newBuffer(totalLen);
 		total.put((byte) 'P');
@@ -242,26 +315,29 @@ public class PRAYBlock {
 		final int fullSize;
 		final boolean compressed;
 		final byte[] data;
+		final int dataOfs, dataLen;
 
-		private PRAYBlockPrepared(PRAYBlock base, int fs, boolean c, byte[] d) {
+		private PRAYBlockPrepared(PRAYBlock base, int fs, boolean c, byte[] d, int dOfs, int dLen) {
 			type = base.type;
 			name = base.name;
 			fullSize = fs;
 			compressed = c;
 			data = d;
+			dataOfs = dOfs;
+			dataLen = dLen;
 		}
 
 		private void put(ByteBuffer total) {
 			total.put(type);
 			total.put(name);
-			total.putInt(data.length);
+			total.putInt(dataLen);
 			total.putInt(fullSize);
 			total.putInt(compressed ? 1 : 0);
-			total.put(data);
+			total.put(data, dataOfs, dataLen);
 		}
 
 		public int calcSize() {
-			return 16 + 128 + data.length;
+			return 16 + 128 + dataLen;
 		}
 	}
 }
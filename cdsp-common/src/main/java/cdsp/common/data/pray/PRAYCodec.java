@@ -0,0 +1,138 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package cdsp.common.data.pray;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * PRAY block compression.
+ * Deflaters/Inflaters are reused from small shared pools, rather than allocating (and leaving to the finalizer) a zlib context per block.
+ * The pools are bounded, so anything over goes straight to end() rather than being held by an idle thread.
+ */
+public final class PRAYCodec {
+	/**
+	 * zlib's default level (6).
+	 */
+	public static final int LEVEL_DEFAULT = Deflater.DEFAULT_COMPRESSION;
+	/**
+	 * For when throughput matters more than size.
+	 */
+	public static final int LEVEL_FAST = Deflater.BEST_SPEED;
+
+	private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+	// Deflate output goes to a scratch buffer first, as the final size isn't known.
+	// Only buffers of this size are pooled; bigger outputs get a one-off buffer.
+	private static final int SCRATCH_SIZE = 0x10000;
+
+	private static final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final ArrayBlockingQueue<byte[]> scratchBuffers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	private static volatile PRAYCodec defaultCodec = new PRAYCodec(LEVEL_DEFAULT, Strategy.normal);
+
+	public final int level;
+	public final Strategy strategy;
+
+	public PRAYCodec(int level, Strategy strategy) {
+		if (level != LEVEL_DEFAULT && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		this.level = level;
+		this.strategy = strategy;
+	}
+
+	/**
+	 * The codec used when writing PRAY files without specifying one.
+	 */
+	public static PRAYCodec getDefault() {
+		return defaultCodec;
+	}
+
+	public static void setDefault(PRAYCodec codec) {
+		defaultCodec = codec;
+	}
+
+	/**
+	 * Compresses data (zlib format, as PRAY uses).
+	 */
+	public byte[] deflate(byte[] data, int ofs, int len) {
+		Deflater def = deflaters.poll();
+		if (def == null)
+			def = new Deflater();
+		// zlib's worst case is a little over the input size
+		int bound = len + (len >> 12) + (len >> 14) + (len >> 25) + 64;
+		byte[] out = null;
+		if (bound <= SCRATCH_SIZE)
+			out = scratchBuffers.poll();
+		if (out == null)
+			out = new byte[Math.max(bound, SCRATCH_SIZE)];
+		try {
+			def.setLevel(level);
+			def.setStrategy(strategy.value);
+			def.setInput(data, ofs, len);
+			def.finish();
+			int pos = 0;
+			while (!def.finished()) {
+				if (pos == out.length)
+					out = Arrays.copyOf(out, out.length * 2);
+				pos += def.deflate(out, pos, out.length - pos);
+			}
+			return Arrays.copyOf(out, pos);
+		} finally {
+			def.reset();
+			if (!deflaters.offer(def))
+				def.end();
+			if (out.length == SCRATCH_SIZE)
+				scratchBuffers.offer(out);
+		}
+	}
+
+	/**
+	 * Decompresses data that is expected to decompress to exactly the given size (any more is ignored).
+	 */
+	public static byte[] inflate(byte[] src, int ofs, int len, int size) {
+		byte[] res = new byte[size];
+		Inflater inf = inflaters.poll();
+		if (inf == null)
+			inf = new Inflater();
+		try {
+			inf.setInput(src, ofs, len);
+			int pos = 0;
+			while (pos < size) {
+				int am = inf.inflate(res, pos, size - pos);
+				if (am == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary()))
+					throw new RuntimeException("Ran out of data early");
+				pos += am;
+			}
+		} catch (DataFormatException dfe) {
+			throw new RuntimeException(dfe);
+		} finally {
+			inf.reset();
+			if (!inflaters.offer(inf))
+				inf.end();
+		}
+		return res;
+	}
+
+	public enum Strategy {
+		normal(Deflater.DEFAULT_STRATEGY),
+		// Better for data that's mostly small values with some noise (i.e. images)
+		filtered(Deflater.FILTERED),
+		// Fastest, but only does Huffman coding
+		huffmanOnly(Deflater.HUFFMAN_ONLY);
+
+		public final int value;
+
+		Strategy(int v) {
+			value = v;
+		}
+	}
+}
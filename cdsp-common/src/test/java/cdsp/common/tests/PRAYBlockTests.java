@@ -0,0 +1,219 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package cdsp.common.tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.PRAYBlock;
+import cdsp.common.data.pray.PRAYCodec;
+
+public class PRAYBlockTests {
+	private static final Charset CS = StandardCharsets.ISO_8859_1;
+	private static final int LIMIT = 0x100000;
+	// Offsets into a file with the first block at the start (after the magic).
+	private static final int COMPRESSED_SIZE = 4 + 132;
+	private static final int DECOMPRESSED_SIZE = 4 + 136;
+	private static final int FIRST_DATA = 4 + 144;
+
+	private static LinkedList<PRAYBlock> blocks() {
+		byte[] text = new byte[5000];
+		for (int i = 0; i < text.length; i++)
+			text[i] = (byte) ('a' + (i % 7));
+		LinkedList<PRAYBlock> res = new LinkedList<>();
+		res.add(new PRAYBlock("MESG", "first", text, CS));
+		res.add(new PRAYBlock("warp", "empty", new byte[0], CS));
+		res.add(new PRAYBlock("MESG", "third", new byte[] {1, 2, 3}, CS));
+		return res;
+	}
+
+	private static LinkedList<PRAYBlock> read(byte[] file) {
+		return PRAYBlock.read(IOUtils.wrapLE(file), LIMIT, CS);
+	}
+
+	private static void assertSameBlocks(LinkedList<PRAYBlock> expected, LinkedList<PRAYBlock> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			PRAYBlock e = expected.get(i);
+			PRAYBlock a = actual.get(i);
+			assertEquals(e.getType(), a.getType());
+			assertEquals(e.getName(), a.getName());
+			assertEquals(e.getDataSize(), a.getDataSize());
+			assertArrayEquals(e.getData(), a.getData());
+		}
+	}
+
+	@Test
+	public void testRoundTrip() {
+		LinkedList<PRAYBlock> orig = blocks();
+		for (boolean inCompressed : new boolean[] {false, true}) {
+			byte[] file = PRAYBlock.write(orig, inCompressed);
+			for (boolean outCompressed : new boolean[] {false, true}) {
+				// Undecoded blocks: same compression reuses the raw bytes.
+				byte[] out = PRAYBlock.write(read(file), outCompressed);
+				if (inCompressed == outCompressed)
+					assertArrayEquals(file, out);
+				assertSameBlocks(orig, read(out));
+				// The codec form of write should agree with the boolean one.
+				assertArrayEquals(out, PRAYBlock.write(read(file), outCompressed ? PRAYCodec.getDefault() : null));
+				// Decoded blocks have to be encoded again, but should come out the same.
+				LinkedList<PRAYBlock> decoded = read(file);
+				for (PRAYBlock pb : decoded)
+					pb.getData();
+				assertArrayEquals(out, PRAYBlock.write(decoded, outCompressed));
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTripOneBlock() {
+		PRAYBlock orig = blocks().getFirst();
+		for (boolean inCompressed : new boolean[] {false, true}) {
+			byte[] file = PRAYBlock.writeFileWithOneBlock(orig, inCompressed);
+			for (boolean outCompressed : new boolean[] {false, true}) {
+				byte[] out = PRAYBlock.writeFileWithOneBlock(read(file).getFirst(), outCompressed);
+				if (inCompressed == outCompressed)
+					assertArrayEquals(file, out);
+				assertArrayEquals(out, PRAYBlock.writeFileWithOneBlock(read(file).getFirst(),
+						outCompressed ? PRAYCodec.getDefault() : null));
+				PRAYBlock back = read(out).getFirst();
+				assertEquals(orig.getType(), back.getType());
+				assertEquals(orig.getName(), back.getName());
+				assertArrayEquals(orig.getData(), back.getData());
+			}
+		}
+	}
+
+	@Test
+	public void testReadWithOffset() {
+		// The buffer may be a slice of a bigger array (i.e. a packed message).
+		byte[] file = PRAYBlock.write(blocks(), true);
+		byte[] padded = new byte[file.length + 20];
+		System.arraycopy(file, 0, padded, 10, file.length);
+		ByteBuffer bb = IOUtils.wrapLE(padded);
+		bb.position(10);
+		bb.limit(10 + file.length);
+		LinkedList<PRAYBlock> res = PRAYBlock.read(bb.slice().order(bb.order()), LIMIT, CS);
+		assertSameBlocks(blocks(), res);
+		assertArrayEquals(file, PRAYBlock.write(read(file), true));
+	}
+
+	@Test
+	public void testDataAsRead() {
+		PRAYBlock made = new PRAYBlock("MESG", "test", new byte[] {1}, CS);
+		assertFalse(made.isDataAsRead());
+		byte[] file = PRAYBlock.write(blocks(), true);
+		PRAYBlock pb = read(file).getFirst();
+		assertTrue(pb.isDataAsRead());
+		assertEquals(5000, pb.getDataSize());
+		// Decoding doesn't count as a change.
+		pb.getData();
+		assertTrue(pb.isDataAsRead());
+		pb.setData(new byte[] {4, 5});
+		assertFalse(pb.isDataAsRead());
+		assertEquals(2, pb.getDataSize());
+		assertArrayEquals(new byte[] {4, 5}, pb.getData());
+		// And the new data is what gets written, not the original bytes.
+		LinkedList<PRAYBlock> list = new LinkedList<>();
+		list.add(pb);
+		assertArrayEquals(new byte[] {4, 5}, read(PRAYBlock.write(list, true)).getFirst().getData());
+	}
+
+	@Test
+	public void testCopy() {
+		byte[] file = PRAYBlock.write(blocks(), true);
+		byte[] fileCopy = file.clone();
+		LinkedList<PRAYBlock> src = read(file);
+		LinkedList<PRAYBlock> copies = PRAYBlock.copyList(src);
+		assertSameBlocks(blocks(), copies);
+		// Changing a copy leaves the original (and the array it came from) alone.
+		copies.getFirst().setData(new byte[] {9});
+		assertSameBlocks(blocks(), src);
+		assertArrayEquals(fileCopy, file);
+		// Copies of decoded blocks don't share the data array.
+		PRAYBlock decoded = src.getFirst();
+		PRAYBlock copy = decoded.copy();
+		copy.getData()[0] = 0;
+		assertEquals('a', decoded.getData()[0]);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testTruncated() {
+		byte[] file = PRAYBlock.write(blocks(), true);
+		read(Arrays.copyOf(file, file.length - 1));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testTruncatedUncompressed() {
+		byte[] file = PRAYBlock.write(blocks(), false);
+		read(Arrays.copyOf(file, file.length - 1));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testCompressedSizePastEnd() {
+		byte[] file = PRAYBlock.writeFileWithOneBlock(blocks().getFirst(), true);
+		IOUtils.wrapLE(file).putInt(COMPRESSED_SIZE, file.length);
+		read(file);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNegativeSize() {
+		byte[] file = PRAYBlock.writeFileWithOneBlock(blocks().getFirst(), false);
+		IOUtils.wrapLE(file).putInt(DECOMPRESSED_SIZE, -1);
+		read(file);
+	}
+
+	@Test
+	public void testSizeLimit() {
+		byte[] file = PRAYBlock.write(blocks(), true);
+		// Exactly the limit is fine.
+		PRAYBlock.read(IOUtils.wrapLE(file), 5003, CS);
+		// The limit is on the total, and is checked without decompressing anything.
+		try {
+			PRAYBlock.read(IOUtils.wrapLE(file), 5002, CS);
+			fail("Went over the limit");
+		} catch (RuntimeException re) {
+			// Good
+		}
+		// A lying header is caught up-front too.
+		byte[] one = PRAYBlock.writeFileWithOneBlock(blocks().getFirst(), true);
+		IOUtils.wrapLE(one).putInt(DECOMPRESSED_SIZE, LIMIT + 1);
+		try {
+			read(one);
+			fail("Went over the limit");
+		} catch (RuntimeException re) {
+			// Good
+		}
+	}
+
+	@Test
+	public void testCorruptDeflate() {
+		byte[] file = PRAYBlock.writeFileWithOneBlock(blocks().getFirst(), true);
+		for (int i = FIRST_DATA; i < file.length; i++)
+			file[i] = (byte) 0xFF;
+		// Reading only looks at the headers...
+		PRAYBlock pb = read(file).getFirst();
+		assertEquals(5000, pb.getDataSize());
+		// ...and writing it back the same way doesn't need the data decoded.
+		assertArrayEquals(file, PRAYBlock.writeFileWithOneBlock(pb, true));
+		try {
+			pb.getData();
+			fail("Corrupt data decoded");
+		} catch (RuntimeException re) {
+			// Good
+		}
+	}
+}
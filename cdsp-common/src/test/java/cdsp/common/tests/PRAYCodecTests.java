@@ -0,0 +1,72 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package cdsp.common.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cdsp.common.data.pray.PRAYCodec;
+
+public class PRAYCodecTests {
+	private static void roundTrip(PRAYCodec codec, byte[] data) {
+		byte[] compressed = codec.deflate(data, 0, data.length);
+		assertArrayEquals(data, PRAYCodec.inflate(compressed, 0, compressed.length, data.length));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		PRAYCodec codec = new PRAYCodec(PRAYCodec.LEVEL_DEFAULT, PRAYCodec.Strategy.normal);
+		Random r = new Random(1234);
+		// Empty, small, and both sides of the pooled scratch buffer size, compressible and not.
+		for (int size : new int[] {0, 100, 0xFF00, 0x10000, 0x30000}) {
+			byte[] noise = new byte[size];
+			r.nextBytes(noise);
+			roundTrip(codec, noise);
+			byte[] text = new byte[size];
+			for (int i = 0; i < size; i++)
+				text[i] = (byte) ('a' + (i % 7));
+			roundTrip(codec, text);
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		// More threads than the pools hold, so some contexts get thrown away.
+		Thread[] threads = new Thread[Runtime.getRuntime().availableProcessors() * 2 + 2];
+		boolean[] ok = new boolean[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int idx = t;
+			threads[t] = new Thread(() -> {
+				PRAYCodec codec = new PRAYCodec(idx % 10, PRAYCodec.Strategy.values()[idx % 3]);
+				Random r = new Random(idx);
+				for (int i = 0; i < 50; i++) {
+					byte[] data = new byte[r.nextInt(0x20000)];
+					for (int j = 0; j < data.length; j++)
+						data[j] = (byte) r.nextInt(idx + 2);
+					roundTrip(codec, data);
+				}
+				ok[idx] = true;
+			});
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertTrue(ok[t]);
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testTruncated() {
+		byte[] data = new byte[1000];
+		byte[] compressed = PRAYCodec.getDefault().deflate(data, 0, data.length);
+		PRAYCodec.inflate(compressed, 0, compressed.length / 2, data.length);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.nio.ByteBuffer;
+
+import cdsp.common.data.IOUtils;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.ctos.BaseCTOS;
+
+/**
+ * The client's side of the protocol: writing the packets PacketReader reads, and framing the ones PacketWriter writes.
+ */
+public class ClientPackets {
+	// Server to client packet types (first byte).
+	public static final int STOC_RESPONSE = 0x00;
+	public static final int STOC_MESSAGE = 0x09;
+	public static final int STOC_HANDSHAKE_RESPONSE = 0x0A;
+	public static final int STOC_USER_ONLINE = 0x0D;
+	public static final int STOC_USER_OFFLINE = 0x0E;
+	public static final int STOC_VIRTUAL_CONNECT_RESPONSE = 0x14;
+	public static final int STOC_VIRTUAL_CONNECT = 0x1E;
+	public static final int STOC_VIRTUAL_CIRCUIT = 0x1F;
+	public static final int STOC_VIRTUAL_CIRCUIT_CLOSE = 0x20;
+
+	/**
+	 * Extra bytes after the header of a response to C_TID_GET_STATUS.
+	 */
+	public static final int STATUS_RESPONSE_EXTRA = 16;
+
+	private static ByteBuffer header(int type, int extra) {
+		ByteBuffer packet = IOUtils.newBuffer(PacketReader.PACKET_HEADER_SIZE + extra);
+		packet.putInt(BaseCTOS.BASE_FIELD_TYPE, type);
+		return packet;
+	}
+
+	private static ByteBuffer transaction(int type, int ticket, int extra) {
+		ByteBuffer packet = header(type, extra);
+		packet.putInt(BaseCTOS.BASE_FIELD_TICKET, ticket);
+		return packet;
+	}
+
+	private static void putTarget(ByteBuffer packet, long targetUIN) {
+		packet.putInt(BaseCTOS.BASE_FIELD_C, UINUtils.uid(targetUIN));
+		packet.putInt(BaseCTOS.BASE_FIELD_D, UINUtils.hid(targetUIN));
+	}
+
+	public static byte[] writeHandshake(String username, String password) {
+		byte[] user = username.getBytes(PacketReader.CHARSET);
+		byte[] pass = password.getBytes(PacketReader.CHARSET);
+		// Both null-terminated.
+		ByteBuffer packet = header(0x25, 20 + user.length + 1 + pass.length + 1);
+		// No version date, so it's taken for the original client.
+		packet.putInt(44, user.length + 1);
+		packet.putInt(48, pass.length + 1);
+		packet.position(52);
+		packet.put(user);
+		packet.put((byte) 0);
+		packet.put(pass);
+		return packet.array();
+	}
+
+	public static byte[] writeMessage(long targetUIN, byte[] message) {
+		ByteBuffer packet = header(0x09, 8 + message.length);
+		packet.putInt(BaseCTOS.BASE_FIELD_FDLEN, message.length);
+		packet.putInt(32, UINUtils.uid(targetUIN));
+		packet.putInt(36, UINUtils.hid(targetUIN));
+		packet.position(40);
+		packet.put(message);
+		return packet.array();
+	}
+
+	public static byte[] writeGetClientInfo(int ticket, long targetUIN) {
+		ByteBuffer packet = transaction(0x0F, ticket, 0);
+		putTarget(packet, targetUIN);
+		return packet.array();
+	}
+
+	public static byte[] writeWWRAdd(long targetUIN) {
+		ByteBuffer packet = header(0x10, 0);
+		putTarget(packet, targetUIN);
+		return packet.array();
+	}
+
+	public static byte[] writeGetStatus(int ticket) {
+		return transaction(0x18, ticket, 0).array();
+	}
+
+	public static byte[] writeFetchRandomUser(int ticket) {
+		return transaction(0x0221, ticket, 0).array();
+	}
+
+	public static byte[] writeFeedHistory(int ticket, byte[] blob) {
+		ByteBuffer packet = transaction(0x0321, ticket, blob.length);
+		packet.putInt(BaseCTOS.BASE_FIELD_FDLEN, blob.length);
+		packet.position(32);
+		packet.put(blob);
+		return packet.array();
+	}
+
+	/**
+	 * Accepts a virtual connection from the server, which is how it pings (see PingManager).
+	 */
+	public static byte[] writeVirtualConnectAccept(long initiatorUIN, int initiatorVSN, int ourVSN) {
+		ByteBuffer packet = header(0x14, 4);
+		putTarget(packet, initiatorUIN);
+		packet.putInt(BaseCTOS.BASE_FIELD_E, ((initiatorVSN & 0xFFFF) << 16) | (ourVSN & 0xFFFF));
+		packet.putInt(32, 0x0E);
+		return packet.array();
+	}
+
+	/**
+	 * Given a server to client packet's type and FDLEN, how much follows the header.
+	 * Returns -1 for transaction responses (their length depends on the request) and unknown types.
+	 */
+	public static int remainderLength(int type, int fdlen) {
+		switch (type) {
+		case STOC_HANDSHAKE_RESPONSE:
+			return 28;
+		case STOC_MESSAGE:
+		case STOC_USER_ONLINE:
+		case STOC_USER_OFFLINE:
+			return fdlen;
+		case STOC_VIRTUAL_CONNECT_RESPONSE:
+			return 4;
+		case STOC_VIRTUAL_CONNECT:
+			return 12;
+		case STOC_VIRTUAL_CIRCUIT:
+			return 12 + fdlen;
+		case STOC_VIRTUAL_CIRCUIT_CLOSE:
+			return 0;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import natsue.config.BaseConfig;
+
+/**
+ * Load generator configuration (loadgen.txt).
+ */
+public class ConfigLoadgen extends BaseConfig.Group {
+	/**
+	 * Server host
+	 */
+	public final Str host = new Str("host", "127.0.0.1")
+			.describe("Server to connect to.");
+
+	/**
+	 * Server port
+	 */
+	public final Int port = new Int("port", 49152)
+			.describe("Port to connect to.");
+
+	/**
+	 * Simulated clients
+	 */
+	public final Int clients = new Int("clients", 1000)
+			.describe("Amount of simulated clients.\nThe server's quotaIgnoresLoopback should be left on, or the connection quotas will get in the way.");
+
+	/**
+	 * Connection rate
+	 */
+	public final Int connectRate = new Int("connectRate", 200)
+			.describe("Clients to connect per second while ramping up.");
+
+	/**
+	 * Run time
+	 */
+	public final Int duration = new Int("duration", 120)
+			.describe("Seconds to run for (including ramping up), after which a final report is written.");
+
+	/**
+	 * Report interval
+	 */
+	public final Int reportInterval = new Int("reportInterval", 10)
+			.describe("Seconds between progress reports. <= 0 only writes the final report.");
+
+	/**
+	 * Event loops
+	 */
+	public final Int eventLoops = new Int("eventLoops", 2)
+			.describe("Threads handling client connections.");
+
+	/**
+	 * Nickname prefix
+	 */
+	public final Str nicknamePrefix = new Str("nicknamePrefix", "lg")
+			.describe("Simulated clients are called this followed by their number. Accounts are registered on first login, so the server must have allowRegistration on (at least the first time).\nThe result must be a valid nickname for the server (by default lowercase letters, numbers, _ and -, up to 16 long).");
+
+	/**
+	 * Password
+	 */
+	public final Str password = new Str("password", "loadgen")
+			.describe("Password of every simulated client.");
+
+	/**
+	 * Action interval
+	 */
+	public final Int actionInterval = new Int("actionInterval", 5000)
+			.describe("Average milliseconds between actions (picked by the weights below) of each client. Intervals are random (exponentially distributed).");
+
+	/**
+	 * Session time
+	 */
+	public final Int sessionTime = new Int("sessionTime", 0)
+			.describe("Average seconds a client stays online before logging off and reconnecting (exponentially distributed). <= 0 stays on for the whole run.");
+
+	/**
+	 * Reconnect delay
+	 */
+	public final Int reconnectDelay = new Int("reconnectDelay", 5000)
+			.describe("Milliseconds a client waits before reconnecting, after logging off or being disconnected. < 0 doesn't reconnect after a disconnection.");
+
+	/**
+	 * WWR registrations on login
+	 */
+	public final Int wwrOnLogin = new Int("wwrOnLogin", 8)
+			.describe("Online clients each client adds to its WWR when logging in, like a contact list.");
+
+	/**
+	 * Weight of chat
+	 */
+	public final Int weightChat = new Int("weightChat", 50)
+			.describe("Relative weight of sending a chat message to another client.");
+
+	/**
+	 * Weight of warps
+	 */
+	public final Int weightWarp = new Int("weightWarp", 5)
+			.describe("Relative weight of warping a creature to another client.");
+
+	/**
+	 * Weight of random user fetches
+	 */
+	public final Int weightRandomUser = new Int("weightRandomUser", 10)
+			.describe("Relative weight of fetching a random online user (and then their details), as the Warp UI does.");
+
+	/**
+	 * Weight of history uploads
+	 */
+	public final Int weightHistory = new Int("weightHistory", 20)
+			.describe("Relative weight of uploading creature history.");
+
+	/**
+	 * Weight of WWR registrations
+	 */
+	public final Int weightWWR = new Int("weightWWR", 5)
+			.describe("Relative weight of adding another client to the WWR.");
+
+	/**
+	 * Weight of pings
+	 */
+	public final Int weightPing = new Int("weightPing", 10)
+			.describe("Relative weight of a status request, used to time round-trips.");
+
+	/**
+	 * Warp genetics size
+	 */
+	public final Int warpGeneSize = new Int("warpGeneSize", 16384)
+			.describe("Bytes of genetics in a warped creature.");
+
+	/**
+	 * Warp creature size
+	 */
+	public final Int warpCreatureSize = new Int("warpCreatureSize", 196608)
+			.describe("Bytes of creature data in a warped creature. Together with the genetics, this is compressed roughly like the real thing.");
+
+	/**
+	 * History events per upload
+	 */
+	public final Int historyEvents = new Int("historyEvents", 3)
+			.describe("Most life events in one history upload (at least one is sent).");
+}
@@ -0,0 +1,106 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in microseconds, for percentiles.
+ * Buckets are log-linear: every power of two is split into 16, so any value is within about 6% of its bucket's.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	// Enough for any positive long.
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+	public final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	static int bucketOf(long us) {
+		if (us < SUB_COUNT)
+			return (int) Math.max(0, us);
+		int exponent = 63 - Long.numberOfLeadingZeros(us);
+		int sub = (int) (us >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	/**
+	 * Lowest value that goes in the given bucket.
+	 */
+	static long bucketBase(int bucket) {
+		if (bucket < SUB_COUNT)
+			return bucket;
+		int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+		long sub = bucket & (SUB_COUNT - 1);
+		return (SUB_COUNT | sub) << (exponent - SUB_BITS);
+	}
+
+	public void recordNanos(long nanos) {
+		record(nanos / 1000);
+	}
+
+	public void record(long us) {
+		counts.incrementAndGet(bucketOf(us));
+		total.increment();
+		max.accumulateAndGet(us, Math::max);
+	}
+
+	public long getCount() {
+		return total.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Value (in microseconds, rounded down to its bucket) that the given fraction of recorded values are at or below.
+	 * Values being recorded at the same time may or may not be counted.
+	 */
+	public long percentile(double fraction) {
+		long[] snapshot = new long[BUCKETS];
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			sum += snapshot[i];
+		}
+		if (sum == 0)
+			return 0;
+		long target = (long) Math.ceil(sum * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target && snapshot[i] != 0)
+				return Math.min(bucketBase(i), max.get());
+		}
+		return max.get();
+	}
+
+	private static String ms(long us) {
+		return String.format("%.2f", us / 1000d);
+	}
+
+	/**
+	 * One line summary, in milliseconds.
+	 */
+	public String summary() {
+		long count = getCount();
+		if (count == 0)
+			return name + ": none";
+		return name + ": n=" + count + " p50 " + ms(percentile(0.5)) + " p90 " + ms(percentile(0.9)) + " p99 " + ms(percentile(0.99)) + " p99.9 " + ms(percentile(0.999)) + " max " + ms(getMax()) + " ms";
+	}
+}
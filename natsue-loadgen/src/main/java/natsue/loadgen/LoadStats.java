@@ -0,0 +1,68 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything the swarm counts, shared by all clients.
+ */
+public class LoadStats {
+	// Clients
+	public final LongAdder online = new LongAdder();
+	public final LongAdder logins = new LongAdder();
+	public final LongAdder logoffs = new LongAdder();
+
+	// Sent
+	public final LongAdder sentChat = new LongAdder();
+	public final LongAdder sentWarp = new LongAdder();
+	public final LongAdder sentRandomUser = new LongAdder();
+	public final LongAdder sentClientInfo = new LongAdder();
+	public final LongAdder sentHistory = new LongAdder();
+	public final LongAdder sentWWR = new LongAdder();
+	public final LongAdder sentPing = new LongAdder();
+	public final LongAdder sentBytes = new LongAdder();
+
+	// Received
+	public final LongAdder recvChat = new LongAdder();
+	public final LongAdder recvWarp = new LongAdder();
+	public final LongAdder recvOtherMessages = new LongAdder();
+	public final LongAdder recvStaleMessages = new LongAdder();
+	public final LongAdder recvUserLines = new LongAdder();
+	public final LongAdder recvServerPings = new LongAdder();
+	public final LongAdder recvNoRandomUser = new LongAdder();
+	public final LongAdder recvBytes = new LongAdder();
+
+	// Errors
+	public final LongAdder errConnect = new LongAdder();
+	public final LongAdder errLogin = new LongAdder();
+	public final LongAdder errDisconnect = new LongAdder();
+	public final LongAdder errProtocol = new LongAdder();
+	public final LongAdder unanswered = new LongAdder();
+
+	// Latencies
+	public final LatencyHistogram login = new LatencyHistogram("Login");
+	public final LatencyHistogram chatDelivery = new LatencyHistogram("Chat delivery");
+	public final LatencyHistogram warpDelivery = new LatencyHistogram("Warp delivery");
+	public final LatencyHistogram ping = new LatencyHistogram("Ping round-trip");
+	public final LatencyHistogram randomUser = new LatencyHistogram("Random user");
+	public final LatencyHistogram clientInfo = new LatencyHistogram("Client info");
+	public final LatencyHistogram history = new LatencyHistogram("History upload");
+
+	public long sentActions() {
+		return sentChat.sum() + sentWarp.sum() + sentRandomUser.sum() + sentClientInfo.sum() + sentHistory.sum() + sentWWR.sum() + sentPing.sum();
+	}
+
+	public long delivered() {
+		return recvChat.sum() + recvWarp.sum();
+	}
+
+	public long errors() {
+		return errConnect.sum() + errLogin.sum() + errDisconnect.sum() + errProtocol.sum();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.io.File;
+
+import natsue.config.IConfigProvider;
+import natsue.config.NCFConfigProvider;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.log.StdoutLogProvider;
+
+/**
+ * Runs a swarm of simulated clients against a server for a while, then reports.
+ */
+public class Main {
+	public static void main(String[] args) throws Exception {
+		if (args.length > 1)
+			throw new RuntimeException("Natsue Loadgen expects at most one parameter (the config file).");
+
+		ILogProvider ilp = new StdoutLogProvider();
+		ILogSource mySource = ilp.logExtend(Main.class.toString());
+
+		ConfigLoadgen config = new ConfigLoadgen();
+		IConfigProvider configProvider = new NCFConfigProvider(new File(args.length == 1 ? args[0] : "loadgen.txt"));
+		config.visit(configProvider);
+		configProvider.configFinished();
+
+		Swarm swarm = new Swarm(ilp, config);
+		LoadStats stats = swarm.stats;
+		mySource.log("Run " + swarm.payloads.runID + ": " + swarm.getClientCount() + " clients against " + swarm.address + " for " + config.duration.getValue() + "s.");
+		swarm.start();
+
+		long start = System.currentTimeMillis();
+		long end = start + config.duration.getValue() * 1000L;
+		long interval = Math.max(1, config.reportInterval.getValue()) * 1000L;
+		long lastSent = 0, lastDelivered = 0, lastReport = start;
+		while (true) {
+			long now = System.currentTimeMillis();
+			if (now >= end)
+				break;
+			Thread.sleep(Math.min(interval, end - now));
+			now = System.currentTimeMillis();
+			long sent = stats.sentActions();
+			long delivered = stats.delivered();
+			double secs = Math.max(1, now - lastReport) / 1000d;
+			mySource.log(String.format("%ds: online %d/%d, sent %.1f/s, delivered %.1f/s, chat p99 %.2fms, ping p99 %.2fms, errors %d",
+					(now - start) / 1000, stats.online.sum(), swarm.getClientCount(),
+					(sent - lastSent) / secs, (delivered - lastDelivered) / secs,
+					stats.chatDelivery.percentile(0.99) / 1000d, stats.ping.percentile(0.99) / 1000d,
+					stats.errors()));
+			lastSent = sent;
+			lastDelivered = delivered;
+			lastReport = now;
+		}
+
+		mySource.log("Stopping...");
+		swarm.stop(2000);
+		long elapsed = System.currentTimeMillis() - start;
+
+		mySource.log("Clients: " + stats.logins.sum() + " logins, " + stats.logoffs.sum() + " logoffs");
+		mySource.log("Sent: " + stats.sentChat.sum() + " chat, " + stats.sentWarp.sum() + " warp, " + stats.sentRandomUser.sum() + " random user, " + stats.sentClientInfo.sum() + " client info, " + stats.sentHistory.sum() + " history, " + stats.sentWWR.sum() + " WWR, " + stats.sentPing.sum() + " ping; " + stats.sentBytes.sum() + " bytes");
+		mySource.log("Received: " + stats.recvChat.sum() + " chat, " + stats.recvWarp.sum() + " warp, " + stats.recvOtherMessages.sum() + " other, " + stats.recvStaleMessages.sum() + " stale, " + stats.recvUserLines.sum() + " user lines, " + stats.recvServerPings.sum() + " server pings, " + stats.recvNoRandomUser.sum() + " no random user; " + stats.recvBytes.sum() + " bytes");
+		long sentMessages = stats.sentChat.sum() + stats.sentWarp.sum();
+		mySource.log(String.format("Delivered %d of %d messages (%.2f%%), %.1f actions/s", stats.delivered(), sentMessages,
+				sentMessages == 0 ? 100d : (stats.delivered() * 100d) / sentMessages, stats.sentActions() / (elapsed / 1000d)));
+		for (LatencyHistogram hist : new LatencyHistogram[] {stats.login, stats.chatDelivery, stats.warpDelivery, stats.ping, stats.randomUser, stats.clientInfo, stats.history})
+			mySource.log(hist.summary());
+		mySource.log("Errors: " + stats.errConnect.sum() + " connect, " + stats.errLogin.sum() + " login, " + stats.errDisconnect.sum() + " disconnect, " + stats.errProtocol.sum() + " protocol; " + stats.unanswered.sum() + " requests unanswered");
+		System.exit(0);
+	}
+}
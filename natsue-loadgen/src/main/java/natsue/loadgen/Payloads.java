@@ -0,0 +1,209 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Random;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.creaturesarchive.CArcContainer;
+import cdsp.common.data.pray.PRAYBlock;
+import cdsp.common.data.pray.PRAYTags;
+import natsue.data.babel.CreatureHistoryBlob;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessagePRAY;
+import natsue.data.hli.StandardMessages;
+
+/**
+ * Builds the messages and history the simulated clients send, and recognizes their own messages coming back.
+ * Sent messages carry a stamp (the run and the time they were sent), so delivery can be timed.
+ */
+public class Payloads {
+	/**
+	 * Returned by readStamp for messages that aren't from the load generator.
+	 */
+	public static final long NOT_OURS = -1;
+	/**
+	 * Returned by readStamp for messages from some other run (i.e. left spooled).
+	 */
+	public static final long STALE = -2;
+
+	private static final String STAMP_PREFIX = "loadgen ";
+	private static final String WARP_STAMP_TAG = "Loadgen Stamp";
+	private static final char[] MONIKER_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+	public final long runID;
+	// Shared by every warp; the PRAY writer only reads them.
+	private final byte[] genetics, creature, glist;
+
+	public Payloads(ConfigLoadgen config, long runID) {
+		this.runID = runID;
+		Random r = new Random(runID);
+		genetics = creatureLikeData(r, config.warpGeneSize.getValue());
+		creature = creatureLikeData(r, config.warpCreatureSize.getValue());
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (OutputStream os = CArcContainer.wrapOutputStream(baos)) {
+				os.write(creatureLikeData(r, 4096));
+			}
+			glist = baos.toByteArray();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Somewhat compressible data, roughly like creature data.
+	 */
+	private static byte[] creatureLikeData(Random r, int size) {
+		byte[] data = new byte[Math.max(0, size)];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (r.nextInt(16) == 0 ? r.nextInt() : (i & 0x1F));
+		return data;
+	}
+
+	private static String randomComponent(Random r, int len) {
+		char[] res = new char[len];
+		for (int i = 0; i < len; i++)
+			res[i] = MONIKER_CHARS[r.nextInt(MONIKER_CHARS.length)];
+		return new String(res);
+	}
+
+	public static String newMoniker(Random r) {
+		return "001-lgen-" + randomComponent(r, 5) + "-" + randomComponent(r, 5) + "-" + randomComponent(r, 5) + "-" + randomComponent(r, 5);
+	}
+
+	public static String newWorldID(Random r) {
+		return "dock-" + randomComponent(r, 5) + "-" + randomComponent(r, 5) + "-" + randomComponent(r, 5) + "-" + randomComponent(r, 5);
+	}
+
+	public String stamp() {
+		return STAMP_PREFIX + runID + " " + System.nanoTime();
+	}
+
+	/**
+	 * Reads a stamp, returning the System.nanoTime it was made at, NOT_OURS or STALE.
+	 */
+	public long readStamp(String text) {
+		if (text == null || !text.startsWith(STAMP_PREFIX))
+			return NOT_OURS;
+		String[] parts = text.split(" ");
+		try {
+			if (parts.length != 3)
+				return NOT_OURS;
+			if (Long.parseLong(parts[1]) != runID)
+				return STALE;
+			return Long.parseLong(parts[2]);
+		} catch (NumberFormatException ex) {
+			return NOT_OURS;
+		}
+	}
+
+	public byte[] chat(long senderUIN, String nickname, String chatID) {
+		return StandardMessages.chatMessage(senderUIN, nickname, chatID, stamp()).toByteArray(false);
+	}
+
+	/**
+	 * A warped creature, as the game would send it (compressed).
+	 */
+	public byte[] warp(long senderUIN, String moniker, String name, boolean female) {
+		PRAYTags root = new PRAYTags(PacketReader.CHARSET);
+		root.intMap.put("Genus", 1);
+		root.intMap.put("Gender", female ? 2 : 1);
+		root.intMap.put("Variant", 0);
+		root.intMap.put("Creature Age In Ticks", 50000);
+		root.intMap.put("Creature Life Stage", 3);
+		root.intMap.put("Pregnancy Status", 0);
+		root.strMap.put("Creature Name", name);
+		root.strMap.put("Exporter UserID", UINUtils.toString(senderUIN));
+		root.strMap.put(WARP_STAMP_TAG, stamp());
+		LinkedList<PRAYBlock> blocks = new LinkedList<>();
+		blocks.add(new PRAYBlock("warp", moniker + ".warp", root.toByteArray(), PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("GLST", moniker + ".warp.glist.creature", glist, PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("CREA", moniker + ".warp.creature", creature, PacketReader.CHARSET));
+		blocks.add(new PRAYBlock("GENE", moniker + ".warp.genetics", genetics, PacketReader.CHARSET));
+		return new PackedMessagePRAY(senderUIN, blocks).toByteArray(true);
+	}
+
+	/**
+	 * Finds the stamp in a received message (see readStamp).
+	 * Returns chat or warp in kind[0] (or null).
+	 */
+	public long readMessageStamp(PackedMessage message, String[] kind) {
+		kind[0] = null;
+		if (!(message instanceof PackedMessagePRAY))
+			return NOT_OURS;
+		for (PRAYBlock block : ((PackedMessagePRAY) message).messageBlocks) {
+			String type = block.getType();
+			if (type.equals("CHAT") || type.equals("warp")) {
+				PRAYTags tags = new PRAYTags(PacketReader.CHARSET);
+				tags.read(block.getData());
+				kind[0] = type;
+				return readStamp(tags.strMap.get(type.equals("CHAT") ? "Chat Message" : WARP_STAMP_TAG));
+			}
+		}
+		return NOT_OURS;
+	}
+
+	/**
+	 * Creature history upload (see CreatureHistoryBlob), with events firstIndex onwards.
+	 * The first upload of a creature should include its state.
+	 */
+	public static byte[] history(Random r, String moniker, boolean withState, int firstIndex, int count, long senderUIN, String worldName, String worldID, String name) {
+		String userID = UINUtils.toString(senderUIN);
+		int unixTime = (int) (System.currentTimeMillis() / 1000);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		putString(baos, moniker);
+		if (withState) {
+			baos.write(1);
+			putInt(baos, 1 + r.nextInt(2));
+			putInt(baos, CreatureHistoryBlob.GENUS_NORN);
+			putInt(baos, 0);
+			putInt(baos, r.nextInt(8));
+			putInt(baos, r.nextInt(8));
+		} else {
+			baos.write(0);
+		}
+		putInt(baos, count);
+		for (int i = 0; i < count; i++) {
+			int index = firstIndex + i;
+			putInt(baos, index == 0 ? CreatureHistoryBlob.EV_BORN : CreatureHistoryBlob.EV_AGED);
+			putInt(baos, index * 1000);
+			putInt(baos, index * 1000);
+			putInt(baos, unixTime);
+			putInt(baos, Math.min(index, 6));
+			putString(baos, "");
+			putString(baos, "");
+			putString(baos, worldName);
+			putString(baos, worldID);
+			putString(baos, userID);
+			putInt(baos, index);
+		}
+		putString(baos, name);
+		putInt(baos, 0);
+		return baos.toByteArray();
+	}
+
+	private static void putInt(ByteArrayOutputStream baos, int value) {
+		ByteBuffer bb = IOUtils.newBuffer(4);
+		bb.putInt(value);
+		baos.write(bb.array(), 0, 4);
+	}
+
+	private static void putString(ByteArrayOutputStream baos, String str) {
+		byte[] data = str.getBytes(PacketReader.CHARSET);
+		putInt(baos, data.length);
+		baos.write(data, 0, data.length);
+	}
+}
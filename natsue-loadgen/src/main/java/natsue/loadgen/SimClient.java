@@ -0,0 +1,501 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.ctos.BaseCTOS;
+import natsue.data.babel.pm.PackedMessage;
+
+/**
+ * One simulated client. Only ever touched from its loop.
+ */
+public class SimClient {
+	private enum State {
+		IDLE,
+		CONNECTING,
+		HANDSHAKING,
+		ONLINE
+	}
+
+	// Transactions (requests with a ticket number, that get a response)
+	private static final int TX_PING = 0;
+	private static final int TX_RANDOM_USER = 1;
+	private static final int TX_CLIENT_INFO = 2;
+	private static final int TX_HISTORY = 3;
+
+	private static final int INITIAL_BUFFER = 8192;
+	// Creatures a client keeps around to upload history for.
+	private static final int MAX_CREATURES = 4;
+
+	public final Swarm swarm;
+	public final SwarmLoop loop;
+	public final int index;
+	public final String nickname;
+	private final LoadStats stats;
+	private final Random random = new Random();
+	private final String chatID;
+	private final String worldName, worldID;
+
+	private State state = State.IDLE;
+	// Incremented each connection, so timers from an old one know not to run.
+	private int session;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private ByteBuffer in = newBuffer(INITIAL_BUFFER);
+	private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+	private long connectStarted;
+	private long uin;
+	private int nextTicket = 1;
+	// Ticket to {kind, System.nanoTime when sent}.
+	private final HashMap<Integer, long[]> pending = new HashMap<>();
+	private final ArrayList<Creature> creatures = new ArrayList<>();
+	private final String[] kindTmp = new String[1];
+
+	public SimClient(Swarm swarm, SwarmLoop loop, int index) {
+		this.swarm = swarm;
+		this.loop = loop;
+		this.index = index;
+		stats = swarm.stats;
+		nickname = swarm.config.nicknamePrefix.getValue() + index;
+		chatID = "loadgen-" + index;
+		worldName = "Load World " + index;
+		worldID = Payloads.newWorldID(random);
+	}
+
+	private static ByteBuffer newBuffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Runs task on the loop after delayMs, unless this connection is gone by then.
+	 */
+	private void later(Runnable task, long delayMs) {
+		int s = session;
+		swarm.later(loop, () -> {
+			if (session == s)
+				task.run();
+		}, delayMs);
+	}
+
+	public void connect() {
+		if (state != State.IDLE || swarm.isStopping())
+			return;
+		session++;
+		state = State.CONNECTING;
+		connectStarted = System.nanoTime();
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			boolean connected = channel.connect(swarm.address);
+			key = channel.register(loop.selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+			if (connected)
+				connected();
+		} catch (IOException ex) {
+			lost(ex);
+		}
+	}
+
+	private void connected() throws IOException {
+		state = State.HANDSHAKING;
+		key.interestOps(SelectionKey.OP_READ);
+		send(ClientPackets.writeHandshake(nickname, swarm.config.password.getValue()));
+	}
+
+	/**
+	 * Called by the loop when the channel is ready for something.
+	 */
+	public void handleKey() {
+		try {
+			if (key.isConnectable()) {
+				channel.finishConnect();
+				connected();
+			}
+			if (key.isValid() && key.isReadable())
+				read();
+			if (key.isValid() && key.isWritable())
+				flush();
+		} catch (Exception ex) {
+			lost(ex);
+		}
+	}
+
+	/**
+	 * Logs off (if online) and reconnects after the configured delay (unless the swarm's stopping).
+	 */
+	public void logoff() {
+		if (state == State.IDLE)
+			return;
+		if (state == State.ONLINE)
+			stats.logoffs.increment();
+		close();
+		later(this::connect, Math.max(0, swarm.config.reconnectDelay.getValue()));
+	}
+
+	/**
+	 * The connection failed.
+	 */
+	private void lost(Exception ex) {
+		if (state == State.IDLE)
+			return;
+		if (state == State.CONNECTING) {
+			stats.errConnect.increment();
+		} else if (ex instanceof ProtocolException) {
+			stats.errProtocol.increment();
+		} else {
+			stats.errDisconnect.increment();
+		}
+		swarm.logError(nickname, ex);
+		close();
+		int delay = swarm.config.reconnectDelay.getValue();
+		if (delay >= 0)
+			later(this::connect, delay);
+	}
+
+	private void close() {
+		if (state == State.ONLINE) {
+			swarm.setOnline(index, 0);
+			stats.online.decrement();
+		}
+		state = State.IDLE;
+		if (key != null)
+			key.cancel();
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException ex) {
+			// It's going either way.
+		}
+		key = null;
+		channel = null;
+		stats.unanswered.add(pending.size());
+		pending.clear();
+		out.clear();
+		in = newBuffer(INITIAL_BUFFER);
+	}
+
+	// -- Output --
+
+	private void send(byte[] packet) throws IOException {
+		stats.sentBytes.add(packet.length);
+		out.add(ByteBuffer.wrap(packet));
+		flush();
+	}
+
+	private void flush() throws IOException {
+		while (!out.isEmpty()) {
+			ByteBuffer bb = out.peek();
+			channel.write(bb);
+			if (bb.hasRemaining())
+				break;
+			out.poll();
+		}
+		key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : (SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+	}
+
+	private int beginTransaction(int kind) {
+		int ticket = nextTicket++;
+		pending.put(ticket, new long[] {kind, System.nanoTime()});
+		return ticket;
+	}
+
+	// -- Input --
+
+	private void read() throws IOException {
+		if (!in.hasRemaining())
+			grow(in.capacity() * 2);
+		int amount = channel.read(in);
+		if (amount < 0)
+			throw new EOFException("Server closed the connection");
+		stats.recvBytes.add(amount);
+		in.flip();
+		int needed = 0;
+		while (state != State.IDLE) {
+			needed = processPacket();
+			if (needed != 0)
+				break;
+		}
+		if (state == State.IDLE)
+			return;
+		in.compact();
+		if (needed > in.capacity()) {
+			grow(needed);
+		} else if (in.position() == 0 && in.capacity() > INITIAL_BUFFER * 8) {
+			// Don't keep the space for a big message around.
+			in = newBuffer(INITIAL_BUFFER);
+		}
+	}
+
+	private void grow(int size) {
+		ByteBuffer nb = newBuffer(Math.max(size, in.capacity() * 2));
+		in.flip();
+		nb.put(in);
+		in = nb;
+	}
+
+	/**
+	 * Handles the packet at the start of the (flipped) input buffer.
+	 * Returns 0 if it did, otherwise the size of buffer needed to have the whole packet.
+	 */
+	private int processPacket() throws IOException {
+		if (in.remaining() < PacketReader.PACKET_HEADER_SIZE)
+			return PacketReader.PACKET_HEADER_SIZE;
+		int pos = in.position();
+		int type = in.get(pos + BaseCTOS.BASE_FIELD_TYPE) & 0xFF;
+		int fdlen = in.getInt(pos + BaseCTOS.BASE_FIELD_FDLEN);
+		long[] tx = null;
+		int remainder;
+		if (type == ClientPackets.STOC_RESPONSE) {
+			int ticket = in.getInt(pos + BaseCTOS.BASE_FIELD_TICKET);
+			tx = pending.get(ticket);
+			if (tx == null)
+				throw new ProtocolException("Response for unknown ticket " + ticket);
+			remainder = tx[0] == TX_PING ? ClientPackets.STATUS_RESPONSE_EXTRA : fdlen;
+		} else {
+			remainder = ClientPackets.remainderLength(type, fdlen);
+			if (remainder < 0)
+				throw new ProtocolException("Unknown packet type 0x" + Integer.toHexString(type));
+		}
+		if (remainder < 0 || remainder > swarm.messagesConfig.maxBabelBinaryMessageSize.getValue())
+			throw new ProtocolException("Bad packet length " + remainder);
+		int total = PacketReader.PACKET_HEADER_SIZE + remainder;
+		if (in.remaining() < total)
+			return total;
+		ByteBuffer packet = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+		packet.limit(total);
+		in.position(pos + total);
+		handlePacket(type, packet, tx);
+		return 0;
+	}
+
+	private void handlePacket(int type, ByteBuffer packet, long[] tx) throws IOException {
+		switch (type) {
+		case ClientPackets.STOC_HANDSHAKE_RESPONSE:
+			handshakeResponse(packet);
+			break;
+		case ClientPackets.STOC_MESSAGE:
+			incomingMessage(packet);
+			break;
+		case ClientPackets.STOC_USER_ONLINE:
+		case ClientPackets.STOC_USER_OFFLINE:
+			stats.recvUserLines.increment();
+			break;
+		case ClientPackets.STOC_VIRTUAL_CONNECT:
+			// The server's pinging us (to be sure we got a message).
+			stats.recvServerPings.increment();
+			long initiator = UINUtils.make(packet.getInt(BaseCTOS.BASE_FIELD_C), packet.getInt(BaseCTOS.BASE_FIELD_D));
+			send(ClientPackets.writeVirtualConnectAccept(initiator, packet.getInt(BaseCTOS.BASE_FIELD_E), 1));
+			break;
+		case ClientPackets.STOC_RESPONSE:
+			transactionResponse(packet, tx);
+			break;
+		default:
+			// Virtual circuit closes (following a ping), etc.
+			break;
+		}
+	}
+
+	private void handshakeResponse(ByteBuffer packet) throws IOException {
+		if (state != State.HANDSHAKING)
+			throw new ProtocolException("Handshake response while already logged in");
+		int code = packet.get(1) & 0xFF;
+		if (code != 0) {
+			state = State.CONNECTING;
+			stats.errLogin.increment();
+			swarm.logError(nickname, new IOException("Login refused, code " + code));
+			close();
+			int delay = swarm.config.reconnectDelay.getValue();
+			if (delay >= 0)
+				later(this::connect, delay);
+			return;
+		}
+		uin = UINUtils.make(packet.getInt(BaseCTOS.BASE_FIELD_C), packet.getInt(BaseCTOS.BASE_FIELD_D));
+		state = State.ONLINE;
+		stats.login.recordNanos(System.nanoTime() - connectStarted);
+		stats.logins.increment();
+		stats.online.increment();
+		swarm.setOnline(index, uin);
+		// Like a client bringing up its contact list.
+		for (int i = 0; i < swarm.config.wwrOnLogin.getValue(); i++)
+			addToWWR();
+		later(this::act, Swarm.randomDelay(random, swarm.config.actionInterval.getValue()));
+		int sessionTime = swarm.config.sessionTime.getValue();
+		if (sessionTime > 0)
+			later(this::logoff, Swarm.randomDelay(random, sessionTime * 1000L));
+	}
+
+	private void incomingMessage(ByteBuffer packet) throws IOException {
+		byte[] data = new byte[packet.limit() - PacketReader.PACKET_HEADER_SIZE];
+		packet.position(PacketReader.PACKET_HEADER_SIZE);
+		packet.get(data);
+		PackedMessage message;
+		long sent;
+		try {
+			message = PackedMessage.read(data, swarm.messagesConfig);
+			sent = swarm.payloads.readMessageStamp(message, kindTmp);
+		} catch (Exception ex) {
+			throw new ProtocolException("Unreadable message: " + ex);
+		}
+		if (sent == Payloads.NOT_OURS) {
+			// Version announcement, system messages, returned warps, etc.
+			stats.recvOtherMessages.increment();
+		} else if (sent == Payloads.STALE) {
+			stats.recvStaleMessages.increment();
+		} else if (kindTmp[0].equals("CHAT")) {
+			stats.recvChat.increment();
+			stats.chatDelivery.recordNanos(System.nanoTime() - sent);
+		} else {
+			stats.recvWarp.increment();
+			stats.warpDelivery.recordNanos(System.nanoTime() - sent);
+		}
+	}
+
+	private void transactionResponse(ByteBuffer packet, long[] tx) throws IOException {
+		pending.remove(packet.getInt(BaseCTOS.BASE_FIELD_TICKET));
+		long time = System.nanoTime() - tx[1];
+		switch ((int) tx[0]) {
+		case TX_PING:
+			stats.ping.recordNanos(time);
+			break;
+		case TX_RANDOM_USER:
+			stats.randomUser.recordNanos(time);
+			if (packet.getInt(BaseCTOS.BASE_FIELD_E) == 1) {
+				// And then look them up, as the Warp UI does.
+				long found = UINUtils.make(packet.getInt(BaseCTOS.BASE_FIELD_C), packet.getInt(BaseCTOS.BASE_FIELD_D));
+				stats.sentClientInfo.increment();
+				send(ClientPackets.writeGetClientInfo(beginTransaction(TX_CLIENT_INFO), found));
+			} else {
+				stats.recvNoRandomUser.increment();
+			}
+			break;
+		case TX_CLIENT_INFO:
+			stats.clientInfo.recordNanos(time);
+			break;
+		case TX_HISTORY:
+			stats.history.recordNanos(time);
+			break;
+		}
+	}
+
+	// -- Actions --
+
+	private void act() {
+		if (state != State.ONLINE || swarm.isStopping())
+			return;
+		Swarm.Action action = swarm.pickAction(random);
+		if (action == null)
+			return;
+		try {
+			switch (action) {
+			case chat:
+				chat();
+				break;
+			case warp:
+				warp();
+				break;
+			case randomUser:
+				stats.sentRandomUser.increment();
+				send(ClientPackets.writeFetchRandomUser(beginTransaction(TX_RANDOM_USER)));
+				break;
+			case history:
+				history();
+				break;
+			case wwr:
+				addToWWR();
+				break;
+			case ping:
+				stats.sentPing.increment();
+				send(ClientPackets.writeGetStatus(beginTransaction(TX_PING)));
+				break;
+			}
+		} catch (IOException ex) {
+			lost(ex);
+			return;
+		}
+		later(this::act, Swarm.randomDelay(random, swarm.config.actionInterval.getValue()));
+	}
+
+	private void addToWWR() throws IOException {
+		long peer = swarm.randomPeer(index, random);
+		if (peer == 0)
+			return;
+		stats.sentWWR.increment();
+		send(ClientPackets.writeWWRAdd(peer));
+	}
+
+	private void chat() throws IOException {
+		long peer = swarm.randomPeer(index, random);
+		if (peer == 0)
+			return;
+		stats.sentChat.increment();
+		send(ClientPackets.writeMessage(peer, swarm.payloads.chat(uin, nickname, chatID)));
+	}
+
+	private Creature pickCreature() {
+		if (creatures.isEmpty() || (creatures.size() < MAX_CREATURES && random.nextInt(4) == 0)) {
+			Creature c = new Creature(Payloads.newMoniker(random), "Norn " + random.nextInt(1000));
+			creatures.add(c);
+			return c;
+		}
+		return creatures.get(random.nextInt(creatures.size()));
+	}
+
+	private void warp() throws IOException {
+		long peer = swarm.randomPeer(index, random);
+		if (peer == 0)
+			return;
+		// It's gone to them now.
+		Creature c = pickCreature();
+		creatures.remove(c);
+		stats.sentWarp.increment();
+		send(ClientPackets.writeMessage(peer, swarm.payloads.warp(uin, c.moniker, c.name, random.nextBoolean())));
+	}
+
+	private void history() throws IOException {
+		Creature c = pickCreature();
+		int count = 1 + random.nextInt(Math.max(1, swarm.config.historyEvents.getValue()));
+		byte[] blob = Payloads.history(random, c.moniker, c.nextEvent == 0, c.nextEvent, count, uin, worldName, worldID, c.name);
+		c.nextEvent += count;
+		stats.sentHistory.increment();
+		send(ClientPackets.writeFeedHistory(beginTransaction(TX_HISTORY), blob));
+	}
+
+	private static final class Creature {
+		final String moniker, name;
+		int nextEvent;
+
+		Creature(String moniker, String name) {
+			this.moniker = moniker;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * The server sent something that doesn't make sense.
+	 */
+	private static final class ProtocolException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ProtocolException(String message) {
+			super(message);
+		}
+	}
+}
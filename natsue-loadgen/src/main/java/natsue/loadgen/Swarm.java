@@ -0,0 +1,198 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import natsue.config.ConfigMessages;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.timing.IClock;
+import natsue.server.timing.TimingWheel;
+
+/**
+ * All the simulated clients, and what they share: config, stats, timers, and who's online.
+ */
+public class Swarm implements ILogSource {
+	/**
+	 * Things a client can do (picked by the weights in the config).
+	 */
+	public enum Action {
+		chat,
+		warp,
+		randomUser,
+		history,
+		wwr,
+		ping
+	}
+
+	// Errors logged in full before the rest are only counted.
+	private static final int MAX_LOGGED_ERRORS = 20;
+
+	public final ConfigLoadgen config;
+	public final LoadStats stats = new LoadStats();
+	public final ConfigMessages messagesConfig = new ConfigMessages();
+	public final InetSocketAddress address;
+	public final Payloads payloads;
+	public final TimingWheel wheel;
+	private final ILogProvider logParent;
+	private final SwarmLoop[] loops;
+	private final SimClient[] clients;
+	// UIN of each client while it's online, otherwise 0.
+	private final AtomicLongArray onlineUINs;
+	private final Action[] actions = Action.values();
+	private final int[] actionWeights;
+	private final int totalWeight;
+	private final AtomicInteger loggedErrors = new AtomicInteger();
+	private volatile boolean stopping;
+
+	public Swarm(ILogProvider ilp, ConfigLoadgen config) throws IOException {
+		logParent = ilp;
+		this.config = config;
+		address = new InetSocketAddress(config.host.getValue(), config.port.getValue());
+		payloads = new Payloads(config, new Random().nextLong() & Long.MAX_VALUE);
+		wheel = new TimingWheel(IClock.SYSTEM, 10, 1024, this);
+		loops = new SwarmLoop[Math.max(1, config.eventLoops.getValue())];
+		for (int i = 0; i < loops.length; i++)
+			loops[i] = new SwarmLoop(ilp, i);
+		clients = new SimClient[Math.max(0, config.clients.getValue())];
+		for (int i = 0; i < clients.length; i++)
+			clients[i] = new SimClient(this, loops[i % loops.length], i);
+		onlineUINs = new AtomicLongArray(clients.length);
+		actionWeights = new int[] {
+			config.weightChat.getValue(),
+			config.weightWarp.getValue(),
+			config.weightRandomUser.getValue(),
+			config.weightHistory.getValue(),
+			config.weightWWR.getValue(),
+			config.weightPing.getValue()
+		};
+		int total = 0;
+		for (int i = 0; i < actionWeights.length; i++) {
+			actionWeights[i] = Math.max(0, actionWeights[i]);
+			total += actionWeights[i];
+		}
+		totalWeight = total;
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	@Override
+	public String toString() {
+		return "Swarm";
+	}
+
+	public int getClientCount() {
+		return clients.length;
+	}
+
+	public boolean isStopping() {
+		return stopping;
+	}
+
+	/**
+	 * Starts connecting clients, at the configured rate.
+	 */
+	public void start() {
+		for (SwarmLoop loop : loops)
+			loop.start();
+		wheel.start("Natsue Loadgen Timers");
+		int rate = Math.max(1, config.connectRate.getValue());
+		for (int i = 0; i < clients.length; i++) {
+			SimClient client = clients[i];
+			wheel.schedule(() -> client.loop.post(client::connect), (i * 1000L) / rate);
+		}
+	}
+
+	/**
+	 * Stops all activity, waits drainMs for anything in flight to arrive, then disconnects everyone.
+	 */
+	public void stop(long drainMs) throws InterruptedException {
+		stopping = true;
+		Thread.sleep(drainMs);
+		CountDownLatch latch = new CountDownLatch(loops.length);
+		for (SimClient client : clients)
+			client.loop.post(client::logoff);
+		for (SwarmLoop loop : loops)
+			loop.post(latch::countDown);
+		latch.await(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Runs a task on a loop after a delay.
+	 */
+	public void later(SwarmLoop loop, Runnable task, long delayMs) {
+		wheel.schedule(() -> loop.post(task), delayMs);
+	}
+
+	void setOnline(int index, long uin) {
+		onlineUINs.set(index, uin);
+	}
+
+	/**
+	 * Picks another client that's online (or returns 0 if none was found quickly).
+	 */
+	public long randomPeer(int self, Random r) {
+		if (clients.length < 2)
+			return 0;
+		for (int attempt = 0; attempt < 8; attempt++) {
+			int index = r.nextInt(clients.length);
+			if (index == self)
+				continue;
+			long uin = onlineUINs.get(index);
+			if (uin != 0)
+				return uin;
+		}
+		return 0;
+	}
+
+	/**
+	 * Picks an action by weight, or null if every weight is 0.
+	 */
+	public Action pickAction(Random r) {
+		if (totalWeight <= 0)
+			return null;
+		int pick = r.nextInt(totalWeight);
+		for (int i = 0; i < actions.length; i++) {
+			pick -= actionWeights[i];
+			if (pick < 0)
+				return actions[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Exponentially distributed delay with the given mean, so events arrive like a Poisson process.
+	 */
+	public static long randomDelay(Random r, long meanMs) {
+		if (meanMs <= 0)
+			return 0;
+		return (long) (-Math.log(1 - r.nextDouble()) * meanMs);
+	}
+
+	/**
+	 * Logs an error from a client in full, until enough have been to get the idea.
+	 */
+	public void logError(String who, Throwable ex) {
+		int n = loggedErrors.incrementAndGet();
+		if (n <= MAX_LOGGED_ERRORS) {
+			log(who + ": " + ex);
+			if (n == MAX_LOGGED_ERRORS)
+				log("Further errors are only counted.");
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+
+/**
+ * Selector thread running a share of the clients.
+ * Everything a client does happens on its loop, so clients need no locking of their own.
+ */
+public class SwarmLoop extends Thread implements ILogSource {
+	public final Selector selector;
+	private final ILogProvider logParent;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	// Saves waking the selector for every task when lots arrive at once.
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+	public SwarmLoop(ILogProvider ilp, int index) throws IOException {
+		super("Natsue Loadgen Loop " + index);
+		setDaemon(true);
+		logParent = ilp;
+		selector = Selector.open();
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	/**
+	 * Runs a task on this loop.
+	 */
+	public void post(Runnable task) {
+		tasks.add(task);
+		if (wakeupPending.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+				wakeupPending.set(false);
+				Runnable task;
+				while ((task = tasks.poll()) != null)
+					task.run();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					((SimClient) key.attachment()).handleKey();
+				}
+			} catch (Exception ex) {
+				log(ex);
+			}
+		}
+	}
+}
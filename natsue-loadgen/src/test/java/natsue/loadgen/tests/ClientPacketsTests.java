@@ -0,0 +1,140 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cdsp.common.data.IOUtils;
+import cdsp.common.data.pray.ExportedCreatures;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.CreatureHistoryBlob;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.ctos.*;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessagePRAY;
+import natsue.loadgen.ClientPackets;
+import natsue.loadgen.ConfigLoadgen;
+import natsue.loadgen.Payloads;
+
+/**
+ * Checks the load generator writes what the server reads.
+ */
+public class ClientPacketsTests {
+	private static final ConfigMessages CONFIG = new ConfigMessages();
+	private static final long UIN = UINUtils.make(1234, 2);
+
+	private static BaseCTOS parse(byte[] packet) throws Exception {
+		ByteArrayInputStream bais = new ByteArrayInputStream(packet);
+		byte[] header = new byte[PacketReader.PACKET_HEADER_SIZE];
+		bais.read(header);
+		BaseCTOS res = PacketReader.readPacket(CONFIG, header, bais);
+		assertEquals("Packet should be read exactly", 0, bais.available());
+		// The incremental reader has to agree on the length, too
+		assertEquals(packet.length - PacketReader.PACKET_HEADER_SIZE, res.remainderLength(CONFIG, IOUtils.wrapLE(header), IOUtils.wrapLE(Arrays.copyOfRange(packet, PacketReader.PACKET_HEADER_SIZE, packet.length))));
+		return res;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends BaseCTOS> T parse(Class<T> cls, byte[] packet) throws Exception {
+		BaseCTOS res = parse(packet);
+		assertTrue("Expected " + cls + " not " + res.getClass(), cls.isInstance(res));
+		return (T) res;
+	}
+
+	@Test
+	public void testHandshake() throws Exception {
+		CTOSHandshake hs = parse(CTOSHandshake.class, ClientPackets.writeHandshake("lg12", "loadgen"));
+		assertEquals("lg12", hs.username);
+		assertEquals("loadgen", hs.password);
+	}
+
+	@Test
+	public void testTargetted() throws Exception {
+		CTOSGetClientInfo gci = parse(CTOSGetClientInfo.class, ClientPackets.writeGetClientInfo(7, UIN));
+		assertEquals(7, gci.ticketNumber);
+		assertEquals(UIN, gci.targetUIN);
+		CTOSWWRModify wwr = parse(CTOSWWRModify.class, ClientPackets.writeWWRAdd(UIN));
+		assertTrue(wwr.add);
+		assertEquals(UIN, wwr.targetUIN);
+		CTOSClientCommand cmd = parse(CTOSClientCommand.class, ClientPackets.writeVirtualConnectAccept(UIN, 3, 1));
+		assertEquals(UIN, cmd.targetUIN);
+		assertEquals(0x0E, cmd.subCommand);
+		assertEquals((3 << 16) | 1, cmd.param);
+	}
+
+	@Test
+	public void testTransactions() throws Exception {
+		assertEquals(9, parse(ClientPackets.writeGetStatus(9)).ticketNumber);
+		assertEquals(10, parse(CTOSFetchRandomUser.class, ClientPackets.writeFetchRandomUser(10)).ticketNumber);
+	}
+
+	@Test
+	public void testHistory() throws Exception {
+		Random r = new Random(1);
+		String moniker = Payloads.newMoniker(r);
+		byte[] blob = Payloads.history(r, moniker, true, 0, 3, UIN, "World", Payloads.newWorldID(r), "Alice");
+		CTOSFeedHistory fh = parse(CTOSFeedHistory.class, ClientPackets.writeFeedHistory(11, blob));
+		assertEquals(11, fh.ticketNumber);
+		CreatureHistoryBlob chb = new CreatureHistoryBlob(IOUtils.wrapLE(fh.data), CONFIG.maxCreatureHistoryEvents.getValue());
+		assertNull(chb.verifySanity());
+		assertEquals(moniker, chb.moniker);
+		assertEquals("Alice", chb.name);
+		assertNotNull(chb.state);
+		assertEquals(3, chb.events.length);
+		assertEquals(CreatureHistoryBlob.EV_BORN, chb.events[0].eventType);
+		// Later uploads carry on from there, without the state
+		blob = Payloads.history(r, moniker, false, 3, 2, UIN, "World", Payloads.newWorldID(r), "Alice");
+		chb = new CreatureHistoryBlob(IOUtils.wrapLE(blob), CONFIG.maxCreatureHistoryEvents.getValue());
+		assertNull(chb.state);
+		assertEquals(3, chb.events[0].index);
+	}
+
+	@Test
+	public void testMessages() throws Exception {
+		ConfigLoadgen cfg = new ConfigLoadgen();
+		cfg.warpGeneSize.setValueFromString("1024");
+		cfg.warpCreatureSize.setValueFromString("4096");
+		Payloads payloads = new Payloads(cfg, 42);
+		Payloads otherRun = new Payloads(cfg, 43);
+		String[] kind = new String[1];
+		long before = System.nanoTime();
+
+		CTOSMessage chat = parse(CTOSMessage.class, ClientPackets.writeMessage(UIN, payloads.chat(UIN, "lg1", "chat-1")));
+		assertEquals(UIN, chat.targetUIN);
+		PackedMessage pm = PackedMessage.read(chat.messageData, CONFIG);
+		long stamp = payloads.readMessageStamp(pm, kind);
+		assertEquals("CHAT", kind[0]);
+		assertTrue(stamp >= before && stamp <= System.nanoTime());
+		assertEquals(Payloads.STALE, otherRun.readMessageStamp(pm, kind));
+
+		String moniker = Payloads.newMoniker(new Random(2));
+		CTOSMessage warp = parse(CTOSMessage.class, ClientPackets.writeMessage(UIN, payloads.warp(UIN, moniker, "Bob", true)));
+		pm = PackedMessage.read(warp.messageData, CONFIG);
+		assertNull(ExportedCreatures.checkWellFormedCreature(((PackedMessagePRAY) pm).messageBlocks));
+		stamp = payloads.readMessageStamp(pm, kind);
+		assertEquals("warp", kind[0]);
+		assertTrue(stamp >= before && stamp <= System.nanoTime());
+
+		assertEquals(Payloads.NOT_OURS, payloads.readStamp("Hello!"));
+	}
+
+	@Test
+	public void testServerFraming() {
+		assertEquals(28, ClientPackets.remainderLength(ClientPackets.STOC_HANDSHAKE_RESPONSE, 0));
+		assertEquals(100, ClientPackets.remainderLength(ClientPackets.STOC_MESSAGE, 100));
+		assertEquals(-1, ClientPackets.remainderLength(ClientPackets.STOC_RESPONSE, 0));
+		assertEquals(-1, ClientPackets.remainderLength(0x77, 0));
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.loadgen.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import natsue.loadgen.LatencyHistogram;
+
+public class LatencyHistogramTests {
+	private static void assertNear(long expected, long actual) {
+		// Buckets are 1/16th of a power of two wide
+		assertTrue("expected ~" + expected + " got " + actual, Math.abs(expected - actual) <= Math.max(1, expected / 16));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram hist = new LatencyHistogram("Test");
+		assertEquals(0, hist.percentile(0.5));
+		for (int i = 1; i <= 10000; i++)
+			hist.record(i);
+		assertEquals(10000, hist.getCount());
+		assertEquals(10000, hist.getMax());
+		assertNear(5000, hist.percentile(0.5));
+		assertNear(9900, hist.percentile(0.99));
+		assertNear(1, hist.percentile(0.0001));
+	}
+
+	@Test
+	public void testExtremes() {
+		LatencyHistogram hist = new LatencyHistogram("Test");
+		hist.record(-5);
+		hist.record(0);
+		hist.record(Long.MAX_VALUE);
+		assertEquals(3, hist.getCount());
+		assertEquals(Long.MAX_VALUE, hist.getMax());
+		assertEquals(0, hist.percentile(0.5));
+		assertTrue(hist.percentile(1) > 0);
+	}
+}
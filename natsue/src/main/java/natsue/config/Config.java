@@ -61,6 +61,12 @@ public class Config extends BaseConfig.Group {
 	public final Int maxSpoolToReadOnConnect = new Int("maxSpoolToReadOnConnect", 0x1000)
 			.describe("Maximum amount of spooled messages to send back to a connecting client.\nIf the amount exceeds this, they have to reconnect to get the rest.");
 
+	/**
+	 * Spooled messages are read (and removed) this many at a time.
+	 */
+	public final Int spoolReadBatchSize = new Int("spoolReadBatchSize", 64)
+			.describe("Amount of spooled messages to read from the database in one go for a connecting client.");
+
 	/**
 	 * Exclude yourself from NET: RUSO
 	 */
@@ -85,6 +91,18 @@ public class Config extends BaseConfig.Group {
 	public final Int manualKeepAliveTime = new Int("manualKeepAliveTime", 30)
 			.describe("Amount of seconds to go without receiving a packet from the client before we decide to just send a little one to it. <= 0 means not to send these.");
 
+	/**
+	 * Presence notification batching
+	 */
+	public final Int presenceBatchTime = new Int("presenceBatchTime", 100)
+			.describe("Milliseconds over which online/offline notifications to clients are gathered, to then be sent in one go from a dedicated thread.\nSomeone who leaves and comes back within that time isn't announced at all.\n<= 0 sends notifications immediately from the connection logging in/out.");
+
+	/**
+	 * Message delivery confirmation timeout
+	 */
+	public final Int pingTimeout = new Int("pingTimeout", 0)
+			.describe("Seconds to wait for a client to confirm it got a message before it's treated as undelivered (and rejected/spooled). A slow client may then get the message twice. <= 0 means to wait until the client disconnects.");
+
 	/**
 	 * Request abuse prevention
 	 */
@@ -113,7 +131,7 @@ public class Config extends BaseConfig.Group {
 	 * Request abuse prevention
 	 */
 	public final Int httpRequestTime = new Int("httpRequestTime", 30)
-			.describe("During an HTTP request, amount of seconds the request may go on for before we decide we're being trolled.");
+			.describe("During an HTTP request, amount of seconds the request may go on for before we decide we're being trolled.\nThis is also how long a kept-alive HTTP connection may sit idle.");
 
 	/**
 	 * Request abuse prevention
@@ -127,12 +145,36 @@ public class Config extends BaseConfig.Group {
 	public final Int httpRequestMaxLength = new Int("httpRequestMaxLength", 8192)
 			.describe("During an HTTP request, maximum size of the header.");
 
+	/**
+	 * HTTP keep-alive
+	 */
+	public final Bool httpKeepAlive = new Bool("httpKeepAlive", true)
+			.describe("Allows HTTP connections to be kept open for further (possibly pipelined) requests.");
+
 	/**
 	 * Allow creature history.
 	 */
 	public final Bool allowCreatureHistory = new Bool("allowCreatureHistory", true)
 			.describe("Stores creature history in the database.");
 
+	/**
+	 * History queue size
+	 */
+	public final Int historyQueueSize = new Int("historyQueueSize", 256)
+			.describe("Creature history uploads that can wait to be written to the database by a dedicated thread. <= 0 writes them immediately, on the uploading client's thread.");
+
+	/**
+	 * History queue wait
+	 */
+	public final Int historyQueueWait = new Int("historyQueueWait", 0)
+			.describe("Milliseconds to hold up an uploading client while the history queue is full, before dropping their upload.");
+
+	/**
+	 * History dedup size
+	 */
+	public final Int historyDedupSize = new Int("historyDedupSize", 16384)
+			.describe("Recently written creature history events to remember, so re-uploads of them can be skipped without touching the database.");
+
 	/**
 	 * Firewall level
 	 */
@@ -41,6 +41,24 @@ public class ConfigAccounts extends BaseConfig.Group {
 	public final Int registrationAttempts = new Int("registrationAttempts", 2048)
 			.describe("Amount of times to attempt registration before giving up.");
 
+	/**
+	 * Offline user cache size
+	 */
+	public final Int offlineUserCacheSize = new Int("offlineUserCacheSize", 4096)
+			.describe("Database lookups of users who aren't online to remember (per lookup type). <= 0 always asks the database.");
+
+	/**
+	 * Offline user cache time
+	 */
+	public final Int offlineUserCacheTime = new Int("offlineUserCacheTime", 300)
+			.describe("Seconds to remember a user who isn't online. Changes made through the server are seen immediately; this only matters for changes made to the database directly.");
+
+	/**
+	 * Offline user cache time for users that don't exist
+	 */
+	public final Int offlineUserCacheNegativeTime = new Int("offlineUserCacheNegativeTime", 30)
+			.describe("Seconds to remember that a user doesn't exist.");
+
 	/**
 	 * Logs userdata cache management operations.
 	 */
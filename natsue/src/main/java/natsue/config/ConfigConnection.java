@@ -6,6 +6,8 @@
  */
 package natsue.config;
 
+import natsue.server.packet.ConnectionEngine;
+
 /**
  * Configuration for incoming connections
  */
@@ -39,4 +41,35 @@ public class ConfigConnection extends BaseConfig.Group {
 	 */
 	public final Str sslPrivKeyAlgorithm = new Str("sslPrivKeyAlgorithm", "")
 			.describe("SSL private key algorithm (if blank, tries guessing)");
+
+	/**
+	 * Connection engine.
+	 */
+	public final Emu<ConnectionEngine> engine = new Emu<>("connectionEngine", ConnectionEngine.classic)
+			.describe("Connection engine used for the main port.\n" +
+					"Options are:\n" +
+					"classic: one thread per connection,\n" +
+					"nio: a small pool of event loop threads; threads are only taken up while packets are being handled.\n" +
+					"The SSL port always uses classic.");
+
+	/**
+	 * NIO event loop count.
+	 */
+	public final Int nioEventLoops = new Int("nioEventLoops", 2)
+			.describe("Amount of event loop threads used by the nio connection engine. <= 0 means one per processor.");
+
+	/**
+	 * NIO worker thread limit.
+	 */
+	public final Int nioWorkerThreads = new Int("nioWorkerThreads", 64)
+			.describe("Most threads the nio connection engine uses to handle packets and HTTP requests. A connection only holds one while something of its is being handled, but that includes waiting on the database.\nPast this, work waits its turn. <= 0 means no limit.");
+
+	/**
+	 * Outbound queue limits.
+	 */
+	public final Int outboundQueueMaxBytes = new Int("outboundQueueMaxBytes", 0x4000000)
+			.describe("Maximum amount of bytes waiting to be sent to a client before it's considered too slow and disconnected. A single packet is always let through, however big.");
+
+	public final Int outboundQueueMaxPackets = new Int("outboundQueueMaxPackets", 8192)
+			.describe("Maximum amount of packets waiting to be sent to a client before it's considered too slow and disconnected.");
 }
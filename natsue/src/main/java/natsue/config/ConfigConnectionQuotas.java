@@ -14,7 +14,7 @@ public class ConfigConnectionQuotas extends BaseConfig.Group {
 	 * Max. connections in two minutes.
 	 */
 	public final Int maxConnectionsInTwoMinutes = new Int("quotaMaxConnectionsInTwoMinutes", 60)
-			.describe("Maximum amount of new connections in two minutes per IP address.");
+			.describe("Maximum amount of new connections in two minutes per IP address.\nThis is a token bucket: this many connections can be made at once, and the allowance refills steadily over two minutes.");
 	/**
 	 * Max. connections concurrent.
 	 */
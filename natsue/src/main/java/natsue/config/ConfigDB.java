@@ -7,12 +7,20 @@
 
 package natsue.config;
 
+import natsue.server.database.DBBackend;
 import natsue.server.database.jdbc.ILDBVariant;
+import natsue.server.database.spool.SpoolBackend;
 
 /**
  * Configuration of DB connection and such
  */
 public class ConfigDB extends BaseConfig.Group {
+	/**
+	 * Database backend
+	 */
+	public final Emu<DBBackend> dbBackend = new Emu<>("dbBackend", DBBackend.jdbc)
+			.describe("Database implementation. Can be one of: jdbc (see dbConnection), memory (kept in memory, lost on shutdown unless memoryDBSnapshotTime is set; for benchmarks and throwaway servers).");
+
 	/**
 	 * JDBC connection path.
 	 */
@@ -31,4 +39,93 @@ public class ConfigDB extends BaseConfig.Group {
 	public final Bool logExpectedDBErrors = new Bool("logExpectedDBErrors", false)
 			.describe("Log expected database errors - these are expected to occur in normal operation due to, i.e. repeated creature history uploads.");
 
+	/**
+	 * Connection pool size
+	 */
+	public final Int dbPoolMaxSize = new Int("dbPoolMaxSize", 4)
+			.describe("Most database connections to keep open at once. <= 0 disables pooling, connecting anew for every transaction.");
+
+	/**
+	 * Connection pool minimum
+	 */
+	public final Int dbPoolMinSize = new Int("dbPoolMinSize", 1)
+			.describe("Database connections to keep open even when idle.");
+
+	/**
+	 * Connection pool validation
+	 */
+	public final Int dbPoolValidationTimeout = new Int("dbPoolValidationTimeout", 5)
+			.describe("Seconds to wait when checking a pooled database connection still works before using it. 0 waits forever, < 0 skips the check.");
+
+	/**
+	 * Connection pool idle timeout
+	 */
+	public final Int dbPoolIdleTimeout = new Int("dbPoolIdleTimeout", 300)
+			.describe("Seconds a pooled database connection can go unused before it's closed (keeping at least dbPoolMinSize). <= 0 never closes them.");
+
+	/**
+	 * Connection pool acquire timeout
+	 */
+	public final Int dbPoolAcquireTimeout = new Int("dbPoolAcquireTimeout", 10000)
+			.describe("Milliseconds to wait for a database connection when all dbPoolMaxSize are in use, after which the transaction fails.");
+
+	/**
+	 * Prepared statement cache size
+	 */
+	public final Int dbStatementCacheSize = new Int("dbStatementCacheSize", 32)
+			.describe("Prepared statements each pooled database connection keeps for reuse. <= 0 prepares them anew for every transaction.");
+
+	/**
+	 * Spool write-behind
+	 */
+	public final Int spoolWriteBehindTime = new Int("spoolWriteBehindTime", 0)
+			.describe("Milliseconds over which messages to be spooled are gathered, to then be written in one transaction from a dedicated thread.\nSenders are told their message was delivered before it's written, so if the server crashes or is killed outright (i.e. kill -9, power loss), any messages not yet written are lost for good.\nAn orderly shutdown (i.e. Ctrl-C, SIGTERM) writes them out first. <= 0 writes each message immediately.");
+
+	/**
+	 * Spool write-behind batch size
+	 */
+	public final Int spoolWriteBehindBatch = new Int("spoolWriteBehindBatch", 256)
+			.describe("Most messages to write to the spool in one transaction. Reaching this writes immediately, without waiting for spoolWriteBehindTime.");
+
+	/**
+	 * Spool write-behind queue limit
+	 */
+	public final Int spoolWriteBehindQueueMax = new Int("spoolWriteBehindQueueMax", 4096)
+			.describe("Most messages waiting to be written to the spool. Past this (i.e. if the database stalls), messages are written immediately by whoever is spooling them.");
+
+	/**
+	 * Spool backend
+	 */
+	public final Emu<SpoolBackend> spoolBackend = new Emu<>("spoolBackend", SpoolBackend.database)
+			.describe("Where spooled messages are kept. Can be one of: database, log (append-only files in spoolLogDir).\nSwitching to log doesn't bring existing messages along; run natsue.server.database.spool.SpoolLogMigrator (with the server stopped) for that.");
+
+	/**
+	 * Spool log directory
+	 */
+	public final Str spoolLogDir = new Str("spoolLogDir", "spool")
+			.describe("Directory for the spool log's segment files, if spoolBackend is log.");
+
+	/**
+	 * Spool log segment size
+	 */
+	public final Int spoolLogSegmentSize = new Int("spoolLogSegmentSize", 16)
+			.describe("Megabytes a spool log segment can grow to before a new one is started. Segments are deleted once every message in them is delivered.");
+
+	/**
+	 * Spool log sync
+	 */
+	public final Bool spoolLogSync = new Bool("spoolLogSync", true)
+			.describe("Force every spool log write to disk before carrying on. Turning this off is faster, but a crash (of the machine, not just the server) can lose messages.");
+
+	/**
+	 * Memory DB snapshot file
+	 */
+	public final Str memoryDBSnapshotFile = new Str("memoryDBSnapshotFile", "natsue-memory.db")
+			.describe("File the memory database is snapshotted to, and loaded from on startup, if dbBackend is memory and memoryDBSnapshotTime is set.");
+
+	/**
+	 * Memory DB snapshot interval
+	 */
+	public final Int memoryDBSnapshotTime = new Int("memoryDBSnapshotTime", 0)
+			.describe("Seconds between snapshots of the memory database (one is also taken on shutdown). Anything since the last snapshot is lost on a crash. <= 0 disables snapshots, and loading them.");
 }
@@ -7,6 +7,8 @@
 
 package natsue.config;
 
+import cdsp.common.data.pray.PRAYCodec;
+
 /**
  * Data formats / messages
  */
@@ -17,6 +19,18 @@ public class ConfigMessages extends BaseConfig.Group {
 	public final Bool compressPRAYChunks = new Bool("compressPRAYChunks", true)
 			.describe("Compresses PRAY chunks. Natsue always decompresses them, but this enables recompressing them.");
 
+	/**
+	 * PRAY chunk compression level
+	 */
+	public final Int prayCompressionLevel = new Int("prayCompressionLevel", PRAYCodec.LEVEL_DEFAULT)
+			.describe("zlib level (1-9) when compressing PRAY chunks, or -1 for zlib's default. 1 is fastest, for busy servers.");
+
+	/**
+	 * PRAY chunk compression strategy
+	 */
+	public final Emu<PRAYCodec.Strategy> prayCompressionStrategy = new Emu<>("prayCompressionStrategy", PRAYCodec.Strategy.normal)
+			.describe("zlib strategy when compressing PRAY chunks: normal, filtered, huffmanOnly");
+
 	/**
 	 * Maximum length of a creature name.
 	 * Default chosen by the amount of the letter 'i' you can put in a name, with some rounding up.
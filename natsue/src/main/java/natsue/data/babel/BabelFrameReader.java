@@ -0,0 +1,127 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.data.babel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import cdsp.common.data.IOUtils;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.ctos.BaseCTOS;
+
+/**
+ * Reads Babel packets off a blocking stream through a reusable buffer.
+ * Headers are parsed in place, and remainders are handed to PacketReader as slices of the buffer.
+ * The stream's read timeout (i.e. SO_TIMEOUT) is expected to be set once, to the keepalive time.
+ */
+public class BabelFrameReader {
+	private static final int INITIAL_BUFFER = 0x1000;
+	private static final int SHRINK_BUFFER_ABOVE = 0x10000;
+
+	private final InputStream input;
+	private final ConfigMessages config;
+	private byte[] buffer = new byte[INITIAL_BUFFER];
+	private int start, end;
+
+	public BabelFrameReader(InputStream in, ConfigMessages cfg) {
+		input = in;
+		config = cfg;
+	}
+
+	/**
+	 * Puts a byte that has already been read (i.e. while sniffing the connection type) in front of the stream.
+	 * Only valid before the first packet is read.
+	 */
+	public void unread(int b) {
+		if (end != 0)
+			throw new IllegalStateException("unread after reading");
+		buffer[end++] = (byte) b;
+	}
+
+	/**
+	 * Reads the next packet.
+	 * Returns null on EOF between packets.
+	 * Throws SocketTimeoutException if the timeout passes before any of the next packet has arrived; the reader remains usable.
+	 * A timeout partway through a packet is just waited out.
+	 */
+	public BaseCTOS readPacket() throws IOException {
+		if (!fill(PacketReader.PACKET_HEADER_SIZE, true))
+			return null;
+		BaseCTOS packet = PacketReader.newPacketForHeader(slice(start, PacketReader.PACKET_HEADER_SIZE));
+		int remainderLen;
+		while (true) {
+			int remainderStart = start + PacketReader.PACKET_HEADER_SIZE;
+			remainderLen = packet.remainderLength(config, slice(start, PacketReader.PACKET_HEADER_SIZE), slice(remainderStart, end - remainderStart));
+			if (remainderLen <= end - remainderStart)
+				break;
+			fill(PacketReader.PACKET_HEADER_SIZE + remainderLen, false);
+		}
+		ByteBuffer header = slice(start, PacketReader.PACKET_HEADER_SIZE);
+		ByteBuffer remainder = slice(start + PacketReader.PACKET_HEADER_SIZE, remainderLen);
+		PacketReader.readPacket(config, packet, header, remainder);
+		start += PacketReader.PACKET_HEADER_SIZE + remainderLen;
+		if (start == end) {
+			start = 0;
+			end = 0;
+			// Don't hang onto the buffer from that one huge message forever.
+			if (buffer.length > SHRINK_BUFFER_ABOVE)
+				buffer = new byte[INITIAL_BUFFER];
+		}
+		return packet;
+	}
+
+	private ByteBuffer slice(int ofs, int len) {
+		return IOUtils.wrapLE(buffer, ofs, len).slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Makes sure the buffer can hold the given amount of bytes from start.
+	 */
+	private void ensureSpace(int count) {
+		if (buffer.length - start >= count && end < buffer.length)
+			return;
+		byte[] target = buffer;
+		if (count >= buffer.length)
+			target = new byte[Math.max(count + 1, buffer.length * 2)];
+		System.arraycopy(buffer, start, target, 0, end - start);
+		buffer = target;
+		end -= start;
+		start = 0;
+	}
+
+	/**
+	 * Makes sure at least count bytes are buffered.
+	 * Returns false on EOF if nothing of the next packet has been read (and atBoundary is set).
+	 */
+	private boolean fill(int count, boolean atBoundary) throws IOException {
+		if (end - start >= count)
+			return true;
+		ensureSpace(count);
+		while (end - start < count) {
+			int amount;
+			try {
+				amount = input.read(buffer, end, buffer.length - end);
+			} catch (SocketTimeoutException ste) {
+				if (atBoundary && end == start)
+					throw ste;
+				continue;
+			}
+			if (amount <= 0) {
+				if (atBoundary && end == start)
+					return false;
+				throw new EOFException("Out of data");
+			}
+			end += amount;
+		}
+		return true;
+	}
+}
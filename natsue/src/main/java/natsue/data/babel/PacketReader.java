@@ -7,6 +7,7 @@
 
 package natsue.data.babel;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
@@ -91,13 +92,29 @@ public class PacketReader {
 	 */
 	public static BaseCTOS readPacket(ConfigMessages cfg, byte[] initialData, InputStream packetSource) throws IOException {
 		ByteBuffer initial = IOUtils.wrapLE(initialData);
-		// alright, what type is this?
-		int type = initial.getInt(BaseCTOS.BASE_FIELD_TYPE);
-		BaseCTOS packetBase = packetInstanceByType(type);
+		BaseCTOS packetBase = newPacketForHeader(initial);
 		packetBase.initializeAndReadRemainder(cfg, packetSource, initial);
 		return packetBase;
 	}
 
+	/**
+	 * Given a packet from newPacketForHeader, its header, and a slice holding exactly its remainder, initializes the packet.
+	 * Neither buffer is retained, so they can be reused afterwards.
+	 */
+	public static BaseCTOS readPacket(ConfigMessages cfg, BaseCTOS packet, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		packet.initializeAndReadRemainder(cfg, new ByteArrayInputStream(remainder.array(), remainder.arrayOffset() + remainder.position(), remainder.remaining()), initial);
+		return packet;
+	}
+
+	/**
+	 * Creates the (not yet initialized) packet for a given header.
+	 * Incremental readers use this with BaseCTOS.remainderLength to work out when the remainder has all arrived.
+	 */
+	public static BaseCTOS newPacketForHeader(ByteBuffer initial) {
+		// alright, what type is this?
+		return packetInstanceByType(initial.getInt(BaseCTOS.BASE_FIELD_TYPE));
+	}
+
 	private static BaseCTOS packetInstanceByType(int type) {
 		switch (type) {
 		case 0x09:
@@ -133,14 +150,4 @@ public class PacketReader {
 		}
 		return new CTOSUnknown(0, 0);
 	}
-
-	/**
-	 * Because setSoLinger is broken in production (browser might want you to read the *whole* request?), fake it
-	 */
-	public static void linger(Socket socket, int asClampedMs) {
-		try {
-			Thread.sleep(asClampedMs);
-		} catch (Exception ex) {
-		}
-	}
 }
@@ -36,6 +36,16 @@ public abstract class BaseCTOS {
 		ticketNumber = initial.getInt(BASE_FIELD_TICKET);
 	}
 
+	/**
+	 * Called by incremental readers (i.e. the NIO engine) before initializeAndReadRemainder.
+	 * Given the header and however much of the remainder has arrived so far (remainder is from position 0 to the limit), returns the length of the remainder.
+	 * If that can't be worked out yet, returns how much of the remainder must arrive before this can be asked again.
+	 * Invalid sizes should throw here just as they would in initializeAndReadRemainder.
+	 */
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		return 0;
+	}
+
 	/**
 	 * Should we be worried about this packet needing a response?
 	 * If not, then return 0 here.
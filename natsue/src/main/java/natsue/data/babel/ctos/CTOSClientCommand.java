@@ -27,6 +27,11 @@ public class CTOSClientCommand extends TargetUIDCTOS {
 		subCommand = extra.getInt(0);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		return 4;
+	}
+
 	@Override
 	public String toString() {
 		return "CTOSClientCommand{to: " + UINUtils.toString(targetUIN) + ", sc: " + subCommand + ", p: " + param + "}";
@@ -35,6 +35,14 @@ public class CTOSFeedHistory extends BaseCTOS {
 		data = IOUtils.getBytes(inputStream, bytes);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		int bytes = initial.getInt(BASE_FIELD_FDLEN);
+		if (bytes < 0 || bytes > pcfg.maxFeedHistorySize.getValue())
+			throw new IOException("Invalid history size!");
+		return bytes;
+	}
+
 	@Override
 	public int transactionDummyLength() {
 		return 32;
@@ -60,6 +60,16 @@ public class CTOSHandshake extends BaseCTOS {
 			clientVersion = BabelClientVersion.Tower;
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		if (remainder.limit() < 20)
+			return 20;
+		int totalLen = remainder.getInt(12) + remainder.getInt(16);
+		if (totalLen < 0 || totalLen > pcfg.maxLoginInfoSize.getValue())
+			throw new IOException("Invalid message size!");
+		return 20 + totalLen;
+	}
+
 	@Override
 	public int transactionDummyLength() {
 		return 0;
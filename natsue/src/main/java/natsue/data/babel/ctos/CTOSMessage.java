@@ -49,6 +49,14 @@ public class CTOSMessage extends BaseCTOS {
 		messageData = IOUtils.getBytes(inputStream, msgDataSize);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		int msgDataSize = initial.getInt(BASE_FIELD_FDLEN);
+		if (msgDataSize < 0 || msgDataSize > pcfg.maxBabelBinaryMessageSize.getValue())
+			throw new IOException("Invalid message size!");
+		return 8 + msgDataSize;
+	}
+
 	@Override
 	public int transactionDummyLength() {
 		return 0;
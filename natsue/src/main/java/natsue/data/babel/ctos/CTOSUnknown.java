@@ -38,6 +38,11 @@ public class CTOSUnknown extends BaseCTOS {
 		IOUtils.getBytes(inputStream, additionalLength);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		return additionalLength;
+	}
+
 	@Override
 	public int transactionDummyLength() {
 		return fixedTransactionDummyLength;
@@ -50,6 +50,15 @@ public class CTOSVirtualCircuit extends BaseCTOS {
 		messageData = IOUtils.getBytes(inputStream, wantedFurtherData);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		int wantedFurtherData = initial.getInt(BASE_FIELD_FDLEN);
+		int maxNetWritPlus = pcfg.maxNetWritSize.getValue() + PackedMessage.HEADER_LEN;
+		if (wantedFurtherData < 0 || wantedFurtherData > maxNetWritPlus)
+			throw new IOException("Invalid further data!");
+		return 12 + wantedFurtherData;
+	}
+
 	@Override
 	public int transactionDummyLength() {
 		return 0;
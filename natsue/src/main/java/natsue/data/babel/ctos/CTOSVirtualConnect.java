@@ -32,6 +32,11 @@ public class CTOSVirtualConnect extends BaseCTOS {
 		targetUIN = PacketReader.getUIN(extra, 0);
 	}
 
+	@Override
+	public int remainderLength(ConfigMessages pcfg, ByteBuffer initial, ByteBuffer remainder) throws IOException {
+		return 12;
+	}
+
 	@Override
 	public String toString() {
 		return "CTOSVirtualConnect{to: " + UINUtils.toString(targetUIN) + ", sourceVSN: " + sourceVSN + "}";
@@ -0,0 +1,72 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.data.babel.pm;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import cdsp.common.data.IOUtils;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.PacketWriter;
+import natsue.data.babel.UINUtils;
+
+/**
+ * A PackedMessage encoded once, already framed as a message packet (see PacketWriter.writeMessage).
+ * Immutable, so the same instance (and packet array) can be handed to any number of recipients.
+ */
+public final class EncodedMessage {
+	// Sender UIN location within the packet: packet header, then the PBM length field.
+	private static final int SENDER_OFS = PacketReader.PACKET_HEADER_SIZE + 4;
+
+	/**
+	 * The framed packet. DO NOT MODIFY.
+	 */
+	public final byte[] packet;
+	private final ConfigMessages config;
+
+	private EncodedMessage(byte[] packet, ConfigMessages config) {
+		this.packet = packet;
+		this.config = config;
+	}
+
+	public static EncodedMessage encode(PackedMessage message, boolean compress, ConfigMessages config) {
+		return new EncodedMessage(PacketWriter.writeMessage(message.toByteArray(compress)), config);
+	}
+
+	public long getSenderUIN() {
+		ByteBuffer bb = IOUtils.wrapLE(packet);
+		// INTENTIONALLY REVERSED, see PackedMessage.
+		return UINUtils.make(bb.getInt(SENDER_OFS + 4), bb.getInt(SENDER_OFS) & 0xFFFF);
+	}
+
+	/**
+	 * Copy of this message with a different sender UIN. No re-encoding involved.
+	 */
+	public EncodedMessage withSender(long senderUIN) {
+		byte[] copy = packet.clone();
+		ByteBuffer bb = IOUtils.wrapLE(copy);
+		bb.putInt(SENDER_OFS, UINUtils.hid(senderUIN));
+		bb.putInt(SENDER_OFS + 4, UINUtils.uid(senderUIN));
+		return new EncodedMessage(copy, config);
+	}
+
+	/**
+	 * The message without packet framing, i.e. as PackedMessage.toByteArray would give (for spooling).
+	 */
+	public byte[] copyPackedMessage() {
+		return Arrays.copyOfRange(packet, PacketReader.PACKET_HEADER_SIZE, packet.length);
+	}
+
+	/**
+	 * Decodes a fresh PackedMessage, for recipients that need one.
+	 */
+	public PackedMessage decode() {
+		return PackedMessage.read(copyPackedMessage(), config);
+	}
+}
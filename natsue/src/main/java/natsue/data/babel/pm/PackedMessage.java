@@ -8,6 +8,7 @@
 package natsue.data.babel.pm;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
 
 import cdsp.common.data.IOUtils;
 import cdsp.common.data.pray.PRAYBlock;
@@ -28,9 +29,23 @@ public abstract class PackedMessage {
 	public static final int TYPE_PRAY = 0;
 	public static final int TYPE_WRIT = 1;
 
+	/**
+	 * How often toByteArray could send on the bytes a message was read from, and how often it couldn't.
+	 */
+	public static final LongAdder passThroughHits = new LongAdder();
+	public static final LongAdder passThroughMisses = new LongAdder();
+
 	public final int messageType;
 	public long senderUIN;
 
+	/**
+	 * The bytes this message was read from, if they can be sent on as-is (other than the sender UIN).
+	 * Subclasses decide whether the message has been changed since (see isUnmodified).
+	 */
+	private byte[] original;
+	// Whether the original has compressed/uncompressed PRAY blocks (always false for other messages).
+	private boolean originalCompressed, originalUncompressed;
+
 	public PackedMessage(int type) {
 		messageType = type;
 	}
@@ -50,8 +65,20 @@ public abstract class PackedMessage {
 		int messageType = b.getInt(28);
 		// Do decoding
 		ByteBuffer messageDataSlice = IOUtils.wrapLE(toDecode, HEADER_LEN, messageDataLen);
+		PackedMessage result;
 		if (messageType == TYPE_PRAY) {
-			return new PackedMessagePRAY(senderUIN, PRAYBlock.read(messageDataSlice, cfg.maxDecompressedPRAYSize.getValue(), PacketReader.CHARSET));
+			PackedMessagePRAY pray = new PackedMessagePRAY(senderUIN, PRAYBlock.read(messageDataSlice, cfg.maxDecompressedPRAYSize.getValue(), PacketReader.CHARSET));
+			pray.snapshotBlocks();
+			result = pray;
+			if (isCanonical(b, toDecode.length, messageDataLen)) {
+				int blocks = PackedMessagePRAY.scanBlocks(IOUtils.wrapLE(toDecode, HEADER_LEN, messageDataLen));
+				if (blocks != -1) {
+					result.original = toDecode;
+					result.originalCompressed = (blocks & PackedMessagePRAY.SCAN_COMPRESSED) != 0;
+					result.originalUncompressed = (blocks & PackedMessagePRAY.SCAN_UNCOMPRESSED) != 0;
+				}
+			}
+			return result;
 		} else if (messageType == TYPE_WRIT) {
 			if (messageDataLen > cfg.maxNetWritSize.getValue())
 				throw new RuntimeException("Too much data for a NET: WRIT!");
@@ -63,13 +90,84 @@ public abstract class PackedMessage {
 		} else {
 			byte[] messageData = new byte[messageDataLen];
 			messageDataSlice.get(messageData);
-			return new PackedMessageUnknown(senderUIN, messageType, messageData);
+			result = new PackedMessageUnknown(senderUIN, messageType, messageData);
+			if (isCanonical(b, toDecode.length, messageDataLen))
+				result.original = toDecode;
+			return result;
+		}
+	}
+
+	/**
+	 * True if toByteArray would produce exactly these bytes (sender UIN aside), so they can be sent on as they are.
+	 */
+	private static boolean isCanonical(ByteBuffer b, int length, int messageDataLen) {
+		return length == HEADER_LEN + messageDataLen &&
+			b.getInt(0) == length &&
+			// HID as toByteArray writes it (sign-extended)
+			b.getInt(4) == (short) b.getInt(4) &&
+			b.getInt(16) == 0 &&
+			b.getInt(20) == 1 &&
+			b.getInt(24) == 0x0C &&
+			b.getInt(32) == 0;
+	}
+
+	/**
+	 * Makes sure all of the message can be decoded, as parts of it are only decoded on demand.
+	 * Throws an exception if not.
+	 */
+	public void verify() {
+	}
+
+	/**
+	 * If this returns false, the message has changed since it was read, and must be re-encoded.
+	 * Only called on messages that were read.
+	 */
+	protected boolean isUnmodified() {
+		return false;
+	}
+
+	/**
+	 * Must be called by anything that modifies a read message in a way subclasses can't see (i.e. editing arrays in place).
+	 * Never needed for changes to senderUIN.
+	 */
+	public synchronized void markModified() {
+		original = null;
+	}
+
+	/**
+	 * Returns the original bytes with the current sender UIN, or null if they can't be used.
+	 */
+	private synchronized byte[] passThrough(boolean compressIfAllowed) {
+		if (original == null)
+			return null;
+		// Re-encoding would compress or decompress blocks, so the original isn't what's wanted.
+		if ((originalCompressed && !compressIfAllowed) || (originalUncompressed && compressIfAllowed) || !isUnmodified()) {
+			passThroughMisses.increment();
+			return null;
+		}
+		ByteBuffer bb = IOUtils.wrapLE(original);
+		if (UINUtils.make(bb.getInt(8), bb.getInt(4)) != senderUIN) {
+			// Whoever has the bytes already (the reader, previous recipients) doesn't expect them to change.
+			original = original.clone();
+			bb = IOUtils.wrapLE(original);
+			// INTENTIONALLY REVERSED, see toByteArray.
+			bb.putInt(4, UINUtils.hid(senderUIN));
+			bb.putInt(8, UINUtils.uid(senderUIN));
 		}
+		passThroughHits.increment();
+		return original;
 	}
 
 	public abstract byte[] getOrPackContents(boolean compress);
 
+	/**
+	 * Encodes the message. The result must not be modified.
+	 * For a message that was read and hasn't changed, this is the original bytes.
+	 */
 	public byte[] toByteArray(boolean compressIfAllowed) {
+		byte[] pass = passThrough(compressIfAllowed);
+		if (pass != null)
+			return pass;
 		byte[] messageData = getOrPackContents(compressIfAllowed);
 		int len = messageData.length + HEADER_LEN;
 		ByteBuffer bb = IOUtils.newBuffer(len);
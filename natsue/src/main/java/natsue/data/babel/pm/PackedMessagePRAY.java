@@ -7,6 +7,7 @@
 
 package natsue.data.babel.pm;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 
 import cdsp.common.data.pray.PRAYBlock;
@@ -17,6 +18,10 @@ import cdsp.common.data.pray.PRAYBlock;
 public class PackedMessagePRAY extends PackedMessage {
 	public LinkedList<PRAYBlock> messageBlocks;
 
+	// What messageBlocks looked like when read.
+	// Replacing blocks or their data is detected, but editing arrays in place isn't.
+	private PRAYBlock[] readBlocks;
+
 	public PackedMessagePRAY() {
 		super(TYPE_PRAY);
 	}
@@ -36,6 +41,57 @@ public class PackedMessagePRAY extends PackedMessage {
 		messageBlocks.add(data);
 	}
 
+	void snapshotBlocks() {
+		readBlocks = messageBlocks.toArray(new PRAYBlock[0]);
+	}
+
+	@Override
+	protected boolean isUnmodified() {
+		if (readBlocks == null || messageBlocks.size() != readBlocks.length)
+			return false;
+		int i = 0;
+		for (PRAYBlock pb : messageBlocks) {
+			if (pb != readBlocks[i] || !pb.isDataAsRead())
+				return false;
+			i++;
+		}
+		return true;
+	}
+
+	static final int SCAN_COMPRESSED = 1;
+	static final int SCAN_UNCOMPRESSED = 2;
+
+	/**
+	 * Looks over the block headers of a (known good) PRAY file.
+	 * Returns SCAN_COMPRESSED and/or SCAN_UNCOMPRESSED depending on what blocks there are, or -1 if rewriting it would change it.
+	 */
+	static int scanBlocks(ByteBuffer file) {
+		// Skip magic
+		int pos = file.position() + 4;
+		int res = 0;
+		while (pos < file.limit()) {
+			// type, name, compressed size, decompressed size, flags
+			int compressedSize = file.getInt(pos + 132);
+			int decompressedSize = file.getInt(pos + 136);
+			int flags = file.getInt(pos + 140);
+			if (flags == 1) {
+				res |= SCAN_COMPRESSED;
+			} else if (flags != 0 || compressedSize != decompressedSize) {
+				return -1;
+			} else {
+				res |= SCAN_UNCOMPRESSED;
+			}
+			pos += 144 + compressedSize;
+		}
+		return res;
+	}
+
+	@Override
+	public void verify() {
+		for (PRAYBlock pb : messageBlocks)
+			pb.getData();
+	}
+
 	@Override
 	public byte[] getOrPackContents(boolean compress) {
 		return PRAYBlock.write(messageBlocks, compress);
@@ -12,6 +12,7 @@ package natsue.data.babel.pm;
  */
 public class PackedMessageUnknown extends PackedMessage {
 	public byte[] messageData;
+	private byte[] readMessageData;
 
 	public PackedMessageUnknown(int type) {
 		super(type);
@@ -24,6 +25,12 @@ public class PackedMessageUnknown extends PackedMessage {
 	public PackedMessageUnknown(long uin, int t, byte[] data) {
 		super(uin, t);
 		messageData = data;
+		readMessageData = data;
+	}
+
+	@Override
+	protected boolean isUnmodified() {
+		return messageData == readMessageData;
 	}
 
 	@Override
@@ -9,8 +9,10 @@ package natsue.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
@@ -19,11 +21,17 @@ import java.security.cert.X509Certificate;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 
+import cdsp.common.data.pray.PRAYCodec;
 import natsue.config.*;
 import natsue.log.*;
 import natsue.server.cryo.CryoFrontend;
+import natsue.server.database.DBBackend;
 import natsue.server.database.INatsueDatabase;
 import natsue.server.database.jdbc.JDBCNatsueDatabase;
+import natsue.server.database.mem.MemNatsueDatabase;
+import natsue.server.database.spool.SpoolBackend;
+import natsue.server.database.spool.SpoolLog;
+import natsue.server.database.spool.SpoolLogNatsueDatabase;
 import natsue.server.firewall.*;
 import natsue.server.glst.FileGLSTStorage;
 import natsue.server.glst.GLSTStoreMode;
@@ -38,6 +46,7 @@ import natsue.server.photo.IPhotoStorage;
 import natsue.server.photo.PhotoFunctions;
 import natsue.server.session.LoginSessionState;
 import natsue.server.system.SystemUserHubClient;
+import natsue.server.timing.TimingWheel;
 
 /**
  * It all starts here.
@@ -62,11 +71,21 @@ public class Main {
 
 		mySource.log("Read configuration.");
 
-		INatsueDatabase actualDB = new JDBCNatsueDatabase(ilp, config.db);
+		PRAYCodec.setDefault(new PRAYCodec(config.messages.prayCompressionLevel.getValue(), config.messages.prayCompressionStrategy.getValue()));
+
+		INatsueDatabase actualDB;
+		if (config.db.dbBackend.getValue() == DBBackend.memory) {
+			actualDB = new MemNatsueDatabase(ilp, config.db);
+		} else {
+			actualDB = new JDBCNatsueDatabase(ilp, config.db);
+		}
+		if (config.db.spoolBackend.getValue() == SpoolBackend.log)
+			actualDB = new SpoolLogNatsueDatabase(actualDB, SpoolLog.open(config.db, ilp), ilp);
 
 		mySource.log("DB abstraction initialized.");
 
-		QuotaManager qm = new QuotaManager(config.connectionQuotas);
+		TimingWheel timers = TimingWheel.startServerWheel(ilp);
+		QuotaManager qm = new QuotaManager(config.connectionQuotas, timers);
 
 		mySource.log("Quota management initialized.");
 
@@ -94,50 +113,9 @@ public class Main {
 
 		final ServerHub serverHub = new ServerHub(config, qm, ilp, actualDB, cryo);
 		// determine the firewall
-		IFWModule[] firewall = null;
-		switch (config.firewallLevel.getValue()) {
-		case minimal:
-			mySource.log("Firewall level: minimal: MINIMAL, HAZARDOUS TO VANILLA CLIENTS");
-			firewall = new IFWModule[] {
-				new HypercallFWModule(ilp, serverHub, config),
-				new DataExtractorFWModule(serverHub, false, photo, glst),
-				new SpoolListFWModule(serverHub)
-			};
-			break;
-		case vanillaSafe:
-			mySource.log("Firewall level: vanillaSafe: Should be safe enough.");
-			firewall = new IFWModule[] {
-				new HypercallFWModule(ilp, serverHub, config),
-				new NetWritFWModule(serverHub, config.allowNetWrit.getValue()),
-				new PRAYBlockListsFWModule(serverHub, false),
-				new CreatureCheckingFWModule(serverHub),
-				new ComplexFWModule(serverHub),
-				new DataExtractorFWModule(serverHub, true, photo, glst),
-				new SpoolListFWModule(serverHub)
-			};
-			break;
-		case full:
-		default:
-			mySource.log("Firewall level: full: No fun allowed.");
-			firewall = new IFWModule[] {
-				new HypercallFWModule(ilp, serverHub, config),
-				new NetWritFWModule(serverHub, config.allowNetWrit.getValue()),
-				new PRAYBlockListsFWModule(serverHub, true),
-				new CreatureCheckingFWModule(serverHub),
-				new ComplexFWModule(serverHub),
-				new DataExtractorFWModule(serverHub, true, photo, glst),
-				new SpoolListFWModule(serverHub)
-			};
-			break;
-		case rejectAll:
-			mySource.log("Firewall level: rejectAll: FOR TESTING ONLY");
-			firewall = new IFWModule[] {
-				new HypercallFWModule(ilp, serverHub, config),
-				new DataExtractorFWModule(serverHub, false, photo, glst),
-				new RejectAllFWModule(serverHub)
-			};
-			break;
-		}
+		FirewallLevel firewallLevel = config.firewallLevel.getValue();
+		mySource.log("Firewall level: " + firewallLevel + ": " + firewallLevel.description);
+		IFWModule[] firewall = firewallLevel.createModules(ilp, serverHub, config, photo, glst);
 		serverHub.setFirewall(firewall, new Rejector(serverHub, SystemUserHubClient.IDENTITY));
 		// login the system user
 		serverHub.clientLogin(new SystemUserHubClient(config, ilp, serverHub), () -> {});
@@ -179,7 +157,7 @@ public class Main {
 				mySource.log("Bound SSLServerSocket to port " + portSSL);
 				new Thread() {
 					public void run() {
-						doSocketAcceptLoop(sv, qm, serverHub, hhi, ilp, config);
+						doSocketAcceptLoop(sv, qm, timers, serverHub, hhi, ilp, config);
 					}
 				}.start();
 			} catch (Exception ex) {
@@ -188,12 +166,23 @@ public class Main {
 		}
 
 		int port = config.conn.port.getValue();
+		if (config.conn.engine.getValue() == ConnectionEngine.nio) {
+			try (ServerSocketChannel sv = ServerSocketChannel.open()) {
+				sv.bind(new InetSocketAddress(port));
+				NIOEngine engine = new NIOEngine(qm, timers, (st) -> {
+					return new LoginSessionState(config, st, serverHub, timers);
+				}, hhi, ilp, config);
+				mySource.log("Bound ServerSocketChannel (NIO engine) to port " + port + " - ready to accept connections.");
+				engine.doAcceptLoop(sv);
+			}
+			return;
+		}
 		try (ServerSocket sv = new ServerSocket(port)) {
 			mySource.log("Bound ServerSocket to port " + port + " - ready to accept connections.");
-			doSocketAcceptLoop(sv, qm, serverHub, hhi, ilp, config);
+			doSocketAcceptLoop(sv, qm, timers, serverHub, hhi, ilp, config);
 		}
 	}
-	public static void doSocketAcceptLoop(ServerSocket sv, QuotaManager qm, ServerHub hub, IHTTPHandler hhi, ILogProvider ilp, Config config) {
+	public static void doSocketAcceptLoop(ServerSocket sv, QuotaManager qm, TimingWheel timers, ServerHub hub, IHTTPHandler hhi, ILogProvider ilp, Config config) {
 		while (true) {
 			Socket skt;
 			try {
@@ -218,8 +207,8 @@ public class Main {
 				}
 				continue;
 			}
-			new SocketThread(skt, qm, (st) -> {
-				return new LoginSessionState(config, st, hub);
+			new SocketThread(skt, qm, timers, (st) -> {
+				return new LoginSessionState(config, st, hub, timers);
 			}, hhi, ilp, config).start();
 		}
 	}
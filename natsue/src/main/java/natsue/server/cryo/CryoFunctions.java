@@ -40,22 +40,22 @@ public class CryoFunctions {
 	 */
 	public static void cryoUpdateRootStorage(PRAYBlock inp, long fromUIN) {
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(inp.data);
+		pt.read(inp.getData());
 		pt.strMap.put("Pray Extra natsueCryoSubmitter", UINUtils.toString(fromUIN));
 		pt.intMap.put("Pray Extra natsueCryoSubmitTime", (int) UnixTime.get());
 		pt.intMap.put("Pray Extra natsueCryoSubmitTimeH", (int) (UnixTime.get() >> 32));
-		inp.data = pt.toByteArray();
+		inp.setData(pt.toByteArray());
 	}
 	/**
 	 * Remove stashed data.
 	 */
 	public static void cryoUpdateRootRetrieval(PRAYBlock inp, long fromUIN) {
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(inp.data);
+		pt.read(inp.getData());
 		pt.strMap.remove("Pray Extra natsueCryoSubmitter");
 		pt.intMap.remove("Pray Extra natsueCryoSubmitTime");
 		pt.intMap.remove("Pray Extra natsueCryoSubmitTimeH");
-		inp.data = pt.toByteArray();
+		inp.setData(pt.toByteArray());
 	}
 	/**
 	 * Returns a reason for receipt incompatibility (if any).
@@ -65,7 +65,7 @@ public class CryoFunctions {
 		// Handle tags and so forth
 		// NB norn detector
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(block.data);
+		pt.read(block.getData());
 		int reC = pt.intMap.get("Gender");
 		int reG = pt.intMap.get("Genus");
 		boolean isNB = reC != 1 && reC != 2;
@@ -8,6 +8,7 @@
 package natsue.server.database;
 
 import java.util.LinkedList;
+import java.util.List;
 
 import natsue.data.babel.UINUtils;
 
@@ -46,9 +47,20 @@ public interface INatsueDatabase {
 	boolean spoolMessage(int uid, int causeUID, byte[] pm);
 
 	/**
-	 * Removes an arbitrary PackedMessage from a user's spool, or returns null if it's not there.
+	 * Spools several messages, all at once (or not at all).
 	 */
-	byte[] popFirstSpooledMessage(int uid);
+	boolean spoolMessages(List<NatsueDBSpoolInsert> messages);
+
+	/**
+	 * Returns up to limit of a user's spooled messages, oldest first, without removing them.
+	 * Returns null for none.
+	 */
+	LinkedList<NatsueDBSpooledMessage> getSpooledMessages(int uid, int limit);
+
+	/**
+	 * Removes the given messages from a user's spool, all at once (or not at all).
+	 */
+	boolean deleteSpooledMessages(int uid, long[] ids);
 
 	/**
 	 * Registers a creature in the database (or at least tries to...)
@@ -78,6 +90,12 @@ public interface INatsueDatabase {
 	 */
 	boolean ensureCreatureEvent(int senderUID, String moniker, int index, int type, int worldTime, int ageTicks, int unixTime, int lifeStage, String param1, String param2, String worldName, String worldID, String userID);
 
+	/**
+	 * Registers creature life events (skipping any that already exist) in one transaction.
+	 * Returns false if nothing was written.
+	 */
+	boolean ensureCreatureEvents(List<NatsueDBCreatureEvent> events);
+
 	/**
 	 * Returns creatures in world.
 	 * Returns null for none.
@@ -105,4 +123,10 @@ public interface INatsueDatabase {
 	 * Tries to update a user's authentication details.
 	 */
 	boolean updateUserAuth(int uid, String hash, int flags, long twoFA);
+
+	/**
+	 * Reports on database state (i.e. connections), if there's anything to report.
+	 */
+	default void runSystemCheck(StringBuilder sb) {
+	}
 }
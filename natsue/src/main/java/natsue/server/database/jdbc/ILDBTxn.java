@@ -7,7 +7,6 @@
 
 package natsue.server.database.jdbc;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 
 /**
@@ -24,7 +23,7 @@ public abstract class ILDBTxn<V> {
 
 	public final V executeOuter(ILDBTxnHost base) {
 		try (ILDBTxnHost.AcquiredConnection aConn = base.acquireConnection()) {
-			return executeInner(aConn.getInstance());
+			return executeInner(aConn);
 		} catch (Exception ex) {
 			if (base.logExpectedDBErrors() || !failureExpected)
 				base.getLogSource().log(ex);
@@ -32,5 +31,5 @@ public abstract class ILDBTxn<V> {
 		return failureResult;
 	}
 
-	protected abstract V executeInner(Connection conn) throws SQLException;
+	protected abstract V executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException;
 }
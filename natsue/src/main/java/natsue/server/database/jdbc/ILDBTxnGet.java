@@ -7,7 +7,6 @@
 
 package natsue.server.database.jdbc;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -26,14 +25,13 @@ public abstract class ILDBTxnGet<V> extends ILDBTxn<V> {
 	}
 
 	@Override
-	protected V executeInner(Connection conn) throws SQLException {
-		try (PreparedStatement ps = conn.prepareStatement(sql)) {
-			parameterize(ps);
-			try (ResultSet rs = ps.executeQuery()) {
-				if (!rs.next())
-					return failureResult;
-				return resultSetConverter.fromResultSet(rs);
-			}
+	protected V executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+		PreparedStatement ps = conn.prepare(sql);
+		parameterize(ps);
+		try (ResultSet rs = ps.executeQuery()) {
+			if (!rs.next())
+				return failureResult;
+			return resultSetConverter.fromResultSet(rs);
 		}
 	}
 
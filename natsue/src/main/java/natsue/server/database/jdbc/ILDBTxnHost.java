@@ -8,6 +8,7 @@
 package natsue.server.database.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import natsue.log.ILogSource;
@@ -20,7 +21,19 @@ public interface ILDBTxnHost {
 	boolean logExpectedDBErrors();
 	ILogSource getLogSource();
 
+	/**
+	 * Reports on connection state, if there's anything to report.
+	 */
+	default void runSystemCheck(StringBuilder sb) {
+	}
+
 	interface AcquiredConnection extends AutoCloseable {
 		Connection getInstance();
+
+		/**
+		 * Prepares a statement. The statement belongs to the connection, so don't close it.
+		 * It may be cached and handed out again (parameters cleared) to later transactions on this connection.
+		 */
+		PreparedStatement prepare(String sql) throws SQLException;
 	}
 }
@@ -9,7 +9,10 @@ package natsue.server.database.jdbc;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import natsue.config.ConfigDB;
 import natsue.log.ILogSource;
@@ -20,25 +23,54 @@ import natsue.log.ILogSource;
 public class ILDBTxnHostOneRequestOneConnection implements ILDBTxnHost {
 	public final ConfigDB config;
 	public final ILogSource logSource;
+	// Held for the whole transaction if the database can only handle one at a time.
+	private final ReentrantLock serializer;
 
 	public ILDBTxnHostOneRequestOneConnection(ConfigDB cfg, ILogSource ls) {
 		config = cfg;
 		logSource = ls;
+		serializer = cfg.dbType.getValue().serialized ? new ReentrantLock() : null;
 	}
 
 	@Override
 	public AcquiredConnection acquireConnection() throws SQLException {
-		final Connection conn = DriverManager.getConnection(config.dbConnection.getValue());
+		if (serializer != null)
+			serializer.lock();
+		final Connection conn;
+		try {
+			conn = DriverManager.getConnection(config.dbConnection.getValue());
+		} catch (SQLException | RuntimeException ex) {
+			if (serializer != null)
+				serializer.unlock();
+			throw ex;
+		}
 		return new AcquiredConnection() {
+			final ArrayList<PreparedStatement> statements = new ArrayList<>();
+
 			@Override
 			public void close() throws Exception {
-				conn.close();
+				try {
+					// closing the connection would do this, but the driver may not be trustworthy
+					for (PreparedStatement ps : statements)
+						ps.close();
+					conn.close();
+				} finally {
+					if (serializer != null)
+						serializer.unlock();
+				}
 			}
 			
 			@Override
 			public Connection getInstance() {
 				return conn;
 			}
+
+			@Override
+			public PreparedStatement prepare(String sql) throws SQLException {
+				PreparedStatement ps = conn.prepareStatement(sql);
+				statements.add(ps);
+				return ps;
+			}
 		};
 	}
 
@@ -0,0 +1,329 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import natsue.config.ConfigDB;
+import natsue.log.ILogSource;
+
+/**
+ * Keeps connections around between transactions, rather than connecting (and for MySQL, authenticating) every time.
+ * Idle connections are kept most-recently-used first, so the ones at the back are those that have sat around longest.
+ * Those past the idle timeout are closed (down to the minimum pool size) in the background.
+ * Connections are validated when borrowed, as the server may have dropped them in the meantime.
+ * Each connection keeps its most recently used prepared statements, keyed by SQL text.
+ */
+public class ILDBTxnHostPooled implements ILDBTxnHost {
+	private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor((r) -> {
+		Thread t = new Thread(r, "Natsue-DBPoolEvictor");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public final ConfigDB config;
+	public final ILogSource logSource;
+
+	private final int minSize, maxSize;
+	private final int validationTimeout;
+	private final long idleTimeoutNanos;
+	private final long acquireTimeoutNanos;
+	private final int statementCacheSize;
+	// Held from acquire to release if the database can only handle one transaction at a time.
+	private final ReentrantLock serializer;
+
+	private final Object lock = new Object();
+	private final ArrayDeque<Pooled> idle = new ArrayDeque<>();
+	// Connections that exist or are being created, idle or not.
+	private int total;
+
+	private final LongAdder created = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+	private final LongAdder borrows = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder statementHits = new LongAdder();
+	private final LongAdder statementMisses = new LongAdder();
+
+	public ILDBTxnHostPooled(ConfigDB cfg, ILogSource ls) {
+		config = cfg;
+		logSource = ls;
+		maxSize = Math.max(1, cfg.dbPoolMaxSize.getValue());
+		minSize = Math.max(0, Math.min(maxSize, cfg.dbPoolMinSize.getValue()));
+		validationTimeout = cfg.dbPoolValidationTimeout.getValue();
+		idleTimeoutNanos = TimeUnit.SECONDS.toNanos(cfg.dbPoolIdleTimeout.getValue());
+		acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(cfg.dbPoolAcquireTimeout.getValue());
+		statementCacheSize = cfg.dbStatementCacheSize.getValue();
+		serializer = cfg.dbType.getValue().serialized ? new ReentrantLock() : null;
+		if (idleTimeoutNanos > 0) {
+			long period = Math.max(1, idleTimeoutNanos / 2);
+			EVICTOR.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.NANOSECONDS);
+		}
+		// Fill up to the minimum now, so the first transactions don't have to wait on connecting.
+		ArrayList<AcquiredConnection> initial = new ArrayList<>();
+		try {
+			for (int i = 0; i < minSize; i++)
+				initial.add(acquireConnection());
+		} catch (SQLException ex) {
+			logSource.log(ex);
+		}
+		for (AcquiredConnection ac : initial)
+			((Pooled) ac).close();
+	}
+
+	@Override
+	public AcquiredConnection acquireConnection() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + acquireTimeoutNanos;
+		boolean waited = false;
+		boolean locked = false;
+		try {
+			if (serializer != null) {
+				if (!serializer.tryLock()) {
+					waited = true;
+					try {
+						if (!serializer.tryLock(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+							timeouts.increment();
+							throw new SQLException("Timed out waiting for the database");
+						}
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for the database", ie);
+					}
+				}
+				locked = true;
+			}
+			while (true) {
+				Pooled pc = null;
+				boolean create = false;
+				synchronized (lock) {
+					while (idle.isEmpty() && total >= maxSize) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							timeouts.increment();
+							throw new SQLException("Timed out waiting for a database connection (" + maxSize + " in use)");
+						}
+						waited = true;
+						try {
+							TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+							throw new SQLException("Interrupted waiting for a database connection", ie);
+						}
+					}
+					if (!idle.isEmpty()) {
+						pc = idle.pollFirst();
+					} else {
+						total++;
+						create = true;
+					}
+				}
+				// Connecting and validating are done outside the lock, as they can take a while.
+				if (create) {
+					try {
+						pc = new Pooled(DriverManager.getConnection(config.dbConnection.getValue()));
+					} catch (SQLException | RuntimeException ex) {
+						synchronized (lock) {
+							total--;
+							lock.notify();
+						}
+						throw ex;
+					}
+					created.increment();
+				} else if (!isValid(pc.conn)) {
+					discard(pc);
+					continue;
+				}
+				borrows.increment();
+				locked = false;
+				return pc;
+			}
+		} finally {
+			if (locked)
+				serializer.unlock();
+			if (waited) {
+				waits.increment();
+				waitNanos.add(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private boolean isValid(Connection conn) {
+		if (validationTimeout < 0)
+			return true;
+		try {
+			return conn.isValid(validationTimeout);
+		} catch (SQLException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool (or gets rid of it if it's been left in a bad state).
+	 */
+	private void release(Pooled pc) {
+		try {
+			returnToPool(pc);
+		} finally {
+			if (serializer != null)
+				serializer.unlock();
+		}
+	}
+
+	private void returnToPool(Pooled pc) {
+		try {
+			if (pc.conn.isClosed()) {
+				discard(pc);
+				return;
+			}
+			// A transaction that failed partway through may not have cleaned up after itself.
+			if (!pc.conn.getAutoCommit()) {
+				pc.conn.rollback();
+				pc.conn.setAutoCommit(true);
+			}
+			if (statementCacheSize <= 0)
+				pc.closeStatements();
+		} catch (SQLException ex) {
+			discard(pc);
+			return;
+		}
+		pc.lastUsed = System.nanoTime();
+		synchronized (lock) {
+			idle.addFirst(pc);
+			lock.notify();
+		}
+	}
+
+	private void discard(Pooled pc) {
+		synchronized (lock) {
+			total--;
+			lock.notify();
+		}
+		discarded.increment();
+		try {
+			pc.conn.close();
+		} catch (SQLException ex) {
+			// it's going away anyway
+		}
+	}
+
+	/**
+	 * Closes connections that have been idle too long, keeping at least the minimum.
+	 */
+	private void evict() {
+		ArrayList<Pooled> evicted = new ArrayList<>();
+		long now = System.nanoTime();
+		synchronized (lock) {
+			while (total > minSize && !idle.isEmpty() && now - idle.peekLast().lastUsed >= idleTimeoutNanos) {
+				evicted.add(idle.pollLast());
+				total--;
+			}
+		}
+		for (Pooled pc : evicted) {
+			discarded.increment();
+			try {
+				pc.conn.close();
+			} catch (SQLException ex) {
+				// it's going away anyway
+			}
+		}
+	}
+
+	@Override
+	public boolean logExpectedDBErrors() {
+		return config.logExpectedDBErrors.getValue();
+	}
+
+	@Override
+	public ILogSource getLogSource() {
+		return logSource;
+	}
+
+	@Override
+	public void runSystemCheck(StringBuilder sb) {
+		int idleCount, totalCount;
+		synchronized (lock) {
+			idleCount = idle.size();
+			totalCount = total;
+		}
+		long waitCount = waits.sum();
+		long avgWaitMicros = waitCount == 0 ? 0 : (waitNanos.sum() / waitCount) / 1000;
+		sb.append("DB pool: A" + (totalCount - idleCount) + " I" + idleCount + " (max " + maxSize + ")\n");
+		sb.append("DB pool use: B" + borrows.sum() + " C" + created.sum() + " D" + discarded.sum() + " W" + waitCount + " (avg " + avgWaitMicros + "us) T" + timeouts.sum() + "\n");
+		sb.append("DB statement cache: H" + statementHits.sum() + " M" + statementMisses.sum() + "\n");
+	}
+
+	private final class Pooled implements AcquiredConnection {
+		final Connection conn;
+		long lastUsed;
+		// Access-ordered, so the eldest entry is the least recently used.
+		final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (statementCacheSize <= 0 || size() <= statementCacheSize)
+					return false;
+				try {
+					eldest.getValue().close();
+				} catch (SQLException ex) {
+					// it's going away anyway
+				}
+				return true;
+			}
+		};
+
+		Pooled(Connection c) {
+			conn = c;
+		}
+
+		@Override
+		public Connection getInstance() {
+			return conn;
+		}
+
+		@Override
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement ps = statements.get(sql);
+			if (ps != null && !ps.isClosed()) {
+				statementHits.increment();
+				ps.clearParameters();
+				ps.clearBatch();
+				return ps;
+			}
+			statementMisses.increment();
+			ps = conn.prepareStatement(sql);
+			statements.put(sql, ps);
+			return ps;
+		}
+
+		void closeStatements() throws SQLException {
+			for (PreparedStatement ps : statements.values())
+				ps.close();
+			statements.clear();
+		}
+
+		@Override
+		public void close() {
+			release(this);
+		}
+	}
+}
@@ -11,6 +11,21 @@ package natsue.server.database.jdbc;
  * Used to select different SQL sequences.
  */
 public enum ILDBVariant {
-	sqlite,
-	mysql;
+	sqlite(true, "INSERT OR IGNORE"),
+	mysql(false, "INSERT IGNORE");
+
+	/**
+	 * If true, only one transaction may run at a time (SQLite would just fail the others with SQLITE_BUSY).
+	 */
+	public final boolean serialized;
+
+	/**
+	 * Starts an INSERT that skips rows that would violate a unique key, rather than failing.
+	 */
+	public final String insertOrIgnore;
+
+	ILDBVariant(boolean s, String ioi) {
+		serialized = s;
+		insertOrIgnore = ioi;
+	}
 }
@@ -11,6 +11,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.LinkedList;
+import java.util.List;
 
 import natsue.config.ConfigDB;
 import natsue.log.ILogProvider;
@@ -18,29 +19,41 @@ import natsue.log.ILogSource;
 import natsue.server.database.INatsueDatabase;
 import natsue.server.database.NatsueDBCreatureEvent;
 import natsue.server.database.NatsueDBCreatureInfo;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
 import natsue.server.database.NatsueDBUserInfo;
 import natsue.server.database.NatsueDBWorldInfo;
 
 /**
  * JDBC-based Natsue database implementation.
  * REMEMBER: STUFF HERE CAN BE ACCESSED FROM MULTIPLE THREADS.
+ * Each call builds its own transaction, so calls run concurrently (as far as the transaction host allows).
  */
 public class JDBCNatsueDatabase implements INatsueDatabase, ILogSource {
 	private final ILogProvider logParent;
-	private final JDBCNatsueTxns txns = new JDBCNatsueTxns();
 	private final ConfigDB config;
 	private final ILDBTxnHost txnHost;
+	private final ILDBVariant variant;
 
 	public JDBCNatsueDatabase(ILogProvider ilp, ConfigDB cfg) throws SQLException {
 		config = cfg;
 		logParent = ilp;
 		log("JDBCNatsueDatabase, configured for " + cfg.dbType.valueToString());
 		// this needs to be read from config if/when stuff hits that needs it
-		ILDBVariant variant = cfg.dbType.getValue();
+		variant = cfg.dbType.getValue();
 		try (Connection conn = DriverManager.getConnection(config.dbConnection.getValue())) {
 			ILMigrations.migrate(conn, variant, this);
 		}
-		txnHost = new ILDBTxnHostOneRequestOneConnection(cfg, this);
+		if (cfg.dbPoolMaxSize.getValue() > 0) {
+			txnHost = new ILDBTxnHostPooled(cfg, this);
+		} else {
+			txnHost = new ILDBTxnHostOneRequestOneConnection(cfg, this);
+		}
+	}
+
+	@Override
+	public void runSystemCheck(StringBuilder sb) {
+		txnHost.runSystemCheck(sb);
 	}
 
 	@Override
@@ -50,145 +63,86 @@ public class JDBCNatsueDatabase implements INatsueDatabase, ILogSource {
 
 	@Override
 	public NatsueDBUserInfo getUserByUID(int uid) {
-		synchronized (this) {
-			txns.userByUID.uid = uid;
-			return txns.userByUID.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.UserByUID(uid).executeOuter(txnHost);
 	}
 
 	@Override
 	public NatsueDBUserInfo getUserByFoldedNickname(String nickname) {
-		synchronized (this) {
-			txns.userByFoldedNickname.nicknameFolded = nickname;
-			return txns.userByFoldedNickname.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.UserByFoldedNickname(nickname).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean spoolMessage(int uid, int causeUID, byte[] pm) {
-		synchronized (this) {
-			txns.storeOnSpool.uid = uid;
-			txns.storeOnSpool.causeUID = causeUID;
-			txns.storeOnSpool.data = pm;
-			return txns.storeOnSpool.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.StoreOnSpool(uid, causeUID, pm).executeOuter(txnHost);
 	}
 
 	@Override
-	public byte[] popFirstSpooledMessage(int uid) {
-		synchronized (this) {
-			txns.popFromSpool.uid = uid;
-			return txns.popFromSpool.executeOuter(txnHost);
-		}
+	public boolean spoolMessages(List<NatsueDBSpoolInsert> messages) {
+		return new JDBCNatsueTxns.StoreOnSpoolBatch(messages).executeOuter(txnHost);
+	}
+
+	@Override
+	public LinkedList<NatsueDBSpooledMessage> getSpooledMessages(int uid, int limit) {
+		return new JDBCNatsueTxns.GetSpool(uid, limit).executeOuter(txnHost);
+	}
+
+	@Override
+	public boolean deleteSpooledMessages(int uid, long[] ids) {
+		return new JDBCNatsueTxns.DeleteFromSpool(uid, ids).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean ensureCreature(String moniker, int firstUID, int ch0, int ch1, int ch2, int ch3, int ch4, String name, String userText) {
-		synchronized (this) {
-			txns.addCreature.moniker = moniker;
-			txns.addCreature.firstUID = firstUID;
-			txns.addCreature.ch0 = ch0;
-			txns.addCreature.ch1 = ch1;
-			txns.addCreature.ch2 = ch2;
-			txns.addCreature.ch3 = ch3;
-			txns.addCreature.ch4 = ch4;
-			txns.addCreature.name = name;
-			txns.addCreature.userText = userText;
-			return txns.addCreature.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.AddCreature(moniker, firstUID, ch0, ch1, ch2, ch3, ch4, name, userText).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean updateCreatureText(int senderUID, String moniker, String name, String userText) {
-		synchronized (this) {
-			txns.updateCreatureText.senderUID = senderUID;
-			txns.updateCreatureText.moniker = moniker;
-			txns.updateCreatureText.name = name;
-			txns.updateCreatureText.userText = userText;
-			return txns.updateCreatureText.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.UpdateCreatureText(senderUID, moniker, name, userText).executeOuter(txnHost);
 	}
 
 	@Override
 	public NatsueDBCreatureInfo getCreatureInfo(String moniker) {
-		synchronized (this) {
-			txns.getCreatureInfo.moniker = moniker;
-			return txns.getCreatureInfo.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.GetCreatureInfo(moniker).executeOuter(txnHost);
 	}
 
 	@Override
 	public LinkedList<NatsueDBCreatureEvent> getCreatureEvents(String moniker) {
-		synchronized (this) {
-			txns.getCreatureEvents.moniker = moniker;
-			return txns.getCreatureEvents.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.GetCreatureEvents(moniker).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean ensureCreatureEvent(int senderUID, String moniker, int index, int type, int worldTime, int ageTicks, int unixTime, int lifeStage, String param1, String param2, String worldName, String worldID, String userID) {
-		synchronized (this) {
-			txns.addCreatureEvent.senderUID = senderUID;
-			txns.addCreatureEvent.moniker = moniker;
-			txns.addCreatureEvent.eventIndex = index;
-			txns.addCreatureEvent.eventType = type;
-			txns.addCreatureEvent.worldTime = worldTime;
-			txns.addCreatureEvent.ageTicks = ageTicks;
-			txns.addCreatureEvent.unixTime = unixTime;
-			txns.addCreatureEvent.lifeStage = lifeStage;
-			txns.addCreatureEvent.param1 = param1;
-			txns.addCreatureEvent.param2 = param2;
-			txns.addCreatureEvent.worldName = worldName;
-			txns.addCreatureEvent.worldID = worldID;
-			txns.addCreatureEvent.userID = userID;
-			return txns.addCreatureEvent.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.AddCreatureEvent(senderUID, moniker, index, type, worldTime, ageTicks, unixTime, lifeStage, param1, param2, worldName, worldID, userID).executeOuter(txnHost);
+	}
+
+	@Override
+	public boolean ensureCreatureEvents(List<NatsueDBCreatureEvent> events) {
+		return new JDBCNatsueTxns.AddCreatureEvents(variant, events).executeOuter(txnHost);
 	}
 
 	@Override
 	public LinkedList<String> getCreaturesInWorld(String worldID, int limit, int offset) {
-		synchronized (this) {
-			txns.getCreaturesInWorld.worldID = worldID;
-			txns.getCreaturesInWorld.limit = limit;
-			txns.getCreaturesInWorld.offset = offset;
-			return txns.getCreaturesInWorld.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.GetCreaturesInWorld(worldID, limit, offset).executeOuter(txnHost);
 	}
 
 	@Override
 	public LinkedList<NatsueDBWorldInfo> getWorldsInUser(int uid, int limit, int offset) {
-		synchronized (this) {
-			txns.getWorldsInUser.uid = uid;
-			txns.getWorldsInUser.limit = limit;
-			txns.getWorldsInUser.offset = offset;
-			return txns.getWorldsInUser.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.GetWorldsInUser(uid, limit, offset).executeOuter(txnHost);
 	}
 
 	@Override
 	public NatsueDBWorldInfo getWorldInfo(String id) {
-		synchronized (this) {
-			txns.getWorldInfo.id = id;
-			return txns.getWorldInfo.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.GetWorldInfo(id).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean tryCreateUser(NatsueDBUserInfo userInfo) {
-		synchronized (this) {
-			txns.createUser.userInfo = userInfo;
-			return txns.createUser.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.CreateUser(userInfo).executeOuter(txnHost);
 	}
 
 	@Override
 	public boolean updateUserAuth(int uid, String hash, int flags, long twoFA) {
-		synchronized (this) {
-			txns.updateUserAuth.uid = uid;
-			txns.updateUserAuth.passwordHash = hash;
-			txns.updateUserAuth.flags = flags;
-			txns.updateUserAuth.twoFactorSeed = twoFA;
-			return txns.updateUserAuth.executeOuter(txnHost);
-		}
+		return new JDBCNatsueTxns.UpdateUserAuth(uid, hash, flags, twoFA).executeOuter(txnHost);
 	}
 }
@@ -12,36 +12,28 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.LinkedList;
+import java.util.List;
 
 import cdsp.common.util.Snowflake;
 import cdsp.common.util.UnixTime;
 import natsue.data.babel.UINUtils;
 import natsue.server.database.NatsueDBCreatureEvent;
 import natsue.server.database.NatsueDBCreatureInfo;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
 import natsue.server.database.NatsueDBUserInfo;
 import natsue.server.database.NatsueDBWorldInfo;
 
+/**
+ * The transactions. Each call gets its own transaction object, carrying its parameters, so calls can run concurrently.
+ */
 public class JDBCNatsueTxns {
-	public final UserByUID userByUID = new UserByUID();
-	public final UserByFoldedNickname userByFoldedNickname = new UserByFoldedNickname();
-	public final PopFromSpool popFromSpool = new PopFromSpool();
-	public final StoreOnSpool storeOnSpool = new StoreOnSpool();
-	public final AddCreature addCreature = new AddCreature();
-	public final UpdateCreatureText updateCreatureText = new UpdateCreatureText();
-	public final GetCreatureInfo getCreatureInfo = new GetCreatureInfo();
-	public final GetCreatureEvents getCreatureEvents = new GetCreatureEvents();
-	public final AddCreatureEvent addCreatureEvent = new AddCreatureEvent();
-	public final GetCreaturesInWorld getCreaturesInWorld = new GetCreaturesInWorld();
-	public final GetWorldsInUser getWorldsInUser = new GetWorldsInUser();
-	public final GetWorldInfo getWorldInfo = new GetWorldInfo();
-	public final CreateUser createUser = new CreateUser();
-	public final UpdateUserAuth updateUserAuth = new UpdateUserAuth();
-
 	public static class UserByUID extends ILDBTxnGet<NatsueDBUserInfo> {
-		public int uid;
+		public final int uid;
 
-		public UserByUID() {
+		public UserByUID(int uid) {
 			super(UserInfoRSC.INSTANCE, "SELECT " + UserInfoRSC.SELECTION + " FROM natsue_users WHERE uid=?");
+			this.uid = uid;
 		}
 
 		@Override
@@ -50,10 +42,11 @@ public class JDBCNatsueTxns {
 		}
 	}
 	public static class UserByFoldedNickname extends ILDBTxnGet<NatsueDBUserInfo> {
-		public String nicknameFolded;
+		public final String nicknameFolded;
 
-		public UserByFoldedNickname() {
+		public UserByFoldedNickname(String nicknameFolded) {
 			super(UserInfoRSC.INSTANCE, "SELECT " + UserInfoRSC.SELECTION + " FROM natsue_users WHERE nickname_folded=?");
+			this.nicknameFolded = nicknameFolded;
 		}
 
 		@Override
@@ -61,139 +54,206 @@ public class JDBCNatsueTxns {
 			ps.setString(1, nicknameFolded);
 		}
 	}
-	public static class PopFromSpool extends ILDBTxn<byte[]> {
-		public int uid;
+	public static class GetSpool extends ILDBTxnGet<LinkedList<NatsueDBSpooledMessage>> {
+		public final int uid;
+		public final int limit;
+
+		public GetSpool(int uid, int limit) {
+			super(SpooledMessageRSC.INSTANCE_LIST,
+				"SELECT " + SpooledMessageRSC.SELECTION + " FROM natsue_spool WHERE uid=? ORDER BY id ASC LIMIT ?");
+			this.uid = uid;
+			this.limit = limit;
+		}
 
-		public PopFromSpool() {
-			super(true, null);
+		@Override
+		protected void parameterize(PreparedStatement ps) throws SQLException {
+			ps.setInt(1, uid);
+			ps.setInt(2, limit);
+		}
+	}
+	public static class DeleteFromSpool extends ILDBTxn<Boolean> {
+		public final int uid;
+		public final long[] ids;
+
+		public DeleteFromSpool(int uid, long[] ids) {
+			super(false, Boolean.FALSE);
+			this.uid = uid;
+			this.ids = ids;
 		}
 
 		@Override
-		protected byte[] executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("SELECT id, uid, data FROM natsue_spool WHERE uid=?")) {
-				stmt.setInt(1, uid);
-				try (ResultSet rs = stmt.executeQuery()) {
-					if (rs.next()) {
-						long id = rs.getLong(1);
-						byte[] message = rs.getBytes(3);
-						// and now remove from the spool
-						// NOTE: Do not give a message we haven't successfully removed from spool!
-						try (PreparedStatement stmt2 = conn.prepareStatement("DELETE FROM natsue_spool WHERE id=? and uid=?")) {
-							stmt2.setLong(1, id);
-							stmt2.setInt(2, uid);
-							stmt2.executeUpdate();
-							return message;
-						}
-					}
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			Connection c = conn.getInstance();
+			boolean oldAutoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try {
+				PreparedStatement stmt = conn.prepare("DELETE FROM natsue_spool WHERE id=? and uid=?");
+				for (long id : ids) {
+					stmt.setLong(1, id);
+					stmt.setInt(2, uid);
+					stmt.addBatch();
 				}
+				stmt.executeBatch();
+				c.commit();
+				return Boolean.TRUE;
+			} catch (SQLException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(oldAutoCommit);
 			}
-			return null;
 		}
 	}
 	public static class StoreOnSpool extends ILDBTxn<Boolean> {
-		public int uid, causeUID;
-		public byte[] data;
+		public final int uid, causeUID;
+		public final byte[] data;
 
-		public StoreOnSpool() {
+		public StoreOnSpool(int uid, int causeUID, byte[] data) {
 			super(false, Boolean.FALSE);
+			this.uid = uid;
+			this.causeUID = causeUID;
+			this.data = data;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO natsue_spool(id, uid, data, cause_uid, send_unix_time) VALUES (?, ?, ?, ?, ?)")) {
-				stmt.setLong(1, Snowflake.generateSnowflake());
-				stmt.setInt(2, uid);
-				stmt.setBytes(3, data);
-				stmt.setInt(4, causeUID);
-				stmt.setLong(5, UnixTime.get());
-				stmt.executeUpdate();
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			PreparedStatement stmt = conn.prepare("INSERT INTO natsue_spool(id, uid, data, cause_uid, send_unix_time) VALUES (?, ?, ?, ?, ?)");
+			stmt.setLong(1, Snowflake.generateSnowflake());
+			stmt.setInt(2, uid);
+			stmt.setBytes(3, data);
+			stmt.setInt(4, causeUID);
+			stmt.setLong(5, UnixTime.get());
+			stmt.executeUpdate();
+			return Boolean.TRUE;
+		}
+	}
+	public static class StoreOnSpoolBatch extends ILDBTxn<Boolean> {
+		public final List<NatsueDBSpoolInsert> messages;
+
+		public StoreOnSpoolBatch(List<NatsueDBSpoolInsert> messages) {
+			super(false, Boolean.FALSE);
+			this.messages = messages;
+		}
+
+		@Override
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			Connection c = conn.getInstance();
+			boolean oldAutoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try {
+				PreparedStatement stmt = conn.prepare("INSERT INTO natsue_spool(id, uid, data, cause_uid, send_unix_time) VALUES (?, ?, ?, ?, ?)");
+				long now = UnixTime.get();
+				for (NatsueDBSpoolInsert msg : messages) {
+					stmt.setLong(1, Snowflake.generateSnowflake());
+					stmt.setInt(2, msg.uid);
+					stmt.setBytes(3, msg.data);
+					stmt.setInt(4, msg.causeUID);
+					stmt.setLong(5, now);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				c.commit();
 				return Boolean.TRUE;
+			} catch (SQLException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(oldAutoCommit);
 			}
 		}
 	}
 	public static class AddCreature extends ILDBTxn<Boolean> {
-		public String moniker;
-		public int firstUID;
-		public int ch0;
-		public int ch1;
-		public int ch2;
-		public int ch3;
-		public int ch4;
-		public String name;
-		public String userText;
-
-		public AddCreature() {
+		public final String moniker;
+		public final int firstUID;
+		public final int ch0;
+		public final int ch1;
+		public final int ch2;
+		public final int ch3;
+		public final int ch4;
+		public final String name;
+		public final String userText;
+
+		public AddCreature(String moniker, int firstUID, int ch0, int ch1, int ch2, int ch3, int ch4, String name, String userText) {
 			super(true, Boolean.FALSE);
+			this.moniker = moniker;
+			this.firstUID = firstUID;
+			this.ch0 = ch0;
+			this.ch1 = ch1;
+			this.ch2 = ch2;
+			this.ch3 = ch3;
+			this.ch4 = ch4;
+			this.name = name;
+			this.userText = userText;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO natsue_history_creatures(" +
-					"moniker, first_uid, ch0, ch1, ch2, ch3, ch4, name, user_text, send_unix_time" +
-					") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-				stmt.setString(1, moniker);
-				stmt.setInt(2, firstUID);
-				stmt.setInt(3, ch0);
-				stmt.setInt(4, ch1);
-				stmt.setInt(5, ch2);
-				stmt.setInt(6, ch3);
-				stmt.setInt(7, ch4);
-				stmt.setString(8, name);
-				stmt.setString(9, userText);
-				stmt.setLong(10, UnixTime.get());
-				stmt.executeUpdate();
-				return Boolean.TRUE;
-			}
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			PreparedStatement stmt = conn.prepare("INSERT INTO natsue_history_creatures(" +
+				"moniker, first_uid, ch0, ch1, ch2, ch3, ch4, name, user_text, send_unix_time" +
+				") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			stmt.setString(1, moniker);
+			stmt.setInt(2, firstUID);
+			stmt.setInt(3, ch0);
+			stmt.setInt(4, ch1);
+			stmt.setInt(5, ch2);
+			stmt.setInt(6, ch3);
+			stmt.setInt(7, ch4);
+			stmt.setString(8, name);
+			stmt.setString(9, userText);
+			stmt.setLong(10, UnixTime.get());
+			stmt.executeUpdate();
+			return Boolean.TRUE;
 		}
 	}
 	public static class UpdateCreatureText extends ILDBTxn<Boolean> {
-		public int senderUID;
-		public String moniker;
-		public String name;
-		public String userText;
+		public final int senderUID;
+		public final String moniker;
+		public final String name;
+		public final String userText;
 
-		public UpdateCreatureText() {
+		public UpdateCreatureText(int senderUID, String moniker, String name, String userText) {
 			super(false, Boolean.FALSE);
+			this.senderUID = senderUID;
+			this.moniker = moniker;
+			this.name = name;
+			this.userText = userText;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
 			if ((name != null) && (userText != null)) {
-				try (PreparedStatement stmt = conn.prepareStatement("UPDATE natsue_history_creatures SET " +
-						"updater_name_uid=?, updater_text_uid=?, name=?, user_text=? " +
-						"WHERE moniker=? AND (name != ? OR user_text != ?)")) {
-					stmt.setInt(1, senderUID);
-					stmt.setInt(2, senderUID);
-					stmt.setString(3, name);
-					stmt.setString(4, userText);
-					stmt.setString(5, moniker);
-					stmt.setString(6, name);
-					stmt.setString(7, userText);
-					stmt.executeUpdate();
-					return Boolean.TRUE;
-				}
+				PreparedStatement stmt = conn.prepare("UPDATE natsue_history_creatures SET " +
+					"updater_name_uid=?, updater_text_uid=?, name=?, user_text=? " +
+					"WHERE moniker=? AND (name != ? OR user_text != ?)");
+				stmt.setInt(1, senderUID);
+				stmt.setInt(2, senderUID);
+				stmt.setString(3, name);
+				stmt.setString(4, userText);
+				stmt.setString(5, moniker);
+				stmt.setString(6, name);
+				stmt.setString(7, userText);
+				stmt.executeUpdate();
+				return Boolean.TRUE;
 			} else if (name != null) {
-				try (PreparedStatement stmt = conn.prepareStatement("UPDATE natsue_history_creatures SET " +
-						"updater_name_uid=?, name=? " +
-						"WHERE moniker=? AND name != ?")) {
-					stmt.setInt(1, senderUID);
-					stmt.setString(2, name);
-					stmt.setString(3, moniker);
-					stmt.setString(4, name);
-					stmt.executeUpdate();
-					return Boolean.TRUE;
-				}
+				PreparedStatement stmt = conn.prepare("UPDATE natsue_history_creatures SET " +
+					"updater_name_uid=?, name=? " +
+					"WHERE moniker=? AND name != ?");
+				stmt.setInt(1, senderUID);
+				stmt.setString(2, name);
+				stmt.setString(3, moniker);
+				stmt.setString(4, name);
+				stmt.executeUpdate();
+				return Boolean.TRUE;
 			} else if (userText != null) {
-				try (PreparedStatement stmt = conn.prepareStatement("UPDATE natsue_history_creatures SET " +
-						"updater_text_uid=?, user_text=? " +
-						"WHERE moniker=? AND user_text != ?")) {
-					stmt.setInt(1, senderUID);
-					stmt.setString(2, userText);
-					stmt.setString(3, moniker);
-					stmt.setString(4, userText);
-					stmt.executeUpdate();
-					return Boolean.TRUE;
-				}
+				PreparedStatement stmt = conn.prepare("UPDATE natsue_history_creatures SET " +
+					"updater_text_uid=?, user_text=? " +
+					"WHERE moniker=? AND user_text != ?");
+				stmt.setInt(1, senderUID);
+				stmt.setString(2, userText);
+				stmt.setString(3, moniker);
+				stmt.setString(4, userText);
+				stmt.executeUpdate();
+				return Boolean.TRUE;
 			}
 			// what are you even doing?
 			return Boolean.TRUE;
@@ -201,12 +261,13 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class GetCreatureInfo extends ILDBTxnGet<NatsueDBCreatureInfo> {
-		public String moniker;
+		public final String moniker;
 
-		public GetCreatureInfo() {
+		public GetCreatureInfo(String moniker) {
 			super(CreatureInfoRSC.INSTANCE,
 				"SELECT " + CreatureInfoRSC.SELECTION + " FROM natsue_history_creatures " +
 				"WHERE moniker=?");
+			this.moniker = moniker;
 		}
 
 		@Override
@@ -216,12 +277,13 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class GetCreatureEvents extends ILDBTxnGet<LinkedList<NatsueDBCreatureEvent>> {
-		public String moniker;
+		public final String moniker;
 
-		public GetCreatureEvents() {
+		public GetCreatureEvents(String moniker) {
 			super(CreatureEventListRSC.INSTANCE_LIST,
 				"SELECT " + CreatureEventListRSC.SELECTION + " FROM natsue_history_events " +
 				"WHERE moniker=? ORDER BY event_index ASC");
+			this.moniker = moniker;
 		}
 
 		@Override
@@ -231,53 +293,117 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class AddCreatureEvent extends ILDBTxn<Boolean> {
-		public int senderUID;
-		public String moniker;
-		public int eventIndex;
-		public int eventType;
-		public int worldTime;
-		public int ageTicks;
-		public int unixTime;
-		public int lifeStage;
-		public String param1, param2, worldName, worldID, userID;
-
-		public AddCreatureEvent() {
+		public final int senderUID;
+		public final String moniker;
+		public final int eventIndex;
+		public final int eventType;
+		public final int worldTime;
+		public final int ageTicks;
+		public final int unixTime;
+		public final int lifeStage;
+		public final String param1, param2, worldName, worldID, userID;
+
+		public AddCreatureEvent(int senderUID, String moniker, int eventIndex, int eventType, int worldTime, int ageTicks, int unixTime, int lifeStage, String param1, String param2, String worldName, String worldID, String userID) {
 			super(true, Boolean.FALSE);
+			this.senderUID = senderUID;
+			this.moniker = moniker;
+			this.eventIndex = eventIndex;
+			this.eventType = eventType;
+			this.worldTime = worldTime;
+			this.ageTicks = ageTicks;
+			this.unixTime = unixTime;
+			this.lifeStage = lifeStage;
+			this.param1 = param1;
+			this.param2 = param2;
+			this.worldName = worldName;
+			this.worldID = worldID;
+			this.userID = userID;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO natsue_history_events(" +
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			PreparedStatement stmt = conn.prepare("INSERT INTO natsue_history_events(" +
+				"sender_uid, moniker, event_index, event_type, world_time, age_ticks, unix_time, life_stage, " +
+				"param1, param2, world_name, world_id, user_id, send_unix_time" +
+				") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			stmt.setInt(1, senderUID);
+			stmt.setString(2, moniker);
+			stmt.setInt(3, eventIndex);
+			stmt.setInt(4, eventType);
+			stmt.setInt(5, worldTime);
+			stmt.setInt(6, ageTicks);
+			stmt.setInt(7, unixTime);
+			stmt.setInt(8, lifeStage);
+			stmt.setString(9, param1);
+			stmt.setString(10, param2);
+			stmt.setString(11, worldName);
+			stmt.setString(12, worldID);
+			stmt.setString(13, userID);
+			stmt.setLong(14, UnixTime.get());
+			stmt.executeUpdate();
+			return Boolean.TRUE;
+		}
+	}
+
+	public static class AddCreatureEvents extends ILDBTxn<Boolean> {
+		public final ILDBVariant variant;
+		public final List<NatsueDBCreatureEvent> events;
+
+		public AddCreatureEvents(ILDBVariant variant, List<NatsueDBCreatureEvent> events) {
+			super(false, Boolean.FALSE);
+			this.variant = variant;
+			this.events = events;
+		}
+
+		@Override
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			Connection c = conn.getInstance();
+			boolean oldAutoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try {
+				PreparedStatement stmt = conn.prepare(variant.insertOrIgnore + " INTO natsue_history_events(" +
 					"sender_uid, moniker, event_index, event_type, world_time, age_ticks, unix_time, life_stage, " +
 					"param1, param2, world_name, world_id, user_id, send_unix_time" +
-					") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-				stmt.setInt(1, senderUID);
-				stmt.setString(2, moniker);
-				stmt.setInt(3, eventIndex);
-				stmt.setInt(4, eventType);
-				stmt.setInt(5, worldTime);
-				stmt.setInt(6, ageTicks);
-				stmt.setInt(7, unixTime);
-				stmt.setInt(8, lifeStage);
-				stmt.setString(9, param1);
-				stmt.setString(10, param2);
-				stmt.setString(11, worldName);
-				stmt.setString(12, worldID);
-				stmt.setString(13, userID);
-				stmt.setLong(14, UnixTime.get());
-				stmt.executeUpdate();
+					") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+				for (NatsueDBCreatureEvent ev : events) {
+					stmt.setInt(1, ev.senderUID);
+					stmt.setString(2, ev.moniker);
+					stmt.setInt(3, ev.eventIndex);
+					stmt.setInt(4, ev.eventType);
+					stmt.setInt(5, ev.worldTime);
+					stmt.setInt(6, ev.ageTicks);
+					stmt.setInt(7, ev.unixTime32);
+					stmt.setInt(8, ev.lifeStage);
+					stmt.setString(9, ev.param1);
+					stmt.setString(10, ev.param2);
+					stmt.setString(11, ev.worldName);
+					stmt.setString(12, ev.worldID);
+					stmt.setString(13, ev.userID);
+					stmt.setLong(14, ev.sendUnixTime);
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				c.commit();
 				return Boolean.TRUE;
+			} catch (SQLException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(oldAutoCommit);
 			}
 		}
 	}
 
 	public static class GetCreaturesInWorld extends ILDBTxnGet<LinkedList<String>> {
-		public String worldID;
-		public int limit, offset;
+		public final String worldID;
+		public final int limit, offset;
 
-		public GetCreaturesInWorld() {
+		public GetCreaturesInWorld(String worldID, int limit, int offset) {
 			super(StringRSC.INSTANCE_LIST,
 				"SELECT DISTINCT moniker FROM natsue_history_events WHERE world_id=? ORDER BY moniker LIMIT ? OFFSET ?");
+			this.worldID = worldID;
+			this.limit = limit;
+			this.offset = offset;
 		}
 
 		@Override
@@ -289,13 +415,16 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class GetWorldsInUser extends ILDBTxnGet<LinkedList<NatsueDBWorldInfo>> {
-		public int uid;
-		public int limit, offset;
+		public final int uid;
+		public final int limit, offset;
 
-		public GetWorldsInUser() {
+		public GetWorldsInUser(int uid, int limit, int offset) {
 			super(new ILListRSC<>(new WRSC()),
 				"SELECT DISTINCT world_id, sender_uid, world_name FROM natsue_history_events " +
 				"WHERE sender_uid=? AND user_id=? ORDER BY world_name LIMIT ? OFFSET ?");
+			this.uid = uid;
+			this.limit = limit;
+			this.offset = offset;
 		}
 
 		@Override
@@ -319,12 +448,13 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class GetWorldInfo extends ILDBTxnGet<NatsueDBWorldInfo> {
-		public String id;
+		public final String id;
 
-		public GetWorldInfo() {
+		public GetWorldInfo(String id) {
 			super(new WRSC(),
 				"SELECT sender_uid, world_id, world_name FROM natsue_history_events " +
 				"WHERE world_id=? ORDER BY world_name");
+			this.id = id;
 		}
 
 		@Override
@@ -345,41 +475,44 @@ public class JDBCNatsueTxns {
 	}
 
 	public static class CreateUser extends ILDBTxn<Boolean> {
-		public NatsueDBUserInfo userInfo;
+		public final NatsueDBUserInfo userInfo;
 
-		public CreateUser() {
+		public CreateUser(NatsueDBUserInfo userInfo) {
 			super(true, Boolean.FALSE);
+			this.userInfo = userInfo;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO natsue_users(" + UserInfoRSC.SELECTION + ") VALUES (" + UserInfoRSC.VALUES + ")")) {
-				UserInfoRSC.INSTANCE.toStatement(userInfo, stmt);
-				stmt.executeUpdate();
-				return Boolean.TRUE;
-			}
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			PreparedStatement stmt = conn.prepare("INSERT INTO natsue_users(" + UserInfoRSC.SELECTION + ") VALUES (" + UserInfoRSC.VALUES + ")");
+			UserInfoRSC.INSTANCE.toStatement(userInfo, stmt);
+			stmt.executeUpdate();
+			return Boolean.TRUE;
 		}
 	}
 	public static class UpdateUserAuth extends ILDBTxn<Boolean> {
-		public int uid;
-		public String passwordHash;
-		public int flags;
-		public long twoFactorSeed;
+		public final int uid;
+		public final String passwordHash;
+		public final int flags;
+		public final long twoFactorSeed;
 
-		public UpdateUserAuth() {
+		public UpdateUserAuth(int uid, String passwordHash, int flags, long twoFactorSeed) {
 			super(true, Boolean.FALSE);
+			this.uid = uid;
+			this.passwordHash = passwordHash;
+			this.flags = flags;
+			this.twoFactorSeed = twoFactorSeed;
 		}
 
 		@Override
-		protected Boolean executeInner(Connection conn) throws SQLException {
-			try (PreparedStatement stmt = conn.prepareStatement("UPDATE natsue_users SET psha256=?, flags=?, two_factor_seed=? WHERE uid=?")) {
-				stmt.setString(1, passwordHash);
-				stmt.setInt(2, flags);
-				stmt.setLong(3, twoFactorSeed);
-				stmt.setInt(4, uid);
-				stmt.executeUpdate();
-				return Boolean.TRUE;
-			}
+		protected Boolean executeInner(ILDBTxnHost.AcquiredConnection conn) throws SQLException {
+			PreparedStatement stmt = conn.prepare("UPDATE natsue_users SET psha256=?, flags=?, two_factor_seed=? WHERE uid=?");
+			stmt.setString(1, passwordHash);
+			stmt.setInt(2, flags);
+			stmt.setLong(3, twoFactorSeed);
+			stmt.setInt(4, uid);
+			stmt.executeUpdate();
+			return Boolean.TRUE;
 		}
 	}
 }
@@ -0,0 +1,24 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import natsue.server.database.NatsueDBSpooledMessage;
+
+public class SpooledMessageRSC implements ILResultSetConverter<NatsueDBSpooledMessage> {
+	public static final SpooledMessageRSC INSTANCE = new SpooledMessageRSC();
+	public static final ILListRSC<NatsueDBSpooledMessage> INSTANCE_LIST = new ILListRSC<>(INSTANCE);
+	public static final String SELECTION = "id, data";
+
+	@Override
+	public NatsueDBSpooledMessage fromResultSet(ResultSet rs) throws SQLException {
+		return new NatsueDBSpooledMessage(rs.getLong(1), rs.getBytes(2));
+	}
+}
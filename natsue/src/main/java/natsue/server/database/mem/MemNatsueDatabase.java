@@ -0,0 +1,674 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.mem;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import cdsp.common.util.Snowflake;
+import cdsp.common.util.UnixTime;
+import natsue.config.ConfigDB;
+import natsue.data.babel.UINUtils;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBCreatureEvent;
+import natsue.server.database.NatsueDBCreatureInfo;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.NatsueDBUserInfo;
+import natsue.server.database.NatsueDBWorldInfo;
+
+/**
+ * In-memory Natsue database, for benchmarks and for servers that don't need to keep anything.
+ * Behaves like JDBCNatsueDatabase (uniqueness, NOT NULL columns, ordering, pagination), just without the SQL.
+ * Each kind of data has its own maps and locks, so unrelated calls don't contend.
+ * If enabled, everything is snapshotted to a file every so often (and on shutdown), and loaded back on startup.
+ */
+public class MemNatsueDatabase implements INatsueDatabase, ILogSource {
+	private static final int SNAPSHOT_MAGIC = 0x4E4D4442;
+	private static final int SNAPSHOT_VERSION = 1;
+	// Matches the ORDER BY world_name of GetWorldsInUser (world_id just to make ties consistent).
+	private static final Comparator<NatsueDBWorldInfo> WORLD_ORDER = Comparator.comparing((NatsueDBWorldInfo w) -> w.worldName).thenComparing((w) -> w.worldID);
+
+	private final ILogProvider logParent;
+	// Null if snapshots are disabled.
+	private final File snapshotFile;
+
+	// Changes hold this shared, and snapshots hold it exclusively, so they see a consistent state.
+	private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+	private final AtomicLong changes = new AtomicLong();
+	// Protected by this.
+	private long changesSaved;
+
+	// Changed under usersLock, read without it.
+	private final Object usersLock = new Object();
+	private final ConcurrentHashMap<Integer, NatsueDBUserInfo> usersByUID = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, NatsueDBUserInfo> usersByFoldedNickname = new ConcurrentHashMap<>();
+	private final HashSet<String> nicknames = new HashSet<>();
+
+	// By UID, then ID. Each user's map is its own lock.
+	private final ConcurrentHashMap<Integer, TreeMap<Long, Spooled>> spool = new ConcurrentHashMap<>();
+
+	// Each creature is its own lock.
+	private final ConcurrentHashMap<String, Creature> creatures = new ConcurrentHashMap<>();
+
+	// By moniker, then event index. Each creature's map is its own lock.
+	private final ConcurrentHashMap<String, TreeMap<Integer, NatsueDBCreatureEvent>> events = new ConcurrentHashMap<>();
+	// Indexes of the events for the world queries. Again, each value is its own lock.
+	private final ConcurrentHashMap<String, World> worlds = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, TreeSet<NatsueDBWorldInfo>> worldsByUser = new ConcurrentHashMap<>();
+
+	public MemNatsueDatabase(ILogProvider ilp, ConfigDB cfg) throws IOException {
+		logParent = ilp;
+		int snapshotSeconds = cfg.memoryDBSnapshotTime.getValue();
+		snapshotFile = snapshotSeconds > 0 ? new File(cfg.memoryDBSnapshotFile.getValue()) : null;
+		if (snapshotFile == null) {
+			log("MemNatsueDatabase, nothing will be kept");
+			return;
+		}
+		if (snapshotFile.exists()) {
+			load();
+			log("MemNatsueDatabase, loaded " + usersByUID.size() + " users and " + creatures.size() + " creatures from " + snapshotFile);
+		} else {
+			log("MemNatsueDatabase, will snapshot to " + snapshotFile);
+		}
+		Thread snapshotter = new Thread(() -> {
+			while (true) {
+				try {
+					Thread.sleep(snapshotSeconds * 1000L);
+				} catch (InterruptedException ie) {
+					return;
+				}
+				try {
+					snapshot();
+				} catch (Exception ex) {
+					log(ex);
+				}
+			}
+		}, "Natsue Memory DB Snapshots");
+		snapshotter.setDaemon(true);
+		snapshotter.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				snapshot();
+			} catch (Exception ex) {
+				log(ex);
+			}
+		}, "Natsue Memory DB Final Snapshot"));
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	private void beginChange() {
+		snapshotLock.readLock().lock();
+	}
+
+	private void endChange() {
+		snapshotLock.readLock().unlock();
+	}
+
+	private boolean changed() {
+		changes.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Takes limit items (all of them if limit < 0, like SQLite) starting from offset. Returns null for none.
+	 */
+	private static <T> LinkedList<T> page(Iterable<T> source, int limit, int offset) {
+		LinkedList<T> res = new LinkedList<>();
+		int skip = Math.max(0, offset);
+		for (T t : source) {
+			if (limit >= 0 && res.size() >= limit)
+				break;
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			res.add(t);
+		}
+		return res.isEmpty() ? null : res;
+	}
+
+	// -- Users --
+
+	@Override
+	public NatsueDBUserInfo getUserByUID(int uid) {
+		return usersByUID.get(uid);
+	}
+
+	@Override
+	public NatsueDBUserInfo getUserByFoldedNickname(String username) {
+		if (username == null)
+			return null;
+		return usersByFoldedNickname.get(username);
+	}
+
+	@Override
+	public boolean tryCreateUser(NatsueDBUserInfo info) {
+		if (info.nickname == null || info.nicknameFolded == null)
+			return false;
+		beginChange();
+		try {
+			synchronized (usersLock) {
+				if (usersByUID.containsKey(info.uid) || usersByFoldedNickname.containsKey(info.nicknameFolded) || nicknames.contains(info.nickname))
+					return false;
+				nicknames.add(info.nickname);
+				usersByFoldedNickname.put(info.nicknameFolded, info);
+				usersByUID.put(info.uid, info);
+				return changed();
+			}
+		} finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public boolean updateUserAuth(int uid, String hash, int flags, long twoFA) {
+		beginChange();
+		try {
+			synchronized (usersLock) {
+				NatsueDBUserInfo old = usersByUID.get(uid);
+				// Like an UPDATE that matches nothing, this isn't a failure.
+				if (old == null)
+					return true;
+				NatsueDBUserInfo info = new NatsueDBUserInfo(uid, old.nickname, old.nicknameFolded, hash, flags, old.creationUnixTime, twoFA);
+				usersByFoldedNickname.put(info.nicknameFolded, info);
+				usersByUID.put(uid, info);
+				return changed();
+			}
+		} finally {
+			endChange();
+		}
+	}
+
+	// -- Spool --
+
+	@Override
+	public boolean spoolMessage(int uid, int causeUID, byte[] pm) {
+		if (pm == null)
+			return false;
+		beginChange();
+		try {
+			addSpooled(uid, new Spooled(Snowflake.generateSnowflake(), causeUID, UnixTime.get(), pm));
+			return changed();
+		} finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public boolean spoolMessages(List<NatsueDBSpoolInsert> messages) {
+		for (NatsueDBSpoolInsert msg : messages)
+			if (msg.data == null)
+				return false;
+		beginChange();
+		try {
+			long now = UnixTime.get();
+			for (NatsueDBSpoolInsert msg : messages)
+				addSpooled(msg.uid, new Spooled(Snowflake.generateSnowflake(), msg.causeUID, now, msg.data));
+			return changed();
+		} finally {
+			endChange();
+		}
+	}
+
+	private void addSpooled(int uid, Spooled msg) {
+		TreeMap<Long, Spooled> messages = spool.computeIfAbsent(uid, (k) -> new TreeMap<>());
+		synchronized (messages) {
+			messages.put(msg.id, msg);
+		}
+	}
+
+	@Override
+	public LinkedList<NatsueDBSpooledMessage> getSpooledMessages(int uid, int limit) {
+		TreeMap<Long, Spooled> messages = spool.get(uid);
+		if (messages == null)
+			return null;
+		LinkedList<NatsueDBSpooledMessage> res = new LinkedList<>();
+		synchronized (messages) {
+			for (Spooled msg : messages.values()) {
+				if (limit >= 0 && res.size() >= limit)
+					break;
+				res.add(new NatsueDBSpooledMessage(msg.id, msg.data));
+			}
+		}
+		return res.isEmpty() ? null : res;
+	}
+
+	@Override
+	public boolean deleteSpooledMessages(int uid, long[] ids) {
+		TreeMap<Long, Spooled> messages = spool.get(uid);
+		if (messages == null)
+			return true;
+		beginChange();
+		try {
+			synchronized (messages) {
+				for (long id : ids)
+					messages.remove(id);
+			}
+			return changed();
+		} finally {
+			endChange();
+		}
+	}
+
+	// -- Creatures --
+
+	@Override
+	public boolean ensureCreature(String moniker, int firstUID, int ch0, int ch1, int ch2, int ch3, int ch4, String name, String userText) {
+		if (moniker == null || name == null || userText == null)
+			return false;
+		beginChange();
+		try {
+			return creatures.putIfAbsent(moniker, new Creature(moniker, firstUID, new int[] {ch0, ch1, ch2, ch3, ch4}, name, userText, UnixTime.get())) == null && changed();
+		} finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public boolean updateCreatureText(int senderUID, String moniker, String name, String userText) {
+		Creature c = moniker != null ? creatures.get(moniker) : null;
+		if (c == null)
+			return true;
+		beginChange();
+		try {
+			synchronized (c) {
+				// Same conditions as UpdateCreatureText: only if something's actually changing.
+				if ((name != null) && (userText != null)) {
+					if (!name.equals(c.name) || !userText.equals(c.userText)) {
+						c.updaterNameUID = senderUID;
+						c.updaterTextUID = senderUID;
+						c.name = name;
+						c.userText = userText;
+						changed();
+					}
+				} else if (name != null) {
+					if (!name.equals(c.name)) {
+						c.updaterNameUID = senderUID;
+						c.name = name;
+						changed();
+					}
+				} else if (userText != null) {
+					if (!userText.equals(c.userText)) {
+						c.updaterTextUID = senderUID;
+						c.userText = userText;
+						changed();
+					}
+				}
+			}
+			return true;
+		} finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public NatsueDBCreatureInfo getCreatureInfo(String moniker) {
+		Creature c = moniker != null ? creatures.get(moniker) : null;
+		if (c == null)
+			return null;
+		synchronized (c) {
+			return new NatsueDBCreatureInfo(c.moniker, c.firstUID, c.state[0], c.state[1], c.state[2], c.state[3], c.state[4], c.name, c.userText);
+		}
+	}
+
+	// -- History --
+
+	@Override
+	public LinkedList<NatsueDBCreatureEvent> getCreatureEvents(String moniker) {
+		TreeMap<Integer, NatsueDBCreatureEvent> history = moniker != null ? events.get(moniker) : null;
+		if (history == null)
+			return null;
+		synchronized (history) {
+			return history.isEmpty() ? null : new LinkedList<>(history.values());
+		}
+	}
+
+	@Override
+	public boolean ensureCreatureEvent(int senderUID, String moniker, int index, int type, int worldTime, int ageTicks, int unixTime, int lifeStage, String param1, String param2, String worldName, String worldID, String userID) {
+		NatsueDBCreatureEvent ev = new NatsueDBCreatureEvent(senderUID, moniker, index, type, worldTime, ageTicks, unixTime, lifeStage, param1, param2, worldName, worldID, userID, UnixTime.get());
+		if (!isValid(ev))
+			return false;
+		beginChange();
+		try {
+			return addEvent(ev) && changed();
+		} finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public boolean ensureCreatureEvents(List<NatsueDBCreatureEvent> list) {
+		// As with the batch insert, one bad event fails the lot.
+		for (NatsueDBCreatureEvent ev : list)
+			if (!isValid(ev))
+				return false;
+		beginChange();
+		try {
+			for (NatsueDBCreatureEvent ev : list)
+				if (addEvent(ev))
+					changed();
+			return true;
+		} finally {
+			endChange();
+		}
+	}
+
+	private static boolean isValid(NatsueDBCreatureEvent ev) {
+		return ev.moniker != null && ev.param1 != null && ev.param2 != null && ev.worldName != null && ev.worldID != null && ev.userID != null;
+	}
+
+	/**
+	 * Adds an event and indexes it. Returns false if there's already one with that moniker and index.
+	 */
+	private boolean addEvent(NatsueDBCreatureEvent ev) {
+		TreeMap<Integer, NatsueDBCreatureEvent> history = events.computeIfAbsent(ev.moniker, (k) -> new TreeMap<>());
+		synchronized (history) {
+			if (history.putIfAbsent(ev.eventIndex, ev) != null)
+				return false;
+		}
+		World w = worlds.computeIfAbsent(ev.worldID, (k) -> new World());
+		synchronized (w) {
+			w.monikers.add(ev.moniker);
+			if (w.info == null || ev.worldName.compareTo(w.info.worldName) < 0)
+				w.info = new NatsueDBWorldInfo(ev.senderUID, ev.worldID, ev.worldName);
+		}
+		// GetWorldsInUser only counts events the user sent about their own worlds.
+		if (ev.userID.equals(UINUtils.toString(UINUtils.ofRegularUser(ev.senderUID)))) {
+			TreeSet<NatsueDBWorldInfo> userWorlds = worldsByUser.computeIfAbsent(ev.senderUID, (k) -> new TreeSet<>(WORLD_ORDER));
+			synchronized (userWorlds) {
+				userWorlds.add(new NatsueDBWorldInfo(ev.senderUID, ev.worldID, ev.worldName));
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public LinkedList<String> getCreaturesInWorld(String worldID, int limit, int offset) {
+		World w = worldID != null ? worlds.get(worldID) : null;
+		if (w == null)
+			return null;
+		synchronized (w) {
+			return page(w.monikers, limit, offset);
+		}
+	}
+
+	@Override
+	public LinkedList<NatsueDBWorldInfo> getWorldsInUser(int uid, int limit, int offset) {
+		TreeSet<NatsueDBWorldInfo> userWorlds = worldsByUser.get(uid);
+		if (userWorlds == null)
+			return null;
+		synchronized (userWorlds) {
+			return page(userWorlds, limit, offset);
+		}
+	}
+
+	@Override
+	public NatsueDBWorldInfo getWorldInfo(String id) {
+		World w = id != null ? worlds.get(id) : null;
+		if (w == null)
+			return null;
+		synchronized (w) {
+			return w.info;
+		}
+	}
+
+	@Override
+	public void runSystemCheck(StringBuilder sb) {
+		int spooled = 0;
+		for (TreeMap<Long, Spooled> messages : spool.values()) {
+			synchronized (messages) {
+				spooled += messages.size();
+			}
+		}
+		int eventCount = 0;
+		for (TreeMap<Integer, NatsueDBCreatureEvent> history : events.values()) {
+			synchronized (history) {
+				eventCount += history.size();
+			}
+		}
+		sb.append("Memory DB: U" + usersByUID.size() + " S" + spooled + " C" + creatures.size() + " E" + eventCount + " W" + worlds.size() + "\n");
+	}
+
+	// -- Snapshots --
+
+	/**
+	 * Writes everything to the snapshot file, if snapshots are enabled and anything has changed since the last one.
+	 * The file is replaced atomically, so a crash mid-snapshot leaves the previous one intact.
+	 */
+	public synchronized void snapshot() throws IOException {
+		if (snapshotFile == null)
+			return;
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		long changesNow;
+		// Serialized under the lock (it's all in memory, so that's quick), written out after.
+		snapshotLock.writeLock().lock();
+		try {
+			changesNow = changes.get();
+			if (changesNow == changesSaved)
+				return;
+			write(new DataOutputStream(baos));
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+		File tmp = new File(snapshotFile.getPath() + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(tmp)) {
+			baos.writeTo(fos);
+			fos.getFD().sync();
+		}
+		try {
+			Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		changesSaved = changesNow;
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeInt(usersByUID.size());
+		for (NatsueDBUserInfo u : usersByUID.values()) {
+			out.writeInt(u.uid);
+			writeString(out, u.nickname);
+			writeString(out, u.nicknameFolded);
+			writeString(out, u.passwordHash);
+			out.writeInt(u.flags);
+			out.writeLong(u.creationUnixTime);
+			out.writeLong(u.twoFactorSeed);
+		}
+		ArrayList<Spooled> spooled = new ArrayList<>();
+		ArrayList<Integer> spooledUIDs = new ArrayList<>();
+		for (Map.Entry<Integer, TreeMap<Long, Spooled>> user : spool.entrySet()) {
+			synchronized (user.getValue()) {
+				for (Spooled msg : user.getValue().values()) {
+					spooled.add(msg);
+					spooledUIDs.add(user.getKey());
+				}
+			}
+		}
+		out.writeInt(spooled.size());
+		for (int i = 0; i < spooled.size(); i++) {
+			Spooled msg = spooled.get(i);
+			out.writeInt(spooledUIDs.get(i));
+			out.writeLong(msg.id);
+			out.writeInt(msg.causeUID);
+			out.writeLong(msg.sendUnixTime);
+			out.writeInt(msg.data.length);
+			out.write(msg.data);
+		}
+		out.writeInt(creatures.size());
+		for (Creature c : creatures.values()) {
+			synchronized (c) {
+				writeString(out, c.moniker);
+				out.writeInt(c.firstUID);
+				for (int i = 0; i < 5; i++)
+					out.writeInt(c.state[i]);
+				writeString(out, c.name);
+				writeString(out, c.userText);
+				out.writeLong(c.sendUnixTime);
+				out.writeInt(c.updaterNameUID);
+				out.writeInt(c.updaterTextUID);
+			}
+		}
+		ArrayList<NatsueDBCreatureEvent> allEvents = new ArrayList<>();
+		for (TreeMap<Integer, NatsueDBCreatureEvent> history : events.values()) {
+			synchronized (history) {
+				allEvents.addAll(history.values());
+			}
+		}
+		out.writeInt(allEvents.size());
+		for (NatsueDBCreatureEvent ev : allEvents) {
+			out.writeInt(ev.senderUID);
+			writeString(out, ev.moniker);
+			out.writeInt(ev.eventIndex);
+			out.writeInt(ev.eventType);
+			out.writeInt(ev.worldTime);
+			out.writeInt(ev.ageTicks);
+			out.writeInt(ev.unixTime32);
+			out.writeInt(ev.lifeStage);
+			writeString(out, ev.param1);
+			writeString(out, ev.param2);
+			writeString(out, ev.worldName);
+			writeString(out, ev.worldID);
+			writeString(out, ev.userID);
+			out.writeLong(ev.sendUnixTime);
+		}
+		out.flush();
+	}
+
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException(snapshotFile + " isn't a memory database snapshot");
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION)
+				throw new IOException(snapshotFile + " is snapshot version " + version + ", expected " + SNAPSHOT_VERSION);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				NatsueDBUserInfo u = new NatsueDBUserInfo(in.readInt(), readString(in), readString(in), readString(in), in.readInt(), in.readLong(), in.readLong());
+				usersByUID.put(u.uid, u);
+				usersByFoldedNickname.put(u.nicknameFolded, u);
+				nicknames.add(u.nickname);
+			}
+			count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int uid = in.readInt();
+				long id = in.readLong();
+				int causeUID = in.readInt();
+				long sendUnixTime = in.readLong();
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				addSpooled(uid, new Spooled(id, causeUID, sendUnixTime, data));
+			}
+			count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String moniker = readString(in);
+				int firstUID = in.readInt();
+				int[] state = new int[5];
+				for (int j = 0; j < 5; j++)
+					state[j] = in.readInt();
+				Creature c = new Creature(moniker, firstUID, state, readString(in), readString(in), in.readLong());
+				c.updaterNameUID = in.readInt();
+				c.updaterTextUID = in.readInt();
+				creatures.put(moniker, c);
+			}
+			count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				addEvent(new NatsueDBCreatureEvent(in.readInt(), readString(in), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+						readString(in), readString(in), readString(in), readString(in), readString(in), in.readLong()));
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0)
+			return null;
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static final class Spooled {
+		final long id;
+		final int causeUID;
+		final long sendUnixTime;
+		final byte[] data;
+
+		Spooled(long id, int causeUID, long sendUnixTime, byte[] data) {
+			this.id = id;
+			this.causeUID = causeUID;
+			this.sendUnixTime = sendUnixTime;
+			this.data = data;
+		}
+	}
+
+	private static final class Creature {
+		final String moniker;
+		final int firstUID;
+		final int[] state;
+		final long sendUnixTime;
+		// Protected by this.
+		String name, userText;
+		int updaterNameUID, updaterTextUID;
+
+		Creature(String moniker, int firstUID, int[] state, String name, String userText, long sendUnixTime) {
+			this.moniker = moniker;
+			this.firstUID = firstUID;
+			this.state = state;
+			this.name = name;
+			this.userText = userText;
+			this.sendUnixTime = sendUnixTime;
+		}
+	}
+
+	private static final class World {
+		// Protected by this.
+		final TreeSet<String> monikers = new TreeSet<>();
+		// The first by world_name, as GetWorldInfo would return.
+		NatsueDBWorldInfo info;
+	}
+}
@@ -0,0 +1,508 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.spool;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import cdsp.common.util.Snowflake;
+import cdsp.common.util.UnixTime;
+import natsue.config.ConfigDB;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
+
+/**
+ * File-backed spool: append-only segment files, plus an in-memory index of what each user has waiting.
+ * Records are length-prefixed and checksummed. Spooled messages are PUT records, and consumed ones get a DEL record.
+ * On startup the segments are replayed to rebuild the index. A torn record at the end of the newest segment (crash mid-write) is cut off.
+ * Segments are deleted oldest-first once everything in them is consumed (deleting any other could bring consumed messages back).
+ * So a few messages nobody collects can't keep old segments around forever, a mostly-consumed oldest segment has its leftovers copied forward.
+ */
+public class SpoolLog implements ILogSource {
+	private static final byte TYPE_PUT = 1;
+	private static final byte TYPE_DEL = 2;
+	// length, CRC32 of the body
+	private static final int RECORD_HEADER = 8;
+	// type, id, uid, causeUID, sendUnixTime
+	private static final int PUT_HEADER = 1 + 8 + 4 + 4 + 8;
+	private static final int MAX_RECORD = 64 * 1024 * 1024;
+	/**
+	 * The oldest segment's leftovers are copied forward once no more than 1 in this many of its messages are left.
+	 */
+	private static final int RELOCATE_LIVE_DIVISOR = 4;
+	private static final String SEGMENT_PREFIX = "spool-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final File dir;
+	private final long segmentBytes;
+	private final boolean sync;
+	private final ILogProvider logParent;
+
+	// Oldest first. The last is the one being appended to.
+	private final ArrayList<Segment> segments = new ArrayList<>();
+	// By UID, then by ID (which, being snowflakes, is oldest first).
+	private final HashMap<Integer, TreeMap<Long, Entry>> index = new HashMap<>();
+	private int liveMessages;
+
+	private final LongAdder appended = new LongAdder();
+	private final LongAdder consumed = new LongAdder();
+	private final LongAdder relocated = new LongAdder();
+	private final LongAdder segmentsDeleted = new LongAdder();
+
+	/**
+	 * Opens (creating if need be) the log in the given directory, recovering whatever's there.
+	 * If sync is set, every write is forced to disk before being acknowledged.
+	 */
+	public SpoolLog(File dir, long segmentBytes, boolean sync, ILogProvider logParent) throws IOException {
+		this.dir = dir;
+		this.segmentBytes = segmentBytes;
+		this.sync = sync;
+		this.logParent = logParent;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create spool log directory " + dir);
+		TreeMap<Long, File> found = new TreeMap<>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				long seq = parseSequence(f.getName());
+				if (seq >= 0)
+					found.put(seq, f);
+			}
+		}
+		for (Map.Entry<Long, File> f : found.entrySet()) {
+			Segment s = new Segment(f.getKey(), f.getValue());
+			segments.add(s);
+			replay(s, f.getKey().equals(found.lastKey()));
+		}
+		if (segments.isEmpty())
+			segments.add(new Segment(1, segmentFile(1)));
+		deleteConsumedSegments();
+		log("Recovered " + liveMessages + " messages for " + index.size() + " users from " + segments.size() + " segments");
+	}
+
+	/**
+	 * Opens the log as configured.
+	 */
+	public static SpoolLog open(ConfigDB cfg, ILogProvider logParent) throws IOException {
+		long segmentBytes = Math.max(1, cfg.spoolLogSegmentSize.getValue()) * 1024L * 1024L;
+		return new SpoolLog(new File(cfg.spoolLogDir.getValue()), segmentBytes, cfg.spoolLogSync.getValue(), logParent);
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	@Override
+	public String toString() {
+		return "SpoolLog[" + dir + "]";
+	}
+
+	private static long parseSequence(String name) {
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+			return -1;
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
+	private File segmentFile(long seq) {
+		return new File(dir, SEGMENT_PREFIX + String.format("%010d", seq) + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Reads a segment into the index. Stops at the first bad record (cutting it off if this is the newest segment).
+	 */
+	private void replay(Segment s, boolean newest) throws IOException {
+		s.channel.position(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(s.channel), 65536));
+		CRC32 crc = new CRC32();
+		long pos = 0;
+		while (pos < s.size) {
+			String problem = null;
+			byte[] body = null;
+			if (s.size - pos < RECORD_HEADER) {
+				problem = "truncated header";
+			} else {
+				int len = in.readInt();
+				int sum = in.readInt();
+				if (len <= 0 || len > MAX_RECORD || len > s.size - pos - RECORD_HEADER) {
+					problem = "bad length " + len;
+				} else {
+					body = new byte[len];
+					in.readFully(body);
+					crc.reset();
+					crc.update(body, 0, len);
+					if ((int) crc.getValue() != sum)
+						problem = "bad checksum";
+				}
+			}
+			if (problem != null) {
+				if (newest) {
+					log("Cutting off torn record at " + pos + " in " + s.file + " (" + problem + ")");
+					s.channel.truncate(pos);
+					s.size = pos;
+				} else {
+					log("Ignoring the rest of " + s.file + " from " + pos + " (" + problem + ")");
+				}
+				break;
+			}
+			ByteBuffer bb = ByteBuffer.wrap(body);
+			byte type = bb.get();
+			if (type == TYPE_PUT) {
+				long id = bb.getLong();
+				int uid = bb.getInt();
+				index(uid, id, new Entry(s, pos, RECORD_HEADER + body.length));
+			} else if (type == TYPE_DEL) {
+				int uid = bb.getInt();
+				int count = bb.getInt();
+				for (int i = 0; i < count; i++)
+					unindex(uid, bb.getLong());
+			} else {
+				log("Unknown record type " + type + " at " + pos + " in " + s.file);
+			}
+			pos += RECORD_HEADER + body.length;
+		}
+	}
+
+	private void index(int uid, long id, Entry e) {
+		Entry old = index.computeIfAbsent(uid, (k) -> new TreeMap<>()).put(id, e);
+		e.segment.messages++;
+		e.segment.live++;
+		if (old != null) {
+			// A copy made by relocation.
+			old.segment.live--;
+		} else {
+			liveMessages++;
+		}
+	}
+
+	private boolean unindex(int uid, long id) {
+		TreeMap<Long, Entry> messages = index.get(uid);
+		if (messages == null)
+			return false;
+		Entry e = messages.remove(id);
+		if (e == null)
+			return false;
+		if (messages.isEmpty())
+			index.remove(uid);
+		e.segment.live--;
+		liveMessages--;
+		return true;
+	}
+
+	/**
+	 * Spools messages, all at once (or not at all).
+	 */
+	public synchronized void spool(List<NatsueDBSpoolInsert> messages) throws IOException {
+		long now = UnixTime.get();
+		ArrayList<Message> list = new ArrayList<>(messages.size());
+		for (NatsueDBSpoolInsert msg : messages)
+			list.add(new Message(Snowflake.generateSnowflake(), msg.uid, msg.causeUID, now, msg.data));
+		append(list);
+	}
+
+	/**
+	 * Adds messages that already have IDs (i.e. from the database spool), skipping any that are already here.
+	 * Returns how many were actually added.
+	 */
+	public synchronized int importMessages(List<Message> messages) throws IOException {
+		ArrayList<Message> list = new ArrayList<>(messages.size());
+		for (Message msg : messages) {
+			TreeMap<Long, Entry> existing = index.get(msg.uid);
+			if (existing == null || !existing.containsKey(msg.id))
+				list.add(msg);
+		}
+		if (!list.isEmpty())
+			append(list);
+		return list.size();
+	}
+
+	private void append(List<Message> list) throws IOException {
+		ArrayList<byte[]> records = new ArrayList<>(list.size());
+		for (Message msg : list) {
+			ByteBuffer body = ByteBuffer.allocate(PUT_HEADER + msg.data.length);
+			body.put(TYPE_PUT);
+			body.putLong(msg.id);
+			body.putInt(msg.uid);
+			body.putInt(msg.causeUID);
+			body.putLong(msg.sendUnixTime);
+			body.put(msg.data);
+			records.add(record(body.array()));
+		}
+		long pos = write(records);
+		Segment s = active();
+		for (int i = 0; i < list.size(); i++) {
+			Message msg = list.get(i);
+			int len = records.get(i).length;
+			index(msg.uid, msg.id, new Entry(s, pos, len));
+			pos += len;
+		}
+		appended.add(list.size());
+		compact();
+	}
+
+	/**
+	 * Returns up to limit of a user's spooled messages, oldest first. Returns null for none.
+	 */
+	public synchronized LinkedList<NatsueDBSpooledMessage> get(int uid, int limit) throws IOException {
+		TreeMap<Long, Entry> messages = index.get(uid);
+		if (messages == null || limit <= 0)
+			return null;
+		LinkedList<NatsueDBSpooledMessage> res = new LinkedList<>();
+		for (Map.Entry<Long, Entry> me : messages.entrySet()) {
+			if (res.size() >= limit)
+				break;
+			Entry e = me.getValue();
+			int dataOfs = RECORD_HEADER + PUT_HEADER;
+			res.add(new NatsueDBSpooledMessage(me.getKey(), read(e.segment, e.offset + dataOfs, e.length - dataOfs)));
+		}
+		return res;
+	}
+
+	/**
+	 * Marks the given messages as consumed, all at once (or not at all). IDs that aren't waiting are ignored.
+	 */
+	public synchronized void delete(int uid, long[] ids) throws IOException {
+		TreeMap<Long, Entry> messages = index.get(uid);
+		if (messages == null)
+			return;
+		ArrayList<Long> known = new ArrayList<>(ids.length);
+		for (long id : ids)
+			if (messages.containsKey(id))
+				known.add(id);
+		if (known.isEmpty())
+			return;
+		ByteBuffer body = ByteBuffer.allocate(1 + 4 + 4 + (known.size() * 8));
+		body.put(TYPE_DEL);
+		body.putInt(uid);
+		body.putInt(known.size());
+		for (long id : known)
+			body.putLong(id);
+		ArrayList<byte[]> records = new ArrayList<>(1);
+		records.add(record(body.array()));
+		write(records);
+		for (long id : known)
+			unindex(uid, id);
+		consumed.add(known.size());
+		compact();
+	}
+
+	private static byte[] record(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		ByteBuffer bb = ByteBuffer.allocate(RECORD_HEADER + body.length);
+		bb.putInt(body.length);
+		bb.putInt((int) crc.getValue());
+		bb.put(body);
+		return bb.array();
+	}
+
+	private Segment active() {
+		return segments.get(segments.size() - 1);
+	}
+
+	/**
+	 * Appends records to the newest segment (starting a new one first if they'd overflow it), and returns where they start.
+	 */
+	private long write(ArrayList<byte[]> records) throws IOException {
+		long total = 0;
+		for (byte[] r : records)
+			total += r.length;
+		Segment s = active();
+		if (s.size > 0 && s.size + total > segmentBytes) {
+			s = new Segment(s.seq + 1, segmentFile(s.seq + 1));
+			segments.add(s);
+		}
+		long start = s.size;
+		long pos = start;
+		try {
+			for (byte[] r : records) {
+				ByteBuffer bb = ByteBuffer.wrap(r);
+				while (bb.hasRemaining())
+					pos += s.channel.write(bb, pos);
+			}
+			if (sync)
+				s.channel.force(false);
+		} catch (IOException ex) {
+			try {
+				s.channel.truncate(start);
+			} catch (IOException ex2) {
+				// If this fails too, a partial record is cut off on recovery anyway.
+			}
+			throw ex;
+		}
+		s.size = pos;
+		return start;
+	}
+
+	private static byte[] read(Segment s, long offset, int length) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		while (bb.hasRemaining()) {
+			if (s.channel.read(bb, offset + bb.position()) < 0)
+				throw new IOException("Unexpected end of " + s.file);
+		}
+		return bb.array();
+	}
+
+	/**
+	 * Gets rid of consumed segments, and if the oldest is mostly consumed, copies its leftovers forward so it can go too.
+	 * Failing at this doesn't fail whatever triggered it.
+	 */
+	private void compact() {
+		deleteConsumedSegments();
+		if (segments.size() < 2)
+			return;
+		Segment oldest = segments.get(0);
+		if (oldest.live * RELOCATE_LIVE_DIVISOR > oldest.messages)
+			return;
+		try {
+			relocate(oldest);
+		} catch (IOException ex) {
+			log(ex);
+			return;
+		}
+		deleteConsumedSegments();
+	}
+
+	private void relocate(Segment old) throws IOException {
+		ArrayList<byte[]> records = new ArrayList<>(old.live);
+		ArrayList<long[]> keys = new ArrayList<>(old.live);
+		for (Map.Entry<Integer, TreeMap<Long, Entry>> user : index.entrySet()) {
+			for (Map.Entry<Long, Entry> me : user.getValue().entrySet()) {
+				Entry e = me.getValue();
+				if (e.segment != old)
+					continue;
+				// Copied verbatim, checksum and all.
+				records.add(read(old, e.offset, e.length));
+				keys.add(new long[] {user.getKey(), me.getKey()});
+			}
+		}
+		if (records.isEmpty())
+			return;
+		long pos = write(records);
+		Segment s = active();
+		for (int i = 0; i < records.size(); i++) {
+			int len = records.get(i).length;
+			index((int) keys.get(i)[0], keys.get(i)[1], new Entry(s, pos, len));
+			pos += len;
+		}
+		relocated.add(records.size());
+	}
+
+	private void deleteConsumedSegments() {
+		while (segments.size() > 1 && segments.get(0).live == 0) {
+			Segment s = segments.remove(0);
+			try {
+				s.channel.close();
+			} catch (IOException ex) {
+				// it's going away anyway
+			}
+			if (!s.file.delete())
+				log("Unable to delete consumed segment " + s.file + "; remove it before the next restart, or consumed messages may come back.");
+			segmentsDeleted.increment();
+		}
+	}
+
+	/**
+	 * Forces everything written so far to disk (for if sync is off, but it matters this time).
+	 */
+	public synchronized void force() throws IOException {
+		for (Segment s : segments)
+			s.channel.force(false);
+	}
+
+	public synchronized void close() {
+		for (Segment s : segments) {
+			try {
+				s.channel.close();
+			} catch (IOException ex) {
+				log(ex);
+			}
+		}
+	}
+
+	public void runSystemCheck(StringBuilder sb) {
+		int segmentCount, users, live;
+		long bytes = 0;
+		synchronized (this) {
+			segmentCount = segments.size();
+			users = index.size();
+			live = liveMessages;
+			for (Segment s : segments)
+				bytes += s.size;
+		}
+		sb.append("Spool log: M" + live + " U" + users + " S" + segmentCount + " (" + bytes + " bytes)\n");
+		sb.append("Spool log use: A" + appended.sum() + " C" + consumed.sum() + " R" + relocated.sum() + " D" + segmentsDeleted.sum() + "\n");
+	}
+
+	/**
+	 * A message as stored in the log.
+	 */
+	public static final class Message {
+		public final long id;
+		public final int uid, causeUID;
+		public final long sendUnixTime;
+		public final byte[] data;
+
+		public Message(long id, int uid, int causeUID, long sendUnixTime, byte[] data) {
+			this.id = id;
+			this.uid = uid;
+			this.causeUID = causeUID;
+			this.sendUnixTime = sendUnixTime;
+			this.data = data;
+		}
+	}
+
+	private static final class Segment {
+		final long seq;
+		final File file;
+		final FileChannel channel;
+		long size;
+		// PUT records in here, and how many of those are still waiting.
+		int messages, live;
+
+		Segment(long seq, File file) throws IOException {
+			this.seq = seq;
+			this.file = file;
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			size = channel.size();
+		}
+	}
+
+	private static final class Entry {
+		final Segment segment;
+		// Of the whole record.
+		final long offset;
+		final int length;
+
+		Entry(Segment segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.spool;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+
+import natsue.config.Config;
+import natsue.config.IConfigProvider;
+import natsue.config.NCFConfigProvider;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.log.StdoutLogProvider;
+import natsue.server.database.jdbc.ILMigrations;
+
+/**
+ * Moves spooled messages out of the natsue_spool table and into the spool log, going by ntsuconf.txt (like the server).
+ * Run this with the server stopped.
+ * Messages go into the log before they're deleted from the table, and the log skips ones it already has, so it's safe to run again if interrupted.
+ */
+public class SpoolLogMigrator {
+	private static final int BATCH_SIZE = 1000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 0)
+			throw new RuntimeException("SpoolLogMigrator expects no parameters.");
+
+		ILogProvider ilp = new StdoutLogProvider();
+		ILogSource mySource = ilp.logExtend(SpoolLogMigrator.class.toString());
+
+		Config config = new Config();
+		IConfigProvider configProvider = new NCFConfigProvider(new File("ntsuconf.txt"));
+		config.visit(configProvider);
+		configProvider.configFinished();
+
+		SpoolLog spool = SpoolLog.open(config.db, ilp);
+		long moved = 0;
+		try (Connection conn = DriverManager.getConnection(config.db.dbConnection.getValue())) {
+			ILMigrations.migrate(conn, config.db.dbType.getValue(), mySource);
+			PreparedStatement select = conn.prepareStatement("SELECT id, uid, data, cause_uid, send_unix_time FROM natsue_spool ORDER BY id ASC LIMIT " + BATCH_SIZE);
+			PreparedStatement delete = conn.prepareStatement("DELETE FROM natsue_spool WHERE id=? AND uid=?");
+			while (true) {
+				ArrayList<SpoolLog.Message> batch = new ArrayList<>();
+				try (ResultSet rs = select.executeQuery()) {
+					// cause_uid and send_unix_time may be NULL on old rows, which comes out as 0.
+					while (rs.next())
+						batch.add(new SpoolLog.Message(rs.getLong(1), rs.getInt(2), rs.getInt(4), rs.getLong(5), rs.getBytes(3)));
+				}
+				if (batch.isEmpty())
+					break;
+				spool.importMessages(batch);
+				spool.force();
+				conn.setAutoCommit(false);
+				try {
+					for (SpoolLog.Message msg : batch) {
+						delete.setLong(1, msg.id);
+						delete.setInt(2, msg.uid);
+						delete.addBatch();
+					}
+					delete.executeBatch();
+					conn.commit();
+				} catch (Exception ex) {
+					conn.rollback();
+					throw ex;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+				moved += batch.size();
+				mySource.log("Moved " + moved + " messages.");
+			}
+		} finally {
+			spool.close();
+		}
+		mySource.log("Done, " + moved + " messages moved. Set spoolBackend to log to use them.");
+	}
+}
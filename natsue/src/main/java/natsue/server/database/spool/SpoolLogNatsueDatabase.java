@@ -0,0 +1,158 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.database.spool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBCreatureEvent;
+import natsue.server.database.NatsueDBCreatureInfo;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.NatsueDBUserInfo;
+import natsue.server.database.NatsueDBWorldInfo;
+
+/**
+ * Keeps the spool in a SpoolLog, passing everything else through to another database.
+ */
+public class SpoolLogNatsueDatabase implements INatsueDatabase, ILogSource {
+	private final INatsueDatabase database;
+	private final SpoolLog spool;
+	private final ILogProvider logParent;
+
+	public SpoolLogNatsueDatabase(INatsueDatabase database, SpoolLog spool, ILogProvider logParent) {
+		this.database = database;
+		this.spool = spool;
+		this.logParent = logParent;
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	@Override
+	public void runSystemCheck(StringBuilder sb) {
+		database.runSystemCheck(sb);
+		spool.runSystemCheck(sb);
+	}
+
+	@Override
+	public boolean spoolMessage(int uid, int causeUID, byte[] pm) {
+		ArrayList<NatsueDBSpoolInsert> single = new ArrayList<>(1);
+		single.add(new NatsueDBSpoolInsert(uid, causeUID, pm));
+		return spoolMessages(single);
+	}
+
+	@Override
+	public boolean spoolMessages(List<NatsueDBSpoolInsert> messages) {
+		try {
+			spool.spool(messages);
+			return true;
+		} catch (IOException ex) {
+			log(ex);
+			return false;
+		}
+	}
+
+	@Override
+	public LinkedList<NatsueDBSpooledMessage> getSpooledMessages(int uid, int limit) {
+		try {
+			return spool.get(uid, limit);
+		} catch (IOException ex) {
+			log(ex);
+			return null;
+		}
+	}
+
+	@Override
+	public boolean deleteSpooledMessages(int uid, long[] ids) {
+		try {
+			spool.delete(uid, ids);
+			return true;
+		} catch (IOException ex) {
+			log(ex);
+			return false;
+		}
+	}
+
+	@Override
+	public NatsueDBUserInfo getUserByUID(int uid) {
+		return database.getUserByUID(uid);
+	}
+
+	@Override
+	public NatsueDBUserInfo getUserByUIN(long uin) {
+		return database.getUserByUIN(uin);
+	}
+
+	@Override
+	public NatsueDBUserInfo getUserByFoldedNickname(String username) {
+		return database.getUserByFoldedNickname(username);
+	}
+
+	@Override
+	public boolean ensureCreature(String moniker, int firstUID, int ch0, int ch1, int ch2, int ch3, int ch4, String name, String userText) {
+		return database.ensureCreature(moniker, firstUID, ch0, ch1, ch2, ch3, ch4, name, userText);
+	}
+
+	@Override
+	public boolean updateCreatureText(int senderUID, String moniker, String name, String userText) {
+		return database.updateCreatureText(senderUID, moniker, name, userText);
+	}
+
+	@Override
+	public NatsueDBCreatureInfo getCreatureInfo(String moniker) {
+		return database.getCreatureInfo(moniker);
+	}
+
+	@Override
+	public LinkedList<NatsueDBCreatureEvent> getCreatureEvents(String moniker) {
+		return database.getCreatureEvents(moniker);
+	}
+
+	@Override
+	public boolean ensureCreatureEvent(int senderUID, String moniker, int index, int type, int worldTime, int ageTicks, int unixTime, int lifeStage, String param1, String param2, String worldName, String worldID, String userID) {
+		return database.ensureCreatureEvent(senderUID, moniker, index, type, worldTime, ageTicks, unixTime, lifeStage, param1, param2, worldName, worldID, userID);
+	}
+
+	@Override
+	public boolean ensureCreatureEvents(List<NatsueDBCreatureEvent> events) {
+		return database.ensureCreatureEvents(events);
+	}
+
+	@Override
+	public LinkedList<String> getCreaturesInWorld(String worldID, int limit, int offset) {
+		return database.getCreaturesInWorld(worldID, limit, offset);
+	}
+
+	@Override
+	public LinkedList<NatsueDBWorldInfo> getWorldsInUser(int uid, int limit, int offset) {
+		return database.getWorldsInUser(uid, limit, offset);
+	}
+
+	@Override
+	public NatsueDBWorldInfo getWorldInfo(String id) {
+		return database.getWorldInfo(id);
+	}
+
+	@Override
+	public boolean tryCreateUser(NatsueDBUserInfo info) {
+		return database.tryCreateUser(info);
+	}
+
+	@Override
+	public boolean updateUserAuth(int uid, String hash, int flags, long twoFA) {
+		return database.updateUserAuth(uid, hash, flags, twoFA);
+	}
+}
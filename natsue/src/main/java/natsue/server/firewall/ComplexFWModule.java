@@ -43,7 +43,7 @@ public class ComplexFWModule implements IFWModule {
 					sanitizeMESG(sourceUser, block);
 				} else if (type.equals("REQU")) {
 					PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-					pt.read(block.data);
+					pt.read(block.getData());
 					String chatID = pt.strMap.getOrDefault("ChatID", "?");
 					String reqType = pt.strMap.getOrDefault("Request Type", "?");
 					if (chatID.equals(SystemUserHubClient.CHATID_GLOBAL) && !reqType.equals("Accept")) {
@@ -63,9 +63,9 @@ public class ComplexFWModule implements IFWModule {
 	 */
 	public void sanitizeMESG(INatsueUserData sourceUser, PRAYBlock mesgBlock) {
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(mesgBlock.data);
+		pt.read(mesgBlock.getData());
 		pt.strMap.put("Sender UserID", sourceUser.getUINString());
 		pt.strMap.put("Sender Nickname", sourceUser.getNickname());
-		mesgBlock.data = pt.toByteArray();
+		mesgBlock.setData(pt.toByteArray());
 	}
 }
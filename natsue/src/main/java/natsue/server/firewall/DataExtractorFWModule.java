@@ -62,14 +62,14 @@ public class DataExtractorFWModule implements IFWModule, ILogSource {
 			String moniker = ExportedCreatures.monikerFromRootBlock(rootBlock);
 			for (PRAYBlock block : pray.messageBlocks) {
 				if (block.getType().equals("GLST")) {
-					glst.storeGLST(moniker, block.data);
+					glst.storeGLST(moniker, block.getData());
 				} else if (block.getType().equals("PHOT")) {
-					S16Image decoded = PhotoFunctions.ensureValidPhoto(block.data, serverHub.config.photos, this);
+					S16Image decoded = PhotoFunctions.ensureValidPhoto(block.getData(), serverHub.config.photos, this);
 					int eventIndex = ExportedCreatures.getPHOTEventIndex(block.getName(), moniker, rootBlock.getType());
 					// The strict flag controls overwriting.
 					// In either case, the photo won't be attempted to be saved if "weird"...
 					if (strict && decoded == null)
-						block.data = PhotoFunctions.invalidPhoto.clone();
+						block.setData(PhotoFunctions.invalidPhoto.clone());
 					// Prepare saving...
 					if (decoded != null && eventIndex != -1 && serverHub.config.photos.photosEnabled.getValue()) {
 						// prevent duplication
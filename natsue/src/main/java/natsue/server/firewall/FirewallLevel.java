@@ -7,6 +7,12 @@
 
 package natsue.server.firewall;
 
+import natsue.config.Config;
+import natsue.log.ILogProvider;
+import natsue.server.glst.IGLSTStorage;
+import natsue.server.hub.ServerHub;
+import natsue.server.photo.IPhotoStorage;
+
 /**
  * Firewall settings.
  */
@@ -14,11 +20,58 @@ public enum FirewallLevel {
 	// minimal: NET: FROM forge protection and that's it.
 	// Theoretically secure if you check the NET: FROM of everything all the time.
 	// NOT secure with vanilla CAOS.
-	minimal,
+	minimal("MINIMAL, HAZARDOUS TO VANILLA CLIENTS"),
 	// vanillaSafe: Settings that are safe for vanilla Creatures 3/Docking Station. 
-	vanillaSafe,
+	vanillaSafe("Should be safe enough."),
 	// full: Block anything that isn't known to be handled by vanilla
-	full,
+	full("No fun allowed."),
 	// rejectAll: FOR TESTING ONLY
-	rejectAll
+	rejectAll("FOR TESTING ONLY");
+
+	public final String description;
+
+	FirewallLevel(String d) {
+		description = d;
+	}
+
+	/**
+	 * Creates the firewall modules for this level, in order.
+	 */
+	public IFWModule[] createModules(ILogProvider ilp, ServerHub serverHub, Config config, IPhotoStorage photo, IGLSTStorage glst) {
+		switch (this) {
+		case minimal:
+			return new IFWModule[] {
+				new HypercallFWModule(ilp, serverHub, config),
+				new DataExtractorFWModule(serverHub, false, photo, glst),
+				new SpoolListFWModule(serverHub)
+			};
+		case vanillaSafe:
+			return new IFWModule[] {
+				new HypercallFWModule(ilp, serverHub, config),
+				new NetWritFWModule(serverHub, config.allowNetWrit.getValue()),
+				new PRAYBlockListsFWModule(serverHub, false),
+				new CreatureCheckingFWModule(serverHub),
+				new ComplexFWModule(serverHub),
+				new DataExtractorFWModule(serverHub, true, photo, glst),
+				new SpoolListFWModule(serverHub)
+			};
+		case rejectAll:
+			return new IFWModule[] {
+				new HypercallFWModule(ilp, serverHub, config),
+				new DataExtractorFWModule(serverHub, false, photo, glst),
+				new RejectAllFWModule(serverHub)
+			};
+		case full:
+		default:
+			return new IFWModule[] {
+				new HypercallFWModule(ilp, serverHub, config),
+				new NetWritFWModule(serverHub, config.allowNetWrit.getValue()),
+				new PRAYBlockListsFWModule(serverHub, true),
+				new CreatureCheckingFWModule(serverHub),
+				new ComplexFWModule(serverHub),
+				new DataExtractorFWModule(serverHub, true, photo, glst),
+				new SpoolListFWModule(serverHub)
+			};
+		}
+	}
 }
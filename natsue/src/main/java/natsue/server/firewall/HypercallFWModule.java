@@ -55,7 +55,7 @@ public class HypercallFWModule implements IFWModule, ILogSource {
 					try {
 						// Yes, this is a hypercall.
 						PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-						pt.read(res.data);
+						pt.read(res.getData());
 						String type = pt.strMap.get("Type");
 						if (type == null) {
 							hypercallError(sourceUser.getUIN(), "Hypercall without type.");
@@ -52,22 +52,22 @@ public class Rejector implements IRejector {
 
 	private void rejectWarpedCreature(long destinationUIN, PackedMessage message, String reason, PRAYBlock last) {
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(last.data);
+		pt.read(last.getData());
 		pt.strMap.put("Last Network User", UINUtils.toString(destinationUIN));
 		pt.intMap.put("Pray Extra foe", 0);
 		pt.intMap.put("Pray Extra reject", 4);
-		last.data = pt.toByteArray();
+		last.setData(pt.toByteArray());
 		sendInversion(destinationUIN, message);
 	}
 
 	private void rejectMail(long destinationUIN, PackedMessage message, String reason, PRAYBlock last) {
 		PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-		pt.read(last.data);
+		pt.read(last.getData());
 		pt.strMap.put("Subject", "ERR: " + pt.strMap.get("Subject"));
 		pt.strMap.put("Sender UserID", UINUtils.toString(onBehalfOf.getUIN()));
 		pt.strMap.put("Sender Nickname", onBehalfOf.getNickname());
 		pt.strMap.put("Message", "Unsendable to " + UINUtils.toString(destinationUIN) + " (" + reason + "), contents:\n" + pt.strMap.get("Message"));
-		last.data = pt.toByteArray();
+		last.setData(pt.toByteArray());
 		sendAsSystem(message);
 	}
 
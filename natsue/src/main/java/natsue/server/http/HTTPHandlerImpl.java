@@ -24,6 +24,7 @@ import natsue.server.database.NatsueDBCreatureEvent;
 import natsue.server.database.NatsueDBCreatureInfo;
 import natsue.server.database.NatsueDBWorldInfo;
 import natsue.server.hubapi.IHubPrivilegedAPI;
+import natsue.server.hubapi.OnlineUsersSnapshot;
 import natsue.server.photo.IPhotoStorage;
 import natsue.server.system.SystemCommands;
 import natsue.server.userdata.INatsueUserData;
@@ -45,6 +46,10 @@ public class HTTPHandlerImpl implements IHTTPHandler {
 	public final boolean photosPublic;
 	// This is converted from "" to null elsewhere.
 	public final String apiKey;
+	/**
+	 * Snapshot versions restart with the server, so ETags need something unique to this run.
+	 */
+	private final String etagPrefix = "\"" + Long.toHexString(System.currentTimeMillis()) + "-";
 
 	public HTTPHandlerImpl(IHubPrivilegedAPI sh, boolean ap, String apiKey, INatsueDatabase actualDB, IPhotoStorage photoStorage, boolean photosPublic) {
 		hub = sh;
@@ -373,13 +378,16 @@ public class HTTPHandlerImpl implements IHTTPHandler {
 			je.objectEnd();
 			r.httpOk(head, "application/json", je.out.toString());
 		} else if (url.equals("/api/usersOnline")) {
-			JSONEncoder je = new JSONEncoder();
-			je.arrayStart();
-			for (INatsueUserData nud : hub.listAllUsersOnlineYesIMeanAllOfThem())
-				if (!nud.isUnlisted())
-					Resources.encodeUser(je, nud, hub);
-			je.arrayEnd();
-			r.httpOk(head, "application/json", je.out.toString());
+			OnlineUsersSnapshot online = hub.listAllUsersOnlineYesIMeanAllOfThem();
+			r.httpOkCached(head, "application/json", etagPrefix + online.version + "\"", () -> {
+				JSONEncoder je = new JSONEncoder();
+				je.arrayStart();
+				for (INatsueUserData nud : online)
+					if (!nud.isUnlisted())
+						Resources.encodeUser(je, nud, hub);
+				je.arrayEnd();
+				return je.out.toString();
+			});
 		} else if (url.equals("/api/creatureInfo")) {
 			String fragment = qv.get("moniker");
 			if (fragment == null) {
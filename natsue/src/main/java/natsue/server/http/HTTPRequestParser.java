@@ -0,0 +1,220 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.server.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental HTTP/1.x request head parser, shared by both connection engines.
+ * Bytes go in, complete request heads come out in order (so pipelined requests just work).
+ * Nothing here accepts request bodies, so a request with one ends the connection after the response.
+ */
+public final class HTTPRequestParser {
+	private final int maxHeadLength;
+	private byte[] buffer;
+	private int start, end, scanned;
+	private boolean overLimit;
+
+	public HTTPRequestParser(int maxHeadLength) {
+		this.maxHeadLength = maxHeadLength;
+		buffer = new byte[Math.max(16, Math.min(maxHeadLength, 1024))];
+	}
+
+	private void ensureSpace(int count) {
+		if (buffer.length - end >= count)
+			return;
+		int len = end - start;
+		byte[] target = buffer;
+		if (len + count > buffer.length)
+			target = new byte[Math.max(len + count, buffer.length * 2)];
+		System.arraycopy(buffer, start, target, 0, len);
+		buffer = target;
+		scanned -= start;
+		start = 0;
+		end = len;
+	}
+
+	public void feed(int b) {
+		ensureSpace(1);
+		buffer[end++] = (byte) b;
+	}
+
+	public void feed(byte[] data, int ofs, int len) {
+		ensureSpace(len);
+		System.arraycopy(data, ofs, buffer, end, len);
+		end += len;
+	}
+
+	/**
+	 * Reads whatever the stream has to give straight into the buffer. Returns the result of the read.
+	 */
+	public int readFrom(InputStream input) throws IOException {
+		ensureSpace(Math.max(1, Math.min(maxHeadLength, 4096)));
+		int amount = input.read(buffer, end, buffer.length - end);
+		if (amount > 0)
+			end += amount;
+		return amount;
+	}
+
+	/**
+	 * True if part of a request has arrived.
+	 */
+	public boolean hasPartialRequest() {
+		return end > start;
+	}
+
+	/**
+	 * True if a request head went over the maximum length. The connection should get a 413 and be closed.
+	 */
+	public boolean isOverLimit() {
+		return overLimit;
+	}
+
+	/**
+	 * Gets the next complete request head, or null if there isn't one yet.
+	 */
+	public Request next() {
+		if (overLimit)
+			return null;
+		for (int i = Math.max(scanned, start + 3); i < end; i++) {
+			if ((buffer[i - 3] == '\r') &&
+				(buffer[i - 2] == '\n') &&
+				(buffer[i - 1] == '\r') &&
+				(buffer[i] == '\n')) {
+				if (i + 1 - start > maxHeadLength) {
+					// Arrived all at once, but still too long.
+					overLimit = true;
+					return null;
+				}
+				String head = new String(buffer, start, i + 1 - start, StandardCharsets.UTF_8);
+				start = i + 1;
+				scanned = start;
+				if (start == end) {
+					start = 0;
+					end = 0;
+					scanned = 0;
+				}
+				return new Request(head);
+			}
+		}
+		scanned = end;
+		if (end - start >= maxHeadLength)
+			overLimit = true;
+		return null;
+	}
+
+	/**
+	 * Encodes a response (header and body in one array, for a single write).
+	 * etag can be null.
+	 * A 304 Not Modified never has a body, and gets no Content-Length (it would have to be that of the body it stands in for).
+	 */
+	public static byte[] encodeResponse(String status, boolean head, String contentType, byte[] body, String etag, boolean keepAlive) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("HTTP/1.1 ");
+		sb.append(status);
+		sb.append("\r\nContent-Type: ");
+		sb.append(contentType);
+		if (etag != null) {
+			sb.append("\r\nETag: ");
+			sb.append(etag);
+		}
+		boolean notModified = status.startsWith("304");
+		if (!notModified) {
+			sb.append("\r\nContent-Length: ");
+			sb.append(body.length);
+		}
+		sb.append(keepAlive ? "\r\nConnection: keep-alive\r\n\r\n" : "\r\nConnection: close\r\n\r\n");
+		byte[] header = sb.toString().getBytes(StandardCharsets.UTF_8);
+		if (head || notModified)
+			return header;
+		byte[] total = new byte[header.length + body.length];
+		System.arraycopy(header, 0, total, 0, header.length);
+		System.arraycopy(body, 0, total, header.length, body.length);
+		return total;
+	}
+
+	/**
+	 * Checks an If-None-Match header against an ETag.
+	 * The header may list several tags separated by commas, or be "*".
+	 * Comparison is weak (a W/ prefix on either side is ignored), as RFC 7232 says to do for If-None-Match.
+	 */
+	public static boolean etagMatches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null || etag == null)
+			return false;
+		String ours = stripWeak(etag);
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || stripWeak(tag).equals(ours))
+				return true;
+		}
+		return false;
+	}
+
+	private static String stripWeak(String tag) {
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
+	}
+
+	/**
+	 * A parsed request head.
+	 */
+	public static final class Request {
+		public final String requestLine;
+		/**
+		 * If the client wants the connection kept open after this.
+		 */
+		public final boolean keepAlive;
+		/**
+		 * If-None-Match header (several are joined with commas), or null.
+		 */
+		public final String ifNoneMatch;
+
+		private Request(String head) {
+			String[] lines = head.split("\r\n");
+			requestLine = lines[0];
+			String[] parts = requestLine.split(" ");
+			boolean http11 = parts.length >= 3 && parts[2].equalsIgnoreCase("HTTP/1.1");
+			boolean http10 = parts.length >= 3 && parts[2].equalsIgnoreCase("HTTP/1.0");
+			boolean connClose = false;
+			boolean connKeepAlive = false;
+			boolean hasBody = false;
+			String inm = null;
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+				if (colon == -1)
+					continue;
+				String name = lines[i].substring(0, colon).trim();
+				String value = lines[i].substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Connection")) {
+					for (String token : value.split(",")) {
+						token = token.trim();
+						if (token.equalsIgnoreCase("close"))
+							connClose = true;
+						else if (token.equalsIgnoreCase("keep-alive"))
+							connKeepAlive = true;
+					}
+				} else if (name.equalsIgnoreCase("Content-Length")) {
+					if (!value.equals("0"))
+						hasBody = true;
+				} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+					hasBody = true;
+				} else if (name.equalsIgnoreCase("If-None-Match")) {
+					inm = inm == null ? value : inm + ", " + value;
+				}
+			}
+			ifNoneMatch = inm;
+			if (hasBody || connClose) {
+				keepAlive = false;
+			} else if (http11) {
+				keepAlive = true;
+			} else {
+				keepAlive = http10 && connKeepAlive;
+			}
+		}
+	}
+}
@@ -9,6 +9,7 @@ package natsue.server.http;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
 /**
  * For internal HTTP services
@@ -49,8 +50,34 @@ public interface IHTTPHandler {
 		default void httpResponse(String status, boolean head, String contentType, String body) throws IOException {
 			httpResponse(status, head, contentType, body.getBytes(StandardCharsets.UTF_8));
 		}
-	
-		void httpResponse(String status, boolean head, String contentType, byte[] body) throws IOException;
+
+		default void httpResponse(String status, boolean head, String contentType, byte[] body) throws IOException {
+			httpResponse(status, head, contentType, body, null);
+		}
+
+		/**
+		 * etag can be null.
+		 */
+		void httpResponse(String status, boolean head, String contentType, byte[] body, String etag) throws IOException;
+
+		/**
+		 * The If-None-Match header of the current request, if any.
+		 */
+		default String httpIfNoneMatch() {
+			return null;
+		}
+
+		/**
+		 * Responds with 304 Not Modified if the client already has this ETag, or otherwise with the body.
+		 * The body is only made if it's needed.
+		 */
+		default void httpOkCached(boolean head, String contentType, String etag, Supplier<String> body) throws IOException {
+			if (HTTPRequestParser.etagMatches(httpIfNoneMatch(), etag)) {
+				httpResponse("304 Not Modified", true, contentType, new byte[0], etag);
+			} else {
+				httpResponse("200 OK", head, contentType, body.get().getBytes(StandardCharsets.UTF_8), etag);
+			}
+		}
 
 		boolean isLocal();
 	}
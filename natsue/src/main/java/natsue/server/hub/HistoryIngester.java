@@ -0,0 +1,191 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hub;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBCreatureEvent;
+
+/**
+ * Writes uploaded creature history to the database, off the client's thread.
+ * Uploads are queued (bounded; if it stays full too long, uploads are dropped and counted).
+ * The worker takes whatever's queued, and writes all their new events in one batch.
+ * Events already seen recently (by moniker and index) are skipped, as clients upload the same events over and over.
+ */
+public class HistoryIngester extends Thread implements ILogSource {
+	/**
+	 * Most uploads written in one go.
+	 */
+	private static final int MAX_UPLOADS_PER_BATCH = 64;
+
+	private final INatsueDatabase database;
+	private final ILogProvider logParent;
+	// Null if uploads are written immediately.
+	private final ArrayBlockingQueue<Upload> queue;
+	private final long queueWaitMs;
+
+	// Access-ordered, so the eldest entry is the least recently seen.
+	private final LinkedHashMap<String, Boolean> seen;
+
+	private final LongAdder uploads = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder eventsWritten = new LongAdder();
+	private final LongAdder eventsSkipped = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+
+	/**
+	 * If queueSize <= 0, uploads are written immediately on the calling thread, and the thread isn't needed.
+	 */
+	public HistoryIngester(INatsueDatabase database, ILogProvider logParent, int queueSize, int queueWaitMs, int dedupSize) {
+		super("Natsue History Ingester");
+		this.database = database;
+		this.logParent = logParent;
+		queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : null;
+		this.queueWaitMs = Math.max(0, queueWaitMs);
+		final int dedupLimit = Math.max(0, dedupSize);
+		seen = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > dedupLimit;
+			}
+		};
+		setDaemon(true);
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	public boolean isQueued() {
+		return queue != null;
+	}
+
+	/**
+	 * Submits an upload. Returns false if it had to be dropped.
+	 */
+	public boolean submit(Upload upload) {
+		uploads.increment();
+		if (queue == null) {
+			ArrayList<Upload> single = new ArrayList<>(1);
+			single.add(upload);
+			write(single);
+			return true;
+		}
+		try {
+			if (queue.offer(upload, queueWaitMs, TimeUnit.MILLISECONDS))
+				return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		dropped.increment();
+		return false;
+	}
+
+	@Override
+	public void run() {
+		ArrayList<Upload> batch = new ArrayList<>();
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException ie) {
+				return;
+			}
+			queue.drainTo(batch, MAX_UPLOADS_PER_BATCH - 1);
+			try {
+				write(batch);
+			} catch (Exception ex) {
+				log(ex);
+			}
+			batch.clear();
+		}
+	}
+
+	private void write(List<Upload> batch) {
+		ArrayList<NatsueDBCreatureEvent> events = new ArrayList<>();
+		HashSet<String> keys = new HashSet<>();
+		for (Upload u : batch) {
+			if (u.state != null) {
+				database.ensureCreature(u.moniker, u.senderUID, u.state[0], u.state[1], u.state[2], u.state[3], u.state[4], u.name, u.userText);
+			} else if (u.name != null || u.userText != null) {
+				database.updateCreatureText(u.senderUID, u.moniker, u.name, u.userText);
+			}
+			for (NatsueDBCreatureEvent ev : u.events) {
+				String key = ev.moniker + ":" + ev.eventIndex;
+				boolean known;
+				synchronized (seen) {
+					known = seen.get(key) != null;
+				}
+				if (known || !keys.add(key)) {
+					eventsSkipped.increment();
+					continue;
+				}
+				events.add(ev);
+			}
+		}
+		if (events.isEmpty())
+			return;
+		batches.increment();
+		boolean ok = database.ensureCreatureEvents(events);
+		if (!ok) {
+			// Something in there is upsetting the database, so don't let it take the rest down with it.
+			ok = true;
+			for (NatsueDBCreatureEvent ev : events)
+				ok &= database.ensureCreatureEvent(ev.senderUID, ev.moniker, ev.eventIndex, ev.eventType, ev.worldTime, ev.ageTicks, ev.unixTime32, ev.lifeStage, ev.param1, ev.param2, ev.worldName, ev.worldID, ev.userID);
+		}
+		eventsWritten.add(events.size());
+		// Individual inserts fail if the event already exists, so only remember what we know is in.
+		if (ok) {
+			synchronized (seen) {
+				for (String key : keys)
+					seen.put(key, Boolean.TRUE);
+			}
+		}
+	}
+
+	public void runSystemCheck(StringBuilder sb) {
+		int queued = queue != null ? queue.size() : 0;
+		sb.append("History: U" + uploads.sum() + " D" + dropped.sum() + " Q" + queued + " E" + eventsWritten.sum() + " S" + eventsSkipped.sum() + " B" + batches.sum() + "\n");
+	}
+
+	/**
+	 * An already-sanitized history upload.
+	 */
+	public static class Upload {
+		public final int senderUID;
+		public final String moniker;
+		/**
+		 * If non-null, the creature is to be registered with this state (and name/user text).
+		 * Otherwise, name and user text (either of which may be null) are updates.
+		 */
+		public final int[] state;
+		public final String name, userText;
+		public final List<NatsueDBCreatureEvent> events;
+
+		public Upload(int senderUID, String moniker, int[] state, String name, String userText, List<NatsueDBCreatureEvent> events) {
+			this.senderUID = senderUID;
+			this.moniker = moniker;
+			this.state = state;
+			this.name = name;
+			this.userText = userText;
+			this.events = events;
+		}
+	}
+}
@@ -120,6 +120,7 @@ class HubActiveNatsueUserData implements INatsueUserData.LongTermPrivileged, ILo
 			activity = "updating password";
 			String newHash = PWHash.hash(uid, password);
 			if (parent.database.updateUserAuth(uid, newHash, flags & ~FLAG_2FA_ENABLED, 0)) {
+				parent.userChanged(uid, nicknameFolded);
 				pwHash = newHash;
 				activity = null;
 				return true;
@@ -143,8 +144,10 @@ class HubActiveNatsueUserData implements INatsueUserData.LongTermPrivileged, ILo
 				return false;
 			activity = "updating 2fa";
 			boolean tmp = parent.database.updateUserAuth(uid, pwHash, flags, value);
-			if (tmp)
+			if (tmp) {
+				parent.userChanged(uid, nicknameFolded);
 				twoFactorSeed = value;
+			}
 			activity = null;
 			return tmp;
 		}
@@ -157,13 +160,16 @@ class HubActiveNatsueUserData implements INatsueUserData.LongTermPrivileged, ILo
 				return false;
 			activity = "updating flags";
 			int newFlags = (flags & and) ^ xor;
-			if (parent.database.updateUserAuth(uid, pwHash, newFlags, twoFactorSeed)) {
-				flags = newFlags;
+			if (!parent.database.updateUserAuth(uid, pwHash, newFlags, twoFactorSeed)) {
 				activity = null;
-				return true;
+				return false;
 			}
+			parent.userChanged(uid, nicknameFolded);
+			flags = newFlags;
 			activity = null;
-			return false;
 		}
+		// Outside of the lock, as the hub takes its own locks here.
+		parent.flagsChanged(babel.uin);
+		return true;
 	}
 }
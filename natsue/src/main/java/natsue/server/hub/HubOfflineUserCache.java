@@ -0,0 +1,157 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import natsue.data.babel.UINUtils;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBUserInfo;
+
+/**
+ * Read-through cache of database user lookups, for users who aren't in the main cache (i.e. offline).
+ * Users that don't exist are remembered too, but not for as long (someone might register).
+ * Entries are dropped when the hub changes the user (see invalidate), and otherwise expire, in case of outside changes.
+ */
+class HubOfflineUserCache {
+	private final INatsueDatabase database;
+	private final int maxSize;
+	private final long ttlNanos;
+	private final long negativeTTLNanos;
+
+	private final LinkedHashMap<Long, CachedUser> byUIN;
+	private final LinkedHashMap<String, CachedUser> byNick;
+	// Bumped on invalidation, so a lookup that raced with one doesn't put stale data back.
+	private long generation;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder negativeHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * If maxSize <= 0, everything goes straight to the database.
+	 */
+	public HubOfflineUserCache(INatsueDatabase db, int maxSize, int ttlSeconds, int negativeTTLSeconds) {
+		database = db;
+		this.maxSize = maxSize;
+		ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		negativeTTLNanos = TimeUnit.SECONDS.toNanos(negativeTTLSeconds);
+		byUIN = makeLRU();
+		byNick = makeLRU();
+	}
+
+	private <K> LinkedHashMap<K, CachedUser> makeLRU() {
+		// Access-ordered, so the eldest entry is the least recently used.
+		return new LinkedHashMap<K, CachedUser>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CachedUser> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets a user by UIN. Returns null if they don't exist.
+	 */
+	public NatsueDBUserInfo getUserByUIN(long uin) {
+		if (!UINUtils.isRegularUser(uin))
+			return null;
+		if (maxSize <= 0)
+			return database.getUserByUIN(uin);
+		long gen;
+		synchronized (this) {
+			CachedUser e = byUIN.get(uin);
+			if (e != null && isFresh(e))
+				return hit(e);
+			gen = generation;
+		}
+		misses.increment();
+		NatsueDBUserInfo info = database.getUserByUIN(uin);
+		synchronized (this) {
+			if (gen != generation)
+				return info;
+			CachedUser e = new CachedUser(info);
+			byUIN.put(uin, e);
+			if (info != null)
+				byNick.put(info.nicknameFolded, e);
+		}
+		return info;
+	}
+
+	/**
+	 * Gets a user by (already folded) nickname. Returns null if they don't exist.
+	 */
+	public NatsueDBUserInfo getUserByFoldedNickname(String name) {
+		if (maxSize <= 0)
+			return database.getUserByFoldedNickname(name);
+		long gen;
+		synchronized (this) {
+			CachedUser e = byNick.get(name);
+			if (e != null && isFresh(e))
+				return hit(e);
+			gen = generation;
+		}
+		misses.increment();
+		NatsueDBUserInfo info = database.getUserByFoldedNickname(name);
+		synchronized (this) {
+			if (gen != generation)
+				return info;
+			CachedUser e = new CachedUser(info);
+			byNick.put(name, e);
+			if (info != null)
+				byUIN.put(UINUtils.ofRegularUser(info.uid), e);
+		}
+		return info;
+	}
+
+	/**
+	 * Forgets anything known about a user (whether they existed or not), as they've been created or changed.
+	 */
+	public synchronized void invalidate(int uid, String nicknameFolded) {
+		generation++;
+		byUIN.remove(UINUtils.ofRegularUser(uid));
+		byNick.remove(nicknameFolded);
+	}
+
+	private boolean isFresh(CachedUser e) {
+		return System.nanoTime() - e.fetched < (e.info != null ? ttlNanos : negativeTTLNanos);
+	}
+
+	private NatsueDBUserInfo hit(CachedUser e) {
+		if (e.info != null) {
+			hits.increment();
+		} else {
+			negativeHits.increment();
+		}
+		return e.info;
+	}
+
+	public void runSystemCheck(StringBuilder sb) {
+		int uinCount, nickCount;
+		synchronized (this) {
+			uinCount = byUIN.size();
+			nickCount = byNick.size();
+		}
+		sb.append("Offline user cache: H" + hits.sum() + " N" + negativeHits.sum() + " M" + misses.sum() + " (" + uinCount + " by UIN, " + nickCount + " by nickname)\n");
+	}
+
+	private static final class CachedUser {
+		// Null if the user doesn't exist.
+		final NatsueDBUserInfo info;
+		final long fetched = System.nanoTime();
+
+		CachedUser(NatsueDBUserInfo i) {
+			info = i;
+		}
+	}
+}
@@ -10,6 +10,7 @@ package natsue.server.hub;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.LongConsumer;
 
 import cdsp.common.util.UnixTime;
 import natsue.config.ConfigAccounts;
@@ -35,6 +36,14 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 	private final HashMap<Long, INatsueUserData.LongTermPrivileged> cacheByUIN = new HashMap<>();
 	private final HashMap<String, INatsueUserData.LongTermPrivileged> cacheByNick = new HashMap<>();
 	private final ILogProvider logParent;
+	/**
+	 * Database lookups for users not in the above.
+	 */
+	private final HubOfflineUserCache offlineUsers;
+	/**
+	 * Told the UIN of any user whose flags change. Set by ServerHub before it goes multi-threaded.
+	 */
+	LongConsumer flagsChangedListener;
 
 	/**
 	 * Apparently thread-safe, who knew?
@@ -45,6 +54,7 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 		database = db;
 		config = cfg;
 		logParent = lp;
+		offlineUsers = new HubOfflineUserCache(db, cfg.offlineUserCacheSize.getValue(), cfg.offlineUserCacheTime.getValue(), cfg.offlineUserCacheNegativeTime.getValue());
 	}
 
 	@Override
@@ -67,7 +77,7 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 		// Ok, now check with database
 		if (!NicknameVerifier.verifyNickname(config, name))
 			return null;
-		NatsueDBUserInfo db = database.getUserByFoldedNickname(name);
+		NatsueDBUserInfo db = offlineUsers.getUserByFoldedNickname(name);
 		if (db != null)
 			return new INatsueUserData.Fixed(db);
 		return null;
@@ -80,7 +90,7 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 			if (ihc != null)
 				return ihc;
 		}
-		NatsueDBUserInfo db = database.getUserByUIN(uin);
+		NatsueDBUserInfo db = offlineUsers.getUserByUIN(uin);
 		if (db != null)
 			return new INatsueUserData.Fixed(db);
 		return null;
@@ -143,8 +153,11 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 				continue;
 			NatsueDBUserInfo newUI = new NatsueDBUserInfo(uid, username, usernameFolded, PWHash.hash(uid, password), 0, UnixTime.get(), 0);
 			boolean success = database.tryCreateUser(newUI);
-			if (success)
+			if (success) {
 				log("Registered user: " + username + " as UID " + uid);
+				// They may have been looked up (and found not to exist) before.
+				offlineUsers.invalidate(uid, usernameFolded);
+			}
 			// It's possible that a username collision occurred during the registration process.
 			// In that event, we obviously should be seeing a username here.
 			// Alternatively, we need to read in the result of our success.
@@ -174,6 +187,19 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 		return null;
 	}
 
+	/**
+	 * Called when a user's database row has been changed.
+	 */
+	void userChanged(int uid, String nicknameFolded) {
+		offlineUsers.invalidate(uid, nicknameFolded);
+	}
+
+	void flagsChanged(long uin) {
+		LongConsumer fcl = flagsChangedListener;
+		if (fcl != null)
+			fcl.accept(uin);
+	}
+
 	public synchronized void notifyZeroRefCount(HubActiveNatsueUserData hubActiveNatsueUserData) {
 		cacheByUIN.remove(hubActiveNatsueUserData.babel.uin, hubActiveNatsueUserData);
 		cacheByNick.remove(hubActiveNatsueUserData.nicknameFolded, hubActiveNatsueUserData);
@@ -225,5 +251,6 @@ public class HubUserDataCache implements IHubUserDataCacheBetweenCacheAndHub, IL
 				sb.append(((HubActiveNatsueUserData) v).debugGetStatus() + "\n");
 			}
 		}
+		offlineUsers.runSystemCheck(sb);
 	}
 }
@@ -7,31 +7,65 @@
 
 package natsue.server.hub;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import natsue.server.hubapi.IHubClient;
+import natsue.server.hubapi.IHubClientAsSeenByOtherClients;
+import natsue.server.hubapi.OnlineUsersSnapshot;
 import natsue.server.userdata.IHubUserDataCacheBetweenCacheAndHub;
 
 /**
  * Exists because ServerHub got obscenely complicated.
- * Note that all inSync methods are relative to ServerHub synchronization.
+ *
+ * Locking protocol:
+ * Reads of connectedClients and wwrListeners are lock-free (these are concurrent collections).
+ * All changes to them (i.e. all inSync methods) happen while holding registerLock.
+ * Anything that must not race with a specific UIN logging in (spooling a message to an offline user) holds that UIN's stripe lock.
+ * Logins hold the stripe lock for the UIN, then registerLock - always in that order.
+ * Never hold registerLock while calling out to clients or WWR listeners.
  */
 public class HubUserRegister {
-	public final HashSet<IWWRListener> wwrListeners = new HashSet<>();
-	public final HashMap<Long, IHubClient> connectedClients = new HashMap<>();
+	private static final int STRIPE_COUNT = 64;
+
+	public final CopyOnWriteArrayList<IWWRListener> wwrListeners = new CopyOnWriteArrayList<>();
+	public final ConcurrentHashMap<Long, IHubClient> connectedClients = new ConcurrentHashMap<>();
+	/**
+	 * Connected clients that don't have the no-random flag.
+	 */
+	public final RandomUINPool randomPool = new RandomUINPool();
+	/**
+	 * Listing of connected clients that aren't on their way out. Republished under registerLock.
+	 */
+	public volatile OnlineUsersSnapshot onlineSnapshot = OnlineUsersSnapshot.EMPTY;
+
+	/**
+	 * Held while the register changes.
+	 */
+	public final Object registerLock = new Object();
+
+	private final Object[] stripes = new Object[STRIPE_COUNT];
 
 	private final IHubUserDataCacheBetweenCacheAndHub userDataCache;
 	public HubUserRegister(IHubUserDataCacheBetweenCacheAndHub udc) {
 		userDataCache = udc;
+		for (int i = 0; i < STRIPE_COUNT; i++)
+			stripes[i] = new Object();
 	}
 
 	/**
-	 * Must run in synchronized block, or else events will come too early.
+	 * Gets the stripe lock for a UIN.
+	 */
+	public Object stripeFor(long uin) {
+		return stripes[(Long.hashCode(uin) & 0x7FFFFFFF) % STRIPE_COUNT];
+	}
+
+	/**
+	 * Must run with the UIN's stripe lock and registerLock held, or else events will come too early.
 	 * Be wary that a successful return from here implies hubLogin has happened.
 	 */
-	public LinkedList<IWWRListener> earlyClientLoginInSync(IHubClient cc) {
+	public ArrayList<IWWRListener> earlyClientLoginInSync(IHubClient cc) {
 		Long uin = cc.getUIN();
 		if (connectedClients.containsKey(uin))
 			return null;
@@ -39,19 +73,50 @@ public class HubUserRegister {
 			return null;
 		// Past this point, hubLogin has occurred and we really, REALLY better not break this.
 		connectedClients.put(uin, cc);
-		LinkedList<IWWRListener> wwrNotify = new LinkedList<IWWRListener>(wwrListeners);
+		if (!cc.isNoRandom())
+			randomPool.add(uin);
+		republishOnlineSnapshot();
+		ArrayList<IWWRListener> wwrNotify = new ArrayList<IWWRListener>(wwrListeners);
 		wwrListeners.add(cc);
 		return wwrNotify;
 	}
 
 	/**
-	 * The opposite to earlyClientLogin.
+	 * The opposite to earlyClientLogin. Must run with registerLock held.
 	 * Above all else, used when we need to "back out" of an otherwise confirmed client login.
 	 */
 	public void earlyClientLogoutInSync(IHubClient cc) {
 		Long uin = cc.getUIN();
-		connectedClients.remove(uin, cc);
+		if (connectedClients.remove(uin, cc))
+			randomPool.remove(uin);
+		republishOnlineSnapshot();
 		wwrListeners.remove(cc);
 		userDataCache.hubLogout(cc.getUserData());
 	}
+
+	/**
+	 * Re-checks if a UIN belongs in the random pool, after flags change.
+	 * Takes registerLock, so don't call this holding any user data locks.
+	 */
+	public void refreshRandomPool(long uin) {
+		synchronized (registerLock) {
+			IHubClient cc = connectedClients.get(uin);
+			randomPool.set(uin, cc != null && !cc.isNoRandom());
+			// Flags are visible in listings
+			if (cc != null)
+				republishOnlineSnapshot();
+		}
+	}
+
+	/**
+	 * Rebuilds the online snapshot. Must run with registerLock held.
+	 */
+	public void republishOnlineSnapshot() {
+		ArrayList<IHubClientAsSeenByOtherClients> list = new ArrayList<>(connectedClients.size());
+		for (IHubClient client : connectedClients.values())
+			if (!client.isNotReallyOnline())
+				list.add(client);
+		IHubClientAsSeenByOtherClients[] array = list.toArray(new IHubClientAsSeenByOtherClients[list.size()]);
+		onlineSnapshot = new OnlineUsersSnapshot(onlineSnapshot.version + 1, array);
+	}
 }
@@ -7,6 +7,8 @@
 
 package natsue.server.hub;
 
+import java.util.List;
+
 import natsue.server.userdata.INatsueUserData;
 
 /**
@@ -27,4 +29,20 @@ public interface IWWRListener {
 	 * On logout, all WWR listeners are done before it's possible to log back in.
 	 */
 	void wwrNotify(boolean online, INatsueUserData userData);
+
+	/**
+	 * If true, this listener only passes notifications on to a client.
+	 * The hub may then skip wwrNotify and instead deliver pre-encoded user-line packets later via presenceBatch.
+	 * These are sent from one thread, in order, so per-user ordering still holds; the login/logout guarantees above do not.
+	 */
+	default boolean isPresenceBatchable() {
+		return false;
+	}
+
+	/**
+	 * Sends user-line packets (see PacketWriter.writeUserLine) in the given order.
+	 * The arrays are shared between recipients, so don't modify them.
+	 */
+	default void presenceBatch(List<byte[]> userLines) {
+	}
 }
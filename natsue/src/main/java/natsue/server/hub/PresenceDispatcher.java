@@ -0,0 +1,147 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import natsue.data.babel.PacketWriter;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.hubapi.IHubClient;
+import natsue.server.userdata.INatsueUserData;
+
+/**
+ * Sends online/offline notifications to batchable WWR listeners (i.e. clients) from a dedicated thread.
+ * Transitions are gathered over a tick. Per user, only the final state is sent, and only if it differs from the state before the tick.
+ * Each user-line packet is encoded once and shared between all recipients.
+ * Ordering: there's only one thread, and ticks are delivered in order, so each recipient sees each user's transitions in order.
+ */
+public class PresenceDispatcher extends Thread implements ILogSource {
+	private final HubUserRegister users;
+	private final ILogProvider logParent;
+	private final int batchMs;
+
+	private final Object lock = new Object();
+	// Insertion ordered, so users are announced in the order they first changed.
+	private LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>();
+
+	private final LongAdder transitions = new LongAdder();
+	private final LongAdder collapsed = new LongAdder();
+	private final LongAdder linesSent = new LongAdder();
+
+	public PresenceDispatcher(HubUserRegister users, ILogProvider logParent, int batchMs) {
+		super("Natsue Presence Dispatcher");
+		this.users = users;
+		this.logParent = logParent;
+		this.batchMs = batchMs;
+		setDaemon(true);
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	/**
+	 * Queues a transition. Called by the hub wherever it would have called wwrNotify on batchable listeners.
+	 */
+	public void post(boolean online, INatsueUserData userData) {
+		transitions.increment();
+		long uin = userData.getUIN();
+		synchronized (lock) {
+			Pending p = pending.get(uin);
+			if (p == null) {
+				p = new Pending(!online);
+				pending.put(uin, p);
+				lock.notify();
+			}
+			p.online = online;
+			p.packed = userData.getBabelUserData().packed;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			LinkedHashMap<Long, Pending> batch;
+			try {
+				synchronized (lock) {
+					while (pending.isEmpty())
+						lock.wait();
+				}
+				// Let the rest of the tick's worth of transitions arrive.
+				Thread.sleep(batchMs);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			synchronized (lock) {
+				batch = pending;
+				pending = new LinkedHashMap<>();
+			}
+			try {
+				deliver(batch);
+			} catch (Exception ex) {
+				log(ex);
+			}
+		}
+	}
+
+	private void deliver(LinkedHashMap<Long, Pending> batch) {
+		HashMap<Long, Integer> subjects = new HashMap<>();
+		ArrayList<byte[]> lines = new ArrayList<>();
+		for (Map.Entry<Long, Pending> ent : batch.entrySet()) {
+			Pending p = ent.getValue();
+			if (p.online == p.initiallyOnline) {
+				// Went away and came back (or the other way around) within the tick.
+				collapsed.increment();
+				continue;
+			}
+			subjects.put(ent.getKey(), lines.size());
+			lines.add(PacketWriter.writeUserLine(p.online, p.packed));
+		}
+		if (lines.isEmpty())
+			return;
+		for (IHubClient client : users.connectedClients.values()) {
+			if (!client.isPresenceBatchable() || client.isNotReallyOnline())
+				continue;
+			// Nobody hears about themselves.
+			Integer selfIdx = subjects.get(client.getUIN());
+			if (selfIdx == null) {
+				client.presenceBatch(lines);
+				linesSent.add(lines.size());
+			} else if (lines.size() > 1) {
+				ArrayList<byte[]> filtered = new ArrayList<>(lines);
+				filtered.remove((int) selfIdx);
+				client.presenceBatch(filtered);
+				linesSent.add(filtered.size());
+			}
+		}
+	}
+
+	public void runSystemCheck(StringBuilder sb) {
+		int queued;
+		synchronized (lock) {
+			queued = pending.size();
+		}
+		sb.append("Presence: T" + transitions.sum() + " C" + collapsed.sum() + " L" + linesSent.sum() + " Q" + queued + "\n");
+	}
+
+	private static class Pending {
+		final boolean initiallyOnline;
+		boolean online;
+		byte[] packed;
+
+		Pending(boolean initiallyOnline) {
+			this.initiallyOnline = initiallyOnline;
+		}
+	}
+}
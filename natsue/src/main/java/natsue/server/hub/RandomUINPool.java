@@ -0,0 +1,92 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hub;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The UINs eligible to be picked by "any on-line user".
+ * This is a dense array with swap-remove, so sampling is a single random index.
+ * Changes are synchronized; sampling takes no locks, so results can be slightly stale and must be checked by the caller.
+ */
+public class RandomUINPool {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private volatile AtomicLongArray uins = new AtomicLongArray(INITIAL_CAPACITY);
+	// Written after uins, read before it.
+	private volatile int size;
+	private final ConcurrentHashMap<Long, Integer> positions = new ConcurrentHashMap<>();
+
+	public synchronized void add(long uin) {
+		if (positions.containsKey(uin))
+			return;
+		AtomicLongArray arr = uins;
+		int idx = size;
+		if (idx == arr.length()) {
+			AtomicLongArray grown = new AtomicLongArray(arr.length() * 2);
+			for (int i = 0; i < idx; i++)
+				grown.set(i, arr.get(i));
+			uins = arr = grown;
+		}
+		arr.set(idx, uin);
+		positions.put(uin, idx);
+		size = idx + 1;
+	}
+
+	public synchronized void remove(long uin) {
+		Integer idx = positions.remove(uin);
+		if (idx == null)
+			return;
+		AtomicLongArray arr = uins;
+		int last = size - 1;
+		if (idx != last) {
+			long moved = arr.get(last);
+			arr.set(idx, moved);
+			positions.put(moved, idx);
+		}
+		size = last;
+	}
+
+	/**
+	 * Sets whether a UIN is in the pool.
+	 */
+	public void set(long uin, boolean present) {
+		if (present) {
+			add(uin);
+		} else {
+			remove(uin);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Picks a random UIN that isn't whoIsnt, or returns 0 if there's nobody.
+	 * Races with changes can return a UIN that's just left the pool (or even whoIsnt), so check the result.
+	 */
+	public long sample(long whoIsnt) {
+		int n = size;
+		AtomicLongArray arr = uins;
+		n = Math.min(n, arr.length());
+		Integer selfIdx = positions.get(whoIsnt);
+		int skip = -1;
+		if (selfIdx != null && selfIdx < n)
+			skip = selfIdx;
+		int candidates = skip == -1 ? n : n - 1;
+		if (candidates <= 0)
+			return 0;
+		int idx = ThreadLocalRandom.current().nextInt(candidates);
+		if (skip != -1 && idx >= skip)
+			idx++;
+		return arr.get(idx);
+	}
+}
@@ -9,28 +9,33 @@ package natsue.server.hub;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
+import cdsp.common.util.UnixTime;
 import natsue.config.BaseConfig.Opt;
 import natsue.config.Config;
 import natsue.data.babel.CreatureHistoryBlob;
 import natsue.data.babel.UINUtils;
 import natsue.data.babel.CreatureHistoryBlob.LifeEvent;
+import natsue.data.babel.pm.EncodedMessage;
 import natsue.data.babel.pm.PackedMessage;
 import natsue.log.ILogProvider;
 import natsue.log.ILogSource;
 import natsue.names.CreatureDataVerifier;
 import natsue.server.cryo.CryoFrontend;
 import natsue.server.database.INatsueDatabase;
-import natsue.server.database.NatsueDBUserInfo;
+import natsue.server.database.NatsueDBCreatureEvent;
+import natsue.server.database.NatsueDBSpooledMessage;
 import natsue.server.firewall.IFWModule;
 import natsue.server.firewall.IRejector;
 import natsue.server.hubapi.IHubClient;
 import natsue.server.hubapi.IHubPrivilegedClientAPI;
-import natsue.server.hubapi.IHubClientAsSeenByOtherClients;
 import natsue.server.hubapi.IHubClientAsSeenByOtherClientsPrivileged;
+import natsue.server.hubapi.OnlineUsersSnapshot;
 import natsue.server.packet.QuotaManager;
+import natsue.server.session.PingManager;
 import natsue.server.system.SystemCommands;
 import natsue.server.userdata.IHubUserDataCacheBetweenCacheAndHub;
 import natsue.server.userdata.IHubUserDataCachePrivileged;
@@ -38,6 +43,7 @@ import natsue.server.userdata.INatsueUserData;
 
 /**
  * Class that contains everything important to everything ever.
+ * For how this is synchronized, see HubUserRegister.
  */
 public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 	public final Config config;
@@ -63,7 +69,25 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 
 	private final HubUserRegister users;
 
-	private final Random randomGen = new Random();
+	/**
+	 * Sends presence to clients. Null if that's done synchronously.
+	 */
+	private final PresenceDispatcher presence;
+
+	/**
+	 * Writes to the spool (possibly in batches from its own thread).
+	 */
+	private final SpoolWriter spooler;
+
+	/**
+	 * Writes creature history (possibly queued, from its own thread).
+	 */
+	private final HistoryIngester history;
+
+	/**
+	 * How many times to sample the random pool before giving up.
+	 */
+	private static final int RANDOM_USER_ATTEMPTS = 4;
 
 	/**
 	 * We only have this for debugging
@@ -76,8 +100,25 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 		quotaManager = qm;
 		cryo = c;
 		database = db;
-		userDataCache = new HubUserDataCache(database, cfg.accounts, logProvider);
-		users = new HubUserRegister(userDataCache);
+		HubUserDataCache udc = new HubUserDataCache(database, cfg.accounts, logProvider);
+		userDataCache = udc;
+		users = new HubUserRegister(udc);
+		udc.flagsChangedListener = users::refreshRandomPool;
+		int presenceBatchTime = cfg.presenceBatchTime.getValue();
+		if (presenceBatchTime > 0) {
+			presence = new PresenceDispatcher(users, logProvider, presenceBatchTime);
+			presence.start();
+		} else {
+			presence = null;
+		}
+		spooler = new SpoolWriter(database, logProvider, cfg.db.spoolWriteBehindTime.getValue(), cfg.db.spoolWriteBehindBatch.getValue(), cfg.db.spoolWriteBehindQueueMax.getValue());
+		if (spooler.isWriteBehind()) {
+			spooler.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(spooler::shutdown, "Natsue Spool Writer Final Flush"));
+		}
+		history = new HistoryIngester(database, logProvider, cfg.historyQueueSize.getValue(), cfg.historyQueueWait.getValue(), cfg.historyDedupSize.getValue());
+		if (history.isQueued())
+			history.start();
 	}
 
 	@Override
@@ -99,26 +140,19 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 	}
 
 	@Override
-	public LinkedList<IHubClientAsSeenByOtherClients> listAllUsersOnlineYesIMeanAllOfThem() {
-		LinkedList<IHubClientAsSeenByOtherClients> ll = new LinkedList<>();
-		synchronized (this) {
-			for (IHubClient client : users.connectedClients.values())
-				ll.add(client);
-		}
-		return ll;
+	public OnlineUsersSnapshot listAllUsersOnlineYesIMeanAllOfThem() {
+		return users.onlineSnapshot;
 	}
 
 	@Override
 	public IHubClientAsSeenByOtherClientsPrivileged getConnectionByUIN(long uin) {
-		synchronized (this) {
-			IHubClient ihc = users.connectedClients.get(uin);
-			if (ihc != null) {
-				if (ihc.isNotReallyOnline())
-					return null;
-				return ihc;
-			}
-			return null;
+		IHubClient ihc = users.connectedClients.get(uin);
+		if (ihc != null) {
+			if (ihc.isNotReallyOnline())
+				return null;
+			return ihc;
 		}
+		return null;
 	}
 
 	@Override
@@ -128,17 +162,18 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 
 	@Override
 	public long getRandomOnlineNonSystemUIN(final long whoIsnt) {
-		long result = 0;
-		synchronized (this) {
-			ArrayList<IHubClient> randomPool = new ArrayList<>(users.connectedClients.values());
-			randomPool.removeIf(v -> (v.getUIN() == whoIsnt) || v.isNoRandom());
-			int size = randomPool.size();
-			if (size != 0) {
-				int idx = randomGen.nextInt(size);
-				result = randomPool.get(idx).getUIN();
-			}
+		// The pool can be a little behind, so check what comes out of it.
+		for (int i = 0; i < RANDOM_USER_ATTEMPTS; i++) {
+			long uin = users.randomPool.sample(whoIsnt);
+			if (uin == 0)
+				return 0;
+			if (uin == whoIsnt)
+				continue;
+			IHubClient ihc = users.connectedClients.get(uin);
+			if (ihc != null && !ihc.isNoRandom())
+				return uin;
 		}
-		return result;
+		return 0;
 	}
 
 	@Override
@@ -155,27 +190,34 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 	 * WARNING: Only call if you're absolutely sure the person isn't presently online!
 	 */
 	private void spoolMessage(long destinationUIN, PackedMessage message, int trueSenderUID, boolean fromRejector, boolean compress) {
-		NatsueDBUserInfo ui = database.getUserByUIN(destinationUIN);
-		if (ui != null) {
-			// compress is AND'd with config by caller
-			if (!database.spoolMessage(ui.uid, trueSenderUID, message.toByteArray(compress))) {
-				if (!fromRejector) {
-					// Spooling failed. There is almost nothing we can do, but there is one last thing we can try.
-					rejectMessage(destinationUIN, message, "User " + UINUtils.toString(destinationUIN) + " spool failure");
-				}
-			}
-		} else if (!fromRejector) {
-			rejectMessage(destinationUIN, message, "User " + UINUtils.toString(destinationUIN) + " does not exist");
+		// compress is AND'd with config by caller
+		CompletableFuture<String> failure = spoolMessageOrFail(destinationUIN, message.toByteArray(compress), trueSenderUID);
+		if (!fromRejector) {
+			failure.thenAccept((reason) -> {
+				// Spooling failed. There is almost nothing we can do, but there is one last thing we can try.
+				if (reason != null)
+					rejectMessage(destinationUIN, message, reason);
+			});
 		}
 	}
 
+	/**
+	 * Spools a message, but leaves rejection to the caller.
+	 * The result is null on success, or the reason for rejection.
+	 * If spooling is write-behind, the result may come later (from the spool writer thread).
+	 */
+	private CompletableFuture<String> spoolMessageOrFail(long destinationUIN, byte[] message, int trueSenderUID) {
+		INatsueUserData ui = UINUtils.isRegularUser(destinationUIN) ? userDataCache.getUserDataByUIN(destinationUIN) : null;
+		if (ui == null)
+			return CompletableFuture.completedFuture("User " + UINUtils.toString(destinationUIN) + " does not exist");
+		return spooler.spool(UINUtils.uid(destinationUIN), trueSenderUID, message).thenApply((ok) -> ok ? null : ("User " + UINUtils.toString(destinationUIN) + " spool failure"));
+	}
+
 	@Override
 	public void sendMessage(long destinationUIN, PackedMessage message, MsgSendType type, long causeUIN) {
 		IHubClient ihc;
 		if (type.failBehaviour.allowMessageLoss) {
-			synchronized (this) {
-				ihc = users.connectedClients.get(destinationUIN);
-			}
+			ihc = users.connectedClients.get(destinationUIN);
 			if (ihc != null) {
 				ihc.incomingMessage(message, null, type.compressIfAllowed);
 			} else {
@@ -183,16 +225,29 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 			}
 		} else {
 			// not temp, this message matters
-			synchronized (this) {
+			boolean spool = type.failBehaviour == MsgSendFailBehaviour.Spool;
+			CompletableFuture<String> spoolFailure = null;
+			synchronized (users.stripeFor(destinationUIN)) {
 				ihc = users.connectedClients.get(destinationUIN);
-				if (ihc == null) {
+				if (ihc == null && spool) {
 					// They're not online, so do this here.
 					// Otherwise they *could* go online while we're spooling the message (BAD!)
 					// If they go offline while we're SENDING, that's caught by the reject machinery (see below)
-					sendMessageFailed(destinationUIN, message, type, causeUIN, "Target offline");
+					spoolFailure = spoolMessageOrFail(destinationUIN, message.toByteArray(type.compressIfAllowed && config.messages.compressPRAYChunks.getValue()), UINUtils.asDBUID(causeUIN));
 				}
 			}
-			if (ihc != null) {
+			// Rejection sends a message to someone else, which takes their stripe.
+			// Doing that while holding ours could deadlock, so it all happens out here.
+			if (ihc == null) {
+				if (!spool) {
+					sendMessageFailed(destinationUIN, message, type, causeUIN, "Target offline");
+				} else if (spoolFailure != null && !type.isReject) {
+					spoolFailure.thenAccept((reason) -> {
+						if (reason != null)
+							rejectMessage(destinationUIN, message, reason);
+					});
+				}
+			} else {
 				ihc.incomingMessage(message, () -> {
 					// If this gets run, we apparently couldn't send the message after all...
 					sendMessageFailed(destinationUIN, message, type, causeUIN, "Target went offline during transmit");
@@ -200,6 +255,58 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 			}
 		}
 	}
+
+	@Override
+	public void broadcastMessage(Iterable<Long> destinationUINs, PackedMessage message, boolean senderIsTarget, MsgSendType type, long causeUIN) {
+		EncodedMessage encoded = EncodedMessage.encode(message, type.compressIfAllowed && config.messages.compressPRAYChunks.getValue(), config.messages);
+		for (long destinationUIN : destinationUINs)
+			sendEncodedMessage(destinationUIN, senderIsTarget ? encoded.withSender(destinationUIN) : encoded, type, causeUIN);
+	}
+
+	/**
+	 * sendMessage, but for an already-encoded message. See there for how this works.
+	 */
+	private void sendEncodedMessage(long destinationUIN, EncodedMessage message, MsgSendType type, long causeUIN) {
+		IHubClient ihc;
+		if (type.failBehaviour.allowMessageLoss) {
+			ihc = users.connectedClients.get(destinationUIN);
+			if (ihc != null) {
+				ihc.incomingEncodedMessage(message, null);
+			} else {
+				encodedMessageFailed(destinationUIN, message, type, causeUIN, "Target offline");
+			}
+		} else {
+			boolean spool = type.failBehaviour == MsgSendFailBehaviour.Spool;
+			CompletableFuture<String> spoolFailure = null;
+			synchronized (users.stripeFor(destinationUIN)) {
+				ihc = users.connectedClients.get(destinationUIN);
+				if (ihc == null && spool)
+					spoolFailure = spoolMessageOrFail(destinationUIN, message.copyPackedMessage(), UINUtils.asDBUID(causeUIN));
+			}
+			if (ihc == null) {
+				if (!spool) {
+					encodedMessageFailed(destinationUIN, message, type, causeUIN, "Target offline");
+				} else if (spoolFailure != null && !type.isReject) {
+					spoolFailure.thenAccept((reason) -> {
+						if (reason != null)
+							rejectMessage(destinationUIN, message.decode(), reason);
+					});
+				}
+			} else {
+				ihc.incomingEncodedMessage(message, () -> {
+					encodedMessageFailed(destinationUIN, message, type, causeUIN, "Target went offline during transmit");
+				});
+			}
+		}
+	}
+
+	private void encodedMessageFailed(long destinationUIN, EncodedMessage message, MsgSendType type, long causeUIN, String reason) {
+		// No point decoding it just to throw it away.
+		if (type.failBehaviour == MsgSendFailBehaviour.Discard)
+			return;
+		sendMessageFailed(destinationUIN, message.decode(), type, causeUIN, reason);
+	}
+
 	private void sendMessageFailed(long destinationUIN, PackedMessage message, MsgSendType type, long causeUIN, String reason) {
 		switch (type.failBehaviour) {
 		case Discard:
@@ -217,25 +324,27 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 
 	@Override
 	public void forceDisconnectUIN(long uin, boolean sync) {
-		IHubClient ihc;
-		synchronized (this) {
-			ihc = users.connectedClients.get(uin);
-		}
-		// We don't want the actual disconnect in the sync block.
+		IHubClient ihc = users.connectedClients.get(uin);
+		// We don't want the actual disconnect to be holding any locks.
 		// This is because forceDisconnect is supposed to make absolutely sure the client is gone.
 		// That implies a clientLogout needs to happen before it returns, and this may happen off-thread.
 		if (ihc != null)
 			ihc.forceDisconnect(sync); // X.X
 	}
 
-	private void wwrNotifyRun(boolean state, IHubClient cc, LinkedList<IWWRListener> wwrNotify) {
+	private void wwrNotifyRun(boolean state, IHubClient cc, List<IWWRListener> wwrNotify) {
 		for (IWWRListener ihc : wwrNotify) {
+			// The dispatcher takes care of these (and keeps them in order).
+			if (presence != null && ihc.isPresenceBatchable())
+				continue;
 			try {
 				ihc.wwrNotify(state, cc);
 			} catch (Exception ex) {
 				log(ex);
 			}
 		}
+		if (presence != null)
+			presence.post(state, cc);
 	}
 
 	/**
@@ -243,38 +352,39 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 	 * By this point, you see, the login has already been confirmed.
 	 * Dumping the connection now would essentially corrupt caller state.
 	 */
-	private void lateClientLogin(IHubClient cc, LinkedList<IWWRListener> wwrNotify) {
+	private void lateClientLogin(IHubClient cc, List<IWWRListener> wwrNotify) {
 		long uin = cc.getUIN();
 		wwrNotifyRun(true, cc, wwrNotify);
 		try {
 			if (UINUtils.isRegularUser(uin)) {
 				int uid = UINUtils.uid(uin);
+				// Anything still waiting to be written to their spool has to go in first (or it'd be missed, or out of order).
+				spooler.flushUser(uid);
 				// This is presumably a user in the database, dump all spool contents
-				int maxSpool = config.maxSpoolToReadOnConnect.getValue();
-				for (int i = 0; i < maxSpool; i++) {
-					byte[] pm = database.popFirstSpooledMessage(uid);
-					if (pm != null) {
-						if (!cc.incomingMessageByteArrayFastPath(pm, () -> {
-							// Note that BECAUSE THESE MESSAGES ARE ALREADY SPOOLED,
-							//  it's okay to spool them again at this level.
-							try {
-								PackedMessage pmi = PackedMessage.read(pm, config.messages);
-								final int pmiSenderUID = UINUtils.asDBUID(pmi.senderUIN);
-								database.spoolMessage(uid, pmiSenderUID, pm);
-							} catch (Exception ex) {
-								log(ex);
-							}
-						})) {
-							// slow-path
-							PackedMessage pmi = PackedMessage.read(pm, config.messages);
-							final int pmiSenderUID = UINUtils.asDBUID(pmi.senderUIN);
-							cc.incomingMessage(pmi, () -> {
-								database.spoolMessage(uid, pmiSenderUID, pm);
-							}, true);
-						}
-					} else {
+				int remaining = config.maxSpoolToReadOnConnect.getValue();
+				int batchSize = Math.max(1, config.spoolReadBatchSize.getValue());
+				while (remaining > 0) {
+					LinkedList<NatsueDBSpooledMessage> batch = database.getSpooledMessages(uid, Math.min(batchSize, remaining));
+					if (batch == null)
 						break;
+					long[] ids = new long[batch.size()];
+					int idx = 0;
+					for (NatsueDBSpooledMessage msg : batch) {
+						ids[idx++] = msg.id;
+						try {
+							deliverSpooledMessage(cc, uid, msg.data);
+						} catch (Exception ex) {
+							// Undecodable, so no use keeping it around.
+							log(ex);
+						}
 					}
+					// Everything's been handed off (and will be respooled if that fails), so remove them.
+					// If this fails, they'll be delivered again next time - better than losing them.
+					if (!database.deleteSpooledMessages(uid, ids))
+						break;
+					if (batch.size() < batchSize)
+						break;
+					remaining -= batch.size();
 				}
 			}
 		} catch (Exception ex) {
@@ -282,45 +392,72 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 		}
 	}
 
-	@Override
-	public boolean clientLogin(IHubClient client, Runnable onConfirm) {
-		LinkedList<IWWRListener> wwrNotify;
-		synchronized (this) {
-			wwrNotify = users.earlyClientLoginInSync(client);
-			if (wwrNotify == null)
-				return false;
+	private void deliverSpooledMessage(IHubClient cc, int uid, byte[] pm) {
+		if (!cc.incomingMessageByteArrayFastPath(pm, () -> {
+			// Note that BECAUSE THESE MESSAGES ARE ALREADY SPOOLED,
+			//  it's okay to spool them again at this level.
 			try {
-				onConfirm.run();
+				PackedMessage pmi = PackedMessage.read(pm, config.messages);
+				final int pmiSenderUID = UINUtils.asDBUID(pmi.senderUIN);
+				spooler.spool(uid, pmiSenderUID, pm);
 			} catch (Exception ex) {
-				users.earlyClientLogoutInSync(client);
-				throw ex;
+				log(ex);
+			}
+		})) {
+			// slow-path
+			PackedMessage pmi = PackedMessage.read(pm, config.messages);
+			final int pmiSenderUID = UINUtils.asDBUID(pmi.senderUIN);
+			cc.incomingMessage(pmi, () -> {
+				spooler.spool(uid, pmiSenderUID, pm);
+			}, true);
+		}
+	}
+
+	@Override
+	public boolean clientLogin(IHubClient client, Runnable onConfirm) {
+		List<IWWRListener> wwrNotify;
+		synchronized (users.stripeFor(client.getUIN())) {
+			synchronized (users.registerLock) {
+				wwrNotify = users.earlyClientLoginInSync(client);
+				if (wwrNotify == null)
+					return false;
+				try {
+					onConfirm.run();
+				} catch (Exception ex) {
+					users.earlyClientLogoutInSync(client);
+					throw ex;
+				}
 			}
 		}
 		lateClientLogin(client, wwrNotify);
 		return true;
 	}
 
-	private synchronized <X extends IHubClient> LinkedList<IWWRListener> earlyClientLoginWithReceiverStep(X client, ILoginReceiver<X> makeClient) {
-		LinkedList<IWWRListener> wwrNotify = users.earlyClientLoginInSync(client);
-		// wwrNotify being null here means a conflict happened.
-		if (wwrNotify != null) {
-			try {
-				makeClient.confirm(client);
-			} catch (Exception ex) {
-				// An exception occurring here reads as login failure - clean up.
-				users.earlyClientLogoutInSync(client);
-				throw ex;
+	private <X extends IHubClient> List<IWWRListener> earlyClientLoginWithReceiverStep(X client, ILoginReceiver<X> makeClient) {
+		synchronized (users.stripeFor(client.getUIN())) {
+			synchronized (users.registerLock) {
+				List<IWWRListener> wwrNotify = users.earlyClientLoginInSync(client);
+				// wwrNotify being null here means a conflict happened.
+				if (wwrNotify != null) {
+					try {
+						makeClient.confirm(client);
+					} catch (Exception ex) {
+						// An exception occurring here reads as login failure - clean up.
+						users.earlyClientLogoutInSync(client);
+						throw ex;
+					}
+				}
+				return wwrNotify;
 			}
 		}
-		return wwrNotify;
 	}
 
 	/**
 	 * Contains just the connection shootdown & earlyClientLoginInSync trigger logic.
 	 */
-	private <X extends IHubClient> LinkedList<IWWRListener> earlyClientLoginWithReceiver(long uin, X client, ILoginReceiver<X> makeClient) {
+	private <X extends IHubClient> List<IWWRListener> earlyClientLoginWithReceiver(long uin, X client, ILoginReceiver<X> makeClient) {
 		// -- Pass 1 --
-		LinkedList<IWWRListener> wwrNotify = earlyClientLoginWithReceiverStep(client, makeClient);
+		List<IWWRListener> wwrNotify = earlyClientLoginWithReceiverStep(client, makeClient);
 		if (wwrNotify != null)
 			return wwrNotify;
 
@@ -349,7 +486,7 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 			X client = makeClient.receive(userData, this);
 			if (client.getUserData() != userData)
 				throw new RuntimeException("Client logging in tried to be cheeky and use the wrong user data root.");
-			LinkedList<IWWRListener> wwrNotify = earlyClientLoginWithReceiver(userData.getUIN(), client, makeClient);
+			List<IWWRListener> wwrNotify = earlyClientLoginWithReceiver(userData.getUIN(), client, makeClient);
 			if (wwrNotify == null)
 				return new LoginResult.FailedConflict(userData.getBabelUserData());
 			lateClientLogin(client, wwrNotify);
@@ -359,16 +496,17 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 
 	@Override
 	public void clientLogout(IHubClient cc) {
-		LinkedList<IWWRListener> wwrNotify;
-		synchronized (this) {
-			wwrNotify = new LinkedList<IWWRListener>(users.wwrListeners);
+		List<IWWRListener> wwrNotify;
+		synchronized (users.registerLock) {
+			wwrNotify = new ArrayList<IWWRListener>(users.wwrListeners);
 			// Online flag must go false early to stop even more race conditions.
 			cc.markNotReallyOnline();
+			users.republishOnlineSnapshot();
 		}
 		// It's very important that this happens BEFORE we officially logout.
 		// Otherwise, race condition, See the wwrNotify function's definition.
 		wwrNotifyRun(false, cc, wwrNotify);
-		synchronized (this) {
+		synchronized (users.registerLock) {
 			users.earlyClientLogoutInSync(cc);
 		}
 	}
@@ -405,40 +543,48 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 			rejectMessage(destinationUIN, message, "Firewall threw exception");
 			return;
 		}
+		// Anything the firewall didn't need to look at hasn't been decoded yet.
+		try {
+			message.verify();
+		} catch (Exception ex2) {
+			rejectMessage(destinationUIN, message, "Corrupt message: " + ex2.getMessage());
+			return;
+		}
 		// Send.
 		sendMessage(destinationUIN, message, MsgSendType.Temp, trueCauseUIN);
 	}
 
 	@Override
-	public void clientSendHistory(IHubClient cc, CreatureHistoryBlob history) {
+	public void clientSendHistory(IHubClient cc, CreatureHistoryBlob blob) {
 		if (!config.allowCreatureHistory.getValue())
 			return;
-		String sanityError = history.verifySanity();
+		String sanityError = blob.verifySanity();
 		if (sanityError == null) {
 			int senderUID = UINUtils.uid(cc.getUIN());
-			if (history.state != null) {
+			String cName = null;
+			String cUserText = null;
+			if (blob.state != null) {
 				// Initialize creature entry
-				String cName = CreatureDataVerifier.stripName(config.messages, history.name);
-				String cUserText = "";
-				if (history.userText != null)
-					cUserText = CreatureDataVerifier.stripUserText(config.messages, history.userText);
-				database.ensureCreature(history.moniker, senderUID, history.state[0], history.state[1], history.state[2], history.state[3], history.state[4], cName, cUserText);
+				cName = CreatureDataVerifier.stripName(config.messages, blob.name);
+				cUserText = "";
+				if (blob.userText != null)
+					cUserText = CreatureDataVerifier.stripUserText(config.messages, blob.userText);
 			} else {
 				// Update name/user text fields
-				String cName = null;
-				String cUserText = null;
-				if (!history.name.equals(""))
-					cName = CreatureDataVerifier.stripName(config.messages, history.name);
-				if (history.userText != null)
-					cUserText = CreatureDataVerifier.stripUserText(config.messages, history.userText);
-				if (cName != null || cUserText != null)
-					database.updateCreatureText(senderUID, history.moniker, cName, cUserText);
+				if (!blob.name.equals(""))
+					cName = CreatureDataVerifier.stripName(config.messages, blob.name);
+				if (blob.userText != null)
+					cUserText = CreatureDataVerifier.stripUserText(config.messages, blob.userText);
 			}
-			for (LifeEvent le : history.events) {
+			long now = UnixTime.get();
+			ArrayList<NatsueDBCreatureEvent> events = new ArrayList<>(blob.events.length);
+			for (LifeEvent le : blob.events) {
 				String a = CreatureDataVerifier.stripMonikerLike(le.mon1);
 				String b = CreatureDataVerifier.stripMonikerLike(le.mon2);
-				database.ensureCreatureEvent(senderUID, history.moniker, le.index, le.eventType, le.worldTime, le.ageTicks, le.unixTime, le.lifeStage, a, b, le.worldName, le.worldID, le.userID);
+				events.add(new NatsueDBCreatureEvent(senderUID, blob.moniker, le.index, le.eventType, le.worldTime, le.ageTicks, le.unixTime, le.lifeStage, a, b, le.worldName, le.worldID, le.userID, now));
 			}
+			// The client's been told it's fine either way, so all we can do about a drop is count it.
+			history.submit(new HistoryIngester.Upload(senderUID, blob.moniker, blob.state, cName, cUserText, events));
 		} else if (config.logHistorySanityFailures.getValue()) {
 			log("History sanity failure from " + cc.getNickname() + ": " + sanityError);
 		}
@@ -450,16 +596,25 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 	}
 
 	@Override
-	public synchronized String runSystemCheck(boolean detailed) {
+	public String runSystemCheck(boolean detailed) {
 		StringBuilder sb = new StringBuilder();
 		// Preface
 		sb.append("-- Server Info --\n");
 		sb.append("Version: " + SystemCommands.VERSION + "\n");
 		Opt[] reportOptions = {
 				// db
+				config.db.dbBackend,
 				config.db.dbType,
+				config.db.dbPoolMaxSize,
+				config.db.dbPoolMinSize,
+				config.db.spoolWriteBehindTime,
+				config.db.spoolWriteBehindBatch,
+				config.db.spoolWriteBehindQueueMax,
+				config.db.spoolBackend,
 				// messsages
 				config.messages.compressPRAYChunks,
+				config.messages.prayCompressionLevel,
+				config.messages.prayCompressionStrategy,
 				// cryo
 				config.cryo.cryoSubmitEnabled,
 				config.cryo.cryoSubmitPublic,
@@ -474,6 +629,8 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 				config.excludeSelfRUSO,
 				config.allowConnectionShootdown,
 				config.manualKeepAliveTime,
+				config.presenceBatchTime,
+				config.pingTimeout,
 				config.initialNoDataShutdownTime,
 				config.httpAPIPublic,
 				config.httpRequestsEnabled,
@@ -481,6 +638,8 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 				config.httpRequestFakeLingerTime,
 				config.httpRequestMaxLength,
 				config.allowCreatureHistory,
+				config.historyQueueSize,
+				config.historyQueueWait,
 				config.firewallLevel,
 				config.allowNetWrit,
 				config.contactAddStrategy,
@@ -504,9 +663,20 @@ public class ServerHub implements IHubPrivilegedClientAPI, ILogSource {
 		// User Data Cache
 		userDataCache.runSystemCheck(sb, detailed);
 		// Connected Users
-		sb.append("-- Connected --\n");
-		for (IHubClient entry : users.connectedClients.values())
-			sb.append(UINUtils.toString(entry.getUIN()) + ": " + entry.getNickname() + "\n");
+		sb.append("-- Connected (" + users.randomPool.size() + " random-eligible) --\n");
+		for (IHubClient entry : users.connectedClients.values()) {
+			int pings = entry.getOutstandingPings();
+			sb.append(UINUtils.toString(entry.getUIN()) + ": " + entry.getNickname() + (pings != 0 ? (" (" + pings + " pings outstanding)") : "") + "\n");
+		}
+		PingManager.runSystemCheck(sb);
+		if (presence != null)
+			presence.runSystemCheck(sb);
+		spooler.runSystemCheck(sb);
+		history.runSystemCheck(sb);
+		// Message forwarding (passed through unchanged vs. had to be re-encoded)
+		sb.append("Message pass-through: P" + PackedMessage.passThroughHits.sum() + " M" + PackedMessage.passThroughMisses.sum() + "\n");
+		// Database
+		database.runSystemCheck(sb);
 		// Quota Manager
 		quotaManager.runSystemCheck(sb, detailed);
 		// Cryo
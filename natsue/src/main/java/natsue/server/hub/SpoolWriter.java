@@ -0,0 +1,239 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hub;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBSpoolInsert;
+
+/**
+ * Writes messages to the spool, either immediately or (if enabled) from a dedicated thread in batches.
+ * A batch is written when it's full, or once the flush time has passed since its first message arrived, in one transaction.
+ * If a batch fails as a whole, its messages are retried one at a time so one bad message doesn't sink the rest.
+ * The queue is bounded: once it's full, messages are written immediately on the calling thread instead.
+ * On an orderly shutdown, whatever is still queued is written out (see shutdown).
+ * Callers get a future for the result; those that don't care needn't wait on it.
+ */
+public class SpoolWriter extends Thread implements ILogSource {
+	private final INatsueDatabase database;
+	private final ILogProvider logParent;
+	private final int flushMs;
+	private final int batchSize;
+	private final int queueMax;
+
+	private final Object lock = new Object();
+	private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+	// Once set (under lock), nothing more is queued.
+	private boolean stopped;
+	// Held while writing, so flushUser can wait out whatever's in flight.
+	private final Object writeLock = new Object();
+
+	private final LongAdder written = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder overflows = new LongAdder();
+
+	/**
+	 * If flushMs <= 0, spool writes happen immediately on the calling thread, and the thread isn't needed.
+	 */
+	public SpoolWriter(INatsueDatabase database, ILogProvider logParent, int flushMs, int batchSize, int queueMax) {
+		super("Natsue Spool Writer");
+		this.database = database;
+		this.logParent = logParent;
+		this.flushMs = flushMs;
+		this.batchSize = Math.max(1, batchSize);
+		this.queueMax = Math.max(1, queueMax);
+		setDaemon(true);
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	public boolean isWriteBehind() {
+		return flushMs > 0;
+	}
+
+	/**
+	 * Spools a message. The future completes with whether it was actually written.
+	 */
+	public CompletableFuture<Boolean> spool(int uid, int causeUID, byte[] data) {
+		if (!isWriteBehind()) {
+			boolean ok = database.spoolMessage(uid, causeUID, data);
+			count(ok);
+			return CompletableFuture.completedFuture(ok);
+		}
+		Pending p = new Pending(new NatsueDBSpoolInsert(uid, causeUID, data));
+		boolean shuttingDown;
+		synchronized (lock) {
+			shuttingDown = stopped;
+			if (!shuttingDown && queue.size() < queueMax) {
+				queue.add(p);
+				if (queue.size() == 1 || queue.size() >= batchSize)
+					lock.notify();
+				return p.future;
+			}
+		}
+		// Full, so the database is behind; make the caller wait for it rather than piling up more.
+		// (Or shutting down, so the queue may never be written again.)
+		if (!shuttingDown)
+			overflows.increment();
+		// Anything of theirs still queued goes first, so their spool stays in order.
+		flushUser(uid);
+		boolean ok = database.spoolMessage(uid, causeUID, data);
+		count(ok);
+		return CompletableFuture.completedFuture(ok);
+	}
+
+	/**
+	 * Writes anything pending for the given user now (and waits for anything in flight).
+	 * Call before reading their spool, so nothing is missed or read out of order.
+	 */
+	public void flushUser(int uid) {
+		if (!isWriteBehind())
+			return;
+		ArrayList<Pending> mine = new ArrayList<>();
+		synchronized (writeLock) {
+			synchronized (lock) {
+				Iterator<Pending> it = queue.iterator();
+				while (it.hasNext()) {
+					Pending p = it.next();
+					if (p.insert.uid == uid) {
+						mine.add(p);
+						it.remove();
+					}
+				}
+			}
+			if (!mine.isEmpty())
+				write(mine);
+		}
+		complete(mine);
+	}
+
+	/**
+	 * Writes everything pending now (and waits for anything in flight).
+	 */
+	public void flushAll() {
+		if (!isWriteBehind())
+			return;
+		while (!writeBatch().isEmpty())
+			;
+	}
+
+	/**
+	 * Stops queueing (later messages are written immediately) and writes out the queue.
+	 * For a shutdown hook, as the thread is a daemon and would otherwise take the queue down with it.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			stopped = true;
+		}
+		flushAll();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				synchronized (lock) {
+					while (queue.isEmpty())
+						lock.wait();
+					// Give the rest of the batch a chance to arrive.
+					if (queue.size() < batchSize)
+						lock.wait(flushMs);
+				}
+			} catch (InterruptedException ie) {
+				return;
+			}
+			writeBatch();
+		}
+	}
+
+	/**
+	 * Takes a batch off the queue, writes it, and completes it. Returns the batch (empty if there was nothing to do).
+	 */
+	private ArrayList<Pending> writeBatch() {
+		ArrayList<Pending> batch = new ArrayList<>();
+		try {
+			synchronized (writeLock) {
+				synchronized (lock) {
+					while (batch.size() < batchSize && !queue.isEmpty())
+						batch.add(queue.poll());
+				}
+				if (!batch.isEmpty())
+					write(batch);
+			}
+		} catch (Exception ex) {
+			log(ex);
+		}
+		complete(batch);
+		return batch;
+	}
+
+	private void write(ArrayList<Pending> batch) {
+		ArrayList<NatsueDBSpoolInsert> inserts = new ArrayList<>(batch.size());
+		for (Pending p : batch)
+			inserts.add(p.insert);
+		batches.increment();
+		if (database.spoolMessages(inserts)) {
+			for (Pending p : batch)
+				p.ok = true;
+		} else {
+			for (Pending p : batch)
+				p.ok = database.spoolMessage(p.insert.uid, p.insert.causeUID, p.insert.data);
+		}
+	}
+
+	/**
+	 * Completes futures. Done outside of any lock, as whoever's waiting may do anything (i.e. reject the message).
+	 */
+	private void complete(ArrayList<Pending> batch) {
+		for (Pending p : batch) {
+			count(p.ok);
+			try {
+				p.future.complete(p.ok);
+			} catch (Exception ex) {
+				log(ex);
+			}
+		}
+	}
+
+	private void count(boolean ok) {
+		if (ok) {
+			written.increment();
+		} else {
+			failures.increment();
+		}
+	}
+
+	public void runSystemCheck(StringBuilder sb) {
+		int queued;
+		synchronized (lock) {
+			queued = queue.size();
+		}
+		sb.append("Spool writes: W" + written.sum() + " F" + failures.sum() + " B" + batches.sum() + " O" + overflows.sum() + " Q" + queued + "\n");
+	}
+
+	private static class Pending {
+		final NatsueDBSpoolInsert insert;
+		final CompletableFuture<Boolean> future = new CompletableFuture<>();
+		boolean ok;
+
+		Pending(NatsueDBSpoolInsert insert) {
+			this.insert = insert;
+		}
+	}
+}
@@ -7,6 +7,7 @@
 
 package natsue.server.hubapi;
 
+import natsue.data.babel.pm.EncodedMessage;
 import natsue.data.babel.pm.PackedMessage;
 import natsue.server.hub.IWWRListener;
 import natsue.server.userdata.INatsueUserData;
@@ -31,6 +32,14 @@ public interface IHubClient extends IHubClientAsSeenByOtherClientsPrivileged, IW
 		return false;
 	}
 
+	/**
+	 * Incoming pre-encoded message (i.e. a broadcast). Same rules as incomingMessage.
+	 * The default implementation decodes it; clients that can send the packet as-is should.
+	 */
+	default void incomingEncodedMessage(EncodedMessage message, Runnable reject) {
+		incomingMessage(message.decode(), reject, true);
+	}
+
 	/**
 	 * This connection is stale or we don't like the client or something.
 	 * If sync is true and this returns true, a hub logout call will have completed.
@@ -42,13 +51,20 @@ public interface IHubClient extends IHubClientAsSeenByOtherClientsPrivileged, IW
 
 	/**
 	 * Marks the client as "not really online". This makes isUINOnline return false.
-	 * Called by hub with the hub's lock.
+	 * Called by hub with the register lock held.
 	 */
 	void markNotReallyOnline();
 
 	/**
 	 * See markNotReallyOnline.
-	 * Called by hub with the hub's lock.
+	 * May be called from anywhere, with or without locks.
 	 */
 	boolean isNotReallyOnline();
+
+	/**
+	 * Amount of delivered messages still waiting for the client to confirm them (for the system check).
+	 */
+	default int getOutstandingPings() {
+		return 0;
+	}
 }
@@ -7,8 +7,6 @@
 
 package natsue.server.hubapi;
 
-import java.util.LinkedList;
-
 import natsue.data.babel.pm.PackedMessage;
 import natsue.server.cryo.CryoFrontend;
 import natsue.server.firewall.IRejector;
@@ -21,8 +19,9 @@ import natsue.server.userdata.INatsueUserData;
 public interface IHubPrivilegedAPI extends IHubCommonAPI, IHubUserDataCachePrivilegedProxy, IHubLoginAPI, IRejector {
 	/**
 	 * Returns all user info.
+	 * This is a shared immutable snapshot, so it's cheap to call and safe to keep.
 	 */
-	LinkedList<IHubClientAsSeenByOtherClients> listAllUsersOnlineYesIMeanAllOfThem();
+	OnlineUsersSnapshot listAllUsersOnlineYesIMeanAllOfThem();
 
 	// see base
 	IHubClientAsSeenByOtherClientsPrivileged getConnectionByUIN(long uin);
@@ -62,6 +61,12 @@ public interface IHubPrivilegedAPI extends IHubCommonAPI, IHubUserDataCachePrivi
 		sendMessage(destUser.getUIN(), message, type, causeUser.getUIN());
 	}
 
+	/**
+	 * sendMessage to many users, but the message is only encoded once.
+	 * If senderIsTarget is true, each recipient gets a copy with the sender UIN set to their own UIN.
+	 */
+	void broadcastMessage(Iterable<Long> destinationUINs, PackedMessage message, boolean senderIsTarget, MsgSendType type, long causeUIN);
+
 	/**
 	 * Attempts to forcibly disconnect a user by UIN.
 	 * Note that this may not work (system users can shrug it off) but regular users are gone.
@@ -0,0 +1,43 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.hubapi;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable view of the online users at some point.
+ * The hub publishes a new one whenever the set (or anything about it visible to listings) changes.
+ */
+public final class OnlineUsersSnapshot extends AbstractList<IHubClientAsSeenByOtherClients> implements RandomAccess {
+	public static final OnlineUsersSnapshot EMPTY = new OnlineUsersSnapshot(0, new IHubClientAsSeenByOtherClients[0]);
+
+	/**
+	 * Increases with every published snapshot.
+	 */
+	public final long version;
+	private final IHubClientAsSeenByOtherClients[] users;
+
+	/**
+	 * The array is NOT copied, so don't touch it afterwards.
+	 */
+	public OnlineUsersSnapshot(long version, IHubClientAsSeenByOtherClients[] users) {
+		this.version = version;
+		this.users = users;
+	}
+
+	@Override
+	public IHubClientAsSeenByOtherClients get(int index) {
+		return users[index];
+	}
+
+	@Override
+	public int size() {
+		return users.length;
+	}
+}
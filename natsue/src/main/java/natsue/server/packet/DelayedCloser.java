@@ -0,0 +1,38 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.packet;
+
+import java.net.Socket;
+
+import natsue.server.timing.TimingWheel;
+
+/**
+ * Because setSoLinger is broken in production (browser might want you to read the *whole* request?), fake it.
+ * The output is shut down so the client sees the end of the response, and the socket is closed later.
+ * This used to be a sleep on the connection's thread.
+ */
+public class DelayedCloser {
+	/**
+	 * Shuts down output now, closes the socket after the delay, and then runs the given callback.
+	 */
+	public static void closeLater(TimingWheel timers, Socket socket, int delayMs, Runnable then) {
+		try {
+			socket.shutdownOutput();
+		} catch (Exception ex) {
+			// closing anyway
+		}
+		timers.schedule(() -> {
+			try {
+				socket.close();
+			} catch (Exception ex) {
+				// Deliberately ignored - we're closing the socket.
+			}
+			then.run();
+		}, delayMs);
+	}
+}
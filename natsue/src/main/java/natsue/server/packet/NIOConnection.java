@@ -0,0 +1,636 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.packet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cdsp.common.data.IOUtils;
+import natsue.config.Config;
+import natsue.data.babel.PacketReader;
+import natsue.data.babel.PacketWriter;
+import natsue.data.babel.ctos.BaseCTOS;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.http.HTTPRequestParser;
+import natsue.server.http.IHTTPHandler;
+import natsue.server.session.BaseSessionState;
+import natsue.server.session.ISessionClient;
+import natsue.server.timing.TimingWheel;
+
+/**
+ * A client connection on the NIO engine.
+ * Socket I/O and decoding happen on the owning event loop.
+ * Everything involving the session happens in order on the connection's "strand" of the worker pool.
+ */
+public class NIOConnection implements ILogSource, ISessionClient, IHTTPHandler.Client {
+	private static final int STATE_SNIFF = 0;
+	private static final int STATE_BABEL = 1;
+	private static final int STATE_HTTP = 2;
+	private static final int STATE_HTTP_RESPONDING = 3;
+	private static final int STATE_CLOSED = 4;
+
+	private static final int INITIAL_BUFFER = 1024;
+	private static final int SHRINK_BUFFER_ABOVE = 65536;
+
+	/**
+	 * If this many packets are waiting on the session, stop reading until it catches up.
+	 */
+	private static final int MAX_INBOX = 32;
+	private static final int RESUME_INBOX = MAX_INBOX / 2;
+
+	public final SocketChannel channel;
+	public final InetAddress address;
+	public final Config config;
+	private final NIOEngine engine;
+	private final NIOEventLoop loop;
+	private final String name;
+
+	// -- Event loop only --
+	private SelectionKey key;
+	private int state = STATE_SNIFF;
+	private ByteBuffer inbound = IOUtils.newBuffer(INITIAL_BUFFER);
+	private int inboundWanted = 1;
+	private BaseCTOS pendingPacket;
+	private HTTPRequestParser httpParser;
+	private boolean httpBusy;
+	private long openedAt, lastReceived, lingerUntil, httpDeadline;
+	private boolean readPaused, readEOF, writeBlocked;
+	// The timer for the nearest deadline, if any. timerGeneration tells stale firings apart.
+	private TimingWheel.Timeout timer;
+	private long timerDeadline;
+	private int timerGeneration;
+
+	// -- Any thread --
+	private final OutboundQueue outbound;
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final AtomicInteger inbox = new AtomicInteger();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile boolean closing, httpKeepAlive;
+	private volatile String httpIfNoneMatch;
+
+	// -- Strand --
+	private final ConcurrentLinkedQueue<Runnable> strandTasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean strandScheduled = new AtomicBoolean();
+	private volatile Thread strandThread;
+	private volatile BaseSessionState sessionState;
+
+	NIOConnection(NIOEngine e, NIOEventLoop l, SocketChannel sc, InetAddress ia) {
+		engine = e;
+		loop = l;
+		channel = sc;
+		address = ia;
+		config = e.config;
+		outbound = new OutboundQueue(config.conn.outboundQueueMaxBytes.getValue(), config.conn.outboundQueueMaxPackets.getValue());
+		name = "NIOConnection[" + sc.socket().getRemoteSocketAddress() + "]";
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return engine;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	// -- Strand --
+
+	private void runOnStrand(Runnable r) {
+		strandTasks.add(r);
+		if (strandScheduled.compareAndSet(false, true))
+			engine.dispatch(this::runStrand);
+	}
+
+	private void runStrand() {
+		strandThread = Thread.currentThread();
+		try {
+			Runnable r;
+			while ((r = strandTasks.poll()) != null) {
+				try {
+					r.run();
+				} catch (Exception ex) {
+					log(ex);
+				}
+			}
+		} finally {
+			strandThread = null;
+			strandScheduled.set(false);
+		}
+		// Something may have been added between the last poll and releasing the strand.
+		if (!strandTasks.isEmpty() && strandScheduled.compareAndSet(false, true))
+			engine.dispatch(this::runStrand);
+	}
+
+	// -- ISessionClient --
+
+	@Override
+	public void setSessionState(BaseSessionState session) {
+		sessionState = session;
+	}
+
+	@Override
+	public void sendPacket(byte[] packet) throws IOException {
+		if (closing)
+			throw new IOException("Connection closed");
+		if (!outbound.add(packet)) {
+			log("Outbound queue over limit (" + outbound + "), disconnecting");
+			forceDisconnect(false);
+			throw new IOException("Outbound queue over limit");
+		}
+		requestFlush();
+	}
+
+	@Override
+	public boolean logFailedAuth() {
+		return config.logFailedAuthentication.getValue();
+	}
+
+	@Override
+	public boolean logPings() {
+		return config.logPings.getValue();
+	}
+
+	@Override
+	public void forceDisconnect(boolean sync) {
+		requestClose();
+		if (sync) {
+			if (Thread.currentThread() == strandThread) {
+				// oops
+				log(new Throwable("NOT AN EXCEPTION, BUT DEFINITELY AN ERROR: SYNCHRONOUS CONNECTION SHOOTDOWN TARGETTING CURRENT THREAD").fillInStackTrace());
+			} else {
+				try {
+					// This implies sessionState.logout(); has happened.
+					finished.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	// -- IHTTPHandler.Client --
+
+	@Override
+	public String httpIfNoneMatch() {
+		return httpIfNoneMatch;
+	}
+
+	@Override
+	public void httpResponse(String status, boolean head, String contentType, byte[] body, String etag) throws IOException {
+		sendPacket(HTTPRequestParser.encodeResponse(status, head, contentType, body, etag, httpKeepAlive));
+	}
+
+	@Override
+	public boolean isLocal() {
+		return address.isLoopbackAddress();
+	}
+
+	// -- Event loop --
+
+	private void requestClose() {
+		closing = true;
+		loop.execute(this::close);
+	}
+
+	private void requestFlush() {
+		if (flushRequested.compareAndSet(false, true))
+			loop.execute(this::flush);
+	}
+
+	/**
+	 * Called on the event loop once the connection is registered.
+	 */
+	void opened(SelectionKey k) {
+		key = k;
+		openedAt = engine.timers.millis();
+		lastReceived = openedAt;
+		if (config.logAllConnections.getValue())
+			log("Accepted");
+		if (closing) {
+			close();
+			return;
+		}
+		rearm();
+	}
+
+	/**
+	 * Closes the connection and queues the logout. Event loop only.
+	 */
+	void close() {
+		if (state == STATE_CLOSED)
+			return;
+		closing = true;
+		try {
+			// Last chance for i.e. a login failure response to get out.
+			writeOut();
+		} catch (Exception ex) {
+			// Deliberately ignored - we're closing the socket.
+		}
+		state = STATE_CLOSED;
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+		outbound.close();
+		if (key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (Exception ex) {
+			// Deliberately ignored - we're closing the socket.
+		}
+		runOnStrand(() -> {
+			try {
+				if (sessionState != null)
+					sessionState.logout();
+			} catch (Exception ex) {
+				log(ex);
+			}
+			if (config.logAllConnections.getValue())
+				log("Closed");
+			engine.quota.socketEnd(address);
+			finished.countDown();
+		});
+	}
+
+	private void updateInterest() {
+		if (state == STATE_CLOSED || key == null)
+			return;
+		int ops = 0;
+		if (!readPaused && !readEOF)
+			ops |= SelectionKey.OP_READ;
+		if (writeBlocked)
+			ops |= SelectionKey.OP_WRITE;
+		key.interestOps(ops);
+	}
+
+	void ready(SelectionKey k) {
+		if (!k.isValid())
+			return;
+		if (k.isWritable())
+			flush();
+		if (k.isValid() && k.isReadable())
+			read();
+	}
+
+	/**
+	 * The next time tick has anything to do, or 0 if nothing's pending.
+	 */
+	private long nextDeadline() {
+		switch (state) {
+		case STATE_SNIFF:
+			return deadlineAfter(openedAt, config.initialNoDataShutdownTime.getAsClampedMs());
+		case STATE_BABEL:
+			return deadlineAfter(lastReceived, config.manualKeepAliveTime.getAsClampedMs());
+		case STATE_HTTP:
+			return httpBusy ? 0 : httpDeadline;
+		case STATE_HTTP_RESPONDING:
+			return lingerUntil;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * A time of 0 or less means no timeout at all (as on the classic engine), so there's no deadline.
+	 */
+	private static long deadlineAfter(long from, int ms) {
+		return ms > 0 ? from + ms : 0;
+	}
+
+	/**
+	 * Makes sure a timer will fire by the next deadline. Call after anything that may bring a deadline forward.
+	 * Deadlines that move back (i.e. lastReceived on every read) are left alone; the timer fires early, finds nothing to do, and rearms.
+	 */
+	private void rearm() {
+		long deadline = nextDeadline();
+		if (deadline == 0 || (timer != null && timerDeadline <= deadline))
+			return;
+		if (timer != null)
+			timer.cancel();
+		int generation = ++timerGeneration;
+		timerDeadline = deadline;
+		timer = engine.timers.schedule(() -> loop.execute(() -> timerFired(generation)), deadline - engine.timers.millis());
+	}
+
+	private void timerFired(int generation) {
+		if (generation != timerGeneration || state == STATE_CLOSED)
+			return;
+		timer = null;
+		tick(engine.timers.millis());
+		rearm();
+	}
+
+	/**
+	 * Connection timeouts.
+	 */
+	void tick(long now) {
+		switch (state) {
+		case STATE_SNIFF:
+			int noData = config.initialNoDataShutdownTime.getAsClampedMs();
+			if (noData > 0 && now - openedAt >= noData)
+				close();
+			break;
+		case STATE_BABEL:
+			int keepAlive = config.manualKeepAliveTime.getAsClampedMs();
+			if (keepAlive > 0 && now - lastReceived >= keepAlive) {
+				lastReceived = now;
+				try {
+					sendPacket(PacketWriter.writeDummy());
+				} catch (IOException ex) {
+					// closing anyway
+				}
+			}
+			break;
+		case STATE_HTTP:
+			if (!httpBusy && httpDeadline != 0 && now >= httpDeadline) {
+				// An idle kept-alive connection just gets closed.
+				if (httpParser.hasPartialRequest()) {
+					httpFail("408 Request Timeout", "The request was not sent in a timely manner.");
+				} else {
+					close();
+				}
+			}
+			break;
+		case STATE_HTTP_RESPONDING:
+			if (lingerUntil != 0 && now >= lingerUntil)
+				close();
+			break;
+		}
+	}
+
+	private void flush() {
+		flushRequested.set(false);
+		if (state == STATE_CLOSED)
+			return;
+		try {
+			writeBlocked = !writeOut();
+		} catch (IOException ex) {
+			// The reader will find out soon enough, but no need to wait.
+			close();
+			return;
+		}
+		maybeStartLinger();
+		updateInterest();
+	}
+
+	/**
+	 * Once the last HTTP response is out, linger (see DelayedCloser) on the timer rather than closing immediately.
+	 */
+	private void maybeStartLinger() {
+		if (state != STATE_HTTP_RESPONDING || lingerUntil != 0 || writeBlocked || !outbound.isEmpty())
+			return;
+		try {
+			channel.shutdownOutput();
+		} catch (IOException ex) {
+			// closing anyway
+		}
+		lingerUntil = engine.timers.millis() + config.httpRequestFakeLingerTime.getAsClampedMs();
+		rearm();
+	}
+
+	/**
+	 * Writes as much as the socket will take. Returns true if everything was written.
+	 */
+	private boolean writeOut() throws IOException {
+		ByteBuffer[] batch;
+		while ((batch = outbound.peekBatch()) != null) {
+			channel.write(batch);
+			outbound.removeWritten();
+			if (batch[batch.length - 1].hasRemaining())
+				return false;
+		}
+		return true;
+	}
+
+	private void read() {
+		if (inbound.capacity() < inboundWanted) {
+			ByteBuffer nb = IOUtils.newBuffer(inboundWanted);
+			inbound.flip();
+			nb.put(inbound);
+			inbound = nb;
+		}
+		int amount;
+		try {
+			amount = channel.read(inbound);
+		} catch (IOException ex) {
+			close();
+			return;
+		}
+		if (amount < 0) {
+			readEOF = true;
+			if (state == STATE_HTTP) {
+				// Anything already pipelined still gets answered.
+				processHTTP();
+			} else if (state != STATE_HTTP_RESPONDING) {
+				close();
+				return;
+			}
+			updateInterest();
+			return;
+		}
+		if (amount > 0)
+			lastReceived = engine.timers.millis();
+		process();
+	}
+
+	private void process() {
+		try {
+			if (state == STATE_SNIFF) {
+				if (inbound.position() == 0)
+					return;
+				int firstByte = inbound.get(0) & 0xFF;
+				if (firstByte == 0x25) {
+					// Confirmed to be a Babel connection.
+					state = STATE_BABEL;
+					runOnStrand(() -> {
+						sessionState = engine.initialSessionStateBuilder.apply(this);
+					});
+				} else if (config.httpRequestsEnabled.getValue()) {
+					// If this isn't a handshake packet, then this is not a Babel connection (or at least a normal one).
+					// Assume it to be HTTP.
+					state = STATE_HTTP;
+					httpParser = new HTTPRequestParser(config.httpRequestMaxLength.getValue());
+					httpDeadline = deadlineAfter(openedAt, config.httpRequestTime.getAsClampedMs());
+				} else {
+					close();
+					return;
+				}
+			}
+			if (state == STATE_BABEL) {
+				processBabel();
+			} else if (state == STATE_HTTP) {
+				httpParser.feed(inbound.array(), 0, inbound.position());
+				inbound.clear();
+				processHTTP();
+			} else if (state == STATE_HTTP_RESPONDING) {
+				// Not interested.
+				inbound.clear();
+			}
+		} catch (Exception ex) {
+			log(ex);
+			close();
+			return;
+		}
+		rearm();
+		updateInterest();
+	}
+
+	private void processBabel() throws IOException {
+		while (!closing) {
+			if (inbox.get() >= MAX_INBOX) {
+				readPaused = true;
+				return;
+			}
+			byte[] array = inbound.array();
+			int avail = inbound.position();
+			if (avail < PacketReader.PACKET_HEADER_SIZE) {
+				inboundWanted = PacketReader.PACKET_HEADER_SIZE;
+				return;
+			}
+			ByteBuffer header = IOUtils.wrapLE(array, 0, PacketReader.PACKET_HEADER_SIZE);
+			if (pendingPacket == null)
+				pendingPacket = PacketReader.newPacketForHeader(header);
+			int remainderAvail = avail - PacketReader.PACKET_HEADER_SIZE;
+			ByteBuffer remainder = ByteBuffer.wrap(array, PacketReader.PACKET_HEADER_SIZE, remainderAvail).slice().order(ByteOrder.LITTLE_ENDIAN);
+			int remainderLen = pendingPacket.remainderLength(config.messages, header, remainder);
+			int total = PacketReader.PACKET_HEADER_SIZE + remainderLen;
+			if (remainderAvail < remainderLen) {
+				inboundWanted = total;
+				return;
+			}
+			BaseCTOS packet = pendingPacket;
+			pendingPacket = null;
+			remainder.limit(remainderLen);
+			PacketReader.readPacket(config.messages, packet, header, remainder);
+			// consume
+			int left = avail - total;
+			if (left == 0 && inbound.capacity() > SHRINK_BUFFER_ABOVE) {
+				inbound = IOUtils.newBuffer(INITIAL_BUFFER);
+			} else {
+				System.arraycopy(array, total, array, 0, left);
+				inbound.position(left);
+			}
+			dispatchPacket(packet);
+		}
+	}
+
+	private void dispatchPacket(BaseCTOS packet) {
+		inbox.incrementAndGet();
+		runOnStrand(() -> {
+			try {
+				if (!closing && sessionState != null) {
+					if (config.logAllIncomingPackets.getValue())
+						log(packet.toString());
+					sessionState.handlePacket(packet);
+					// nevermind then
+					if (sessionState == null)
+						requestClose();
+				}
+			} catch (Exception ex) {
+				log(ex);
+				requestClose();
+			}
+			if (inbox.decrementAndGet() == RESUME_INBOX)
+				loop.execute(this::resumeReading);
+		});
+	}
+
+	private void resumeReading() {
+		if (!readPaused || state == STATE_CLOSED)
+			return;
+		readPaused = false;
+		process();
+	}
+
+	/**
+	 * Handles HTTP requests one at a time, in order.
+	 * Reading is paused while a request is being handled, so pipelining clients can't pile up data.
+	 */
+	private void processHTTP() {
+		if (httpBusy || state != STATE_HTTP)
+			return;
+		HTTPRequestParser.Request request = httpParser.next();
+		if (request == null) {
+			httpKeepAlive = false;
+			if (httpParser.isOverLimit()) {
+				httpFail("413 Request Too Large", "The request was too large.");
+			} else if (readEOF) {
+				if (httpParser.hasPartialRequest()) {
+					httpFail("400 Bad Request", "The request was not properly terminated.");
+				} else {
+					// Client's done; let any response finish going out.
+					state = STATE_HTTP_RESPONDING;
+					maybeStartLinger();
+				}
+			}
+			return;
+		}
+		httpBusy = true;
+		readPaused = true;
+		httpKeepAlive = config.httpKeepAlive.getValue() && request.keepAlive;
+		httpIfNoneMatch = request.ifNoneMatch;
+		runOnStrand(() -> {
+			try {
+				engine.initialHandler.handleHTTP(request.requestLine, this);
+			} catch (Exception ex) {
+				log(ex);
+				StringWriter sb = new StringWriter();
+				PrintWriter pb = new PrintWriter(sb);
+				ex.printStackTrace(pb);
+				pb.flush();
+				httpKeepAlive = false;
+				try {
+					httpResponse("500 Internal Server Error", false, sb.toString());
+				} catch (IOException ex2) {
+					// closing anyway
+				}
+			}
+			loop.execute(this::httpRequestDone);
+		});
+	}
+
+	private void httpRequestDone() {
+		if (state != STATE_HTTP)
+			return;
+		httpBusy = false;
+		if (httpKeepAlive) {
+			readPaused = false;
+			httpDeadline = deadlineAfter(engine.timers.millis(), config.httpRequestTime.getAsClampedMs());
+			rearm();
+			processHTTP();
+		} else {
+			state = STATE_HTTP_RESPONDING;
+			maybeStartLinger();
+		}
+		updateInterest();
+	}
+
+	private void httpFail(String status, String text) {
+		httpKeepAlive = false;
+		state = STATE_HTTP_RESPONDING;
+		inbound.clear();
+		try {
+			httpResponse(status, false, text);
+		} catch (IOException ex) {
+			// closing anyway
+		}
+	}
+}
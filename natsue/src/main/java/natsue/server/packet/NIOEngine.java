@@ -0,0 +1,142 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.packet;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import natsue.config.Config;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+import natsue.server.http.IHTTPHandler;
+import natsue.server.session.BaseSessionState;
+import natsue.server.session.ISessionClient;
+import natsue.server.timing.TimingWheel;
+
+/**
+ * Selector-based connection engine.
+ * Connections are spread across a few event loops, which do all the socket I/O and packet decoding.
+ * Session handling (which can and does block, i.e. on the database) runs on a shared, bounded worker pool, one task at a time per connection.
+ */
+public class NIOEngine implements ILogSource {
+	private static final int WORKER_IDLE_SECONDS = 60;
+
+	public final Config config;
+	public final QuotaManager quota;
+	public final TimingWheel timers;
+	public final Function<ISessionClient, BaseSessionState> initialSessionStateBuilder;
+	public final IHTTPHandler initialHandler;
+	private final ILogProvider logParent;
+	private final NIOEventLoop[] loops;
+	private final ExecutorService workers;
+	private int nextLoop;
+
+	public NIOEngine(QuotaManager qm, TimingWheel tw, Function<ISessionClient, BaseSessionState> iSessionStateBuilder, IHTTPHandler iHandler, ILogProvider ilp, Config cfg) throws IOException {
+		config = cfg;
+		quota = qm;
+		timers = tw;
+		initialSessionStateBuilder = iSessionStateBuilder;
+		initialHandler = iHandler;
+		logParent = ilp;
+		AtomicInteger workerCount = new AtomicInteger();
+		ThreadFactory workerFactory = (r) -> {
+			return new Thread(r, "Natsue-NIO-Worker-" + workerCount.incrementAndGet());
+		};
+		int workerMax = cfg.conn.nioWorkerThreads.getValue();
+		if (workerMax > 0) {
+			// Each connection has at most one task queued or running (see NIOConnection.runOnStrand), so the queue is bounded by connections.
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(workerMax, workerMax, WORKER_IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), workerFactory);
+			tpe.allowCoreThreadTimeOut(true);
+			workers = tpe;
+		} else {
+			workers = Executors.newCachedThreadPool(workerFactory);
+		}
+		int loopCount = cfg.conn.nioEventLoops.getValue();
+		if (loopCount <= 0)
+			loopCount = Runtime.getRuntime().availableProcessors();
+		loops = new NIOEventLoop[loopCount];
+		for (int i = 0; i < loopCount; i++) {
+			loops[i] = new NIOEventLoop(this, i);
+			loops[i].start();
+		}
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	@Override
+	public String toString() {
+		return "NIOEngine";
+	}
+
+	/**
+	 * Runs session-side work.
+	 */
+	void dispatch(Runnable r) {
+		workers.execute(r);
+	}
+
+	/**
+	 * Accepts connections forever, handing them out to the event loops.
+	 */
+	public void doAcceptLoop(ServerSocketChannel sv) {
+		while (true) {
+			SocketChannel sc;
+			try {
+				sc = sv.accept();
+			} catch (IOException e) {
+				// !??!?!!?
+				e.printStackTrace();
+				continue;
+			}
+			InetAddress address = sc.socket().getInetAddress();
+			if (!quota.socketStart(address)) {
+				try {
+					try {
+						// Abort the connection as hard as possible.
+						sc.socket().setSoLinger(true, 0);
+					} catch (Exception ex) {
+						// nuh-uh
+					}
+					sc.close();
+				} catch (Exception ex) {
+					// bye!
+				}
+				continue;
+			}
+			try {
+				sc.configureBlocking(false);
+				sc.socket().setKeepAlive(true);
+			} catch (IOException ex) {
+				log(ex);
+				try {
+					sc.close();
+				} catch (Exception ex2) {
+					// bye!
+				}
+				quota.socketEnd(address);
+				continue;
+			}
+			NIOEventLoop loop = loops[nextLoop];
+			nextLoop = (nextLoop + 1) % loops.length;
+			loop.register(new NIOConnection(this, loop, sc, address));
+		}
+	}
+}
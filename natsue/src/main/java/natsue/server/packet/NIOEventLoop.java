@@ -0,0 +1,81 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.packet;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+
+/**
+ * A selector thread owning some amount of NIO connections.
+ * Everything that touches a connection's socket happens on here.
+ */
+class NIOEventLoop extends Thread implements ILogSource {
+	private final NIOEngine engine;
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	NIOEventLoop(NIOEngine e, int index) throws IOException {
+		super("Natsue-NIO-" + index);
+		engine = e;
+		selector = Selector.open();
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return engine;
+	}
+
+	/**
+	 * Runs a task on the event loop. Can be called from any thread.
+	 */
+	void execute(Runnable r) {
+		tasks.add(r);
+		selector.wakeup();
+	}
+
+	/**
+	 * Adds a freshly accepted connection.
+	 */
+	void register(NIOConnection conn) {
+		execute(() -> {
+			try {
+				conn.opened(conn.channel.register(selector, SelectionKey.OP_READ, conn));
+			} catch (IOException ex) {
+				log(ex);
+				conn.close();
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				// Timeouts come in via execute (see NIOConnection.rearm), so there's no need to wake up otherwise.
+				selector.select();
+				Runnable r;
+				while ((r = tasks.poll()) != null)
+					r.run();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					((NIOConnection) key.attachment()).ready(key);
+				}
+			} catch (Exception ex) {
+				log(ex);
+			}
+		}
+	}
+}
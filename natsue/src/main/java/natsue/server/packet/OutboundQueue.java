@@ -0,0 +1,132 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounded queue of packets waiting to be written to a client.
+ * Any thread can add to it; exactly one writer drains it.
+ * This is what keeps a slow client from stalling whoever is sending to it.
+ */
+public final class OutboundQueue {
+	/**
+	 * Limits on how much goes into one (gathering) write.
+	 */
+	public static final int MAX_BATCH_PACKETS = 64;
+	public static final int MAX_BATCH_BYTES = 0x10000;
+
+	private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+	private final long maxBytes;
+	private final int maxPackets;
+	private long bytes;
+	private boolean closed;
+
+	public OutboundQueue(long maxBytes, int maxPackets) {
+		this.maxBytes = maxBytes;
+		this.maxPackets = maxPackets;
+	}
+
+	/**
+	 * Adds a packet.
+	 * Returns false (and doesn't add it) if this would go over the limits - the caller should disconnect the client.
+	 * A packet arriving at an empty queue is always accepted, however big it is.
+	 * Throws if the queue has been closed.
+	 */
+	public synchronized boolean add(byte[] packet) throws IOException {
+		if (closed)
+			throw new IOException("Connection closed");
+		if (!queue.isEmpty() && (queue.size() >= maxPackets || bytes + packet.length > maxBytes))
+			return false;
+		queue.add(ByteBuffer.wrap(packet));
+		bytes += packet.length;
+		if (queue.size() == 1)
+			notifyAll();
+		return true;
+	}
+
+	/**
+	 * Gets the packets at the head of the queue, for a gathering write.
+	 * They stay queued until removeWritten is called. Returns null if there's nothing to write.
+	 */
+	public synchronized ByteBuffer[] peekBatch() {
+		if (queue.isEmpty())
+			return null;
+		int count = 0;
+		int batchBytes = 0;
+		Iterator<ByteBuffer> it = queue.iterator();
+		while (it.hasNext() && count < MAX_BATCH_PACKETS) {
+			ByteBuffer bb = it.next();
+			// always take at least one
+			if (count != 0 && batchBytes + bb.remaining() > MAX_BATCH_BYTES)
+				break;
+			batchBytes += bb.remaining();
+			count++;
+		}
+		ByteBuffer[] batch = new ByteBuffer[count];
+		it = queue.iterator();
+		for (int i = 0; i < count; i++)
+			batch[i] = it.next();
+		return batch;
+	}
+
+	/**
+	 * Waits for packets to write. Returns null once the queue has been closed and everything in it written.
+	 */
+	public synchronized ByteBuffer[] awaitBatch() throws InterruptedException {
+		while (queue.isEmpty()) {
+			if (closed)
+				return null;
+			wait();
+		}
+		return peekBatch();
+	}
+
+	/**
+	 * Drops fully written packets from the head of the queue.
+	 */
+	public synchronized void removeWritten() {
+		while (!queue.isEmpty()) {
+			ByteBuffer bb = queue.peek();
+			if (bb.hasRemaining())
+				return;
+			queue.poll();
+			bytes -= bb.capacity();
+		}
+	}
+
+	/**
+	 * Stops accepting packets. Anything already queued is still written.
+	 */
+	public synchronized void finish() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stops accepting packets and drops anything that hasn't been written.
+	 */
+	public synchronized void close() {
+		closed = true;
+		queue.clear();
+		bytes = 0;
+		notifyAll();
+	}
+
+	public synchronized boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return queue.size() + " packets, " + bytes + " bytes";
+	}
+}
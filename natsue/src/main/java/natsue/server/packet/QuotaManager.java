@@ -8,99 +8,168 @@ package natsue.server.packet;
 
 import java.net.InetAddress;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import natsue.config.ConfigConnectionQuotas;
+import natsue.server.timing.TimingWheel;
 
 /**
  * Manages connection quotas.
+ * Each IP address gets a token bucket holding quotaMaxConnectionsInTwoMinutes tokens, refilling fully over two minutes.
+ * All updates to an address happen inside ConcurrentHashMap.compute, so they only contend with that address's bin.
+ * Times are by the timing wheel's clock, as that's what runs eviction.
  */
 public class QuotaManager {
-	private HashMap<InetAddress, IPDetail> informationAbout = new HashMap<>();
+	private static final long REFILL_PERIOD_MS = 120_000L;
+	private static final int EVICTION_INTERVAL_MS = 5000;
+	private static final int EVICTION_BATCH = 256;
+
+	private final ConcurrentHashMap<InetAddress, IPDetail> informationAbout = new ConcurrentHashMap<>();
 	public final ConfigConnectionQuotas config;
+	private final TimingWheel timers;
+
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder rejectedRate = new LongAdder();
+	private final LongAdder rejectedConcurrent = new LongAdder();
+
+	// Only touched by the eviction timer.
+	private Iterator<InetAddress> evictionCursor;
 
-	public QuotaManager(ConfigConnectionQuotas cq) {
+	public QuotaManager(ConfigConnectionQuotas cq, TimingWheel tw) {
 		config = cq;
-		new Thread("QuotaManager Timer Daemon") {
-			@Override
-			public void run() {
-				while (true) {
-					try {
-						Thread.sleep(60000);
-					} catch (InterruptedException e) {
-						break;
-					}
-					minuteUpdate();
-				}
-			}
-		}.start();
+		timers = tw;
+		timers.schedule(this::evictionTimer, EVICTION_INTERVAL_MS);
 	}
 
-	private synchronized void minuteUpdate() {
-		HashSet<InetAddress> remove = new HashSet<>();
-		for (Map.Entry<InetAddress, IPDetail> ina : informationAbout.entrySet()) {
-			IPDetail ipd = ina.getValue();
-			ipd.connectionsLastMinute = ipd.connectionsThisMinute;
-			ipd.connectionsThisMinute = 0;
-			if (ipd.currentConnections == 0)
-				if (ipd.connectionsLastMinute == 0)
-					remove.add(ina.getKey());
+	private void evictionTimer() {
+		try {
+			evictSome(timers.millis());
+		} finally {
+			timers.schedule(this::evictionTimer, EVICTION_INTERVAL_MS);
 		}
-		for (InetAddress ia : remove)
-			informationAbout.remove(ia);
 	}
 
-	public synchronized boolean socketStart(Socket skt) {
-		InetAddress inetAddress = skt.getInetAddress();
+	/**
+	 * Checks a bounded amount of entries for staleness, carrying on where the last call left off.
+	 */
+	private void evictSome(long now) {
+		for (int i = 0; i < EVICTION_BATCH; i++) {
+			if (evictionCursor == null || !evictionCursor.hasNext()) {
+				evictionCursor = informationAbout.keySet().iterator();
+				if (!evictionCursor.hasNext())
+					return;
+			}
+			informationAbout.computeIfPresent(evictionCursor.next(), (k, ipd) -> {
+				return ipd.isStale(now, config.maxConnectionsInTwoMinutes.getValue()) ? null : ipd;
+			});
+		}
+	}
+
+	public boolean socketStart(Socket skt) {
+		return socketStart(skt.getInetAddress());
+	}
+
+	public boolean socketStart(InetAddress inetAddress) {
 		if (config.quotaIgnoresLoopback.getValue() && inetAddress.isLoopbackAddress())
 			return true;
-		IPDetail ipd = informationAbout.get(inetAddress);
-		if (ipd == null)
-			informationAbout.put(skt.getInetAddress(), ipd = new IPDetail());
-		if (ipd.connectionsThisMinute + ipd.connectionsLastMinute >= config.maxConnectionsInTwoMinutes.getValue())
-			return false;
-		if (ipd.currentConnections >= config.maxConnectionsConcurrent.getValue())
-			return false;
-		ipd.connectionsThisMinute++;
-		ipd.currentConnections++;
-		return true;
+		long now = timers.millis();
+		int capacity = config.maxConnectionsInTwoMinutes.getValue();
+		int maxConcurrent = config.maxConnectionsConcurrent.getValue();
+		// The result has to get out of the lambda somehow.
+		boolean[] result = new boolean[1];
+		informationAbout.compute(inetAddress, (k, ipd) -> {
+			if (ipd == null)
+				ipd = new IPDetail(capacity, now);
+			ipd.refill(now, capacity);
+			if (ipd.currentConnections >= maxConcurrent) {
+				rejectedConcurrent.increment();
+			} else if (ipd.tokens < 1) {
+				rejectedRate.increment();
+			} else {
+				ipd.tokens -= 1;
+				ipd.currentConnections++;
+				admitted.increment();
+				result[0] = true;
+			}
+			return ipd;
+		});
+		return result[0];
 	}
 
-	public synchronized void socketEnd(Socket skt) {
-		IPDetail ipd = informationAbout.get(skt.getInetAddress());
-		if (ipd != null)
+	public void socketEnd(Socket skt) {
+		socketEnd(skt.getInetAddress());
+	}
+
+	public void socketEnd(InetAddress inetAddress) {
+		informationAbout.computeIfPresent(inetAddress, (k, ipd) -> {
 			ipd.currentConnections--;
+			return ipd;
+		});
 	}
 
-	public synchronized void runSystemCheck(StringBuilder sb, boolean detailed) {
+	public void runSystemCheck(StringBuilder sb, boolean detailed) {
+		long now = timers.millis();
+		int capacity = config.maxConnectionsInTwoMinutes.getValue();
 		if (detailed) {
 			sb.append("-- QuotaManager --\n");
+			sb.append("admitted: " + admitted.sum());
+			sb.append(" rejectedRate: " + rejectedRate.sum());
+			sb.append(" rejectedConcurrent: " + rejectedConcurrent.sum() + "\n");
 			for (Map.Entry<InetAddress, IPDetail> ipd : informationAbout.entrySet()) {
 				sb.append(ipd.getKey().toString() + "\n");
 				sb.append(" currentConnections: " + ipd.getValue().currentConnections);
-				sb.append(" connectionsThisMinute: " + ipd.getValue().connectionsThisMinute);
-				sb.append(" connectionsLastMinute: " + ipd.getValue().connectionsLastMinute + "\n");
+				sb.append(" tokens: " + (int) ipd.getValue().peekTokens(now, capacity) + "\n");
 			}
 		} else {
-			sb.append("QuotaManager:\n");
+			sb.append("QuotaManager: A");
+			sb.append(admitted.sum());
+			sb.append(" R");
+			sb.append(rejectedRate.sum());
+			sb.append(" RC");
+			sb.append(rejectedConcurrent.sum());
+			sb.append('\n');
 			for (Map.Entry<InetAddress, IPDetail> ipd : informationAbout.entrySet()) {
 				sb.append(ipd.getKey().toString());
 				sb.append("\n C");
 				sb.append(ipd.getValue().currentConnections);
 				sb.append(" T");
-				sb.append(ipd.getValue().connectionsThisMinute);
-				sb.append(" L");
-				sb.append(ipd.getValue().connectionsLastMinute);
+				sb.append((int) ipd.getValue().peekTokens(now, capacity));
 				sb.append('\n');
 			}
 		}
 	}
 
+	/**
+	 * Per-address state. Only modified inside a map compute for that address.
+	 */
 	public static class IPDetail {
-		public int currentConnections;
-		public int connectionsLastMinute;
-		public int connectionsThisMinute;
+		public volatile int currentConnections;
+		public volatile double tokens;
+		private volatile long lastRefill;
+
+		public IPDetail(int capacity, long now) {
+			tokens = capacity;
+			lastRefill = now;
+		}
+
+		double peekTokens(long now, int capacity) {
+			double t = tokens + ((now - lastRefill) * (double) capacity) / REFILL_PERIOD_MS;
+			return Math.min(t, capacity);
+		}
+
+		void refill(long now, int capacity) {
+			tokens = peekTokens(now, capacity);
+			lastRefill = now;
+		}
+
+		/**
+		 * Stale entries carry no information: no connections, and the bucket's full again.
+		 */
+		boolean isStale(long now, int capacity) {
+			return currentConnections <= 0 && peekTokens(now, capacity) >= capacity;
+		}
 	}
 }
@@ -14,43 +14,60 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
 import natsue.config.Config;
-import natsue.data.babel.PacketReader;
+import natsue.data.babel.BabelFrameReader;
 import natsue.data.babel.PacketWriter;
 import natsue.data.babel.ctos.BaseCTOS;
 import natsue.log.ILogProvider;
 import natsue.log.ILogSource;
 import natsue.server.session.ISessionClient;
-import natsue.server.http.HTTPRequest;
+import natsue.server.http.HTTPRequestParser;
 import natsue.server.http.IHTTPHandler;
 import natsue.server.session.BaseSessionState;
+import natsue.server.timing.TimingWheel;
 
 /**
  * Thread for a given client.
  */
 public class SocketThread extends Thread implements ILogSource, ISessionClient, IHTTPHandler.Client {
+	/**
+	 * How long to wait for the writer to send out the last of the queue when closing.
+	 */
+	private static final int WRITER_FINISH_TIMEOUT_MS = 5000;
+
 	public final Socket socket;
 	public final QuotaManager quota;
+	public final TimingWheel timers;
 	private InputStream socketInput;
 	private OutputStream socketOutput;
-	private final Object sendPacketLock = new Object();
+	private final OutboundQueue outbound;
+	// Only Babel connections get a writer; HTTP responses go straight out.
+	private Thread writerThread;
 	private final ILogProvider logParent;
 	public final Config config;
 	public BaseSessionState sessionState;
 	public final Function<SocketThread, BaseSessionState> initialSessionStateBuilder;
 	public final IHTTPHandler initialHandler;
 	public long myUIN;
+	private boolean httpKeepAlive, httpLinger;
+	private String httpIfNoneMatch;
+	// Timers on the wheel (rather than socket timeouts); see startKeepAlive. Times are by the wheel's clock.
+	private volatile TimingWheel.Timeout timer;
+	private volatile long lastReceived;
+	private volatile boolean noDataTimedOut;
 
-	public SocketThread(Socket skt, QuotaManager qm, Function<SocketThread, BaseSessionState> iSessionStateBuilder, IHTTPHandler iHandler, ILogProvider ilp, Config stc) {
+	public SocketThread(Socket skt, QuotaManager qm, TimingWheel tw, Function<SocketThread, BaseSessionState> iSessionStateBuilder, IHTTPHandler iHandler, ILogProvider ilp, Config stc) {
 		socket = skt;
 		quota = qm;
+		timers = tw;
 		logParent = ilp;
 		initialSessionStateBuilder = iSessionStateBuilder;
 		initialHandler = iHandler;
 		config = stc;
+		outbound = new OutboundQueue(config.conn.outboundQueueMaxBytes.getValue(), config.conn.outboundQueueMaxPackets.getValue());
 	}
 
 	@Override
@@ -65,8 +82,46 @@ public class SocketThread extends Thread implements ILogSource, ISessionClient,
 
 	@Override
 	public void sendPacket(byte[] packet) throws IOException {
-		synchronized (sendPacketLock) {
-			socketOutput.write(packet);
+		if (!outbound.add(packet)) {
+			log("Outbound queue over limit (" + outbound + "), disconnecting");
+			forceDisconnect(false);
+			throw new IOException("Outbound queue over limit");
+		}
+	}
+
+	/**
+	 * Drains the outbound queue, so that nobody sending to this client has to wait on the socket.
+	 */
+	private void writerLoop() {
+		byte[] coalesce = new byte[OutboundQueue.MAX_BATCH_BYTES];
+		try {
+			ByteBuffer[] batch;
+			while ((batch = outbound.awaitBatch()) != null) {
+				if (batch.length == 1) {
+					ByteBuffer bb = batch[0];
+					socketOutput.write(bb.array(), bb.position(), bb.remaining());
+					bb.position(bb.limit());
+				} else {
+					// Coalesce small packets into one write.
+					// The batch limits make sure this fits.
+					int len = 0;
+					for (ByteBuffer bb : batch) {
+						int rem = bb.remaining();
+						bb.get(coalesce, len, rem);
+						len += rem;
+					}
+					socketOutput.write(coalesce, 0, len);
+				}
+				outbound.removeWritten();
+			}
+		} catch (Exception ex) {
+			// The socket is dead, make sure the reader knows.
+			outbound.close();
+			try {
+				socket.close();
+			} catch (Exception ex2) {
+				// Do not care
+			}
 		}
 	}
 
@@ -82,6 +137,7 @@ public class SocketThread extends Thread implements ILogSource, ISessionClient,
 
 	@Override
 	public void forceDisconnect(boolean sync) {
+		outbound.close();
 		try {
 			// It's worth noting Java defines this as a thread-safe thing to do.
 			// It'll also do exactly what's wanted of it - causing exceptions that will terminate the reader.
@@ -117,10 +173,22 @@ public class SocketThread extends Thread implements ILogSource, ISessionClient,
 			// Get first byte (as HTTP connection check)
 			int firstByte = -1;
 			byte[] tmpHttpChk = new byte[1];
-			if (PacketReader.readWithTimeout(socket, config.initialNoDataShutdownTime.getAsClampedMs(), tmpHttpChk, 0, 1) != 1) {
+			int noDataTime = config.initialNoDataShutdownTime.getAsClampedMs();
+			if (noDataTime > 0)
+				timer = timers.schedule(this::noDataTimeout, noDataTime);
+			int res;
+			try {
+				res = socketInput.read(tmpHttpChk, 0, 1);
+			} catch (IOException ex) {
+				if (noDataTimedOut)
+					return;
+				throw ex;
+			}
+			if (res != 1 || (timer != null && !timer.cancel())) {
 				// fine then, be that way
 				return;
 			}
+			timer = null;
 			firstByte = tmpHttpChk[0] & 0xFF;
 			if (firstByte != 0x25) {
 				// If this isn't a handshake packet, then this is not a Babel connection (or at least a normal one).
@@ -129,23 +197,19 @@ public class SocketThread extends Thread implements ILogSource, ISessionClient,
 				return;
 			}
 			// Confirmed to be a Babel connection.
+			writerThread = new Thread(this::writerLoop, "Natsue-Writer-" + socket.getRemoteSocketAddress());
+			writerThread.start();
 			sessionState = initialSessionStateBuilder.apply(this);
 			// This is the main loop!
-			int keepAlive = config.manualKeepAliveTime.getAsClampedMs();
+			lastReceived = timers.millis();
+			startKeepAlive(config.manualKeepAliveTime.getAsClampedMs());
+			BabelFrameReader reader = new BabelFrameReader(socketInput, config.messages);
+			reader.unread(firstByte);
 			while (sessionState != null) {
-				byte[] header = null;
-				try {
-					header = PacketReader.readPacketHeader(socket, keepAlive, firstByte);
-					firstByte = -1;
-					if (header == null)
-						break;
-				} catch (SocketTimeoutException ste) {
-					// keepAlive logic triggers, retry
-					// log("sending KA Packet");
-					sendPacket(PacketWriter.writeDummy());
-					continue;
-				}
-				BaseCTOS packet = PacketReader.readPacket(config.messages, header, socketInput);
+				BaseCTOS packet = reader.readPacket();
+				if (packet == null)
+					break;
+				lastReceived = timers.millis();
 				if (config.logAllIncomingPackets.getValue())
 					log(packet.toString());
 				sessionState.handlePacket(packet);
@@ -154,60 +218,149 @@ public class SocketThread extends Thread implements ILogSource, ISessionClient,
 		} catch (Exception ex) {
 			log(ex);
 		} finally {
+			TimingWheel.Timeout t = timer;
+			if (t != null)
+				t.cancel();
 			try {
-				synchronized (sendPacketLock) {
-					// Note that we hold sendPacketLock through the logout process. 
-					if (sessionState != null)
-						sessionState.logout();
-					socket.close();
-				}
+				if (sessionState != null)
+					sessionState.logout();
 			} catch (Exception ex2) {
 				// Deliberately ignored - we're closing the socket.
 			}
-			if (config.logAllConnections.getValue())
-				log("Closed");
-			quota.socketEnd(socket);
+			try {
+				// Let whatever is queued (i.e. a login failure response) get out first.
+				outbound.finish();
+				if (writerThread != null && writerThread.isAlive())
+					writerThread.join(WRITER_FINISH_TIMEOUT_MS);
+			} catch (Exception ex2) {
+				// Deliberately ignored - we're closing the socket.
+			}
+			if (httpLinger) {
+				DelayedCloser.closeLater(timers, socket, config.httpRequestFakeLingerTime.getAsClampedMs(), this::closed);
+			} else {
+				try {
+					socket.close();
+				} catch (Exception ex2) {
+					// Deliberately ignored - we're closing the socket.
+				}
+				closed();
+			}
 		}
 	}
 
+	private void noDataTimeout() {
+		noDataTimedOut = true;
+		try {
+			// Knocks the reader out of its read.
+			socket.close();
+		} catch (Exception ex) {
+			// Deliberately ignored - we're closing the socket.
+		}
+	}
+
+	/**
+	 * Sends a dummy packet whenever keepAliveMs passes without a packet from the client.
+	 * The timer isn't moved on every packet; it just fires, checks lastReceived, and goes again.
+	 */
+	private void startKeepAlive(int keepAliveMs) {
+		if (keepAliveMs > 0)
+			scheduleKeepAlive(keepAliveMs, keepAliveMs);
+	}
+
+	private void scheduleKeepAlive(int keepAliveMs, long delayMs) {
+		timer = timers.schedule(() -> {
+			if (socket.isClosed())
+				return;
+			long now = timers.millis();
+			long idle = now - lastReceived;
+			if (idle >= keepAliveMs) {
+				lastReceived = now;
+				idle = 0;
+				try {
+					sendPacket(PacketWriter.writeDummy());
+				} catch (IOException ex) {
+					// closing anyway
+				}
+			}
+			scheduleKeepAlive(keepAliveMs, keepAliveMs - idle);
+		}, delayMs);
+	}
+
+	private void closed() {
+		if (config.logAllConnections.getValue())
+			log("Closed");
+		quota.socketEnd(socket);
+	}
+
 	private void handleHTTPConnection(int firstByte) throws IOException {
 		// Can just make this immediately stop
 		if (!config.httpRequestsEnabled.getValue())
 			return;
 		// Ok, take it seriously
-		byte[] request = HTTPRequest.readRequestHeader(socket, this, this, firstByte, config.httpRequestMaxLength.getValue(), config.httpRequestTime.getValue());
-		if (request != null) {
-			String requestStr = new String(request, 0, request.length, StandardCharsets.UTF_8);
-			int idx1 = requestStr.indexOf('\r');
-			String requestLine = requestStr.substring(0, idx1);
+		int requestTime = config.httpRequestTime.getAsClampedMs();
+		boolean allowKeepAlive = config.httpKeepAlive.getValue();
+		HTTPRequestParser parser = new HTTPRequestParser(config.httpRequestMaxLength.getValue());
+		parser.feed(firstByte);
+		// 0 means no timeout, both here and for the socket.
+		socket.setSoTimeout(requestTime);
+		long deadline = requestTime > 0 ? timers.millis() + requestTime : 0;
+		while (true) {
+			HTTPRequestParser.Request request = parser.next();
+			if (request == null) {
+				httpKeepAlive = false;
+				if (parser.isOverLimit()) {
+					httpResponse("413 Request Too Large", false, "The request was too large.");
+					return;
+				}
+				int amount;
+				try {
+					if (deadline != 0 && timers.millis() >= deadline)
+						throw new SocketTimeoutException();
+					amount = parser.readFrom(socketInput);
+				} catch (SocketTimeoutException ste) {
+					// An idle kept-alive connection just gets closed.
+					if (parser.hasPartialRequest())
+						httpResponse("408 Request Timeout", false, "The request was not sent in a timely manner.");
+					return;
+				}
+				if (amount <= 0) {
+					if (parser.hasPartialRequest())
+						httpResponse("400 Bad Request", false, "The request was not properly terminated.");
+					return;
+				}
+				continue;
+			}
+			httpKeepAlive = allowKeepAlive && request.keepAlive;
+			httpIfNoneMatch = request.ifNoneMatch;
 			try {
-				initialHandler.handleHTTP(requestLine, this);
+				initialHandler.handleHTTP(request.requestLine, this);
 			} catch (Exception ex) {
 				log(ex);
 				StringWriter sb = new StringWriter();
 				PrintWriter pb = new PrintWriter(sb);
 				ex.printStackTrace(pb);
 				pb.flush();
+				httpKeepAlive = false;
 				httpResponse("500 Internal Server Error", false, sb.toString());
 			}
+			if (!httpKeepAlive)
+				return;
+			if (requestTime > 0)
+				deadline = timers.millis() + requestTime;
 		}
 	}
+
 	@Override
-	public void httpResponse(String status, boolean head, String contentType, byte[] body) throws IOException {
-		StringBuilder sb = new StringBuilder();
-		sb.append("HTTP/1.1 ");
-		sb.append(status);
-		sb.append("\r\nContent-Type: ");
-		sb.append(contentType);
-		sb.append("\r\nContent-Length: ");
-		sb.append(body.length);
-		sb.append("\r\nConnection: close\r\n\r\n");
-		socketOutput.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-		if (!head) {
-			socketOutput.write(body);
-		}
+	public String httpIfNoneMatch() {
+		return httpIfNoneMatch;
+	}
+
+	@Override
+	public void httpResponse(String status, boolean head, String contentType, byte[] body, String etag) throws IOException {
+		socketOutput.write(HTTPRequestParser.encodeResponse(status, head, contentType, body, etag, httpKeepAlive));
 		socketOutput.flush();
-		PacketReader.linger(socket, config.httpRequestFakeLingerTime.getAsClampedMs());
+		if (!httpKeepAlive)
+			httpLinger = true;
 	}
 
 	@Override
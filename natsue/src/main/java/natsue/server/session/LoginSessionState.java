@@ -23,6 +23,7 @@ import natsue.server.hubapi.IHubLoginAPI;
 import natsue.server.hubapi.IHubLoginAPI.ILoginReceiver;
 import natsue.server.hubapi.IHubLoginAPI.LoginResult.AccountFrozen;
 import natsue.server.system.SystemCommands;
+import natsue.server.timing.TimingWheel;
 import natsue.server.userdata.INatsueUserData;
 
 /**
@@ -31,11 +32,13 @@ import natsue.server.userdata.INatsueUserData;
 public class LoginSessionState extends BaseSessionState implements ILogSource {
 	public final IHubLoginAPI hub;
 	public final Config config;
+	public final TimingWheel timers;
 
-	public LoginSessionState(Config cfg, ISessionClient c, IHubLoginAPI h) {
+	public LoginSessionState(Config cfg, ISessionClient c, IHubLoginAPI h, TimingWheel tw) {
 		super(c);
 		hub = h;
 		config = cfg;
+		timers = tw;
 	}
 
 	@Override
@@ -60,7 +63,7 @@ public class LoginSessionState extends BaseSessionState implements ILogSource {
 			@Override
 			public MainSessionState receive(INatsueUserData.LongTermPrivileged userData, IHubClientAPI clientAPI) {
 				byte[] secret = userData.calculate2FASecret(handshake.password);
-				return new MainSessionState(config, client, handshake.clientVersion, secret, clientAPI, userData);
+				return new MainSessionState(config, client, handshake.clientVersion, secret, clientAPI, userData, timers);
 			}
 			@Override
 			public void confirm(MainSessionState result) {
@@ -9,7 +9,7 @@ package natsue.server.session;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.List;
 
 import cdsp.common.data.IOUtils;
 import cdsp.common.util.TOTP;
@@ -26,12 +26,14 @@ import natsue.data.babel.ctos.CTOSMessage;
 import natsue.data.babel.ctos.CTOSVirtualCircuit;
 import natsue.data.babel.ctos.CTOSVirtualConnect;
 import natsue.data.babel.ctos.CTOSWWRModify;
+import natsue.data.babel.pm.EncodedMessage;
 import natsue.data.babel.pm.PackedMessage;
 import natsue.data.hli.StandardMessages;
 import natsue.log.ILogProvider;
 import natsue.log.ILogSource;
 import natsue.server.hubapi.IHubClient;
 import natsue.server.hubapi.IHubClientAPI;
+import natsue.server.timing.TimingWheel;
 import natsue.server.userdata.INatsueUserData;
 
 /**
@@ -42,19 +44,19 @@ public class MainSessionState extends BaseSessionState implements IHubClient, IL
 	public final IHubClientAPI hub;
 	public final PingManager pingManager;
 	public final Config config;
-	public boolean notReallyOnline;
+	public volatile boolean notReallyOnline;
 	public final BabelClientVersion myClientVersion;
 	public final byte[] twoFASecret;
 	private volatile boolean has2FAAuthed;
 
-	public MainSessionState(Config cfg, ISessionClient c, BabelClientVersion myClientVersion, byte[] twoFASecret, IHubClientAPI h, INatsueUserData.LongTermPrivileged uin) {
+	public MainSessionState(Config cfg, ISessionClient c, BabelClientVersion myClientVersion, byte[] twoFASecret, IHubClientAPI h, INatsueUserData.LongTermPrivileged uin, TimingWheel tw) {
 		super(c);
 		this.myClientVersion = myClientVersion;
 		this.twoFASecret = twoFASecret;
 		if (twoFASecret == null)
 			has2FAAuthed = true;
 		config = cfg;
-		pingManager = new PingManager(c);
+		pingManager = new PingManager(c, tw, cfg.pingTimeout.getValue());
 		userData = uin;
 		hub = h;
 	}
@@ -147,6 +149,8 @@ public class MainSessionState extends BaseSessionState implements IHubClient, IL
 				log(ex);
 			}
 		} else if (packet instanceof CTOSFeedHistory) {
+			// The client only cares that it was received, so say so before doing anything with it.
+			dummyResponse(packet);
 			try {
 				ByteBuffer bb = IOUtils.wrapLE(((CTOSFeedHistory) packet).data);
 				CreatureHistoryBlob chb = new CreatureHistoryBlob(bb, config.messages.maxCreatureHistoryEvents.getValue());
@@ -154,7 +158,6 @@ public class MainSessionState extends BaseSessionState implements IHubClient, IL
 			} catch (Exception ex) {
 				log(ex);
 			}
-			dummyResponse(packet);
 		} else if (packet instanceof CTOSVirtualConnect) {
 			// Crash 'prevention'.
 			// ...you all get to share this one VSN
@@ -217,6 +220,21 @@ public class MainSessionState extends BaseSessionState implements IHubClient, IL
 		}
 	}
 
+	@Override
+	public boolean isPresenceBatchable() {
+		return true;
+	}
+
+	@Override
+	public synchronized void presenceBatch(List<byte[]> userLines) {
+		try {
+			for (byte[] line : userLines)
+				client.sendPacket(line);
+		} catch (IOException e) {
+			// Connection's going away, and logout will deal with it.
+		}
+	}
+
 	@Override
 	public void incomingMessage(PackedMessage message, Runnable reject, boolean compressIfAllowed) {
 		incomingMessageByteArrayFastPath(message.toByteArray(config.messages.compressPRAYChunks.getValue() && compressIfAllowed), reject);
@@ -224,38 +242,44 @@ public class MainSessionState extends BaseSessionState implements IHubClient, IL
 
 	@Override
 	public boolean incomingMessageByteArrayFastPath(byte[] message, Runnable reject) {
+		sendMessagePacket(PacketWriter.writeMessage(message), reject);
+		return true;
+	}
+
+	@Override
+	public void incomingEncodedMessage(EncodedMessage message, Runnable reject) {
+		sendMessagePacket(message.packet, reject);
+	}
+
+	private void sendMessagePacket(byte[] packet, Runnable reject) {
 		// First of all, send the message
 		try {
-			client.sendPacket(PacketWriter.writeMessage(message));
+			client.sendPacket(packet);
 		} catch (Exception ex) {
 			log(ex);
 			if (reject != null)
 				reject.run();
-			return true;
+			return;
 		}
 		// Now setup tracking for if that fails
 		if (reject == null)
-			return true;
-		final AtomicBoolean hasRejected = new AtomicBoolean();
-		byte[] pingPacket = pingManager.addPing((status) -> {
-			if (hasRejected.getAndSet(true))
-				return;
-			if (status == 0)
-				reject.run();
-		});
-		if (pingPacket == null) {
-			if (!hasRejected.getAndSet(true))
-				reject.run();
-			return true;
+			return;
+		int vsn = pingManager.addPing(reject);
+		if (vsn == 0) {
+			reject.run();
+			return;
 		}
 		try {
-			client.sendPacket(pingPacket);
+			client.sendPacket(PingManager.makePingPacket(vsn));
 		} catch (Exception ex) {
 			log(ex);
-			if (!hasRejected.getAndSet(true))
-				reject.run();
+			pingManager.fail(vsn, reject);
 		}
-		return true;
+	}
+
+	@Override
+	public int getOutstandingPings() {
+		return pingManager.getOutstanding();
 	}
 
 	@Override
@@ -7,8 +7,11 @@
 
 package natsue.server.session;
 
-import java.util.HashMap;
-import java.util.function.IntConsumer;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import natsue.data.babel.PacketWriter;
 import natsue.data.babel.UINUtils;
@@ -16,18 +19,57 @@ import natsue.data.babel.ctos.BaseCTOS;
 import natsue.data.babel.ctos.CTOSClientCommand;
 import natsue.log.ILogProvider;
 import natsue.log.ILogSource;
+import natsue.server.timing.TimingWheel;
 
 /**
  * Used to manage virtual circuit-based pings.
+ * VSNs are handed out by a cursor that advances through all 65535 of them (skipping any still outstanding),
+ * so a late reply can't confirm a newer ping unless the cursor has gone all the way around.
+ * Pings are kept in plain arrays indexed by the low bits of the VSN, which grow as needed (so there's a slot for every VSN at most).
+ * Outstanding pings are kept in a linked list in the order they were sent, which (as they all have the same timeout) is also deadline order.
+ * Only the oldest has a timer (on the given TimingWheel, by whose clock deadlines are kept) at any given time.
  */
 public class PingManager implements ILogSource {
-	private final HashMap<Short, IntConsumer> activePings = new HashMap<>();
-	private volatile boolean loggedOut = false;
-	private volatile short nextVSN = 0;
+	private static final int MAX_VSN = 65535;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int MAX_CAPACITY = MAX_VSN + 1;
+
+	// Failure callbacks reject messages, which can mean database work, so they can't run on the wheel itself.
+	private static final Executor FAILURES = Executors.newSingleThreadExecutor((r) -> {
+		Thread t = new Thread(r, "Natsue-PingFailures");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public static final LongAdder pingsSent = new LongAdder();
+	public static final LongAdder pingsConfirmed = new LongAdder();
+	public static final LongAdder pingsExpired = new LongAdder();
+
 	private final ISessionClient client;
+	private final TimingWheel timers;
+	private final long timeoutMs;
+	private boolean loggedOut = false;
 
-	public PingManager(ISessionClient c) {
+	// All indexed by slot (see slot). A slot is in use if it has a VSN; prev/next hold VSNs.
+	private char[] vsns = new char[INITIAL_CAPACITY];
+	private Runnable[] onFailure = new Runnable[INITIAL_CAPACITY];
+	private long[] deadlines = new long[INITIAL_CAPACITY];
+	private char[] prev = new char[INITIAL_CAPACITY];
+	private char[] next = new char[INITIAL_CAPACITY];
+	// Ends of the outstanding list (0 if empty).
+	private int oldest, newest;
+	private int outstanding;
+	private boolean expiryScheduled;
+
+	private int nextVSN = 1;
+
+	/**
+	 * Pings not answered within timeoutSeconds fail. If timeoutSeconds is <= 0, they only fail on logout.
+	 */
+	public PingManager(ISessionClient c, TimingWheel tw, int timeoutSeconds) {
 		client = c;
+		timers = tw;
+		timeoutMs = TimeUnit.SECONDS.toMillis(timeoutSeconds);
 	}
 
 	@Override
@@ -36,31 +78,151 @@ public class PingManager implements ILogSource {
 	}
 
 	/**
-	 * Creates a ping packet.
-	 * If this returns null, there's no free slot or the manager is logged out.
-	 * A response of 0 is failure, of 1 is success.
+	 * Starts tracking a ping, returning the VSN to send it with (see makePingPacket).
+	 * If this returns 0, there's no free VSN or the manager is logged out.
+	 * failure is run (once, and not under any lock) if the ping fails; nothing happens on success.
 	 */
-	public byte[] addPing(IntConsumer response) {
+	public int addPing(Runnable failure) {
+		int vsn;
 		synchronized (this) {
 			if (loggedOut)
-				return null;
-			short vsn = 0;
-			for (int i = 0; i < 65536; i++) {
-				if (nextVSN != 0) {
-					if (!activePings.containsKey(nextVSN)) {
-						vsn = nextVSN;
-						break;
-					}
-				}
-				nextVSN = (short) (nextVSN + 1);
+				return 0;
+			if (outstanding == MAX_VSN)
+				return 0;
+			// Keeping it at most half full means the cursor doesn't have to skip much.
+			if (outstanding * 2 >= vsns.length && vsns.length < MAX_CAPACITY)
+				grow();
+			do {
+				vsn = nextVSN;
+				nextVSN = nextVSN == MAX_VSN ? 1 : nextVSN + 1;
+			} while (vsns[slot(vsn)] != 0);
+			int s = slot(vsn);
+			vsns[s] = (char) vsn;
+			onFailure[s] = failure;
+			deadlines[s] = timers.millis() + timeoutMs;
+			prev[s] = (char) newest;
+			next[s] = 0;
+			if (newest != 0) {
+				next[slot(newest)] = (char) vsn;
+			} else {
+				oldest = vsn;
+			}
+			newest = vsn;
+			outstanding++;
+			if (timeoutMs > 0 && !expiryScheduled) {
+				expiryScheduled = true;
+				timers.schedule(this::expire, timeoutMs);
+			}
+		}
+		pingsSent.increment();
+		if (client.logPings())
+			log("Sending: " + vsn);
+		return vsn;
+	}
+
+	public static byte[] makePingPacket(int vsn) {
+		return PacketWriter.writeVirtualConnect(UINUtils.SERVER_UIN, (short) vsn);
+	}
+
+	/**
+	 * Fails a ping now (i.e. because the ping packet couldn't be sent), if it's still outstanding with the same callback.
+	 */
+	public void fail(int vsn, Runnable failure) {
+		synchronized (this) {
+			if (!isOutstanding(vsn) || onFailure[slot(vsn)] != failure)
+				return;
+			release(vsn);
+		}
+		failure.run();
+	}
+
+	/**
+	 * Amount of pings awaiting a response.
+	 */
+	public synchronized int getOutstanding() {
+		return outstanding;
+	}
+
+	private int slot(int vsn) {
+		return vsn & (vsns.length - 1);
+	}
+
+	private boolean isOutstanding(int vsn) {
+		return vsn > 0 && vsn <= MAX_VSN && vsns[slot(vsn)] == vsn;
+	}
+
+	private void grow() {
+		char[] oldVSNs = vsns;
+		Runnable[] oldOnFailure = onFailure;
+		long[] oldDeadlines = deadlines;
+		char[] oldPrev = prev;
+		char[] oldNext = next;
+		int newCap = oldVSNs.length * 2;
+		vsns = new char[newCap];
+		onFailure = new Runnable[newCap];
+		deadlines = new long[newCap];
+		prev = new char[newCap];
+		next = new char[newCap];
+		// Outstanding VSNs had different low bits before, so they still do with one more bit.
+		for (int i = 0; i < oldVSNs.length; i++) {
+			if (oldVSNs[i] == 0)
+				continue;
+			int s = slot(oldVSNs[i]);
+			vsns[s] = oldVSNs[i];
+			onFailure[s] = oldOnFailure[i];
+			deadlines[s] = oldDeadlines[i];
+			prev[s] = oldPrev[i];
+			next[s] = oldNext[i];
+		}
+	}
+
+	private void release(int vsn) {
+		int s = slot(vsn);
+		int p = prev[s];
+		int n = next[s];
+		if (p != 0) {
+			next[slot(p)] = (char) n;
+		} else {
+			oldest = n;
+		}
+		if (n != 0) {
+			prev[slot(n)] = (char) p;
+		} else {
+			newest = p;
+		}
+		vsns[s] = 0;
+		onFailure[s] = null;
+		outstanding--;
+	}
+
+	private void expire() {
+		ArrayList<Runnable> expired = new ArrayList<>();
+		synchronized (this) {
+			long now = timers.millis();
+			while (oldest != 0 && deadlines[slot(oldest)] - now <= 0) {
+				expired.add(onFailure[slot(oldest)]);
+				release(oldest);
+			}
+			if (oldest != 0) {
+				timers.schedule(this::expire, deadlines[slot(oldest)] - now);
+			} else {
+				expiryScheduled = false;
 			}
-			if (vsn == 0)
-				return null;
-			activePings.put(vsn, response);
-			if (client.logPings())
-				log("Sending: " + vsn);
-			return PacketWriter.writeVirtualConnect(UINUtils.SERVER_UIN, vsn);
 		}
+		if (expired.isEmpty())
+			return;
+		pingsExpired.add(expired.size());
+		if (client.logPings())
+			log("Expired: " + expired.size() + " pings");
+		FAILURES.execute(() -> {
+			for (Runnable r : expired) {
+				try {
+					r.run();
+				} catch (Exception ex) {
+					log(ex);
+				}
+			}
+		});
 	}
 
 	/**
@@ -73,17 +235,17 @@ public class PingManager implements ILogSource {
 				if (cc.subCommand == 0x0E) {
 					// The client accepted the virtual circuit, so of course immediately close the connection
 					int serverVSN = (cc.param >> 16) & 0xFFFF;
-					IntConsumer activePing;
+					boolean wasActive = false;
 					synchronized (this) {
-						Short serverVSNS = (Short) (short) serverVSN;
-						activePing = activePings.get(serverVSNS);
-						if (activePing != null)
-							activePings.remove(serverVSNS);
+						if (isOutstanding(serverVSN)) {
+							release(serverVSN);
+							wasActive = true;
+						}
 					}
-					if (activePing != null) {
+					if (wasActive) {
+						pingsConfirmed.increment();
 						if (client.logPings())
 							log("Confirmed: " + serverVSN);
-						activePing.accept(1);
 					}
 					try {
 						client.sendPacket(PacketWriter.writeVirtualCircuitClose(UINUtils.SERVER_UIN));
@@ -98,14 +260,22 @@ public class PingManager implements ILogSource {
 	}
 
 	public void logout() {
+		ArrayList<Runnable> failed = new ArrayList<>();
 		synchronized (this) {
 			loggedOut = true;
-			if (client.logPings())
-				if (activePings.size() > 0)
-					log("Logout: " + activePings.size() + " outstanding pings");
-			for (IntConsumer ping : activePings.values())
-				ping.accept(0);
-			activePings.clear();
+			while (oldest != 0) {
+				failed.add(onFailure[slot(oldest)]);
+				release(oldest);
+			}
 		}
+		if (client.logPings())
+			if (failed.size() > 0)
+				log("Logout: " + failed.size() + " outstanding pings");
+		for (Runnable r : failed)
+			r.run();
+	}
+
+	public static void runSystemCheck(StringBuilder sb) {
+		sb.append("Pings: S" + pingsSent.sum() + " C" + pingsConfirmed.sum() + " E" + pingsExpired.sum() + "\n");
 	}
 }
@@ -7,6 +7,7 @@
 
 package natsue.server.system;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -59,7 +60,7 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 	public final HashMap<Long, Long> userContactMap = new HashMap<>();
 	public final Object userContactMapLock = new Object();
 
-	public boolean notReallyOnline;
+	public volatile boolean notReallyOnline;
 
 	public SystemUserHubClient(Config config, ILogProvider log, IHubPrivilegedClientAPI h) {
 		hub = h;
@@ -230,7 +231,7 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 					if (chatType.equals("REQU")) {
 						// Chat request to System?
 						PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-						pt.read(chatMaybe.data);
+						pt.read(chatMaybe.getData());
 						String str = pt.strMap.get("Request Type");
 						String chatID = pt.strMap.get("ChatID");
 						if ((str != null) && (chatID != null)) {
@@ -248,7 +249,7 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 						}
 					} else if (chatType.equals("CHAT")) {
 						PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-						pt.read(chatMaybe.data);
+						pt.read(chatMaybe.getData());
 						String cmt = pt.strMap.get("Chat Message Type");
 						String chatID = pt.strMap.get("ChatID");
 						if ((chatID != null) && (cmt != null)) {
@@ -263,7 +264,7 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 						}
 					} else if (chatType.equals("MESG")) {
 						PRAYTags pt = new PRAYTags(PacketReader.CHARSET);
-						pt.read(chatMaybe.data);
+						pt.read(chatMaybe.getData());
 						String subject = pt.strMap.get("Subject");
 						String msg = pt.strMap.get("Message");
 						if ((subject != null) && (msg != null))
@@ -283,8 +284,11 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 				if (user == null)
 					return;
 				if (user.isAdmin()) {
+					ArrayList<Long> targets = new ArrayList<>();
 					for (INatsueUserData sud : hub.listAllUsersOnlineYesIMeanAllOfThem())
-						hub.sendMessage(sud.getUIN(), StandardMessages.systemMessage(sud.getUIN(), msg), MsgSendType.Temp, packed.senderUIN);
+						targets.add(sud.getUIN());
+					// These appear to come from the recipient, so the sender UIN gets patched per-recipient.
+					hub.broadcastMessage(targets, StandardMessages.systemMessage(0, msg), true, MsgSendType.Temp, packed.senderUIN);
 				} else {
 					hub.rejectMessage(UIN, packed, "Have to be admin");
 				}
@@ -379,8 +383,7 @@ public class SystemUserHubClient implements IHubClient, ILogSource {
 		// ok, so this is some high-level abuse of client jank here
 		// basically the client doesn't care if your nickname is wrong, it will just write whatever you put in
 		// that in mind, global chat is just a matter of doing the thing
-		for (Long target : targets)
-			hub.sendMessage(target, StandardMessages.chatMessage(UIN, nickname, CHATID_GLOBAL, text), MsgSendType.Temp, senderUIN);
+		hub.broadcastMessage(targets, StandardMessages.chatMessage(UIN, nickname, CHATID_GLOBAL, text), false, MsgSendType.Temp, senderUIN);
 		return true;
 	}
 
@@ -0,0 +1,23 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.timing;
+
+/**
+ * Source of time for timers, so tests can move time along themselves.
+ */
+public interface IClock {
+	/**
+	 * The real clock (monotonic).
+	 */
+	IClock SYSTEM = () -> System.nanoTime() / 1000000L;
+
+	/**
+	 * Milliseconds since some arbitrary point. Only differences between values mean anything.
+	 */
+	long millis();
+}
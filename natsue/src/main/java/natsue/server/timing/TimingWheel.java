@@ -0,0 +1,202 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+
+package natsue.server.timing;
+
+import java.util.ArrayList;
+
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
+
+/**
+ * Hashed timing wheel: timers go in a bucket by deadline tick, so adding and cancelling them is O(1).
+ * Each tick only looks at one bucket (timers more than a lap away are skipped over until their lap comes).
+ * Timers fire up to a tick late, never early.
+ * Tasks run on the thread that advances the wheel, so they should be quick; anything that may block (database, etc.) belongs elsewhere.
+ * The wheel only moves when advance is called. start() does that from a thread, in real time; tests can instead do it themselves with a fake clock.
+ * Whatever uses timers is given the wheel (and uses its clock for deadlines), so it can be tested the same way.
+ */
+public final class TimingWheel implements ILogSource {
+	private static final int SERVER_TICK_MS = 100;
+	private static final int SERVER_BUCKETS = 512;
+
+	private final IClock clock;
+	private final long tickMs;
+	private final long startMs;
+	private final Timeout[] buckets;
+	private final int mask;
+	private final ILogProvider logParent;
+
+	// Next tick to be processed. Protected by this.
+	private long currentTick;
+	private int pending;
+
+	/**
+	 * bucketCount is rounded up to a power of two. Tasks that throw are logged to logParent.
+	 */
+	public TimingWheel(IClock clock, long tickMs, int bucketCount, ILogProvider logParent) {
+		if (tickMs <= 0)
+			throw new IllegalArgumentException("tickMs must be positive");
+		int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+		this.clock = clock;
+		this.tickMs = tickMs;
+		this.logParent = logParent;
+		startMs = clock.millis();
+		buckets = new Timeout[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Creates and starts the wheel the server runs on, in real time.
+	 */
+	public static TimingWheel startServerWheel(ILogProvider logParent) {
+		TimingWheel wheel = new TimingWheel(IClock.SYSTEM, SERVER_TICK_MS, SERVER_BUCKETS, logParent);
+		wheel.start("Natsue-TimingWheel");
+		return wheel;
+	}
+
+	@Override
+	public ILogProvider getLogParent() {
+		return logParent;
+	}
+
+	@Override
+	public String toString() {
+		return "TimingWheel";
+	}
+
+	/**
+	 * The wheel's clock (see IClock). Deadlines for timers on this wheel should be worked out with this.
+	 */
+	public long millis() {
+		return clock.millis();
+	}
+
+	/**
+	 * Starts a daemon thread advancing the wheel every tick.
+	 */
+	public void start(String threadName) {
+		Thread t = new Thread(() -> {
+			while (true) {
+				try {
+					Thread.sleep(tickMs);
+				} catch (InterruptedException ie) {
+					return;
+				}
+				advance();
+			}
+		}, threadName);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Runs task once delayMs has passed (or thereabouts - see class doc).
+	 */
+	public Timeout schedule(Runnable task, long delayMs) {
+		long deadline = clock.millis() + Math.max(0, delayMs);
+		// Round up, so it's never early.
+		long tick = (deadline - startMs + tickMs - 1) / tickMs;
+		Timeout t = new Timeout(task);
+		synchronized (this) {
+			t.tick = Math.max(tick, currentTick);
+			link(t);
+			pending++;
+		}
+		return t;
+	}
+
+	/**
+	 * Fires everything that's due. Called by the wheel's thread (or a test).
+	 */
+	public void advance() {
+		long nowTick = (clock.millis() - startMs) / tickMs;
+		ArrayList<Timeout> due = new ArrayList<>();
+		synchronized (this) {
+			// If the wheel fell behind by more than a lap, one lap covers every bucket.
+			long from = Math.max(currentTick, nowTick - mask);
+			for (long tick = from; tick <= nowTick; tick++) {
+				Timeout t = buckets[(int) (tick & mask)];
+				while (t != null) {
+					Timeout next = t.next;
+					if (t.tick <= nowTick) {
+						unlink(t);
+						pending--;
+						due.add(t);
+					}
+					t = next;
+				}
+			}
+			currentTick = Math.max(currentTick, nowTick + 1);
+		}
+		for (Timeout t : due) {
+			try {
+				t.task.run();
+			} catch (Throwable ex) {
+				log(ex);
+			}
+		}
+	}
+
+	/**
+	 * Amount of timers waiting to fire.
+	 */
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	private void link(Timeout t) {
+		int idx = (int) (t.tick & mask);
+		t.next = buckets[idx];
+		if (t.next != null)
+			t.next.prev = t;
+		t.prev = null;
+		buckets[idx] = t;
+		t.linked = true;
+	}
+
+	private void unlink(Timeout t) {
+		if (t.prev != null) {
+			t.prev.next = t.next;
+		} else {
+			buckets[(int) (t.tick & mask)] = t.next;
+		}
+		if (t.next != null)
+			t.next.prev = t.prev;
+		t.prev = null;
+		t.next = null;
+		t.linked = false;
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public final class Timeout {
+		private final Runnable task;
+		// All protected by the wheel.
+		private long tick;
+		private Timeout prev, next;
+		private boolean linked;
+
+		private Timeout(Runnable task) {
+			this.task = task;
+		}
+
+		/**
+		 * Stops the task from running. Returns false if it already ran (or is running) or was already cancelled.
+		 */
+		public boolean cancel() {
+			synchronized (TimingWheel.this) {
+				if (!linked)
+					return false;
+				unlink(this);
+				pending--;
+				return true;
+			}
+		}
+	}
+}
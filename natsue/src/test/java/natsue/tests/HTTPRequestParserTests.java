@@ -0,0 +1,162 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import natsue.server.http.HTTPRequestParser;
+
+public class HTTPRequestParserTests {
+	private static final String GET = "GET /a HTTP/1.1\r\nHost: x\r\n\r\n";
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static HTTPRequestParser.Request parse(String head) {
+		HTTPRequestParser parser = new HTTPRequestParser(4096);
+		byte[] data = bytes(head);
+		parser.feed(data, 0, data.length);
+		HTTPRequestParser.Request res = parser.next();
+		assertNotNull(res);
+		return res;
+	}
+
+	@Test
+	public void testSplitBoundary() {
+		byte[] data = bytes(GET);
+		// Every split point, including each one inside the CRLFCRLF.
+		for (int split = 1; split < data.length; split++) {
+			HTTPRequestParser parser = new HTTPRequestParser(4096);
+			parser.feed(data, 0, split);
+			assertNull(parser.next());
+			assertTrue(parser.hasPartialRequest());
+			parser.feed(data, split, data.length - split);
+			HTTPRequestParser.Request request = parser.next();
+			assertNotNull("split at " + split, request);
+			assertEquals("GET /a HTTP/1.1", request.requestLine);
+			assertFalse(parser.hasPartialRequest());
+		}
+	}
+
+	@Test
+	public void testByteAtATime() {
+		HTTPRequestParser parser = new HTTPRequestParser(4096);
+		byte[] data = bytes(GET);
+		for (int i = 0; i < data.length - 1; i++) {
+			parser.feed(data[i]);
+			assertNull(parser.next());
+		}
+		parser.feed(data[data.length - 1]);
+		assertNotNull(parser.next());
+	}
+
+	@Test
+	public void testPipelined() throws Exception {
+		String third = "GET /c HTTP/1.1\r\nHo";
+		HTTPRequestParser parser = new HTTPRequestParser(4096);
+		parser.readFrom(new ByteArrayInputStream(bytes(GET + "HEAD /b HTTP/1.1\r\n\r\n" + third)));
+		assertEquals("GET /a HTTP/1.1", parser.next().requestLine);
+		assertEquals("HEAD /b HTTP/1.1", parser.next().requestLine);
+		assertNull(parser.next());
+		assertTrue(parser.hasPartialRequest());
+		byte[] rest = bytes("st: x\r\n\r\n");
+		parser.feed(rest, 0, rest.length);
+		assertEquals("GET /c HTTP/1.1", parser.next().requestLine);
+		assertNull(parser.next());
+		assertFalse(parser.hasPartialRequest());
+	}
+
+	@Test
+	public void testOverLimit() {
+		HTTPRequestParser parser = new HTTPRequestParser(64);
+		byte[] data = bytes("GET /" + new String(new char[100]).replace('\0', 'a') + " HTTP/1.1\r\n");
+		// In pieces, never terminated...
+		for (int i = 0; i < data.length; i += 10) {
+			parser.feed(data, i, Math.min(10, data.length - i));
+			assertNull(parser.next());
+		}
+		assertTrue(parser.isOverLimit());
+		// ...and it doesn't come back once over.
+		byte[] end = bytes("\r\n");
+		parser.feed(end, 0, end.length);
+		assertNull(parser.next());
+		assertTrue(parser.isOverLimit());
+	}
+
+	@Test
+	public void testOverLimitAllAtOnce() {
+		HTTPRequestParser parser = new HTTPRequestParser(64);
+		byte[] data = bytes("GET /" + new String(new char[100]).replace('\0', 'a') + " HTTP/1.1\r\n\r\n");
+		parser.feed(data, 0, data.length);
+		assertNull(parser.next());
+		assertTrue(parser.isOverLimit());
+		// Right at the limit is fine, though.
+		String exact = "GET / HTTP/1.1\r\nX: " + new String(new char[64 - 23]).replace('\0', 'a') + "\r\n\r\n";
+		assertEquals(64, exact.length());
+		parser = new HTTPRequestParser(64);
+		data = bytes(exact);
+		parser.feed(data, 0, data.length);
+		assertNotNull(parser.next());
+		assertFalse(parser.isOverLimit());
+	}
+
+	@Test
+	public void testKeepAlive() {
+		assertTrue(parse(GET).keepAlive);
+		assertFalse(parse("GET / HTTP/1.1\r\nConnection: close\r\n\r\n").keepAlive);
+		assertFalse(parse("GET / HTTP/1.1\r\nconnection: Upgrade, Close\r\n\r\n").keepAlive);
+		assertFalse(parse("GET / HTTP/1.0\r\n\r\n").keepAlive);
+		assertTrue(parse("GET / HTTP/1.0\r\nConnection: keep-alive\r\n\r\n").keepAlive);
+		assertFalse(parse("GET /\r\n\r\n").keepAlive);
+		// Bodies aren't read, so the connection can't go on after one.
+		assertTrue(parse("GET / HTTP/1.1\r\nContent-Length: 0\r\n\r\n").keepAlive);
+		assertFalse(parse("GET / HTTP/1.1\r\nContent-Length: 5\r\n\r\n").keepAlive);
+		assertFalse(parse("GET / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n").keepAlive);
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+		assertNull(parse(GET).ifNoneMatch);
+		String inm = parse("GET / HTTP/1.1\r\nIf-None-Match: \"a\"\r\nif-none-match: W/\"b\"\r\n\r\n").ifNoneMatch;
+		assertTrue(HTTPRequestParser.etagMatches(inm, "\"a\""));
+		assertTrue(HTTPRequestParser.etagMatches(inm, "\"b\""));
+		assertFalse(HTTPRequestParser.etagMatches(inm, "\"c\""));
+		assertTrue(HTTPRequestParser.etagMatches("\"x\", \"y\",\"z\"", "\"y\""));
+		assertTrue(HTTPRequestParser.etagMatches("\"y\"", "W/\"y\""));
+		assertTrue(HTTPRequestParser.etagMatches("*", "\"y\""));
+		assertFalse(HTTPRequestParser.etagMatches("\"y\"", "\"yy\""));
+		assertFalse(HTTPRequestParser.etagMatches(null, "\"y\""));
+	}
+
+	@Test
+	public void testEncodeResponse() {
+		byte[] body = bytes("hello");
+		String ok = new String(HTTPRequestParser.encodeResponse("200 OK", false, "text/plain", body, "\"e\"", true), StandardCharsets.UTF_8);
+		assertTrue(ok.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(ok.contains("\r\nContent-Length: 5\r\n"));
+		assertTrue(ok.contains("\r\nETag: \"e\"\r\n"));
+		assertTrue(ok.contains("\r\nConnection: keep-alive\r\n"));
+		assertTrue(ok.endsWith("\r\n\r\nhello"));
+		// HEAD gets the same headers, just no body.
+		String head = new String(HTTPRequestParser.encodeResponse("200 OK", true, "text/plain", body, null, false), StandardCharsets.UTF_8);
+		assertTrue(head.contains("\r\nContent-Length: 5\r\n"));
+		assertTrue(head.endsWith("\r\nConnection: close\r\n\r\n"));
+		String notModified = new String(HTTPRequestParser.encodeResponse("304 Not Modified", false, "text/plain", body, "\"e\"", true), StandardCharsets.UTF_8);
+		assertFalse(notModified.contains("Content-Length"));
+		assertTrue(notModified.endsWith("\r\n\r\n"));
+	}
+}
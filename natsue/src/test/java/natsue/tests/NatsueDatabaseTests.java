@@ -0,0 +1,245 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import natsue.config.ConfigDB;
+import natsue.data.babel.UINUtils;
+import natsue.log.StdoutLogProvider;
+import natsue.server.database.DBBackend;
+import natsue.server.database.INatsueDatabase;
+import natsue.server.database.NatsueDBCreatureEvent;
+import natsue.server.database.NatsueDBCreatureInfo;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.NatsueDBUserInfo;
+import natsue.server.database.NatsueDBWorldInfo;
+import natsue.server.database.jdbc.JDBCNatsueDatabase;
+import natsue.server.database.mem.MemNatsueDatabase;
+
+/**
+ * The same checks against every database backend.
+ * The JDBC one uses SQLite (a test dependency).
+ */
+@RunWith(Parameterized.class)
+public class NatsueDatabaseTests {
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> backends() {
+		return Arrays.asList(new Object[][] {{DBBackend.memory}, {DBBackend.jdbc}});
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final DBBackend backend;
+	private ConfigDB config;
+	private INatsueDatabase db;
+
+	public NatsueDatabaseTests(DBBackend backend) {
+		this.backend = backend;
+	}
+
+	@Before
+	public void setup() throws Exception {
+		config = new ConfigDB();
+		if (backend == DBBackend.jdbc)
+			config.dbConnection.setValueFromString("jdbc:sqlite:" + new File(folder.getRoot(), "natsue.db").getPath());
+		db = open();
+	}
+
+	private INatsueDatabase open() throws Exception {
+		if (backend == DBBackend.jdbc)
+			return new JDBCNatsueDatabase(new StdoutLogProvider(), config);
+		return new MemNatsueDatabase(new StdoutLogProvider(), config);
+	}
+
+	private static NatsueDBUserInfo user(int uid, String nickname) {
+		return new NatsueDBUserInfo(uid, nickname, nickname.toLowerCase(), "hash", 0, 1000, 0);
+	}
+
+	private static NatsueDBCreatureEvent event(int senderUID, String moniker, int index, String worldName, String worldID, boolean ownWorld) {
+		String userID = UINUtils.toString(UINUtils.ofRegularUser(ownWorld ? senderUID : senderUID + 1));
+		return new NatsueDBCreatureEvent(senderUID, moniker, index, 1, 2, 3, 4, 5, "", "", worldName, worldID, userID, 1000);
+	}
+
+	@Test
+	public void testUsers() {
+		assertTrue(db.tryCreateUser(user(1, "Alice")));
+		assertFalse(db.tryCreateUser(user(1, "Bob")));
+		assertFalse(db.tryCreateUser(user(2, "Alice")));
+		assertTrue(db.tryCreateUser(user(2, "Bob")));
+		assertEquals("Alice", db.getUserByUID(1).nickname);
+		assertEquals(2, db.getUserByFoldedNickname("bob").uid);
+		assertNull(db.getUserByUID(3));
+		assertNull(db.getUserByFoldedNickname("Bob"));
+		assertTrue(db.updateUserAuth(1, "newhash", 4, 5));
+		NatsueDBUserInfo alice = db.getUserByFoldedNickname("alice");
+		assertEquals("newhash", alice.passwordHash);
+		assertEquals(4, alice.flags);
+		assertEquals(5, alice.twoFactorSeed);
+		assertEquals(1000, alice.creationUnixTime);
+		assertTrue(db.updateUserAuth(3, "nobody", 0, 0));
+	}
+
+	@Test
+	public void testSpool() {
+		assertNull(db.getSpooledMessages(1, 10));
+		assertTrue(db.spoolMessage(1, 2, new byte[] {1}));
+		ArrayList<NatsueDBSpoolInsert> batch = new ArrayList<>();
+		batch.add(new NatsueDBSpoolInsert(1, 2, new byte[] {2}));
+		batch.add(new NatsueDBSpoolInsert(2, 1, new byte[] {3}));
+		batch.add(new NatsueDBSpoolInsert(1, 2, new byte[] {4}));
+		assertTrue(db.spoolMessages(batch));
+		LinkedList<NatsueDBSpooledMessage> msgs = db.getSpooledMessages(1, 10);
+		assertEquals(3, msgs.size());
+		assertEquals(1, msgs.get(0).data[0]);
+		assertEquals(2, msgs.get(1).data[0]);
+		assertEquals(4, msgs.get(2).data[0]);
+		assertEquals(2, db.getSpooledMessages(1, 2).size());
+		assertTrue(db.deleteSpooledMessages(1, new long[] {msgs.get(0).id, msgs.get(2).id}));
+		// Someone else's messages aren't touched.
+		assertTrue(db.deleteSpooledMessages(1, new long[] {db.getSpooledMessages(2, 10).get(0).id}));
+		assertEquals(2, db.getSpooledMessages(1, 10).get(0).data[0]);
+		assertEquals(1, db.getSpooledMessages(2, 10).size());
+	}
+
+	@Test
+	public void testConcurrentSpool() throws Exception {
+		// Pooled connections and their cached statements get shared around between threads here.
+		Thread[] threads = new Thread[4];
+		boolean[] ok = new boolean[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int uid = t + 1;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 25; i++) {
+					if (!db.spoolMessage(uid, 0, new byte[] {(byte) i}))
+						return;
+					LinkedList<NatsueDBSpooledMessage> msgs = db.getSpooledMessages(uid, 10);
+					if (msgs == null || msgs.size() != 1 || msgs.get(0).data[0] != i)
+						return;
+					if (!db.deleteSpooledMessages(uid, new long[] {msgs.get(0).id}))
+						return;
+				}
+				ok[uid - 1] = true;
+			});
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertTrue(ok[t]);
+			assertNull(db.getSpooledMessages(t + 1, 10));
+		}
+	}
+
+	@Test
+	public void testCreatures() {
+		assertNull(db.getCreatureInfo("001-aaaa-aaaaa-aaaaa-aaaaa"));
+		assertTrue(db.ensureCreature("001-aaaa-aaaaa-aaaaa-aaaaa", 1, 10, 11, 12, 13, 14, "Norn", "Text"));
+		assertFalse(db.ensureCreature("001-aaaa-aaaaa-aaaaa-aaaaa", 2, 0, 0, 0, 0, 0, "Other", "Other"));
+		NatsueDBCreatureInfo info = db.getCreatureInfo("001-aaaa-aaaaa-aaaaa-aaaaa");
+		assertEquals(1, info.senderUID);
+		assertEquals(12, info.state[2]);
+		assertEquals("Norn", info.name);
+		assertTrue(db.updateCreatureText(1, "001-aaaa-aaaaa-aaaaa-aaaaa", "Renamed", null));
+		assertTrue(db.updateCreatureText(1, "001-aaaa-aaaaa-aaaaa-aaaaa", null, "Retexted"));
+		info = db.getCreatureInfo("001-aaaa-aaaaa-aaaaa-aaaaa");
+		assertEquals("Renamed", info.name);
+		assertEquals("Retexted", info.userText);
+		assertTrue(db.updateCreatureText(1, "001-aaaa-aaaaa-aaaaa-aaaaa", "Both", "Changed"));
+		info = db.getCreatureInfo("001-aaaa-aaaaa-aaaaa-aaaaa");
+		assertEquals("Both", info.name);
+		assertEquals("Changed", info.userText);
+	}
+
+	@Test
+	public void testEvents() {
+		assertNull(db.getCreatureEvents("001-aaaa-aaaaa-aaaaa-aaaaa"));
+		assertTrue(db.ensureCreatureEvent(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 1, 1, 2, 3, 4, 5, "", "", "World", "dsw-1", UINUtils.toString(UINUtils.ofRegularUser(1))));
+		assertFalse(db.ensureCreatureEvent(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 1, 1, 2, 3, 4, 5, "", "", "World", "dsw-1", UINUtils.toString(UINUtils.ofRegularUser(1))));
+		ArrayList<NatsueDBCreatureEvent> batch = new ArrayList<>();
+		batch.add(event(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 2, "World", "dsw-1", true));
+		// Already there, so skipped, not a failure.
+		batch.add(event(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 1, "World", "dsw-1", true));
+		batch.add(event(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 0, "World", "dsw-1", true));
+		assertTrue(db.ensureCreatureEvents(batch));
+		LinkedList<NatsueDBCreatureEvent> events = db.getCreatureEvents("001-aaaa-aaaaa-aaaaa-aaaaa");
+		assertEquals(3, events.size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(i, events.get(i).eventIndex);
+	}
+
+	@Test
+	public void testWorlds() {
+		ArrayList<NatsueDBCreatureEvent> batch = new ArrayList<>();
+		batch.add(event(1, "003-cccc-ccccc-ccccc-ccccc", 0, "Zebra", "dsw-z", true));
+		batch.add(event(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 0, "Zebra", "dsw-z", true));
+		batch.add(event(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 1, "Zebra", "dsw-z", true));
+		batch.add(event(1, "002-bbbb-bbbbb-bbbbb-bbbbb", 0, "Apple", "dsw-a", true));
+		// Not their world, so not in their list.
+		batch.add(event(1, "004-dddd-ddddd-ddddd-ddddd", 0, "Mango", "dsw-m", false));
+		assertTrue(db.ensureCreatureEvents(batch));
+
+		LinkedList<String> monikers = db.getCreaturesInWorld("dsw-z", 10, 0);
+		assertEquals(Arrays.asList("001-aaaa-aaaaa-aaaaa-aaaaa", "003-cccc-ccccc-ccccc-ccccc"), monikers);
+		assertEquals(Arrays.asList("003-cccc-ccccc-ccccc-ccccc"), db.getCreaturesInWorld("dsw-z", 10, 1));
+		assertEquals(Arrays.asList("001-aaaa-aaaaa-aaaaa-aaaaa"), db.getCreaturesInWorld("dsw-z", 1, 0));
+		assertNull(db.getCreaturesInWorld("dsw-z", 10, 2));
+		assertNull(db.getCreaturesInWorld("dsw-none", 10, 0));
+
+		LinkedList<NatsueDBWorldInfo> worlds = db.getWorldsInUser(1, 10, 0);
+		assertEquals(2, worlds.size());
+		assertEquals("Apple", worlds.get(0).worldName);
+		assertEquals("dsw-z", worlds.get(1).worldID);
+		assertEquals(1, worlds.get(1).ownerUID);
+		assertEquals("Zebra", db.getWorldsInUser(1, 1, 1).get(0).worldName);
+		assertNull(db.getWorldsInUser(2, 10, 0));
+
+		assertEquals("Mango", db.getWorldInfo("dsw-m").worldName);
+		assertNull(db.getWorldInfo("dsw-none"));
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		Assume.assumeTrue(backend == DBBackend.memory);
+		config.memoryDBSnapshotFile.setValueFromString(new File(folder.getRoot(), "snapshot.db").getPath());
+		config.memoryDBSnapshotTime.setValueFromString("3600");
+		MemNatsueDatabase mem = (MemNatsueDatabase) open();
+		mem.tryCreateUser(user(1, "Alice"));
+		mem.spoolMessage(1, 2, new byte[] {1, 2, 3});
+		mem.ensureCreature("001-aaaa-aaaaa-aaaaa-aaaaa", 1, 0, 0, 0, 0, 0, "Norn", "Text");
+		mem.updateCreatureText(1, "001-aaaa-aaaaa-aaaaa-aaaaa", "Renamed", null);
+		mem.ensureCreatureEvent(1, "001-aaaa-aaaaa-aaaaa-aaaaa", 0, 1, 2, 3, 4, 5, "", "", "World", "dsw-1", UINUtils.toString(UINUtils.ofRegularUser(1)));
+		mem.snapshot();
+
+		INatsueDatabase loaded = open();
+		assertEquals("alice", loaded.getUserByUID(1).nicknameFolded);
+		assertFalse(loaded.tryCreateUser(user(2, "Alice")));
+		assertEquals(3, loaded.getSpooledMessages(1, 10).get(0).data.length);
+		assertEquals("Renamed", loaded.getCreatureInfo("001-aaaa-aaaaa-aaaaa-aaaaa").name);
+		assertEquals(1, loaded.getCreatureEvents("001-aaaa-aaaaa-aaaaa-aaaaa").size());
+		assertEquals("World", loaded.getWorldsInUser(1, 10, 0).get(0).worldName);
+	}
+}
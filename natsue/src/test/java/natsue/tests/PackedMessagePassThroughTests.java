@@ -0,0 +1,69 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import cdsp.common.data.pray.PRAYBlock;
+import natsue.config.ConfigMessages;
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.pm.PackedMessage;
+import natsue.data.babel.pm.PackedMessagePRAY;
+
+public class PackedMessagePassThroughTests {
+	private final ConfigMessages config = new ConfigMessages();
+
+	private static byte[] message(boolean compressed) {
+		return message(UINUtils.make(1, 1), compressed);
+	}
+
+	private static byte[] message(long sender, boolean compressed) {
+		byte[] data = new byte[2000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i % 13);
+		PRAYBlock pb = new PRAYBlock("MESG", "test", data, StandardCharsets.ISO_8859_1);
+		return new PackedMessagePRAY(sender, pb).toByteArray(compressed);
+	}
+
+	@Test
+	public void testSameCompression() {
+		byte[] compressed = message(true);
+		assertSame(compressed, PackedMessage.read(compressed, config).toByteArray(true));
+		byte[] uncompressed = message(false);
+		assertSame(uncompressed, PackedMessage.read(uncompressed, config).toByteArray(false));
+	}
+
+	@Test
+	public void testCompressionChanges() {
+		// compressPRAYChunks still means uncompressed uploads get compressed on the way through.
+		byte[] uncompressed = message(false);
+		byte[] out = PackedMessage.read(uncompressed, config).toByteArray(true);
+		assertNotSame(uncompressed, out);
+		assertArrayEquals(message(true), out);
+		byte[] compressed = message(true);
+		out = PackedMessage.read(compressed, config).toByteArray(false);
+		assertNotSame(compressed, out);
+		assertArrayEquals(uncompressed, out);
+	}
+
+	@Test
+	public void testSenderChange() {
+		byte[] compressed = message(true);
+		PackedMessage pm = PackedMessage.read(compressed, config);
+		pm.senderUIN = UINUtils.make(2, 1);
+		byte[] out = pm.toByteArray(true);
+		// The original isn't touched, as others may still be using it.
+		assertArrayEquals(message(true), compressed);
+		assertArrayEquals(message(UINUtils.make(2, 1), true), out);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import natsue.data.babel.UINUtils;
+import natsue.data.babel.ctos.CTOSClientCommand;
+import natsue.log.ILogSource;
+import natsue.server.session.BaseSessionState;
+import natsue.server.session.ISessionClient;
+import natsue.server.session.PingManager;
+import natsue.server.timing.TimingWheel;
+
+public class PingManagerTests {
+	// Expired pings fail on another thread, hence the semaphore.
+	private final Semaphore failures = new Semaphore(0);
+	private final Runnable fail = failures::release;
+	private long now = 1000;
+	private final TimingWheel wheel = new TimingWheel(() -> now, 100, 64, TestUtils.FAIL_ON_EXCEPTION);
+
+	private void advanceTo(long time) {
+		now = time;
+		wheel.advance();
+	}
+
+	static class FakeClient implements ISessionClient {
+		@Override
+		public void log(ILogSource source, String text) {
+			TestUtils.FAIL_ON_EXCEPTION.log(source, text);
+		}
+
+		@Override
+		public void log(ILogSource source, Throwable ex) {
+			TestUtils.FAIL_ON_EXCEPTION.log(source, ex);
+		}
+
+		@Override
+		public void setSessionState(BaseSessionState sessionState) {
+		}
+
+		@Override
+		public void sendPacket(byte[] data) {
+		}
+
+		@Override
+		public boolean logFailedAuth() {
+			return false;
+		}
+
+		@Override
+		public boolean logPings() {
+			return false;
+		}
+
+		@Override
+		public void forceDisconnect(boolean sync) {
+		}
+	}
+
+	static boolean confirm(PingManager pm, int vsn) {
+		CTOSClientCommand cc = new CTOSClientCommand();
+		cc.targetUIN = UINUtils.SERVER_UIN;
+		cc.subCommand = 0x0E;
+		cc.param = vsn << 16;
+		int before = pm.getOutstanding();
+		assertTrue(pm.handleResponse(cc));
+		return pm.getOutstanding() != before;
+	}
+
+	@Test
+	public void testVSNsNotReusedSoon() {
+		PingManager pm = new PingManager(new FakeClient(), wheel, 0);
+		HashSet<Integer> seen = new HashSet<>();
+		for (int i = 0; i < 65535; i++) {
+			int vsn = pm.addPing(fail);
+			assertTrue(vsn > 0 && vsn <= 65535);
+			assertTrue("VSN " + vsn + " reused after " + i + " pings", seen.add(vsn));
+			assertTrue(confirm(pm, vsn));
+		}
+		// Only now does it come back around.
+		assertEquals(1, pm.addPing(fail));
+		assertEquals(0, failures.availablePermits());
+	}
+
+	@Test
+	public void testLateReplyDoesNotConfirmNewerPing() {
+		PingManager pm = new PingManager(new FakeClient(), wheel, 0);
+		int old = pm.addPing(fail);
+		pm.fail(old, fail);
+		assertEquals(1, failures.availablePermits());
+		for (int i = 0; i < 100; i++) {
+			int vsn = pm.addPing(fail);
+			assertNotEquals(old, vsn);
+			assertTrue(!confirm(pm, old));
+			assertTrue(confirm(pm, vsn));
+		}
+	}
+
+	@Test
+	public void testGrowAndLogout() {
+		PingManager pm = new PingManager(new FakeClient(), wheel, 0);
+		int[] vsns = new int[1000];
+		for (int i = 0; i < vsns.length; i++)
+			vsns[i] = pm.addPing(fail);
+		assertEquals(vsns.length, pm.getOutstanding());
+		// Confirm every other one, out of order with respect to the growth.
+		for (int i = vsns.length - 1; i >= 0; i -= 2)
+			assertTrue(confirm(pm, vsns[i]));
+		assertEquals(vsns.length / 2, pm.getOutstanding());
+		pm.logout();
+		assertEquals(vsns.length / 2, failures.availablePermits());
+		assertEquals(0, pm.getOutstanding());
+		assertEquals(0, pm.addPing(fail));
+	}
+
+	@Test
+	public void testNoTimeout() {
+		PingManager pm = new PingManager(new FakeClient(), wheel, 0);
+		pm.addPing(fail);
+		assertEquals(0, wheel.getPending());
+		advanceTo(1000000);
+		assertEquals(1, pm.getOutstanding());
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		PingManager pm = new PingManager(new FakeClient(), wheel, 10);
+		int a = pm.addPing(fail);
+		advanceTo(6000);
+		int b = pm.addPing(fail);
+		int c = pm.addPing(fail);
+		// Only the oldest ping has a timer.
+		assertEquals(1, wheel.getPending());
+		advanceTo(10900);
+		assertEquals(3, pm.getOutstanding());
+		advanceTo(11000);
+		assertEquals(2, pm.getOutstanding());
+		assertTrue(failures.tryAcquire(5, TimeUnit.SECONDS));
+		// Too late for a, and it mustn't confirm anything else either.
+		assertFalse(confirm(pm, a));
+		assertTrue(confirm(pm, b));
+		advanceTo(15900);
+		assertEquals(1, pm.getOutstanding());
+		advanceTo(16000);
+		assertEquals(0, pm.getOutstanding());
+		assertTrue(failures.tryAcquire(5, TimeUnit.SECONDS));
+		assertFalse(confirm(pm, c));
+		assertEquals(0, wheel.getPending());
+		assertEquals(0, failures.availablePermits());
+	}
+}
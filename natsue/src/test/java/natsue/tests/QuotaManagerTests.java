@@ -0,0 +1,63 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import natsue.config.ConfigConnectionQuotas;
+import natsue.server.packet.QuotaManager;
+import natsue.server.timing.TimingWheel;
+
+/**
+ * QuotaManager, entirely on a fake clock.
+ */
+public class QuotaManagerTests {
+	private long now = 1000;
+	private final TimingWheel wheel = new TimingWheel(() -> now, 100, 64, TestUtils.FAIL_ON_EXCEPTION);
+	private final ConfigConnectionQuotas config = new ConfigConnectionQuotas();
+
+	private void advanceTo(long time) {
+		// In steps, so the eviction timer gets to go around.
+		while (now < time) {
+			now = Math.min(time, now + 1000);
+			wheel.advance();
+		}
+	}
+
+	private boolean isTracked(QuotaManager qm, InetAddress address) {
+		StringBuilder sb = new StringBuilder();
+		qm.runSystemCheck(sb, false);
+		return sb.toString().contains(address.toString());
+	}
+
+	@Test
+	public void testRefillAndEviction() throws Exception {
+		config.maxConnectionsInTwoMinutes.setValueFromString("2");
+		QuotaManager qm = new QuotaManager(config, wheel);
+		InetAddress address = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+		assertTrue(qm.socketStart(address));
+		assertTrue(qm.socketStart(address));
+		assertFalse(qm.socketStart(address));
+		// Half of the two minutes is one token.
+		advanceTo(61000);
+		assertTrue(qm.socketStart(address));
+		assertFalse(qm.socketStart(address));
+		qm.socketEnd(address);
+		qm.socketEnd(address);
+		qm.socketEnd(address);
+		// Not evicted until the bucket's full again.
+		advanceTo(170000);
+		assertTrue(isTracked(qm, address));
+		advanceTo(190000);
+		assertFalse(isTracked(qm, address));
+	}
+}
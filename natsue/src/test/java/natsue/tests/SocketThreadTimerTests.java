@@ -0,0 +1,146 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import natsue.config.Config;
+import natsue.data.babel.PacketWriter;
+import natsue.data.babel.ctos.BaseCTOS;
+import natsue.log.StdoutLogProvider;
+import natsue.server.packet.QuotaManager;
+import natsue.server.packet.SocketThread;
+import natsue.server.session.BaseSessionState;
+import natsue.server.timing.TimingWheel;
+
+/**
+ * SocketThread's timers, on a wheel with a fake clock (the socket itself is real).
+ */
+public class SocketThreadTimerTests {
+	private volatile long now = 1000;
+	private final TimingWheel wheel = new TimingWheel(() -> now, 100, 64, TestUtils.FAIL_ON_EXCEPTION);
+	private final Config config = new Config();
+	private ServerSocket server;
+	private Socket client;
+	private SocketThread thread;
+
+	@Before
+	public void setup() throws Exception {
+		config.httpRequestsEnabled.setValueFromString("false");
+		server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+		client.setSoTimeout(5000);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+		if (thread != null)
+			thread.join(5000);
+	}
+
+	private void start() throws Exception {
+		QuotaManager qm = new QuotaManager(config.connectionQuotas, wheel);
+		thread = new SocketThread(server.accept(), qm, wheel, (st) -> new BaseSessionState(st) {
+			@Override
+			public void handlePacket(BaseCTOS packet) {
+			}
+
+			@Override
+			public void logout() {
+			}
+		}, null, new StdoutLogProvider(), config);
+		thread.start();
+	}
+
+	private void advanceTo(long time) {
+		now = time;
+		wheel.advance();
+	}
+
+	/**
+	 * Waits for the thread to get as far as scheduling its timer (the quota manager always has one).
+	 */
+	private void awaitTimer() throws InterruptedException {
+		for (int i = 0; i < 500 && wheel.getPending() < 2; i++)
+			Thread.sleep(10);
+		assertEquals(2, wheel.getPending());
+	}
+
+	private boolean hasWriter() {
+		String name = "Natsue-Writer-" + thread.socket.getRemoteSocketAddress();
+		for (Thread t : Thread.getAllStackTraces().keySet())
+			if (t.getName().equals(name))
+				return true;
+		return false;
+	}
+
+	@Test
+	public void testNoDataTimeout() throws Exception {
+		config.initialNoDataShutdownTime.setValueFromString("30");
+		start();
+		awaitTimer();
+		// Not known to be Babel yet, so no writer thread.
+		assertFalse(hasWriter());
+		advanceTo(30900);
+		assertTrue(thread.isAlive());
+		advanceTo(31000);
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		// Closed without a word.
+		assertEquals(-1, client.getInputStream().read());
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		config.manualKeepAliveTime.setValueFromString("30");
+		start();
+		// The start of a handshake, so it's a Babel connection.
+		client.getOutputStream().write(0x25);
+		client.getOutputStream().flush();
+		// The no-data timer is cancelled, and the keep-alive one takes its place.
+		for (int i = 0; i < 500 && !(wheel.getPending() == 2 && thread.sessionState != null); i++)
+			Thread.sleep(10);
+		assertTrue(hasWriter());
+		InputStream in = client.getInputStream();
+		byte[] dummy = PacketWriter.writeDummy();
+		advanceTo(30900);
+		client.setSoTimeout(200);
+		try {
+			in.read();
+			fail("Keep-alive sent early");
+		} catch (SocketTimeoutException ste) {
+			// Good
+		}
+		client.setSoTimeout(5000);
+		advanceTo(31000);
+		byte[] got = new byte[dummy.length];
+		new DataInputStream(in).readFully(got);
+		assertArrayEquals(dummy, got);
+		// And again, a keep-alive period later.
+		advanceTo(61000);
+		new DataInputStream(in).readFully(got);
+		assertArrayEquals(dummy, got);
+		assertTrue(thread.isAlive());
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import natsue.log.StdoutLogProvider;
+import natsue.server.database.NatsueDBSpoolInsert;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.spool.SpoolLog;
+
+public class SpoolLogTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SpoolLog open(long segmentBytes) throws IOException {
+		return new SpoolLog(folder.getRoot(), segmentBytes, false, new StdoutLogProvider());
+	}
+
+	private static void spool(SpoolLog log, int uid, String text) throws IOException {
+		ArrayList<NatsueDBSpoolInsert> list = new ArrayList<>();
+		list.add(new NatsueDBSpoolInsert(uid, 0, text.getBytes("UTF-8")));
+		log.spool(list);
+	}
+
+	private static String text(NatsueDBSpooledMessage msg) throws IOException {
+		return new String(msg.data, "UTF-8");
+	}
+
+	private int segmentCount() {
+		return folder.getRoot().listFiles().length;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		SpoolLog log = open(1024 * 1024);
+		spool(log, 1, "a");
+		spool(log, 2, "b");
+		spool(log, 1, "c");
+		LinkedList<NatsueDBSpooledMessage> msgs = log.get(1, 10);
+		assertEquals(2, msgs.size());
+		assertEquals("a", text(msgs.get(0)));
+		assertEquals("c", text(msgs.get(1)));
+		assertEquals(1, log.get(1, 1).size());
+		log.delete(1, new long[] {msgs.get(0).id});
+		assertEquals("c", text(log.get(1, 10).get(0)));
+		log.delete(1, new long[] {msgs.get(1).id});
+		assertNull(log.get(1, 10));
+		assertEquals(1, log.get(2, 10).size());
+		log.close();
+	}
+
+	@Test
+	public void testRecovery() throws IOException {
+		SpoolLog log = open(1024 * 1024);
+		spool(log, 1, "kept");
+		spool(log, 1, "consumed");
+		log.delete(1, new long[] {log.get(1, 10).get(1).id});
+		spool(log, 1, "torn");
+		log.close();
+		// Chop the end off the last record, as if the server died mid-write.
+		File segment = folder.getRoot().listFiles()[0];
+		try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+			raf.setLength(raf.length() - 2);
+		}
+		log = open(1024 * 1024);
+		LinkedList<NatsueDBSpooledMessage> msgs = log.get(1, 10);
+		assertEquals(1, msgs.size());
+		assertEquals("kept", text(msgs.get(0)));
+		// And it carries on fine afterwards.
+		spool(log, 1, "after");
+		log.close();
+		log = open(1024 * 1024);
+		assertEquals(2, log.get(1, 10).size());
+		log.close();
+	}
+
+	@Test
+	public void testConsumedSegmentsDeleted() throws IOException {
+		// Small enough that each message gets its own segment.
+		SpoolLog log = open(16);
+		for (int i = 0; i < 4; i++)
+			spool(log, 1, "message " + i);
+		assertEquals(4, segmentCount());
+		LinkedList<NatsueDBSpooledMessage> msgs = log.get(1, 10);
+		for (NatsueDBSpooledMessage msg : msgs)
+			log.delete(1, new long[] {msg.id});
+		assertEquals(1, segmentCount());
+		log.close();
+		log = open(16);
+		assertNull(log.get(1, 10));
+		log.close();
+	}
+
+	@Test
+	public void testLeftoversRelocated() throws IOException {
+		SpoolLog log = open(256);
+		// One message nobody collects, then plenty that are.
+		spool(log, 1, "forgotten");
+		for (int i = 0; i < 64; i++) {
+			spool(log, 2, "message " + i);
+			log.delete(2, new long[] {log.get(2, 1).get(0).id});
+		}
+		// Without relocation, every segment would be held up by the first.
+		assertEquals(true, segmentCount() <= 3);
+		log.close();
+		log = open(256);
+		assertEquals("forgotten", text(log.get(1, 10).get(0)));
+		assertNull(log.get(2, 10));
+		log.close();
+	}
+
+	@Test
+	public void testImportSkipsKnown() throws IOException {
+		SpoolLog log = open(1024 * 1024);
+		ArrayList<SpoolLog.Message> batch = new ArrayList<>();
+		batch.add(new SpoolLog.Message(100, 1, 2, 3, new byte[] {1}));
+		batch.add(new SpoolLog.Message(101, 1, 2, 3, new byte[] {2}));
+		assertEquals(2, log.importMessages(batch));
+		assertEquals(0, log.importMessages(batch));
+		LinkedList<NatsueDBSpooledMessage> msgs = log.get(1, 10);
+		assertEquals(2, msgs.size());
+		assertEquals(100, msgs.get(0).id);
+		log.close();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import natsue.config.ConfigDB;
+import natsue.log.StdoutLogProvider;
+import natsue.server.database.NatsueDBSpooledMessage;
+import natsue.server.database.mem.MemNatsueDatabase;
+import natsue.server.hub.SpoolWriter;
+
+public class SpoolWriterTests {
+	@Test
+	public void testQueueLimit() throws Exception {
+		MemNatsueDatabase db = new MemNatsueDatabase(new StdoutLogProvider(), new ConfigDB());
+		// The thread isn't started, so nothing leaves the queue unless it overflows.
+		SpoolWriter writer = new SpoolWriter(db, new StdoutLogProvider(), 1000, 256, 2);
+		CompletableFuture<Boolean> a = writer.spool(1, 0, new byte[] {1});
+		CompletableFuture<Boolean> b = writer.spool(1, 0, new byte[] {2});
+		assertFalse(a.isDone());
+		assertFalse(b.isDone());
+		assertNull(db.getSpooledMessages(1, 10));
+		// Over the limit, so written now, after what was queued for the same user.
+		CompletableFuture<Boolean> c = writer.spool(1, 0, new byte[] {3});
+		assertTrue(c.isDone() && c.get());
+		assertTrue(a.isDone() && a.get());
+		assertTrue(b.isDone() && b.get());
+		LinkedList<NatsueDBSpooledMessage> msgs = db.getSpooledMessages(1, 10);
+		assertEquals(3, msgs.size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(i + 1, msgs.get(i).data[0]);
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		MemNatsueDatabase db = new MemNatsueDatabase(new StdoutLogProvider(), new ConfigDB());
+		SpoolWriter writer = new SpoolWriter(db, new StdoutLogProvider(), 1000, 2, 256);
+		CompletableFuture<Boolean> a = writer.spool(1, 0, new byte[] {1});
+		CompletableFuture<Boolean> b = writer.spool(2, 0, new byte[] {2});
+		CompletableFuture<Boolean> c = writer.spool(1, 0, new byte[] {3});
+		assertFalse(a.isDone());
+		// Everything queued is written (over more than one batch), and anything later goes straight through.
+		writer.shutdown();
+		assertTrue(a.isDone() && a.get());
+		assertTrue(b.isDone() && b.get());
+		assertTrue(c.isDone() && c.get());
+		CompletableFuture<Boolean> d = writer.spool(1, 0, new byte[] {4});
+		assertTrue(d.isDone() && d.get());
+		LinkedList<NatsueDBSpooledMessage> msgs = db.getSpooledMessages(1, 10);
+		assertEquals(3, msgs.size());
+		assertEquals(1, msgs.get(0).data[0]);
+		assertEquals(3, msgs.get(1).data[0]);
+		assertEquals(4, msgs.get(2).data[0]);
+		assertEquals(1, db.getSpooledMessages(2, 10).size());
+		StringBuilder sb = new StringBuilder();
+		writer.runSystemCheck(sb);
+		assertTrue(sb.toString(), sb.toString().contains(" O0 Q0"));
+	}
+}
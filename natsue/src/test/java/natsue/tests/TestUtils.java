@@ -14,11 +14,27 @@ import java.io.ByteArrayOutputStream;
 import natsue.config.Config;
 import natsue.data.babel.PacketReader;
 import natsue.data.babel.ctos.BaseCTOS;
+import natsue.log.ILogProvider;
+import natsue.log.ILogSource;
 
 /**
  * Utilities for testing.
  */
 public class TestUtils {
+	/**
+	 * Ignores messages, but turns logged exceptions into test failures (where they happen on the test's thread).
+	 */
+	public static final ILogProvider FAIL_ON_EXCEPTION = new ILogProvider() {
+		@Override
+		public void log(ILogSource source, String text) {
+		}
+
+		@Override
+		public void log(ILogSource source, Throwable ex) {
+			throw new RuntimeException(ex);
+		}
+	};
+
 	public static BaseCTOS packetHex(String hex) {
 		try {
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -0,0 +1,95 @@
+/*
+ * c3ds-projects - Assorted compatibility fixes & useful tidbits
+ * Written starting in 2022 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package natsue.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import natsue.server.timing.TimingWheel;
+
+public class TimingWheelTests {
+	private long now = 1000;
+	private final ArrayList<String> fired = new ArrayList<>();
+	private final TimingWheel wheel = new TimingWheel(() -> now, 10, 8, TestUtils.FAIL_ON_EXCEPTION);
+
+	private void advanceTo(long time) {
+		now = time;
+		wheel.advance();
+	}
+
+	@Test
+	public void testNeverEarly() {
+		wheel.schedule(() -> fired.add("a"), 25);
+		advanceTo(1020);
+		assertEquals(0, fired.size());
+		advanceTo(1029);
+		assertEquals(0, fired.size());
+		// Within a tick of the deadline.
+		advanceTo(1030);
+		assertEquals(1, fired.size());
+		assertEquals(0, wheel.getPending());
+	}
+
+	@Test
+	public void testCancel() {
+		TimingWheel.Timeout a = wheel.schedule(() -> fired.add("a"), 10);
+		wheel.schedule(() -> fired.add("b"), 10);
+		assertEquals(2, wheel.getPending());
+		assertTrue(a.cancel());
+		assertFalse(a.cancel());
+		assertEquals(1, wheel.getPending());
+		advanceTo(1010);
+		assertEquals(1, fired.size());
+		assertEquals("b", fired.get(0));
+	}
+
+	@Test
+	public void testMultipleLaps() {
+		// The wheel is 80ms around, so these share buckets with earlier ones.
+		wheel.schedule(() -> fired.add("short"), 20);
+		wheel.schedule(() -> fired.add("long"), 20 + 80 * 3);
+		for (long t = 1000; t < 1260; t += 10)
+			advanceTo(t);
+		assertEquals(1, fired.size());
+		advanceTo(1260);
+		assertEquals(2, fired.size());
+		assertEquals("long", fired.get(1));
+	}
+
+	@Test
+	public void testCatchUp() {
+		wheel.schedule(() -> fired.add("a"), 15);
+		wheel.schedule(() -> fired.add("b"), 500);
+		wheel.schedule(() -> fired.add("c"), 5000);
+		// Well over a lap in one go.
+		advanceTo(2000);
+		assertEquals(2, fired.size());
+		assertEquals(1, wheel.getPending());
+		advanceTo(6000);
+		assertEquals(3, fired.size());
+	}
+
+	@Test
+	public void testRescheduleFromTask() {
+		wheel.schedule(() -> {
+			fired.add("a");
+			wheel.schedule(() -> fired.add("b"), 0);
+		}, 10);
+		advanceTo(1010);
+		assertEquals(1, fired.size());
+		// Scheduled while firing, so it waits for the next tick.
+		advanceTo(1019);
+		assertEquals(1, fired.size());
+		advanceTo(1020);
+		assertEquals(2, fired.size());
+	}
+}